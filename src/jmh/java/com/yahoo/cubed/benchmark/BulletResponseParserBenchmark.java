@@ -0,0 +1,88 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yahoo.cubed.service.bullet.BulletResponseParser;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading the aggregations of a wide raw Bullet response, streaming or from a tree as before streaming.
+ * Run with -prof gc to compare the bytes allocated per read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulletResponseParserBenchmark {
+    private byte[] response;
+
+    /**
+     * Build a response of 2000 records of 30 text columns.
+     */
+    @Setup
+    public void setUp() {
+        StringBuilder json = new StringBuilder("{\"records\": [");
+        for (int i = 0; i < 2000; i++) {
+            json.append(i == 0 ? "{" : ", {");
+            for (int j = 0; j < 30; j++) {
+                json.append(j == 0 ? "" : ", ").append("\"column").append(j).append("\": \"value of row ").append(i).append(" column ").append(j).append('"');
+            }
+            json.append('}');
+        }
+        json.append("], \"meta\": {}}");
+        response = json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read the response line by line, then into a tree.
+     */
+    @Benchmark
+    public Map<String, Double> readAggregationsFromTree() throws IOException {
+        InputStream content = new ByteArrayInputStream(response);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(content, "UTF-8"));
+        StringBuffer text = new StringBuffer();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            text.append(line);
+            text.append('\n');
+        }
+        JsonNode tree = new ObjectMapper().readValue(text.toString(), JsonNode.class);
+        Map<String, Double> result = new HashMap<>();
+        for (JsonNode record : tree.get(BulletResponseParser.RECORDS)) {
+            record.fieldNames().forEachRemaining(name -> result.put(name, record.get(name).asDouble()));
+        }
+        return result;
+    }
+
+    /**
+     * Stream the response, skipping the fields that are not numbers.
+     */
+    @Benchmark
+    public Map<String, Double> readAggregationsStreaming() throws IOException {
+        return BulletResponseParser.readAggregations(new ByteArrayInputStream(response));
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.benchmark;
+
+import com.yahoo.cubed.App;
+import com.yahoo.cubed.json.JsonCodec;
+import com.yahoo.cubed.json.NewFunnelQuery;
+import com.yahoo.cubed.model.FunnelGroup;
+import com.yahoo.cubed.model.Pipeline;
+import com.yahoo.cubed.settings.CLISettings;
+import com.yahoo.cubed.source.ConfigurationLoader;
+import com.yahoo.cubed.templating.DatamartTemplateGenerator;
+import com.yahoo.cubed.templating.DruidIndexJson;
+import com.yahoo.cubed.templating.FunnelGroupTemplateGenerator;
+import com.yahoo.cubed.templating.FunnelHql;
+import com.yahoo.cubed.templating.ScriptsTransformHql;
+import com.yahoo.cubed.util.Utils;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of the pipeline code generation behind launch and preview.
+ * Runs against an in-memory H2 database seeded with a wide schema, and pipelines with many projections,
+ * value mappings and filter rules, built through the same request parsing as the routes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodeGenerationBenchmark {
+    private static final String SCHEMA = "benchmark";
+    private static final String DATABASE_URL = "jdbc:h2:mem:cubed_benchmark;DB_CLOSE_DELAY=-1";
+    /** One field in this many is a map. */
+    private static final int MAP_FIELD_INTERVAL = 10;
+    /** One field in this many is an integer. */
+    private static final int INTEGER_FIELD_INTERVAL = 3;
+    private static final int KEYS_PER_MAP = 20;
+    private static final int VALUE_MAPPINGS = 10;
+    private static final int FILTER_RULES = 20;
+    private static final int FUNNEL_STEPS = 6;
+    private static final int FUNNEL_PROJECTIONS = 10;
+    private static final String[] VALUE_MAPPING_OPERATORS = {"equal", "like", "rlike"};
+
+    /** Number of fields of the seeded schema. */
+    @Param({"300"})
+    public int fields;
+
+    /** Number of projections of the data mart. */
+    @Param({"40"})
+    public int projections;
+
+    /** Megabytes of the store of rendered files, 0 renders every file. Each value runs in its own fork. */
+    @Param({"0", "1024"})
+    public long artifactStoreMaxSize;
+
+    private File directory;
+    private File output;
+    private final AtomicLong version = new AtomicLong();
+
+    private Pipeline datamart;
+    private NewFunnelQuery funnelQuery;
+    private FunnelGroup funnelGroup;
+
+    private ScriptsTransformHql scriptsTransformHql;
+    private DruidIndexJson druidIndexJson;
+    private DatamartTemplateGenerator datamartTemplateGenerator;
+    private FunnelGroupTemplateGenerator funnelGroupTemplateGenerator;
+
+    /**
+     * Seed the database and build the pipelines.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // Read once, when the render service is first created
+        CLISettings.ARTIFACT_STORE_MAX_SIZE = artifactStoreMaxSize;
+        directory = Files.createTempDirectory("cubed-benchmark").toFile();
+        output = new File(directory, "output");
+        FileUtils.forceMkdir(output);
+        CLISettings.TEMPLATE_OUTPUT_FOLDER = directory.getPath();
+
+        File databaseConfig = new File(directory, "database-configuration.properties");
+        Files.write(databaseConfig.toPath(), Arrays.asList(
+                "database_url = " + DATABASE_URL,
+                "database_username = root",
+                "database_password =",
+                "sql_driver = org.h2.Driver",
+                "sql_dialect = org.hibernate.dialect.H2Dialect"), StandardCharsets.UTF_8);
+        CLISettings.DB_CONFIG_FILE = databaseConfig.getPath();
+        App.prepareDatabase();
+        ConfigurationLoader.load();
+
+        File schemaDir = new File(directory, "schemas/" + SCHEMA);
+        FileUtils.forceMkdir(schemaDir);
+        // YAML is a superset of JSON
+        JsonCodec.PRETTY_WRITER.writeValue(new File(schemaDir, "schema.yaml"), schemaDefinition());
+        JsonCodec.PRETTY_WRITER.writeValue(new File(schemaDir, "operational_params.yaml"), operationalParams());
+        App.loadSchemas(schemaDir.getParent());
+
+        datamart = Utils.constructFunnelmartPipeline(JsonCodec.WRITER.writeValueAsString(datamartRequest()), -1, false, false);
+        funnelQuery = JsonCodec.NEW_FUNNEL_QUERY_READER.readValue(JsonCodec.WRITER.writeValueAsString(funnelRequest("benchmark_funnel")));
+        funnelGroup = Utils.constructFunnelGroup(JsonCodec.WRITER.writeValueAsString(funnelGroupRequest()), -1);
+
+        scriptsTransformHql = new ScriptsTransformHql();
+        druidIndexJson = new DruidIndexJson(true);
+        datamartTemplateGenerator = new DatamartTemplateGenerator();
+        funnelGroupTemplateGenerator = new FunnelGroupTemplateGenerator();
+    }
+
+    /**
+     * Delete the pipelines generated during the iteration.
+     */
+    @TearDown(Level.Iteration)
+    public void deleteOutput() throws Exception {
+        FileUtils.cleanDirectory(output);
+    }
+
+    /**
+     * Delete the temporary directory.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    /**
+     * Render the data mart Hive ETL script.
+     */
+    @Benchmark
+    public String scriptsTransformHql() throws Exception {
+        return scriptsTransformHql.generateFile(datamart, version.incrementAndGet());
+    }
+
+    /**
+     * Render the data mart Druid ingestion spec.
+     */
+    @Benchmark
+    public String druidIndexJson() throws Exception {
+        return druidIndexJson.generateFile(datamart, version.incrementAndGet());
+    }
+
+    /**
+     * Render the funnel Hive query, as previewed.
+     */
+    @Benchmark
+    public String funnelHql() throws Exception {
+        return FunnelHql.generateFile(funnelQuery, false, false);
+    }
+
+    /**
+     * Generate all files of a data mart pipeline, as launched.
+     */
+    @Benchmark
+    public void datamartTemplateGenerator() throws Exception {
+        datamartTemplateGenerator.generateTemplateFiles(datamart, output.getPath(), version.incrementAndGet());
+    }
+
+    /**
+     * Generate all files of a funnel group pipeline, as launched.
+     */
+    @Benchmark
+    public void funnelGroupTemplateGenerator() throws Exception {
+        funnelGroupTemplateGenerator.generateTemplateFiles(funnelGroup, output.getPath(), version.incrementAndGet());
+    }
+
+    private boolean isMap(int field) {
+        return field % MAP_FIELD_INTERVAL == 0;
+    }
+
+    private boolean isInteger(int field) {
+        return !isMap(field) && field % INTEGER_FIELD_INTERVAL == 0;
+    }
+
+    private static String fieldName(int field) {
+        return String.format("field_%03d", field);
+    }
+
+    private static String keyName(int key) {
+        return String.format("key_%02d", key);
+    }
+
+    /**
+     * Schema with a timestamp, user id and event fields, then generated string, integer and map fields.
+     */
+    private Map<String, Object> schemaDefinition() {
+        Map<String, String> tables = new LinkedHashMap<>();
+        tables.put("daily_table", "daily_data");
+        tables.put("hourly_partition", "dt=${YEAR}${MONTH}${DAY}${HOUR}");
+        tables.put("daily_partition", "dt=${YEAR}${MONTH}${DAY}");
+        tables.put("hourly_table", "hourly_data");
+
+        List<Map<String, Object>> fieldDefinitions = new ArrayList<>();
+        fieldDefinitions.add(fieldDefinition(1, "timestamp", "integer"));
+        fieldDefinitions.add(fieldDefinition(2, "cookie_one", "string"));
+        fieldDefinitions.add(fieldDefinition(3, "user_event", "string"));
+        for (int field = 4; field <= fields; field++) {
+            Map<String, Object> fieldDefinition = fieldDefinition(field, fieldName(field), isMap(field) ? "map<string,string>" : isInteger(field) ? "integer" : "string");
+            if (isMap(field)) {
+                List<Map<String, Object>> keys = new ArrayList<>();
+                for (int key = 1; key <= KEYS_PER_MAP; key++) {
+                    Map<String, Object> keyDefinition = new LinkedHashMap<>();
+                    keyDefinition.put("name", keyName(key));
+                    keyDefinition.put("id", field * 1000 + key);
+                    keys.add(keyDefinition);
+                }
+                fieldDefinition.put("keys", keys);
+            }
+            fieldDefinitions.add(fieldDefinition);
+        }
+
+        Map<String, Object> schema = new LinkedHashMap<>();
+        schema.put("tables", tables);
+        schema.put("fields", fieldDefinitions);
+        schema.put("name", SCHEMA);
+        schema.put("database", SCHEMA);
+        schema.put("datetimePartitionColumn", "dt");
+        return Collections.singletonMap("schemas", Collections.singletonList(schema));
+    }
+
+    private static Map<String, Object> fieldDefinition(int id, String name, String type) {
+        Map<String, Object> field = new LinkedHashMap<>();
+        field.put("name", name);
+        field.put("type", type);
+        field.put("id", id);
+        return field;
+    }
+
+    private static Map<String, Object> operationalParams() {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("bulletUrl", "https://bullet.cubed.com:4443/bullet/api/drpc");
+        params.put("disableBullet", false);
+        params.put("disableFunnel", false);
+        params.put("oozieJobType", "hourly");
+        params.put("oozieBackfillJobType", "daily");
+        params.put("funnelTargetTable", "daily_data");
+        params.put("userIdFields", Collections.singletonList("cookie_one"));
+        params.put("timestampColumnParam", "timestamp");
+        return params;
+    }
+
+    /**
+     * Projection of a generated field, of its first key for a map.
+     */
+    private Map<String, String> projection(int field, String aggregate) {
+        Map<String, String> projection = new LinkedHashMap<>();
+        projection.put("column_id", Integer.toString(field));
+        projection.put("key", isMap(field) ? keyName(1) : "");
+        projection.put("alias", isMap(field) ? fieldName(field) + "_" + keyName(1) : "");
+        projection.put("aggregate", aggregate);
+        projection.put("schema_name", SCHEMA);
+        return projection;
+    }
+
+    private static Map<String, Object> rule(String field, String operator, String value) {
+        Map<String, Object> rule = new LinkedHashMap<>();
+        rule.put("id", field);
+        rule.put("field", field);
+        rule.put("type", "string");
+        rule.put("input", "text");
+        rule.put("operator", operator);
+        rule.put("value", value);
+        return rule;
+    }
+
+    private static Map<String, Object> logicalRule(String condition, List<Map<String, Object>> rules) {
+        Map<String, Object> logicalRule = new LinkedHashMap<>();
+        logicalRule.put("condition", condition);
+        logicalRule.put("rules", rules);
+        return logicalRule;
+    }
+
+    /**
+     * Filter rules on the generated string fields.
+     */
+    private Map<String, Object> filter() {
+        List<Map<String, Object>> rules = new ArrayList<>();
+        rules.add(rule("cookie_one", "is_not_null", null));
+        for (int field = 4; rules.size() < FILTER_RULES && field <= fields; field++) {
+            if (!isMap(field) && !isInteger(field)) {
+                rules.add(rule(fieldName(field), rules.size() % 2 == 0 ? "equal" : "not_equal", "value" + field));
+            }
+        }
+        return logicalRule("AND", rules);
+    }
+
+    /**
+     * Data mart with aggregated integer fields, and value mappings on the other projections.
+     */
+    private Map<String, Object> datamartRequest() {
+        List<Map<String, String>> datamartProjections = new ArrayList<>();
+        List<List<List<String>>> valueMappings = new ArrayList<>();
+        for (int field = 4; datamartProjections.size() < projections && field <= fields; field++) {
+            datamartProjections.add(projection(field, isInteger(field) ? "SUM" : "NONE"));
+            List<List<String>> fieldValueMappings = new ArrayList<>();
+            if (!isInteger(field)) {
+                for (int mapping = 0; mapping < VALUE_MAPPINGS; mapping++) {
+                    fieldValueMappings.add(Arrays.asList("value" + mapping, "mapped" + mapping, VALUE_MAPPING_OPERATORS[mapping % VALUE_MAPPING_OPERATORS.length]));
+                }
+            }
+            valueMappings.add(fieldValueMappings);
+        }
+
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("name", "benchmark_datamart");
+        request.put("schemaName", SCHEMA);
+        request.put("description", "benchmark data mart");
+        request.put("owner", "benchmark");
+        request.put("projections", datamartProjections);
+        request.put("projectionVMs", valueMappings);
+        request.put("filter", filter());
+        request.put("backfillEnabled", true);
+        request.put("backfillStartDate", "2020-05-07");
+        request.put("endTimeEnabled", false);
+        return request;
+    }
+
+    /**
+     * Funnel over user events, with a second rule on a generated field per step.
+     */
+    private Map<String, Object> funnelRequest(String name) {
+        List<Map<String, String>> funnelProjections = new ArrayList<>();
+        for (int field = 4; funnelProjections.size() < FUNNEL_PROJECTIONS && field <= fields; field++) {
+            if (!isInteger(field)) {
+                funnelProjections.add(projection(field, "NONE"));
+            }
+        }
+        List<Map<String, Object>> steps = new ArrayList<>();
+        List<String> stepNames = new ArrayList<>();
+        for (int step = 1; step <= FUNNEL_STEPS; step++) {
+            Map<String, Object> stepRule = logicalRule("AND", Arrays.asList(
+                    rule("user_event", "equal", "event" + step),
+                    rule(fieldName(4 + step), "is_not_null", null)));
+            stepRule.put("name", "step" + step);
+            steps.add(stepRule);
+            stepNames.add("step" + step);
+        }
+
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("name", name);
+        request.put("schemaName", SCHEMA);
+        request.put("description", "benchmark funnel");
+        request.put("owner", "benchmark");
+        request.put("projections", funnelProjections);
+        request.put("steps", steps);
+        request.put("filter", filter());
+        request.put("startDate", "20200507");
+        request.put("queryRange", "1");
+        request.put("repeatInterval", "1");
+        request.put("endDate", "20200508");
+        request.put("userIdColumn", "cookie_one");
+        request.put("stepNames", stepNames);
+        return request;
+    }
+
+    /**
+     * Funnel group of the funnel steps in a chain, with a shortcut making a second funnel.
+     */
+    private Map<String, Object> funnelGroupRequest() throws Exception {
+        Map<String, Object> request = funnelRequest("benchmark_group");
+        List<String[]> edges = new ArrayList<>();
+        edges.add(new String[] {"START", "step1"});
+        List<String> chain = new ArrayList<>();
+        List<String> shortcut = new ArrayList<>();
+        for (int step = 1; step <= FUNNEL_STEPS; step++) {
+            if (step > 1) {
+                edges.add(new String[] {"step" + (step - 1), "step" + step});
+            }
+            chain.add("step" + step);
+            if (step != 3) {
+                shortcut.add("step" + step);
+            }
+        }
+        edges.add(new String[] {"step2", "step4"});
+
+        Map<String, String> funnelNames = new LinkedHashMap<>();
+        funnelNames.put(String.join("-", chain), "chain");
+        funnelNames.put(String.join("-", shortcut), "shortcut");
+        request.put("funnelNames", JsonCodec.WRITER.writeValueAsString(funnelNames));
+        request.put("stepNames", edges);
+        request.put("topology", "{}");
+        return request;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yahoo.cubed.json.JsonCodec;
+import com.yahoo.cubed.json.NewDatamart;
+import com.yahoo.cubed.service.bullet.query.BulletQuery;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Request body parse and response serialize throughput.
+ * The perCallMapper benchmarks build a mapper per call, as the routes did before the shared codec.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonCodecBenchmark {
+    private static final String FILTER = "{\"condition\":\"AND\",\"rules\":["
+            + "{\"id\":\"network\",\"field\":\"network\",\"type\":\"string\",\"input\":\"text\",\"operator\":\"equal\",\"value\":\"on\"},"
+            + "{\"id\":\"pty_family\",\"field\":\"pty_family\",\"type\":\"string\",\"input\":\"text\",\"operator\":\"equal\",\"value\":\"sports\"},"
+            + "{\"id\":\"pty_device\",\"field\":\"pty_device\",\"type\":\"string\",\"input\":\"text\",\"operator\":\"equal\",\"value\":\"desktop\"},"
+            + "{\"id\":\"event_family\",\"field\":\"event_family\",\"type\":\"string\",\"input\":\"text\",\"operator\":\"equal\",\"value\":\"view\"}]}";
+
+    private static final String NEW_DATAMART = "{\"name\":\"benchmark\",\"description\":\"benchmark\",\"owner\":\"benchmark\","
+            + "\"projections\":[{\"column_id\":\"9\",\"key\":\"\",\"alias\":\"bcookie\",\"aggregate\":\"NONE\",\"schema_name\":\"schema1\"},"
+            + "{\"column_id\":\"3\",\"key\":\"\",\"alias\":\"network\",\"aggregate\":\"NONE\",\"schema_name\":\"schema1\"}],"
+            + "\"projectionVMs\":[[]],\"filter\":" + FILTER + ","
+            + "\"backfillEnabled\":true,\"backfillStartDate\":\"2018-03-13\",\"endTimeEnabled\":false,\"endTimeDate\":null}";
+
+    private BulletQuery bulletQuery;
+    private Map<String, Map<String, Long>> stats;
+
+    /**
+     * Build the responses to serialize.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        bulletQuery = BulletQuery.createPreviewBulletQueryInstance(Collections.emptyList(), FILTER);
+        // Same shape as TemplateRenderService.getRenderStats
+        stats = new TreeMap<>();
+        for (String name : new String[] {"ScriptsTransformHql", "BundlePropertiesXml", "FunnelCoordinatorXml", "static"}) {
+            Map<String, Long> templateStats = new LinkedHashMap<>();
+            templateStats.put("count", 1234L);
+            templateStats.put("averageMicros", 800L);
+            templateStats.put("maxMicros", 12345L);
+            stats.put(name, templateStats);
+        }
+    }
+
+    /**
+     * Parse a new data mart request with a mapper per call.
+     */
+    @Benchmark
+    public NewDatamart parseNewDatamartPerCallMapper() throws Exception {
+        return new ObjectMapper().readValue(NEW_DATAMART, NewDatamart.class);
+    }
+
+    /**
+     * Parse a new data mart request with the shared reader.
+     */
+    @Benchmark
+    public NewDatamart parseNewDatamartCodec() throws Exception {
+        return JsonCodec.NEW_DATAMART_READER.readValue(NEW_DATAMART);
+    }
+
+    /**
+     * Serialize a Bullet query with a mapper per call.
+     */
+    @Benchmark
+    public String writeBulletQueryPerCallMapper() throws Exception {
+        return new ObjectMapper().writeValueAsString(bulletQuery);
+    }
+
+    /**
+     * Serialize a Bullet query with the shared writer.
+     */
+    @Benchmark
+    public String writeBulletQueryCodec() throws Exception {
+        return JsonCodec.BULLET_QUERY_WRITER.writeValueAsString(bulletQuery);
+    }
+
+    /**
+     * Serialize a stats response with a mapper per call.
+     */
+    @Benchmark
+    public String writeStatsPerCallMapper() throws Exception {
+        return new ObjectMapper().writeValueAsString(stats);
+    }
+
+    /**
+     * Serialize a stats response with the shared writer.
+     */
+    @Benchmark
+    public String writeStatsCodec() throws Exception {
+        return JsonCodec.WRITER.writeValueAsString(stats);
+    }
+}
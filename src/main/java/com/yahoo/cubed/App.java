@@ -5,31 +5,19 @@
 package com.yahoo.cubed;
 
 import com.beust.jcommander.JCommander;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.yahoo.cubed.model.Field;
-import com.yahoo.cubed.model.FieldKey;
-import com.yahoo.cubed.model.Schema;
 import com.yahoo.cubed.service.ServiceFactory;
-import com.yahoo.cubed.service.exception.DataValidatorException;
+import com.yahoo.cubed.service.UnitOfWork;
 import com.yahoo.cubed.settings.CLISettings;
-import com.yahoo.cubed.settings.YamlSettings;
 import com.yahoo.cubed.source.ConfigurationLoader;
 import com.yahoo.cubed.source.DatabaseConnectionManager;
-import com.yahoo.cubed.yaml.YamlField;
-import com.yahoo.cubed.yaml.YamlKey;
-import com.yahoo.cubed.yaml.YamlSchema;
-import com.yahoo.cubed.yaml.SchemaReader;
-import com.yahoo.cubed.yaml.Schemas;
-import com.yahoo.cubed.yaml.OperationalParamsReader;
-import com.yahoo.cubed.yaml.OperationalParams;
+import com.yahoo.cubed.source.SchemaSync;
 
 import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.List;
-import java.util.Set;
-import java.util.HashSet;
 
 import liquibase.Contexts;
 import liquibase.LabelExpression;
@@ -92,6 +80,7 @@ public class App {
         try {
             prepareDatabase();
             loadSchemas(CLISettings.SCHEMA_FILES_DIR);
+            Runtime.getRuntime().addShutdownHook(new Thread(App::shutdown, "cubed-shutdown"));
             startWebServer();
         } catch (Exception e) {
             log.error("Error: {}", e);
@@ -135,6 +124,10 @@ public class App {
         // Deleted datamart list
         get("/deleted", Routes::listDeletedDatamart, templateEngine);
 
+        // Paged data mart and funnel group lists as JSON
+        get("/datamart/list", Routes::listDatamartPage);
+        get("/funnelgroup/list", Routes::listFunnelGroupPage);
+
         // Create new datamart
         get("/datamart/new", Routes::newDatamart, templateEngine);
 
@@ -148,6 +141,15 @@ public class App {
         // Run funnel query
         post("/funnel/run", Routes::runFunnelQuery);
 
+        // Asynchronous funnel query: submit, poll status, fetch results and cancel
+        post("/funnel/query", Routes::submitFunnelQuery);
+        get("/funnel/query/:id", Routes::getFunnelQueryStatus);
+        get("/funnel/query/:id/result", Routes::getFunnelQueryResult);
+        delete("/funnel/query/:id", Routes::cancelFunnelQuery);
+
+        // Funnel query result cache metrics
+        get("/funnel/cache/stats", Routes::getFunnelQueryCacheStats);
+
         // Create new funnel group
         post("/funnelgroup/new/save", Routes::createNewFunnelGroup);
 
@@ -221,6 +223,28 @@ public class App {
 
         // Relaunch all active datamarts
         post("/datamart/all-bundle-ids/relaunch", Routes::relaunchDatamart);
+        get("/datamart/all-bundle-ids/relaunch/progress", Routes::getRelaunchProgress);
+
+        // Check the cardinality of all active data marts
+        get("/datamart/all-bundle-ids/cardinality", Routes::checkDatamartCardinalities);
+
+        // Pipeline script executor metrics
+        get("/command/stats", Routes::getCommandExecutorStats);
+
+        // Pipeline file renderer metrics
+        get("/template/stats", Routes::getTemplateRenderStats);
+
+        // Database connection pool metrics
+        get("/database/pool/stats", Routes::getDatabasePoolStats);
+
+        // Bullet HTTP connection pool metrics
+        get("/bullet/pool/stats", Routes::getBulletPoolStats);
+
+        // Cardinality estimate cache metrics
+        get("/bullet/cardinality/cache/stats", Routes::getCardinalityCacheStats);
+
+        // Compiled filter metrics
+        get("/filter/stats", Routes::getFilterCompilerStats);
 
         // Health check
         get("/status", Routes::getStatus);
@@ -252,6 +276,28 @@ public class App {
         log.info("Site online: http://localhost:{}", CLISettings.PORT);
     }
 
+    /**
+     * Let running pipeline scripts finish before exiting, then stop the executors and close the pools.
+     */
+    static void shutdown() {
+        // No new scripts from relaunches or funnel queries
+        Routes.shutdown();
+        try {
+            log.info("Waiting for running pipeline scripts");
+            ServiceFactory.commandExecutorService().shutdown(CLISettings.COMMAND_SHUTDOWN_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ServiceFactory.templateRenderService().shutdown();
+        ServiceFactory.bulletHttpClient().close();
+        // Last, as the scripts update the pipeline status
+        try {
+            DatabaseConnectionManager.close();
+        } catch (SQLException e) {
+            log.warn("Could not close the database connection pool", e);
+        }
+    }
+
     private static void loadConfiguration() throws IOException {
         ConfigurationLoader.load();
     }
@@ -274,13 +320,16 @@ public class App {
      * Drop all fields. Used before adding in new schema.
      */
     public static void dropAllFields() throws Exception {
-        // Get all current fields
-        List<Field> fields = ServiceFactory.fieldService().fetchAll();
-        // Delete each existing field
-        // This also deletes the field keys
-
-        for (Field field : fields) {
-            ServiceFactory.fieldService().delete(field.getSchemaName(), field.getFieldId());
+        try (UnitOfWork work = UnitOfWork.begin()) {
+            // Get all current fields
+            List<Field> fields = ServiceFactory.fieldService().fetchAll();
+            // Delete each existing field
+            // This also deletes the field keys
+
+            for (Field field : fields) {
+                ServiceFactory.fieldService().delete(field.getSchemaName(), field.getFieldId());
+            }
+            work.commit();
         }
     }
 
@@ -292,152 +341,10 @@ public class App {
         if (!dir.isDirectory()) {
             throw new IllegalArgumentException("The " + schemasDirPath + " is not directory!");
         }
-        Set<String> schemaNamesInConfig = new HashSet<>();
-        File[] schemasDir = dir.listFiles();
-        for (File schemaDir : schemasDir) {
-            log.info("Load schema with path: {}", schemaDir.getAbsolutePath());
-            if (schemaDir.isDirectory()) {
-                File[] files = schemaDir.listFiles();
-                String schemaFilePath = null, operationalParamsFilePath = null;
-                for (File file : files) {
-                    String fileName = file.getName();
-                    if (fileName.indexOf(YamlSettings.OPERATIONAL_PARAMS_YAML_FILE_NAME_FORMAT) != -1) {
-                        operationalParamsFilePath = file.getAbsolutePath();
-                    } else if (fileName.indexOf(YamlSettings.SCHEMA_YAML_FILE_NAME_FORMAT) != -1) {
-                        schemaFilePath = file.getAbsolutePath();
-                    }
-                }
-                if (schemaFilePath == null || operationalParamsFilePath == null) {
-                    throw new IllegalArgumentException("The directory " + schemaDir.getAbsolutePath() + " miss yaml files for schema");
-                } else {
-                    schemaNamesInConfig.addAll(addSchema(schemaFilePath, operationalParamsFilePath));
-                }
-            }
-        }
-        // Mark schemas that exist in database but not show up in configs as deleted
-        List<String> schemaNamesInDb = ServiceFactory.schemaService().fetchAllName(false);
-        for (String schemaName : schemaNamesInDb) {
-            if (!schemaNamesInConfig.contains(schemaName)) {
-                Schema schema = ServiceFactory.schemaService().fetchByName(schemaName);
-                schema.setIsSchemaDeleted(true);
-                ServiceFactory.schemaService().update(schema);
-            }
-        }
-
-    }
-
+        // Diff the YAML definitions against the database and write the changes in one transaction
+        SchemaSync.sync(dir);
 
-    /**
-     * Add schema from a YAML file.
-     * This runs on every launch of Cubed.
-     */
-    private static Set<String> addSchema(String schemaFilePath, String operationalParamsFilePath) throws Exception {
-        // The schema name list to return
-        Set<String> schemaNames = new HashSet<>();
-        // Load the schema file
-        Schemas schemas = SchemaReader.readSchema(schemaFilePath);
-        OperationalParams operationalParams = OperationalParamsReader.readOperationalParams(operationalParamsFilePath, schemaFilePath);
-        ObjectMapper mapper = new ObjectMapper();
-
-        // Add the schemas to the database
-        for (YamlSchema yamlSchema : schemas.getSchemas()) {
-            Schema schema = null;
-            try {
-                schema = ServiceFactory.schemaService().fetchByName(yamlSchema.getName());
-            } catch (DataValidatorException e) {
-                log.info("Adding schema: {}", yamlSchema.getName());
-            }
-
-            boolean isUpdate = schema != null;
-
-            schema = new Schema();
-            schema.setSchemaName(yamlSchema.getName());
-            schema.setSchemaDatabase(yamlSchema.getDatabase());
-            schema.setSchemaTables(mapper.writeValueAsString(yamlSchema.getTables()));
-            schema.setSchemaDatetimePartitionColumn(yamlSchema.getDatetimePartitionColumn());
-            schema.setSchemaOozieJobType(operationalParams.getOozieJobType());
-            schema.setSchemaOozieBackfillJobType(operationalParams.getOozieBackfillJobType());
-
-            schema.setSchemaUserIdFields(mapper.writeValueAsString(operationalParams.getUserIdFields()));
-            schema.setSchemaDefaultFilters(mapper.writeValueAsString(operationalParams.getDefaultFilters()));
-            schema.setSchemaDisableBullet(operationalParams.isDisableBullet());
-            schema.setSchemaDisableFunnel(operationalParams.isDisableFunnel());
-            if (!operationalParams.isDisableFunnel()) {
-                schema.setSchemaTargetTable(operationalParams.getFunnelTargetTable());
-            }
-            schema.setSchemaBulletUrl(operationalParams.getBulletUrl());
-            schema.setSchemaTimestampColumnParam(operationalParams.getTimestampColumnParam());
-            schema.setIsSchemaDeleted(false);
-
-            schemaNames.add(yamlSchema.getName());
-
-            if (isUpdate) { // If the schema exists, update it
-                ServiceFactory.schemaService().update(schema);
-            } else { // If this schema does not exist, save as a new schema
-                ServiceFactory.schemaService().save(schema);
-            }
-
-            for (YamlField yamlField : yamlSchema.getFields()) {
-                log.info("  Adding field (name, type, id): ({}, {}, {})", yamlField.getName(), yamlField.getType(), yamlField.getId());
-
-
-                Field field = null;
-                try {
-                    field = ServiceFactory.fieldService().fetchByName(schema.getPrimaryName() + Field.FIELD_NAME_SEPARATOR + yamlField.getName());
-                } catch (DataValidatorException e) {
-                    log.info("Adding field: {}", yamlSchema.getName());
-                }
-                // If this field does not exist
-                if (field == null) {
-                    // Construct the new field
-                    field = new Field();
-                    field.setSchemaName(schema.getSchemaName());
-                    log.info("Set field with schema name: {}", field.getSchemaName());
-
-                    field.setFieldName(yamlField.getName());
-                    field.setFieldType(yamlField.getType());
-                    if (yamlField.getId() == null) {
-                        throw new Exception("Field " + field.getFieldName() + " missing id");
-                    }
-                    field.setFieldId(yamlField.getId());
-                    // Store the new field in the database
-                    ServiceFactory.fieldService().save(field);
-                }
-
-
-                // Add any keys the field might have
-                if (yamlField.getKeys() != null) {
-                    for (YamlKey yamlKey : yamlField.getKeys()) {
-                        log.info("Adding key (name, id): ({}, {})", yamlKey.getName(), yamlKey.getId());
-
-                        // Create the map key, pointing to the field it belongs to
-                        FieldKey key = null;
-                        try {
-                            key = ServiceFactory.fieldKeyService().fetchByName(schema.getPrimaryName() + FieldKey.FIELD_KEY_NAME_SEPARATOR + field.getFieldId() + FieldKey.FIELD_KEY_NAME_SEPARATOR + yamlKey.getName());
-                        } catch (DataValidatorException e) {
-                            log.info("Adding Field Key: {}", yamlKey.getName());
-                        }
-                        // If this field does not exist
-                        if (key == null) {
-                            // Construct the new fieldKey
-                            key = new FieldKey();
-                            key.setKeyName(yamlKey.getName());
-                            if (yamlKey.getId() == null) {
-                                throw new Exception("FieldKey " + key.getKeyName() + " missing key id for subfield " + yamlKey.getName());
-                            }
-                            key.setKeyId(yamlKey.getId());
-                            key.setSchemaName(schema.getSchemaName());
-                            key.setFieldId(field.getFieldId());
-                            // Store the new key in the database
-                            ServiceFactory.fieldKeyService().save(key);
-
-                        }
-
-                    }
-                }
-            }
-
-        }
-        return schemaNames;
+        // Schemas only change here, serve metadata lookups from memory from now on
+        ServiceFactory.metadataCache().rebuild();
     }
 }
@@ -4,9 +4,14 @@
 
 package com.yahoo.cubed;
 
-import java.nio.charset.StandardCharsets;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.yahoo.cubed.json.FunnelQueryResult;
+import com.yahoo.cubed.dao.ListPage;
+import com.yahoo.cubed.dao.ListQuery;
+import com.yahoo.cubed.json.FunnelQueryJob;
+import com.yahoo.cubed.json.FunnelQueryResultAggregator;
+import com.yahoo.cubed.json.JsonCodec;
+import com.yahoo.cubed.json.NewFunnelQuery;
+import com.yahoo.cubed.json.RelaunchProgress;
+import com.yahoo.cubed.model.AbstractModel;
 import com.yahoo.cubed.model.Field;
 import com.yahoo.cubed.model.FieldKey;
 import com.yahoo.cubed.model.Pipeline;
@@ -15,32 +20,49 @@ import com.yahoo.cubed.model.Schema;
 import com.yahoo.cubed.model.FunnelGroup;
 import com.yahoo.cubed.pipeline.launch.PipelineLauncher;
 import com.yahoo.cubed.pipeline.launch.PipelineLauncherManager;
+import com.yahoo.cubed.pipeline.launch.PipelineRelaunchManager;
+import com.yahoo.cubed.pipeline.stop.PipelineStopper;
 import com.yahoo.cubed.pipeline.stop.PipelineStopperManager;
+import com.yahoo.cubed.service.AbstractService;
 import com.yahoo.cubed.service.ServiceFactory;
+import com.yahoo.cubed.service.UnitOfWork;
+import com.yahoo.cubed.service.bullet.query.BulletQuery;
+import com.yahoo.cubed.service.bullet.query.BulletQueryFailException;
+import com.yahoo.cubed.service.cardinality.CardinalityEstimationService;
+import com.yahoo.cubed.service.exception.DatabaseException;
+import com.yahoo.cubed.service.exception.DataValidatorException;
 import com.yahoo.cubed.service.querybullet.QueryBulletService;
 import com.yahoo.cubed.settings.CLISettings;
+import com.yahoo.cubed.templating.ArtifactStore;
 import com.yahoo.cubed.templating.DatamartTemplateGenerator;
+import com.yahoo.cubed.templating.FunnelHql;
 import com.yahoo.cubed.templating.FunnelGroupTemplateGenerator;
 import com.yahoo.cubed.templating.ScriptsTransformHql;
 
 import com.yahoo.cubed.util.Status;
 import com.yahoo.cubed.util.Utils;
+import com.yahoo.cubed.source.DatabaseConnectionManager;
+import com.yahoo.cubed.source.FunnelQueryJobManager;
+import com.yahoo.cubed.source.FunnelQueryResultCache;
 import com.yahoo.cubed.source.HiveConnectionManager;
 import java.io.File;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.net.URLEncoder;
+import java.time.Clock;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Arrays;
 import java.util.Map;
-import java.util.concurrent.Future;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.HttpStatus;
@@ -80,6 +102,15 @@ public class Routes {
     /** List data mart template file name. */
     public static final String LIST_DATA_MART_TEMPLATE = "list_datamart";
 
+    /** Request parameter of the data mart cursor of a list view page. */
+    public static final String DATA_MART_CURSOR = "cursor";
+
+    /** Request parameter of the funnel group cursor of a list view page. */
+    public static final String FUNNEL_GROUP_CURSOR = "groupCursor";
+
+    /** Request parameters of the filters of a list view, applied in the database. */
+    private static final String[] VIEW_FILTERS = {"prefix", "status", "owner"};
+
     /** New/View data mart template file name. */
     public static final String NEW_VIEW_DATA_MART_TEMPLATE = "new_view_datamart";
 
@@ -98,9 +129,21 @@ public class Routes {
     /** Hive Connector. */
     public static HiveConnectionManager hiveConnector;
 
+    /** Asynchronous funnel query manager. */
+    public static FunnelQueryJobManager funnelQueryJobManager;
+
+    /** Funnel query result cache, null if disabled. */
+    public static FunnelQueryResultCache funnelQueryResultCache;
+
     /** Hive Pipeline Launcher Manager.*/
     public static PipelineLauncherManager pipelineLauncherManager;
 
+    /** Pipeline Stopper Manager. */
+    public static PipelineStopperManager pipelineStopperManager;
+
+    /** Bulk relaunch manager. */
+    public static PipelineRelaunchManager pipelineRelaunchManager;
+
     /** Datamart ETL Script Generator. */
     public static ScriptsTransformHql scriptsTransformHql; 
 
@@ -119,12 +162,9 @@ public class Routes {
     /** Template for generating oozie URLs. */
     private static final String OOZIE_LINK_TEMPLATE = CLISettings.OOZIE_URL + "/?job=%s";
 
-    /** Used for testing purposes. */
+    /** Used for testing purposes, set to false to keep an injected hive connector. */
     public static boolean SHOULD_RESET_HIVE_CONNECTOR = true;
 
-    /** Separator for toString() result of List. */
-    private static final String SEPARATOR_LIST_TO_STRING = ", ";
-
     /**
      * Flatten field list that may contain field with subfields.
      * @param fields list of fields
@@ -180,6 +220,16 @@ public class Routes {
         if (pipelineLauncherManager == null) {
             pipelineLauncherManager = new PipelineLauncherManager();
         }
+        if (pipelineStopperManager == null) {
+            pipelineStopperManager = new PipelineStopperManager();
+        }
+        if (pipelineRelaunchManager == null) {
+            pipelineRelaunchManager = new PipelineRelaunchManager(
+                CLISettings.RELAUNCH_THREADS,
+                CLISettings.RELAUNCH_MAX_ATTEMPTS,
+                CLISettings.RELAUNCH_RETRY_DELAY,
+                Routes::relaunchPipeline);
+        }
         if (datamartTemplateGenerator == null) {
             datamartTemplateGenerator = new DatamartTemplateGenerator();
         }
@@ -189,6 +239,23 @@ public class Routes {
         if (scriptsTransformHql == null) {
             scriptsTransformHql = new ScriptsTransformHql();
         }
+        if (funnelQueryJobManager == null) {
+            funnelQueryJobManager = new FunnelQueryJobManager(
+                CLISettings.FUNNEL_QUERY_THREADS,
+                CLISettings.FUNNEL_QUERY_QUEUE_SIZE,
+                CLISettings.FUNNEL_QUERY_RETENTION,
+                (queryId, query) -> aggregateFunnelQuery(queryId, query).toResults(),
+                queryId -> hiveConnector != null && hiveConnector.cancel(queryId));
+        }
+        if (funnelQueryResultCache == null && CLISettings.FUNNEL_CACHE_MAX_RESULTS > 0) {
+            funnelQueryResultCache = new FunnelQueryResultCache(
+                CLISettings.FUNNEL_CACHE_MAX_RESULTS,
+                CLISettings.FUNNEL_CACHE_TTL,
+                CLISettings.FUNNEL_CACHE_SETTLED_DAYS,
+                CLISettings.FUNNEL_CACHE_SPILL_DIR.isEmpty() ? null : new File(CLISettings.FUNNEL_CACHE_SPILL_DIR),
+                CLISettings.FUNNEL_CACHE_SPILL_MAX_FILES,
+                Clock.systemDefaultZone());
+        }
         // Setup default params
         defaultParams = new HashMap<>();
         defaultParams.put(VERSION_KEY, CLISettings.VERSION);
@@ -206,7 +273,6 @@ public class Routes {
             params.put("defaultSchema", schemaName);
 
             Schema schema = ServiceFactory.schemaService().fetchByName(schemaName);
-            ObjectMapper mapper = new ObjectMapper();
             // Set fields for the schema
             List<Field> schemaFields = flattenFields(schema.getFields());
             for (Field field : schemaFields) {
@@ -220,8 +286,8 @@ public class Routes {
                 }
             });
             params.put(FIELDS_KEY, schemaFields);
-            params.put(USER_ID_FIELDS, mapper.readValue(schema.getSchemaUserIdFields(), List.class));
-            params.put(DEFAULT_FILTERS_KEY, mapper.readValue(schema.getSchemaDefaultFilters(), List.class));
+            params.put(USER_ID_FIELDS, JsonCodec.LIST_READER.readValue(schema.getSchemaUserIdFields()));
+            params.put(DEFAULT_FILTERS_KEY, JsonCodec.LIST_READER.readValue(schema.getSchemaDefaultFilters()));
             params.put(DISABLE_BULLET_KEY, schema.getSchemaDisableBullet());
             params.put(DISABLE_FUNNEL_KEY, schema.getSchemaDisableFunnel());
         } catch (Exception e) {
@@ -241,10 +307,15 @@ public class Routes {
         // Store the values to pass to the UI
         Map<String, Object> params = new HashMap<>(defaultParams);
 
+        // Deployed marts unless another status is asked for
+        Map<String, String> filters = viewFilters(req, "Deployed");
+        params.put("filters", filters);
+
         try {
-            // Get the list of pipelines
-            List<Pipeline> pipelines = ServiceFactory.pipelineService().fetchAll();
-            pipelines = pipelines.stream().filter(p -> !p.getPipelineIsDeleted()).collect(Collectors.toList());
+            // Get a page of data marts
+            ListPage<Pipeline> pipelinePage = fetchViewPage(ServiceFactory.pipelineService(), viewQuery(filters, false)
+                    .exclude(ListQuery.Attribute.TYPE, Utils.FUNNEL), req, DATA_MART_CURSOR, FUNNEL_GROUP_CURSOR);
+            List<Pipeline> pipelines = pipelinePage.getItems();
 
             for (Pipeline p : pipelines) {
                 log.info("Update time at list_datamart for pipeline " + p.getPipelineEditTime());
@@ -256,11 +327,12 @@ public class Routes {
             }
 
             // Pass the list of data marts to the UI
-            params.put("listOfDataMarts", getDisplayPipelines(pipelines));
+            params.put("listOfDataMarts", pipelines);
 
-            // Get the list of funnel groups
-            List<FunnelGroup> funnelGroups = ServiceFactory.funnelGroupService().fetchAll();
-            funnelGroups = funnelGroups.stream().filter(p -> !p.getFunnelGroupIsDeleted()).collect(Collectors.toList());
+            // Get a page of funnel groups
+            ListPage<FunnelGroup> funnelGroupPage = fetchViewPage(ServiceFactory.funnelGroupService(), viewQuery(filters, false),
+                    req, FUNNEL_GROUP_CURSOR, DATA_MART_CURSOR);
+            List<FunnelGroup> funnelGroups = funnelGroupPage.getItems();
 
             for (FunnelGroup funnelGroup : funnelGroups) {
                 log.info("Update time at list_datamart for funnel group " + funnelGroup.getFunnelGroupEditTime());
@@ -273,17 +345,19 @@ public class Routes {
 
             // Pass the list of funnel groups to the UI
             params.put("listOfFunnelGroups", funnelGroups);
+            params.put("nextPage", nextViewPage(filters, pipelinePage, funnelGroupPage));
 
             // Set the title of the page
             params.put("title", "List of Marts");
 
-            // Set the default status filter value
-            params.put("statusFilter", "Deployed");
-
             // Set all schema options
             params.put("schemas", ServiceFactory.schemaService().fetchAllName(true));
             params.put("bulletSchemas", ServiceFactory.schemaService().fetchAllBulletSchemaName());
             params.put("funnelSchemas", ServiceFactory.schemaService().fetchAllFunnelSchemaName());
+        } catch (DataValidatorException | IllegalArgumentException e) {
+            // Invalid page parameters
+            res.status(HttpStatus.SC_BAD_REQUEST);
+            params.put(ERROR_KEY, e.getMessage());
         } catch (Exception e) {
             // Add the error to the params
             params.put(ERROR_KEY, e.getMessage());
@@ -304,28 +378,33 @@ public class Routes {
         // Store the values to pass to the UI
         Map<String, Object> params = new HashMap<>(defaultParams);
 
-        try {
-            // Get the list of deleted pipelines
-            List<Pipeline> pipelines = ServiceFactory.pipelineService().fetchAll();
-            pipelines = pipelines.stream().filter(p -> p.getPipelineIsDeleted()).collect(Collectors.toList());
+        // All statuses unless one is asked for
+        Map<String, String> filters = viewFilters(req, "");
+        params.put("filters", filters);
 
-            // Pass the list of deleted data marts to the UI
-            params.put("listOfDataMarts", getDisplayPipelines(pipelines));
+        try {
+            // Pass a page of deleted data marts to the UI
+            ListPage<Pipeline> pipelinePage = fetchViewPage(ServiceFactory.pipelineService(), viewQuery(filters, true)
+                    .exclude(ListQuery.Attribute.TYPE, Utils.FUNNEL), req, DATA_MART_CURSOR, FUNNEL_GROUP_CURSOR);
+            params.put("listOfDataMarts", pipelinePage.getItems());
 
-            // Pass the list of deleted funnel group to the UI
-            List<FunnelGroup> funnelGroups = ServiceFactory.funnelGroupService().fetchAll();
-            params.put("listOfFunnelGroups", funnelGroups.stream().filter(p -> p.getFunnelGroupIsDeleted()).collect(Collectors.toList()));
+            // Pass a page of deleted funnel groups to the UI
+            ListPage<FunnelGroup> funnelGroupPage = fetchViewPage(ServiceFactory.funnelGroupService(), viewQuery(filters, true),
+                    req, FUNNEL_GROUP_CURSOR, DATA_MART_CURSOR);
+            params.put("listOfFunnelGroups", funnelGroupPage.getItems());
+            params.put("nextPage", nextViewPage(filters, pipelinePage, funnelGroupPage));
 
             // Set the title of the page
             params.put("title", "List of Deleted Marts");
 
-            // Set the default status filter value
-            params.put("statusFilter", "");
-
             // Set all schema options
             params.put("schemas", ServiceFactory.schemaService().fetchAllName(true));
             params.put("bulletSchemas", ServiceFactory.schemaService().fetchAllBulletSchemaName());
             params.put("funnelSchemas", ServiceFactory.schemaService().fetchAllFunnelSchemaName());
+        } catch (DataValidatorException | IllegalArgumentException e) {
+            // Invalid page parameters
+            res.status(HttpStatus.SC_BAD_REQUEST);
+            params.put(ERROR_KEY, e.getMessage());
         } catch (Exception e) {
             // Add the error to the params
             params.put(ERROR_KEY, e.getMessage());
@@ -410,13 +489,16 @@ public class Routes {
             // Try to convert id string to long
             long dataMartId = Long.parseLong(req.params(":id"), 10);
 
-            // Generate zip file for downloading
-            String zipOutFile = Utils.zipPipeline(dataMartId);
+            // Fetch the data mart by id
+            Pipeline pipeline = ServiceFactory.pipelineService().fetch(dataMartId);
 
-            // Download the zipped file
-            File file = new File(zipOutFile);
+            // Get date string
+            String date = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
+            log.info("Version {} for pipeline {}", date, pipeline.getPipelineName());
+
+            // Download the zipped files
             res.raw().setContentType("application/force-download");
-            String fileName = file.getName();
+            String fileName = String.format("%s_v%s.zip", pipeline.getPipelineName(), date);
             String fileNameValidationErrorMessage = Utils.validateFileName(fileName);
             if (fileNameValidationErrorMessage != null) {
                 log.error("Error: ", fileNameValidationErrorMessage);
@@ -424,24 +506,35 @@ public class Routes {
             }
             res.raw().setHeader("Content-Disposition", "attachment; filename=" + fileName);
 
-            // Read the zip file to memory
-            log.info("Read zip file {} into memory", zipOutFile);
-            byte[] data = Files.readAllBytes(Paths.get(zipOutFile));
-
-            // Write the data
-            log.info("Write the zip file to the output stream", zipOutFile);
-            res.raw().getOutputStream().write(data);
-            res.raw().getOutputStream().flush();
-            res.raw().getOutputStream().close();
+            // Render the files straight into the output stream
+            log.info("Stream zip file {} to the output stream", fileName);
+            Utils.zipPipeline(pipeline, Long.parseLong(date), res.raw().getOutputStream());
 
             // Successful launch
             res.status(200);
             return EMPTY_RESPONSE;
         } catch (Exception e) {
             log.error("Error: ", e);
+            String message = abortDownload(res, e.getMessage());
             res.status(500);
-            return e.getMessage();
+            return message;
+        }
+    }
+
+    /**
+     * Drop the download headers of a failed download, so that the error is not saved as the archive.
+     * Once the archive started streaming, the response is committed and left unfinished, without the error appended to it.
+     * @return the body of the error response
+     */
+    private static String abortDownload(Response res, String message) {
+        if (res.raw() != null && res.raw().isCommitted()) {
+            log.warn("Download failed after the archive was sent in part, leaving it unfinished");
+            return EMPTY_RESPONSE;
         }
+        if (res.raw() != null) {
+            res.raw().reset();
+        }
+        return message;
     }
 
     /**
@@ -488,21 +581,9 @@ public class Routes {
             String date = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
             log.info("Version {} for pipeline {}", date, pipeline.getPipelineName());
 
-            // Convert to long
-            long version = Long.parseLong(date);
-            String outputDir = datamartTemplateGenerator.generateTemplateFiles(pipeline, CLISettings.TEMPLATE_OUTPUT_FOLDER, version);
-            log.info("Generated template for {}.v{} at location {}", pipeline.getPipelineName(), date, outputDir);
-
-            // Location of HQL file
-            String hqlEtlFile = outputDir + "/scripts/transform.hql";
-
-            // Send contents of HQL file
-            File file = new File(hqlEtlFile);
-
-            // Read the zip file to memory
-            log.info("Read HQL ETL file {} into memory", hqlEtlFile);
-            byte[] data = Files.readAllBytes(Paths.get(hqlEtlFile));
-            String hqlEtlContents = new String(data, StandardCharsets.UTF_8);
+            // Render only the HQL file, in memory
+            String hqlEtlContents = datamartTemplateGenerator.renderTemplateFile(pipeline, Long.parseLong(date), DatamartTemplateGenerator.ETL_SCRIPT);
+            log.info("Rendered HQL ETL file for {}.v{}", pipeline.getPipelineName(), date);
 
             // Plain text output
             res.type("text/plain");
@@ -537,7 +618,6 @@ public class Routes {
             Pipeline pipeline = ServiceFactory.pipelineService().fetch(pipelineId);
 
             // Stop pipeline
-            PipelineStopperManager pipelineStopperManager = new PipelineStopperManager();
             pipelineStopperManager.stopPipeline(pipeline.getPipelineName(), CLISettings.PIPELINE_OWNER);
 
             // Successful stop
@@ -570,9 +650,6 @@ public class Routes {
             // Fetch the funnel group by id
             FunnelGroup funnelGroup = ServiceFactory.funnelGroupService().fetch(funnelGroupId);
 
-            // Create the stopper manager that used for stopping the funnel group and pipeline
-            PipelineStopperManager pipelineStopperManager = new PipelineStopperManager();
-
             // Stop the funnel group
             pipelineStopperManager.stopPipeline(funnelGroup.getFunnelGroupName(), CLISettings.PIPELINE_OWNER);
             funnelGroup.setFunnelGroupStatus(Status.INACTIVE);
@@ -583,8 +660,6 @@ public class Routes {
             for (Pipeline shallowPipeline : funnelGroup.getPipelines()) {
                 long pipelineId = shallowPipeline.getPipelineId();
                 String pipelineName = shallowPipeline.getPipelineName();
-                // In practice, the pipelineStopperManager cannot be reused, unlike the pipelineLauncherManager
-                pipelineStopperManager = new PipelineStopperManager();
                 pipelineStopperManager.stopPipeline(pipelineName, CLISettings.PIPELINE_OWNER);
                 Pipeline pipeline = ServiceFactory.pipelineService().fetch(pipelineId);
                 pipeline.setPipelineStatus(Status.INACTIVE);
@@ -640,7 +715,7 @@ public class Routes {
      *
      * @param req Request information, including JSON body.
      * @param res Response information, including code..
-     * @return Nothing on success (200 status), or error message (500 status)
+     * @return Nothing on success (200 status), or the failed data marts (500 status)
      */
     public static String relaunchDatamart(Request req, Response res) {
         // Log launch of pipeline
@@ -648,116 +723,60 @@ public class Routes {
 
         try {
             // Get all active pipelines
-            List<Pipeline> pipelines = ServiceFactory.pipelineService().fetchAll();
-            pipelines = pipelines.stream().filter(p -> (!p.getPipelineIsDeleted() && p.getPipelineStatus().substring(0, Math.min(p.getPipelineStatus().length(), 8)).equals(Status.ACTIVE.substring(0, 8)))).collect(Collectors.toList());
-            // Flags denoting the relaunch status;
-            AtomicBoolean errorHappened = new AtomicBoolean(false);
-            StringBuffer errorMsg = new StringBuffer ("");;
-
-            class RelaunchInstance implements Runnable {
-                // Pipeline to relaunch
-                private Pipeline pipeline;
-                String id;
-                Thread t;
-
-                RelaunchInstance(Pipeline p, String jobId) {
-                    pipeline = p;
-                    id = jobId;
-                    t = new Thread(this);
-                    t.start();
-                }
-
-                public void run() {
-                    if (!errorHappened.get()) {
-                        try {
-                            long dataMartId = pipeline.getPipelineId();
-                            // Stop pipeline
-                            PipelineStopperManager pipelineStopperManager = new PipelineStopperManager();
-                            pipelineStopperManager.stopPipeline(pipeline.getPipelineName(), CLISettings.PIPELINE_OWNER);
-                            log.info("Stop Oozie job {} for pipeline {}", pipeline.getPipelineOozieJobId(), pipeline.getPipelineName());
-
-                            // Fetch the pipeline again since the stopper erases the variable to null
-                            pipeline = ServiceFactory.pipelineService().fetch(dataMartId);
-
-                            // Get date string
-                            String date = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
-                            // Convert to long
-                            long version = Long.parseLong(date);
-                            String outputDir = datamartTemplateGenerator.generateTemplateFiles(pipeline, CLISettings.TEMPLATE_OUTPUT_FOLDER, version);
-                            log.info("Generated template for {}.v{} at location {}", pipeline.getPipelineName(), date, outputDir);
-
-                            // Setup launch scripts
-                            log.info("Starting launch for {}.v{}...", pipeline.getPipelineName(), date);
-
-                            // Backfill job config
-                            String backfillStartDate = DEFAULT_BACKFILL_START_DATE_VALUE; // the initial is no backfill
-                            if (pipeline.getPipelineBackfillStartTime() != null && !pipeline.getPipelineBackfillStartTime().isEmpty()) {
-                                backfillStartDate = pipeline.getPipelineBackfillStartTime();
-                            }
-
-                            // Fetch schema info
-                            Schema schema = ServiceFactory.schemaService().fetchByName(pipeline.getPipelineSchemaName());
-                            final String oozieJobType = schema.getSchemaOozieJobType();
-                            final String oozieBackfillJobType = schema.getSchemaOozieBackfillJobType();
-
-                            // Initialize pipeline launcher
-                            PipelineLauncherManager pipelineLauncherManager = new PipelineLauncherManager();
-                            Future<PipelineLauncher.LaunchStatus> status = pipelineLauncherManager.launchPipeline(pipeline.getPipelineName(), date, CLISettings.PIPELINE_OWNER , outputDir, backfillStartDate, false, oozieJobType, oozieBackfillJobType);
-
-                            // If error, modify flags
-                            if (status.get().hasError) {
-                                errorHappened.set(true);
-                                errorMsg.append(status.get().errorMsg);
-                            } else {
-                                // Successful launch
-                                // Mark pipeline as launched
-                                log.info("Setting pipeline {} as launched", pipeline.getPipelineId());
-                                pipeline.setPipelineStatus(String.format(Status.ACTIVE, Long.toString(pipeline.getPipelineVersion())));
-                                log.info("Setting the Oozie job id {} for pipeline {}", status.get().oozieJobId, pipeline.getPipelineId());
-                                pipeline.setPipelineOozieJobId(status.get().oozieJobId);
-                                ServiceFactory.pipelineService().update(pipeline);
-                            }
-
-                        } catch (Exception e) {
-                            errorHappened.set(true);
-                            errorMsg.append(e.getMessage());
-                        }
-                    }
-                }
-            }
-
-            // For a batch of 5 pipelines, stop/relaunch them concurrently.
-            int batchSize = 5;
-            for (int i = 0; i < pipelines.size(); i += batchSize) {
-                log.info("Batch Start");
-                List<RelaunchInstance> relaunchInstances = new ArrayList<>();
-                for (int c = i; c < pipelines.size() && (c - i) < batchSize; c++) {
-                    log.info("Create instance for {}/{}", c, pipelines.size());
-                    relaunchInstances.add(new RelaunchInstance(pipelines.get(c), pipelines.get(c).getPipelineOozieJobId()));
+            List<Pipeline> pipelines = fetchActivePipelines();
+
+            // Relaunch on the shared workers and wait for all of them, failures do not stop the others
+            RelaunchProgress progress = pipelineRelaunchManager.relaunch(pipelines);
+            progress.await();
+            if (progress.getFailed() > 0) {
+                StringBuilder errorMsg = new StringBuilder();
+                errorMsg.append(String.format("Relaunched %d of %d data marts, failed:%n", progress.getSucceeded(), progress.getTotal()));
+                for (Map.Entry<String, String> failure : progress.getFailures().entrySet()) {
+                    errorMsg.append(failure.getKey()).append(": ").append(failure.getValue()).append("\n");
                 }
-                log.info("Waiting Start");
-                for (RelaunchInstance rl: relaunchInstances) {
-                    try {
-                        rl.t.join();
-                        log.info("Thread {} finished", rl.id);
-                    } catch (Exception e) {
-                        errorHappened.set(true);
-                        errorMsg.append(e.getMessage());
-                    }
-                }
-                log.info("Waiting Finish");
-                if (errorHappened.get()) {
-                    log.info("Error: {}", errorMsg.toString());
-                    log.info("Relaunch Aborted");
-                    res.status(500);
-                    return errorMsg.toString();
-                }
-                log.info("Batch Finish");
+                log.info("Relaunch finished with errors: {}", errorMsg);
+                res.status(500);
+                return errorMsg.toString();
             }
             log.info("Relaunch Success");
             res.status(200);
             return EMPTY_RESPONSE;
+        } catch (Exception e) {
+            log.error("Error: ", e);
+            res.status(500);
+            return e.getMessage();
+        }
+    }
 
+    /**
+     * Fetch the data marts that are neither deleted nor stopped.
+     */
+    private static List<Pipeline> fetchActivePipelines() throws DatabaseException {
+        List<Pipeline> pipelines = ServiceFactory.pipelineService().fetchAll();
+        return pipelines.stream().filter(p -> (!p.getPipelineIsDeleted() && p.getPipelineStatus().substring(0, Math.min(p.getPipelineStatus().length(), 8)).equals(Status.ACTIVE.substring(0, 8)))).collect(Collectors.toList());
+    }
+
+    /**
+     * Estimate the cardinality of all active data marts, sending their Bullet queries at the same time.
+     *
+     * @param req Request information.
+     * @param res Response information, including code.
+     * @return the cardinality or error of each data mart by name (200 status), or error message (500 status)
+     */
+    public static String checkDatamartCardinalities(Request req, Response res) {
+        try {
+            List<Pipeline> pipelines = fetchActivePipelines().stream().filter(Routes::checksCardinality).collect(Collectors.toList());
+            List<CompletableFuture<CardinalityEstimationService.Response>> futures = ServiceFactory.cardinalityEstimationService().sendBulletQueries(
+                pipelines,
+                CLISettings.BULLET_MAX_CONNECTIONS_PER_ROUTE,
+                TimeUnit.SECONDS.toMillis(CLISettings.BULLET_BATCH_TIMEOUT));
+            Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+            for (int i = 0; i < pipelines.size(); i++) {
+                result.put(pipelines.get(i).getPipelineName(), cardinalityCheck(futures.get(i)));
+            }
+            res.status(200);
+            res.type("application/json");
+            return JsonCodec.WRITER.writeValueAsString(result);
         } catch (Exception e) {
             log.error("Error: ", e);
             res.status(500);
@@ -765,6 +784,114 @@ public class Routes {
         }
     }
 
+    /**
+     * Whether the launch of a pipeline checks its cardinality.
+     */
+    private static boolean checksCardinality(Pipeline pipeline) {
+        try {
+            return Utils.checksCardinality(pipeline, ServiceFactory.schemaService().fetchByName(pipeline.getPipelineSchemaName()));
+        } catch (Exception e) {
+            log.warn("Cannot fetch schema of pipeline {}", pipeline.getPipelineName(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Wait for a cardinality estimate and compare it with the cap.
+     */
+    private static Map<String, Object> cardinalityCheck(CompletableFuture<CardinalityEstimationService.Response> future) throws InterruptedException {
+        Map<String, Object> check = new LinkedHashMap<>();
+        try {
+            CardinalityEstimationService.Response response = future.get();
+            Double cardinality = response.aggregationValues == null ? null : response.aggregationValues.get(BulletQuery.AGGREGATION_TYPE);
+            if (response.statusCode != HttpStatus.SC_OK || cardinality == null) {
+                check.put("error", "Bullet query failed with response code " + response.statusCode);
+            } else {
+                check.put("cardinality", cardinality);
+                check.put("exceedsCap", cardinality > CLISettings.CARDINALITY_CAP);
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof BulletQueryFailException && e.getCause().getCause() != null ? e.getCause().getCause() : e.getCause();
+            check.put("error", cause.getMessage());
+        }
+        return check;
+    }
+
+    /**
+     * Get the progress of the latest relaunch of all active datamarts.
+     *
+     * @param req Request information.
+     * @param res Response information, including code.
+     * @return the relaunch progress (200 status), nothing if no relaunch was started (404 status), or error message (500 status)
+     */
+    public static String getRelaunchProgress(Request req, Response res) {
+        try {
+            RelaunchProgress progress = pipelineRelaunchManager.getProgress();
+            if (progress == null) {
+                res.status(404);
+                return EMPTY_RESPONSE;
+            }
+            res.status(200);
+            res.type("application/json");
+            return JsonCodec.WRITER.writeValueAsString(progress);
+        } catch (Exception e) {
+            log.error("Error: ", e);
+            res.status(500);
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Stop a pipeline and launch it again with freshly generated templates.
+     *
+     * @param pipeline the pipeline to relaunch
+     * @throws Exception if the pipeline could not be launched
+     */
+    static void relaunchPipeline(Pipeline pipeline) throws Exception {
+        long dataMartId = pipeline.getPipelineId();
+        // Stop pipeline
+        PipelineStopper.Status stopStatus = pipelineStopperManager.stopPipeline(pipeline.getPipelineName(), CLISettings.PIPELINE_OWNER).get();
+        if (stopStatus.hasError) {
+            log.warn("Stop of pipeline {} reported: {}", pipeline.getPipelineName(), stopStatus.errorMsg);
+        }
+        log.info("Stop Oozie job {} for pipeline {}", pipeline.getPipelineOozieJobId(), pipeline.getPipelineName());
+
+        // Fetch the pipeline again since the stopper erases the variable to null
+        pipeline = ServiceFactory.pipelineService().fetch(dataMartId);
+
+        // Get date string
+        String date = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
+        // Convert to long
+        long version = Long.parseLong(date);
+        String outputDir = datamartTemplateGenerator.generateTemplateFiles(pipeline, CLISettings.TEMPLATE_OUTPUT_FOLDER, version);
+        log.info("Generated template for {}.v{} at location {}", pipeline.getPipelineName(), date, outputDir);
+
+        // Setup launch scripts
+        log.info("Starting launch for {}.v{}...", pipeline.getPipelineName(), date);
+
+        // Backfill job config
+        String backfillStartDate = DEFAULT_BACKFILL_START_DATE_VALUE; // the initial is no backfill
+        if (pipeline.getPipelineBackfillStartTime() != null && !pipeline.getPipelineBackfillStartTime().isEmpty()) {
+            backfillStartDate = pipeline.getPipelineBackfillStartTime();
+        }
+
+        // Fetch schema info
+        Schema schema = ServiceFactory.schemaService().fetchByName(pipeline.getPipelineSchemaName());
+        final String oozieJobType = schema.getSchemaOozieJobType();
+        final String oozieBackfillJobType = schema.getSchemaOozieBackfillJobType();
+
+        // Launch pipeline
+        PipelineLauncher.LaunchStatus status = pipelineLauncherManager.launchPipeline(pipeline.getPipelineName(), date, CLISettings.PIPELINE_OWNER, outputDir, backfillStartDate, false, oozieJobType, oozieBackfillJobType).get();
+        if (status.hasError) {
+            throw new Exception(status.errorMsg);
+        }
+
+        // Mark pipeline as launched
+        log.info("Setting pipeline {} as launched", pipeline.getPipelineId());
+        log.info("Setting the Oozie job id {} for pipeline {}", status.oozieJobId, pipeline.getPipelineId());
+        Utils.markPipelineLaunched(pipeline.getPipelineId(), status.oozieJobId, null);
+    }
+
     /**
      * Restore a data mart with a PUT request.
      *
@@ -959,13 +1086,15 @@ public class Routes {
         try {
             long funnelGroupId = Long.parseLong(req.params(":id"), 10);
 
-            // Generate zip file for downloading
-            String zipOutFile = Utils.zipFunnelGroup(funnelGroupId);
+            FunnelGroup funnelGroup = ServiceFactory.funnelGroupService().fetch(funnelGroupId);
+
+            // Get date string
+            String date = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
+            log.info("Version {} for funnel group {}", date, funnelGroup.getFunnelGroupName());
 
-            // Download the zipped file
-            File file = new File(zipOutFile);
+            // Download the zipped files
             res.raw().setContentType("application/force-download");
-            String fileName = file.getName();
+            String fileName = String.format("%s_v%s.zip", funnelGroup.getFunnelGroupName(), date);
             String fileNameValidationErrorMessage = Utils.validateFileName(fileName);
             if (fileNameValidationErrorMessage != null) {
                 log.error("Error: ", fileNameValidationErrorMessage);
@@ -973,23 +1102,18 @@ public class Routes {
             }
             res.raw().setHeader("Content-Disposition", "attachment; filename=" + fileName);
 
-            // Read the zip file to memory
-            log.info("Read zip file {} into memory", zipOutFile);
-            byte[] data = Files.readAllBytes(Paths.get(zipOutFile));
-
-            // Write the data
-            log.info("Write the zip file to the output stream", zipOutFile);
-            res.raw().getOutputStream().write(data);
-            res.raw().getOutputStream().flush();
-            res.raw().getOutputStream().close();
+            // Render the files straight into the output stream
+            log.info("Stream zip file {} to the output stream", fileName);
+            Utils.zipFunnelGroup(funnelGroup, Long.parseLong(date), res.raw().getOutputStream());
 
             // Successful launch
             res.status(200);
             return EMPTY_RESPONSE;
         } catch (Exception e) {
             log.error("Error: ", e);
+            String message = abortDownload(res, e.getMessage());
             res.status(500);
-            return e.getMessage();
+            return message;
         }
     }
 
@@ -1067,25 +1191,32 @@ public class Routes {
             // Fetch the funnel group by id
             FunnelGroup oldFunnelGroup = ServiceFactory.funnelGroupService().fetch(funnelGroupId);
 
-            // Stop and delete old funnels in the funnel group
-            PipelineStopperManager pipelineStopperManager = new PipelineStopperManager();
+            // Stop old funnels in the funnel group
             for (Pipeline pipeline : oldFunnelGroup.getPipelines()) {
                 // Stop the pipeline's oozie job
                 pipelineStopperManager.stopPipeline(pipeline.getPipelineName(), CLISettings.PIPELINE_OWNER);
-                // Delete the pipeline from database
-                ServiceFactory.pipelineService().delete(pipeline.getPipelineId());
             }
 
             // Construct funnel group
             FunnelGroup funnelGroup = Utils.constructFunnelGroup(req.body(), funnelGroupId);
             funnelGroup.setProductName(CLISettings.INSTANCE_NAME);
-            // Update the funnel group
-            ServiceFactory.funnelGroupService().update(funnelGroup);
-            log.info("Updated funnel group {}", funnelGroupId);
-            // Save each funnel
-            for (Pipeline pipeline : funnelGroup.getPipelines()) {
-                ServiceFactory.pipelineService().save(pipeline);
-                log.info("Saved funnel name: {}, id: {}", pipeline.getPipelineName(), pipeline.getPipelineId());
+
+            try (UnitOfWork work = UnitOfWork.begin()) {
+                // Delete old funnels from database
+                for (Pipeline pipeline : oldFunnelGroup.getPipelines()) {
+                    ServiceFactory.pipelineService().delete(pipeline.getPipelineId());
+                }
+                // New funnels may reuse the names of the deleted ones
+                work.flush();
+                // Update the funnel group
+                ServiceFactory.funnelGroupService().update(funnelGroup);
+                log.info("Updated funnel group {}", funnelGroupId);
+                // Save each funnel
+                for (Pipeline pipeline : funnelGroup.getPipelines()) {
+                    ServiceFactory.pipelineService().save(pipeline);
+                    log.info("Saved funnel name: {}, id: {}", pipeline.getPipelineName(), pipeline.getPipelineId());
+                }
+                work.commit();
             }
 
             // Successful update
@@ -1112,24 +1243,10 @@ public class Routes {
             // Try to convert id string to long
             long funnelGroupId = Long.parseLong(req.params(":id"), 10);
 
-            // Fetch the funnel group by id
-            FunnelGroup funnelGroup = ServiceFactory.funnelGroupService().fetch(funnelGroupId);
-
-            // Mark the funnel group as deleted in the db
-            funnelGroup.setFunnelGroupIsDeleted(true);
-            ServiceFactory.funnelGroupService().update(funnelGroup);
+            // Mark the funnel group and each funnel as deleted in the db
+            setFunnelGroupDeleted(funnelGroupId, true);
             log.info("Deleted funnel group {}", funnelGroupId);
 
-            // Mark each funnel as deleted in the db
-            for (Pipeline shallowPipeline : funnelGroup.getPipelines()) {
-                long pipelineId = shallowPipeline.getPipelineId();
-                String pipelineName = shallowPipeline.getPipelineName();
-                Pipeline pipeline = ServiceFactory.pipelineService().fetch(pipelineId);
-                pipeline.setPipelineIsDeleted(true);
-                ServiceFactory.pipelineService().update(pipeline);
-                log.info("Deleted funnel id: {}, name: {}", pipelineId, pipelineName);
-            }
-
             // Successful delete
             res.status(200);
             return EMPTY_RESPONSE;
@@ -1140,6 +1257,23 @@ public class Routes {
         }
     }
 
+    /**
+     * Set the deleted flag of a funnel group and its funnels in one unit of work.
+     */
+    private static void setFunnelGroupDeleted(long funnelGroupId, boolean deleted) throws Exception {
+        try (UnitOfWork work = UnitOfWork.begin()) {
+            FunnelGroup funnelGroup = ServiceFactory.funnelGroupService().fetch(funnelGroupId);
+            funnelGroup.setFunnelGroupIsDeleted(deleted);
+            ServiceFactory.funnelGroupService().update(funnelGroup);
+            for (Pipeline pipeline : funnelGroup.getPipelines()) {
+                pipeline.setPipelineIsDeleted(deleted);
+                ServiceFactory.pipelineService().update(pipeline);
+                log.info("Set deleted to {} for funnel id: {}, name: {}", deleted, pipeline.getPipelineId(), pipeline.getPipelineName());
+            }
+            work.commit();
+        }
+    }
+
     /**
      * Restore a funnel group with a PUT request.
      *
@@ -1154,24 +1288,10 @@ public class Routes {
         try {
             // Try to convert id string to long
             long funnelGroupId = Long.parseLong(req.params(":id"), 10);
-            // Fetch the funnel group by id
-            FunnelGroup funnelGroup = ServiceFactory.funnelGroupService().fetch(funnelGroupId);
-
-            // Mark the funnel group as not deleted in the db
-            funnelGroup.setFunnelGroupIsDeleted(false);
-            ServiceFactory.funnelGroupService().update(funnelGroup);
+            // Mark the funnel group and each funnel as not deleted in the db
+            setFunnelGroupDeleted(funnelGroupId, false);
             log.info("Restored funnel group {}", funnelGroupId);
 
-            // Mark each funnel as not deleted in the db
-            for (Pipeline shallowPipeline : funnelGroup.getPipelines()) {
-                long pipelineId = shallowPipeline.getPipelineId();
-                String pipelineName = shallowPipeline.getPipelineName();
-                Pipeline pipeline = ServiceFactory.pipelineService().fetch(pipelineId);
-                pipeline.setPipelineIsDeleted(false);
-                ServiceFactory.pipelineService().update(pipeline);
-                log.info("Restored funnel id: {}, name: {}", pipelineId, pipelineName);
-            }
-
             // Successful update
             res.status(200);
             return Long.toString(funnelGroupId);
@@ -1246,11 +1366,36 @@ public class Routes {
         return new ModelAndView(params, NEW_VIEW_FUNNEL_GROUP_TEMPLATE);
     }
 
-    private static void setupHiveConnector() {
-        // Start Hive server
-        hiveConnector = new HiveConnectionManager();
-        String[] args = new String[] {"--hive-jdbc", CLISettings.HIVE_JDBC_URL};
-        hiveConnector.setup(args);
+    /**
+     * Stop the relaunches and the funnel queries, and release the Hive connections.
+     */
+    public static synchronized void shutdown() {
+        if (pipelineRelaunchManager != null) {
+            pipelineRelaunchManager.shutdown();
+        }
+        if (funnelQueryJobManager != null) {
+            funnelQueryJobManager.shutdown();
+        }
+        if (hiveConnector != null) {
+            hiveConnector.close();
+            hiveConnector = null;
+        }
+    }
+
+    private static synchronized void setupHiveConnector() {
+        // The connection pool is shared by all funnel queries, only set it up once
+        if (hiveConnector != null) {
+            return;
+        }
+        HiveConnectionManager connector = new HiveConnectionManager();
+        String[] args = new String[] {
+            "--hive-jdbc", CLISettings.HIVE_JDBC_URL,
+            "--hive-max-connections", String.valueOf(CLISettings.HIVE_MAX_CONNECTIONS),
+            "--hive-acquire-timeout", String.valueOf(CLISettings.HIVE_ACQUIRE_TIMEOUT)
+        };
+        if (connector.setup(args)) {
+            hiveConnector = connector;
+        }
     }
 
     /**
@@ -1275,51 +1420,52 @@ public class Routes {
     }
 
     /**
-     * Sum up funnel results for the same category.
-     *
-     * @param originalUDFResults Funnel udf results without summing up the for each step.
-     * @return the combined funnel query result
-     */
-    private static ArrayList<FunnelQueryResult> zipFunnelQueryUDF(ArrayList<FunnelQueryResult> originalUDFResults) {
-        Map<String, List<Long>> aggregationKeyMap = new HashMap<>();
-        ArrayList<FunnelQueryResult> zippedUDFResults = new ArrayList<>();
-        for (FunnelQueryResult result : originalUDFResults) {
-            String key = result.getKeys().toString();
-            key = key.substring(1, key.length() - 1);
-            if (!aggregationKeyMap.containsKey(key)) {
-                aggregationKeyMap.put(key, new ArrayList<Long>());
-            }
-            List<String> resultValues = result.getValues();
-            List<Long> value = aggregationKeyMap.get(key);
-            for (int i = 0; i < resultValues.size(); i++) {
-                String s = resultValues.get(i);
-                if (s.length() > 0) {
-                    // if s is "", just ignore it
-                    long eValue = Long.parseLong(s);
-                    if (i >= value.size()) {
-                        value.add(eValue);
-                    } else {
-                        value.set(i, value.get(i) + eValue);
-                    }
-                }
-            }
+     * Get the hive connector, setting it up if needed.
+     */
+    private static HiveConnectionManager getHiveConnector() throws Exception {
+        if (SHOULD_RESET_HIVE_CONNECTOR) {
+            setupHiveConnector();
+        }
+        if (hiveConnector == null) {
+            throw new Exception("Hive connector could not be set up");
         }
+        return hiveConnector;
+    }
 
-        for (String key : aggregationKeyMap.keySet()) {
-            // if string is "", we need return the empty list
-            List<String> keys = new ArrayList<>();
-            if (key.length() > 0) {
-                keys = Arrays.asList(key.split(SEPARATOR_LIST_TO_STRING));
-            }
-            List<String> strVals = aggregationKeyMap.get(key).stream().map(x -> x.toString()).collect(Collectors.toList());
-            FunnelQueryResult item = new FunnelQueryResult(keys, strVals);
-            zippedUDFResults.add(item);
+    /**
+     * Run a funnel query on Hive, summing up the funnel results for the same keys as rows are read.
+     */
+    private static FunnelQueryResultAggregator aggregateFunnelQuery(String queryId, String funnelQueryHiveString) throws Exception {
+        FunnelQueryResultAggregator aggregator = new FunnelQueryResultAggregator();
+        FunnelQueryJobManager jobManager = funnelQueryJobManager;
+        BooleanSupplier cancelled = () -> jobManager != null && jobManager.isCancelled(queryId);
+        if (!getHiveConnector().execute(queryId, funnelQueryHiveString, aggregator::add, cancelled)) {
+            throw new Exception("Hive connector could not fetch results");
+        }
+        log.info("Finished running, received {} results", aggregator.size());
+        return aggregator;
+    }
+
+    /**
+     * Get the results of a funnel query from the cache, or run it on Hive and cache them.
+     */
+    private static FunnelQueryResultAggregator runCachedFunnelQuery(String queryId, String funnelQueryHiveString, String endDate) throws Exception {
+        FunnelQueryResultCache cache = funnelQueryResultCache;
+        if (cache == null) {
+            return aggregateFunnelQuery(queryId, funnelQueryHiveString);
+        }
+        FunnelQueryResultAggregator results = cache.get(funnelQueryHiveString);
+        if (results != null) {
+            log.info("Funnel query results served from cache");
+            return results;
         }
-        return zippedUDFResults;
+        results = aggregateFunnelQuery(queryId, funnelQueryHiveString);
+        cache.put(funnelQueryHiveString, results, endDate);
+        return results;
     }
 
     /**
-     * Run a funnel query.
+     * Run a funnel query, the results are streamed to the response.
      * @param req
      * @param res
      * @return
@@ -1329,29 +1475,235 @@ public class Routes {
         log.info("User action: Issued funnel query");
 
         try {
-            String funnelQueryHiveString = Utils.createAndValidateFunnelQuery(req.body(), false, false);
+            NewFunnelQuery funnelQuery = Utils.parseAndValidateFunnelQuery(req.body());
+            String funnelQueryHiveString = FunnelHql.generateFile(funnelQuery, false, false).trim();
             log.info("Query: {}", funnelQueryHiveString);
 
-            if (SHOULD_RESET_HIVE_CONNECTOR) {
-                setupHiveConnector();
-            }
+            FunnelQueryResultAggregator aggregator = runCachedFunnelQuery(UUID.randomUUID().toString(), funnelQueryHiveString, funnelQuery.getEndDate());
+            res.status(200);
+            res.type("application/json");
+            aggregator.writeJson(res.raw().getOutputStream());
+            res.raw().getOutputStream().flush();
+            return EMPTY_RESPONSE;
+        } catch (Exception e) {
+            res.status(500);
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Submit a funnel query to run in the background.
+     * @param req
+     * @param res
+     * @return the job status, including the query id to poll
+     */
+    public static String submitFunnelQuery(Request req, Response res) {
+        log.info("User action: Submitted funnel query");
+
+        try {
+            NewFunnelQuery funnelQuery = Utils.parseAndValidateFunnelQuery(req.body());
+            String funnelQueryHiveString = FunnelHql.generateFile(funnelQuery, false, false).trim();
+            log.info("Query: {}", funnelQueryHiveString);
+            String endDate = funnelQuery.getEndDate();
+            FunnelQueryJob job = funnelQueryJobManager.submit(funnelQueryHiveString,
+                (queryId, query) -> runCachedFunnelQuery(queryId, query, endDate).toResults());
+            res.status(200);
+            return JsonCodec.WRITER.writeValueAsString(job);
+        } catch (Exception e) {
+            res.status(500);
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Get the funnel query result cache metrics.
+     * @param req
+     * @param res
+     * @return hit, miss and size counters
+     */
+    public static String getFunnelQueryCacheStats(Request req, Response res) {
+        try {
+            FunnelQueryResultCache cache = funnelQueryResultCache;
+            res.status(200);
+            return JsonCodec.WRITER.writeValueAsString(cache == null ? Collections.emptyMap() : cache.getStats());
+        } catch (Exception e) {
+            res.status(500);
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Get the database connection pool metrics.
+     * @param req
+     * @param res
+     * @return active and idle connection counters
+     */
+    public static String getDatabasePoolStats(Request req, Response res) {
+        try {
+            res.status(200);
+            return JsonCodec.WRITER.writeValueAsString(DatabaseConnectionManager.getPoolStats());
+        } catch (Exception e) {
+            res.status(500);
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Get the Bullet HTTP connection pool metrics.
+     * @param req
+     * @param res
+     * @return leased, available and pending connection counters
+     */
+    public static String getBulletPoolStats(Request req, Response res) {
+        try {
+            res.status(200);
+            return JsonCodec.WRITER.writeValueAsString(ServiceFactory.bulletHttpClient().getPoolStats());
+        } catch (Exception e) {
+            res.status(500);
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Get the cardinality estimate cache metrics.
+     * @param req
+     * @param res
+     * @return hit, miss and size counters
+     */
+    public static String getCardinalityCacheStats(Request req, Response res) {
+        try {
+            res.status(200);
+            return JsonCodec.WRITER.writeValueAsString(ServiceFactory.cardinalityEstimateCache().getStats());
+        } catch (Exception e) {
+            res.status(500);
+            return e.getMessage();
+        }
+    }
 
-            ArrayList<FunnelQueryResult> results = hiveConnector.execute(funnelQueryHiveString);
-            if (results == null) {
-                throw new Exception("Hive connector could not fetch results");
+    /**
+     * Get the filter compiler metrics.
+     * @param req
+     * @param res
+     * @return hit, miss and size counters
+     */
+    public static String getFilterCompilerStats(Request req, Response res) {
+        try {
+            res.status(200);
+            return JsonCodec.WRITER.writeValueAsString(ServiceFactory.filterCompiler().getStats());
+        } catch (Exception e) {
+            res.status(500);
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Get the metrics of the shared pipeline file renderer.
+     * @param req
+     * @param res
+     * @return thread and queue counters, render times by template and artifact store counters
+     */
+    public static String getTemplateRenderStats(Request req, Response res) {
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("pool", ServiceFactory.templateRenderService().getStats());
+            stats.put("templates", ServiceFactory.templateRenderService().getRenderStats());
+            ArtifactStore artifactStore = ServiceFactory.templateRenderService().getArtifactStore();
+            stats.put("artifacts", artifactStore == null ? Collections.emptyMap() : artifactStore.getStats());
+            res.status(200);
+            return JsonCodec.WRITER.writeValueAsString(stats);
+        } catch (Exception e) {
+            res.status(500);
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Get the metrics of the shared pipeline script executor.
+     * @param req
+     * @param res
+     * @return thread and queue counters
+     */
+    public static String getCommandExecutorStats(Request req, Response res) {
+        try {
+            res.status(200);
+            return JsonCodec.WRITER.writeValueAsString(ServiceFactory.commandExecutorService().getStats());
+        } catch (Exception e) {
+            res.status(500);
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Get the status of a submitted funnel query.
+     * @param req
+     * @param res
+     * @return the job status
+     */
+    public static String getFunnelQueryStatus(Request req, Response res) {
+        try {
+            FunnelQueryJob job = funnelQueryJobManager.get(req.params(":id"));
+            if (job == null) {
+                res.status(HttpStatus.SC_NOT_FOUND);
+                return "Unknown funnel query " + req.params(":id");
             }
-            results = zipFunnelQueryUDF(results);
-            log.info("Finished running, received {} results", results.size());
-            ObjectMapper mapper = new ObjectMapper();
-            String resultStr = mapper.writeValueAsString(results);
             res.status(200);
-            return resultStr;
+            return JsonCodec.WRITER.writeValueAsString(job);
         } catch (Exception e) {
             res.status(500);
             return e.getMessage();
         }
     }
 
+    /**
+     * Get the results of a submitted funnel query.
+     * Returns the job status with 202 while the query is still running.
+     * @param req
+     * @param res
+     * @return the query results
+     */
+    public static String getFunnelQueryResult(Request req, Response res) {
+        try {
+            FunnelQueryJob job = funnelQueryJobManager.get(req.params(":id"));
+            if (job == null) {
+                res.status(HttpStatus.SC_NOT_FOUND);
+                return "Unknown funnel query " + req.params(":id");
+            }
+            switch (job.getStatus()) {
+                case SUCCEEDED:
+                    res.status(200);
+                    return JsonCodec.WRITER.writeValueAsString(job.getResults());
+                case FAILED:
+                    res.status(500);
+                    return job.getError();
+                case CANCELLED:
+                    res.status(500);
+                    return "Funnel query was cancelled";
+                default:
+                    res.status(HttpStatus.SC_ACCEPTED);
+                    return JsonCodec.WRITER.writeValueAsString(job);
+            }
+        } catch (Exception e) {
+            res.status(500);
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Cancel a submitted funnel query.
+     * @param req
+     * @param res
+     * @return empty response
+     */
+    public static String cancelFunnelQuery(Request req, Response res) {
+        log.info("User action: Cancel funnel query {}", req.params(":id"));
+        if (!funnelQueryJobManager.cancel(req.params(":id"))) {
+            res.status(HttpStatus.SC_NOT_FOUND);
+            return "No queued or running funnel query " + req.params(":id");
+        }
+        res.status(200);
+        return EMPTY_RESPONSE;
+    }
+
     /**
      * Clone a funnel group.
      */
@@ -1726,7 +2078,189 @@ public class Routes {
         return OK_STATUS;
     }
 
-    private static List<Pipeline> getDisplayPipelines(List<Pipeline> pipelines) {
-        return pipelines.stream().filter(p -> !p.getPipelineType().equals(Utils.FUNNEL)).collect(Collectors.toList());
+    /**
+     * Read the filters of a list view from the request: name prefix, status prefix and owner.
+     * Without a status the default status is used, so the default is cleared with an empty status.
+     */
+    private static Map<String, String> viewFilters(Request req, String defaultStatus) {
+        Map<String, String> filters = new LinkedHashMap<>();
+        for (String filter : VIEW_FILTERS) {
+            String value = req.queryParams(filter);
+            if (value == null) {
+                value = "status".equals(filter) ? defaultStatus : "";
+            }
+            filters.put(filter, value.trim());
+        }
+        return filters;
+    }
+
+    /**
+     * Build the query of one list of a list view, filtered in the database so every page holds matching entities only.
+     */
+    private static ListQuery viewQuery(Map<String, String> filters, boolean deleted) {
+        String owner = filters.get("owner");
+        ListQuery query = new ListQuery()
+                .filter(ListQuery.Attribute.DELETED, deleted)
+                .filter(ListQuery.Attribute.OWNER, owner.isEmpty() ? null : owner);
+        query.setNamePrefix(filters.get("prefix"));
+        query.setStatusPrefix(filters.get("status"));
+        return query;
+    }
+
+    /**
+     * Fetch the page of one list of a list view, newest first.
+     * A later page only holds the lists with a cursor, so a list that has ended is not shown again from the start.
+     */
+    private static <T extends AbstractModel> ListPage<T> fetchViewPage(AbstractService<T> service, ListQuery query, Request req,
+                                                                       String cursorParam, String otherCursorParam) throws Exception {
+        String cursor = req.queryParams(cursorParam);
+        if (cursor == null && req.queryParams(otherCursorParam) != null) {
+            return new ListPage<>(Collections.emptyList(), null);
+        }
+        query.setDescending(true);
+        query.setCursor(cursor);
+        if (req.queryParams("limit") != null) {
+            query.setLimit(parseLimit(req.queryParams("limit")));
+        }
+        return service.fetchPage(query);
+    }
+
+    /**
+     * Link to the next page of a list view with the same filters, null on the last page.
+     */
+    private static String nextViewPage(Map<String, String> filters, ListPage<Pipeline> pipelinePage,
+                                       ListPage<FunnelGroup> funnelGroupPage) throws Exception {
+        List<String> queryParams = new ArrayList<>();
+        if (pipelinePage.getNextCursor() != null) {
+            queryParams.add(DATA_MART_CURSOR + "=" + URLEncoder.encode(pipelinePage.getNextCursor(), "UTF-8"));
+        }
+        if (funnelGroupPage.getNextCursor() != null) {
+            queryParams.add(FUNNEL_GROUP_CURSOR + "=" + URLEncoder.encode(funnelGroupPage.getNextCursor(), "UTF-8"));
+        }
+        if (queryParams.isEmpty()) {
+            return null;
+        }
+        for (Map.Entry<String, String> filter : filters.entrySet()) {
+            queryParams.add(filter.getKey() + "=" + URLEncoder.encode(filter.getValue(), "UTF-8"));
+        }
+        return "?" + String.join("&", queryParams);
+    }
+
+    /**
+     * Build a list query from the request parameters: status, schema, owner, deleted, prefix, sort, order, limit and cursor.
+     */
+    private static ListQuery parseListQuery(Request req) {
+        ListQuery query = new ListQuery()
+                .filter(ListQuery.Attribute.STATUS, req.queryParams("status"))
+                .filter(ListQuery.Attribute.SCHEMA, req.queryParams("schema"))
+                .filter(ListQuery.Attribute.OWNER, req.queryParams("owner"))
+                .filter(ListQuery.Attribute.DELETED, parseDeleted(req.queryParams("deleted")));
+        query.setNamePrefix(req.queryParams("prefix"));
+        if ("name".equals(req.queryParams("sort"))) {
+            query.setSortBy(ListQuery.Attribute.NAME);
+        }
+        // Newest first unless asked otherwise
+        query.setDescending(!"asc".equals(req.queryParams("order")));
+        if (req.queryParams("limit") != null) {
+            query.setLimit(parseLimit(req.queryParams("limit")));
+        }
+        query.setCursor(req.queryParams("cursor"));
+        return query;
+    }
+
+    /**
+     * Parse the page size, rejecting values that are not numbers.
+     */
+    private static int parseLimit(String limit) {
+        try {
+            return Integer.parseInt(limit.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid limit: " + limit);
+        }
+    }
+
+    /**
+     * Parse the deleted filter: deleted entities only when true, all entities when any, live entities by default.
+     */
+    private static Boolean parseDeleted(String deleted) {
+        if (deleted == null || "false".equals(deleted)) {
+            return false;
+        } else if ("true".equals(deleted)) {
+            return true;
+        } else if ("any".equals(deleted)) {
+            return null;
+        }
+        throw new IllegalArgumentException("Invalid deleted filter: " + deleted);
+    }
+
+    private static String writeListPage(ListPage<?> page, List<Map<String, Object>> items) throws Exception {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("items", items);
+        result.put("nextCursor", page.getNextCursor());
+        return JsonCodec.WRITER.writeValueAsString(result);
+    }
+
+    private static Map<String, Object> listItem(long id, String name, String description, String owner, String status,
+                                                String schema, Long version, String createTime, String editTime) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("id", id);
+        item.put("name", name);
+        item.put("description", description);
+        item.put("owner", owner);
+        item.put("status", status);
+        item.put("schema", schema);
+        item.put("version", version);
+        item.put("createTime", createTime);
+        item.put("editTime", editTime == null ? createTime : editTime);
+        return item;
+    }
+
+    /**
+     * List one page of data marts as JSON, filtered and sorted in the database.
+     * The next page is requested with the returned cursor.
+     */
+    public static String listDatamartPage(Request req, Response res) {
+        try {
+            ListQuery query = parseListQuery(req).exclude(ListQuery.Attribute.TYPE, Utils.FUNNEL);
+            ListPage<Pipeline> page = ServiceFactory.pipelineService().fetchPage(query);
+            List<Map<String, Object>> items = new ArrayList<>();
+            for (Pipeline p : page.getItems()) {
+                items.add(listItem(p.getPipelineId(), p.getPipelineName(), p.getPipelineDescription(), p.getPipelineOwner(),
+                        p.getPipelineStatus(), p.getPipelineSchemaName(), p.getPipelineVersion(), p.getPipelineCreateTime(), p.getPipelineEditTime()));
+            }
+            res.status(200);
+            return writeListPage(page, items);
+        } catch (DataValidatorException | IllegalArgumentException e) {
+            res.status(HttpStatus.SC_BAD_REQUEST);
+            return e.getMessage();
+        } catch (Exception e) {
+            log.error("Error: ", e);
+            res.status(500);
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * List one page of funnel groups as JSON, filtered and sorted in the database.
+     * The next page is requested with the returned cursor.
+     */
+    public static String listFunnelGroupPage(Request req, Response res) {
+        try {
+            ListPage<FunnelGroup> page = ServiceFactory.funnelGroupService().fetchPage(parseListQuery(req));
+            List<Map<String, Object>> items = new ArrayList<>();
+            for (FunnelGroup g : page.getItems()) {
+                items.add(listItem(g.getFunnelGroupId(), g.getFunnelGroupName(), g.getFunnelGroupDescription(), g.getFunnelGroupOwner(),
+                        g.getFunnelGroupStatus(), g.getFunnelGroupSchemaName(), g.getFunnelGroupVersion(), g.getFunnelGroupCreateTime(), g.getFunnelGroupEditTime()));
+            }
+            res.status(200);
+            return writeListPage(page, items);
+        } catch (DataValidatorException | IllegalArgumentException e) {
+            res.status(HttpStatus.SC_BAD_REQUEST);
+            return e.getMessage();
+        } catch (Exception e) {
+            log.error("Error: ", e);
+            res.status(500);
+            return e.getMessage();
+        }
     }
 }
@@ -37,7 +37,7 @@ public abstract class AbstractAssociationDAOImpl<T extends AbstractModel> extend
         for (T model : items) {
             session.save(model);
         }
-        session.flush();
+        flush(session);
     }
     
     /**
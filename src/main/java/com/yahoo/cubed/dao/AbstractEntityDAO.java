@@ -80,6 +80,16 @@ public interface AbstractEntityDAO<T extends AbstractModel> {
      */
     public List<T> fetchAll(Session session);
 
+    /**
+     * fetch one page of the models in a table, filtered and sorted in the database.
+     * lazy fetch
+     * @param session open session
+     * @param query filters, sort order, page size and cursor
+     * @return the page of models and the cursor of the next page
+     * @throws IllegalArgumentException if the query or cursor is not supported for this model
+     */
+    public ListPage<T> fetchPage(Session session, ListQuery query);
+
     /**
      * fetch a model from database by name.
      * lazy fetch
@@ -5,22 +5,53 @@
 package com.yahoo.cubed.dao;
 
 import com.yahoo.cubed.model.AbstractModel;
+import com.yahoo.cubed.service.UnitOfWork;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
+import org.hibernate.Criteria;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.LikeExpression;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.metadata.ClassMetadata;
 
 /**
  * Implementation of abstract entity data access object.
  * @param <T> Type.
  */
 public abstract class AbstractEntityDAOImpl<T extends AbstractModel> implements AbstractEntityDAO<T> {
+    /**
+     * Flush the session, unless its caller flushes in batches.
+     */
+    protected static void flush(Session session) {
+        if (!UnitOfWork.flushesInBatches(session)) {
+            session.flush();
+        }
+    }
+
+    /**
+     * Begin a transaction, or join the one of the caller if it is active.
+     * @return the new transaction, null when joining
+     */
+    protected static Transaction beginUnlessActive(Session session) {
+        if (session.getTransaction().isActive()) {
+            return null;
+        }
+        return session.beginTransaction();
+    }
+
     /**
      * Save model kernel.
      */
     protected void saveKernel(Session session, T model) {
         session.save(model);
-        session.flush();
+        flush(session);
     }
 
     /**
@@ -28,7 +59,7 @@ public abstract class AbstractEntityDAOImpl<T extends AbstractModel> implements
      */
     protected void updateKernel(Session session, T oldModel, T newModel) {
         session.merge(newModel);
-        session.flush();
+        flush(session);
     }
 
     /**
@@ -36,7 +67,7 @@ public abstract class AbstractEntityDAOImpl<T extends AbstractModel> implements
      */
     protected void deleteKernel(Session session, T model) {
         session.delete(model);
-        session.flush();
+        flush(session);
     }
     
     /**
@@ -65,15 +96,154 @@ public abstract class AbstractEntityDAOImpl<T extends AbstractModel> implements
     }
 
     /**
-     * Save model. It is transaction. Will roll back if it fails.
+     * Get the property of a list attribute, null if this entity cannot be listed by it.
+     * Only the id is mapped by default, when it is a long.
+     */
+    protected String getListProperty(Session session, ListQuery.Attribute attribute) {
+        if (attribute == ListQuery.Attribute.ID) {
+            ClassMetadata metadata = session.getSessionFactory().getClassMetadata(this.getEntityClass());
+            Class<?> idClass = metadata.getIdentifierType().getReturnedClass();
+            if (idClass == Long.class || idClass == long.class) {
+                return metadata.getIdentifierPropertyName();
+            }
+        }
+        return null;
+    }
+
+    private String listProperty(Session session, ListQuery.Attribute attribute) {
+        String property = this.getListProperty(session, attribute);
+        if (property == null) {
+            throw new IllegalArgumentException(this.getEntityClass().getSimpleName() + " cannot be listed by " + attribute.name().toLowerCase());
+        }
+        return property;
+    }
+
+    /**
+     * Like expression matching the start of a value, with the wildcards in the prefix escaped.
+     */
+    private static class PrefixExpression extends LikeExpression {
+        private static final char ESCAPE = '!';
+
+        PrefixExpression(String propertyName, String prefix) {
+            super(propertyName, escape(prefix) + "%", ESCAPE, false);
+        }
+
+        private static String escape(String value) {
+            return value.replace("" + ESCAPE, "" + ESCAPE + ESCAPE).replace("%", ESCAPE + "%").replace("_", ESCAPE + "_");
+        }
+    }
+
+    /**
+     * Fetch one page, filtered and sorted in the database.
+     * The cursor holds the sort value and id of the last entity, so a page costs the same wherever it is in the table.
+     * The ids of the page are selected first and the entities loaded by id, so subselect fetched collections are
+     * loaded for the page only: Hibernate drops the row limit from the subselect.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public ListPage<T> fetchPage(Session session, ListQuery query) {
+        if (query.getSortBy() != ListQuery.Attribute.ID && query.getSortBy() != ListQuery.Attribute.NAME) {
+            throw new IllegalArgumentException("Cannot sort by " + query.getSortBy().name().toLowerCase());
+        }
+        if (query.getLimit() <= 0 || query.getLimit() > ListQuery.MAX_LIMIT) {
+            throw new IllegalArgumentException("Page size should be between 1 and " + ListQuery.MAX_LIMIT);
+        }
+        String idProperty = this.listProperty(session, ListQuery.Attribute.ID);
+        String sortProperty = this.listProperty(session, query.getSortBy());
+
+        // Filters
+        Criteria criteria = session.createCriteria(this.getEntityClass());
+        for (Map.Entry<ListQuery.Attribute, Object> filter : query.getFilters().entrySet()) {
+            criteria.add(Restrictions.eq(this.listProperty(session, filter.getKey()), filter.getValue()));
+        }
+        for (Map.Entry<ListQuery.Attribute, Object> exclusion : query.getExclusions().entrySet()) {
+            String property = this.listProperty(session, exclusion.getKey());
+            criteria.add(Restrictions.or(Restrictions.isNull(property), Restrictions.ne(property, exclusion.getValue())));
+        }
+        if (query.getNamePrefix() != null && !query.getNamePrefix().isEmpty()) {
+            criteria.add(new PrefixExpression(this.listProperty(session, ListQuery.Attribute.NAME), query.getNamePrefix()));
+        }
+        if (query.getStatusPrefix() != null && !query.getStatusPrefix().isEmpty()) {
+            criteria.add(new PrefixExpression(this.listProperty(session, ListQuery.Attribute.STATUS), query.getStatusPrefix()));
+        }
+
+        // Continue after the last entity of the previous page
+        if (query.getCursor() != null) {
+            criteria.add(afterCursor(query, idProperty, sortProperty));
+        }
+
+        // Sort, ties broken by id, and read one more id to know if there is a next page
+        addPageOrder(criteria, query, idProperty, sortProperty);
+        criteria.setProjection(Projections.id());
+        criteria.setMaxResults(query.getLimit() + 1);
+        List<Object> ids = criteria.list();
+        boolean hasNext = ids.size() > query.getLimit();
+        if (hasNext) {
+            ids = ids.subList(0, query.getLimit());
+        }
+        if (ids.isEmpty()) {
+            return new ListPage<>(new ArrayList<>(), null);
+        }
+
+        // Load the entities of the page
+        Criteria pageCriteria = session.createCriteria(this.getEntityClass()).add(Restrictions.in(idProperty, ids));
+        addPageOrder(pageCriteria, query, idProperty, sortProperty);
+        List<T> items = pageCriteria.list();
+
+        String nextCursor = null;
+        if (hasNext && !items.isEmpty()) {
+            T last = items.get(items.size() - 1);
+            String cursor = session.getIdentifier(last).toString();
+            if (!sortProperty.equals(idProperty)) {
+                Object sortValue = session.getSessionFactory().getClassMetadata(this.getEntityClass()).getPropertyValue(last, sortProperty);
+                cursor += ":" + sortValue;
+            }
+            nextCursor = Base64.getUrlEncoder().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+        }
+        return new ListPage<>(items, nextCursor);
+    }
+
+    private static void addPageOrder(Criteria criteria, ListQuery query, String idProperty, String sortProperty) {
+        criteria.addOrder(query.isDescending() ? Order.desc(sortProperty) : Order.asc(sortProperty));
+        if (!sortProperty.equals(idProperty)) {
+            criteria.addOrder(query.isDescending() ? Order.desc(idProperty) : Order.asc(idProperty));
+        }
+    }
+
+    private static Criterion afterCursor(ListQuery query, String idProperty, String sortProperty) {
+        String cursor;
+        long id;
+        try {
+            cursor = new String(Base64.getUrlDecoder().decode(query.getCursor()), StandardCharsets.UTF_8);
+            int separator = cursor.indexOf(':');
+            id = Long.parseLong(separator < 0 ? cursor : cursor.substring(0, separator));
+            cursor = separator < 0 ? null : cursor.substring(separator + 1);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + query.getCursor());
+        }
+        Criterion afterId = query.isDescending() ? Restrictions.lt(idProperty, id) : Restrictions.gt(idProperty, id);
+        if (sortProperty.equals(idProperty)) {
+            return afterId;
+        }
+        if (cursor == null) {
+            throw new IllegalArgumentException("Invalid cursor: " + query.getCursor());
+        }
+        Criterion afterValue = query.isDescending() ? Restrictions.lt(sortProperty, cursor) : Restrictions.gt(sortProperty, cursor);
+        return Restrictions.or(afterValue, Restrictions.and(Restrictions.eq(sortProperty, cursor), afterId));
+    }
+
+    /**
+     * Save model. It is transaction, or joins the active one. Will roll back if it fails.
      */
     @Override
     public void save(Session session, T model) {
         Transaction tx = null;
         try {
-            tx = session.beginTransaction();
+            tx = beginUnlessActive(session);
             this.saveKernel(session, model);
-            tx.commit();
+            if (tx != null) {
+                tx.commit();
+            }
         } catch (RuntimeException e) {
             if (tx != null) {
                 tx.rollback();
@@ -91,15 +261,22 @@ public abstract class AbstractEntityDAOImpl<T extends AbstractModel> implements
     }
 
     /**
-     * Update model. It is transaction. Will roll back if it fails.
+     * Update model. It is transaction, or joins the active one. Will roll back if it fails.
      */
     @Override
     public void update(Session session, T oldModel, T newModel) {
         Transaction tx = null;
         try {
-            tx = session.beginTransaction();
-            this.updateKernel(session, oldModel, newModel);
-            tx.commit();
+            tx = beginUnlessActive(session);
+            if (oldModel == newModel && session.contains(newModel)) {
+                // Fetched and changed in this session, dirty checking writes the changes
+                flush(session);
+            } else {
+                this.updateKernel(session, oldModel, newModel);
+            }
+            if (tx != null) {
+                tx.commit();
+            }
         } catch (RuntimeException e) {
             if (tx != null) {
                 tx.rollback();
@@ -109,15 +286,17 @@ public abstract class AbstractEntityDAOImpl<T extends AbstractModel> implements
     }
 
     /**
-     * Delete model. It is transaction. Will roll back if it fails.
+     * Delete model. It is transaction, or joins the active one. Will roll back if it fails.
      */
     @Override
     public void delete(Session session, T model) {
         Transaction tx = null;
         try {
-            tx = session.beginTransaction();
+            tx = beginUnlessActive(session);
             this.deleteKernel(session, model);
-            tx.commit();
+            if (tx != null) {
+                tx.commit();
+            }
         } catch (RuntimeException e) {
             if (tx != null) {
                 tx.rollback();
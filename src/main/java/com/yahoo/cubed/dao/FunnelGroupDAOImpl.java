@@ -109,6 +109,7 @@ public class FunnelGroupDAOImpl extends AbstractEntityDAOImpl<FunnelGroup> imple
     /**
      * Fetch all the funnel groups.
      * If fetch mode is eager, it will fetch the projections and pipelines for each funnel group.
+     * Both are subselect fetched, so initializing the first group loads them for all groups.
      * If fetch mode is lazy, projections and pipelines will not be fetched.
      */
     @Override
@@ -128,6 +129,36 @@ public class FunnelGroupDAOImpl extends AbstractEntityDAOImpl<FunnelGroup> imple
         }
     }
 
+    /**
+     * Map list attributes to funnel group properties.
+     */
+    @Override
+    protected String getListProperty(Session session, ListQuery.Attribute attribute) {
+        switch (attribute) {
+            case NAME:
+                return "funnelGroupName";
+            case STATUS:
+                return "funnelGroupStatus";
+            case SCHEMA:
+                return "funnelGroupSchemaName";
+            case OWNER:
+                return "funnelGroupOwner";
+            case DELETED:
+                return "funnelGroupIsDeleted";
+            default:
+                return super.getListProperty(session, attribute);
+        }
+    }
+
+    /**
+     * Fetch one page of funnel groups, projections and pipelines are not fetched.
+     */
+    @Override
+    public ListPage<FunnelGroup> fetchPage(Session session, ListQuery query) {
+        ListPage<FunnelGroup> page = super.fetchPage(session, query);
+        return new ListPage<>(FunnelGroup.simplifyFunnelGroupList(page.getItems()), page.getNextCursor());
+    }
+
     /**
      * Fetch funnel group by name.
      */
@@ -0,0 +1,22 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.dao;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One page of entities.
+ * @param <T> Type.
+ */
+@Getter
+@AllArgsConstructor
+public class ListPage<T> {
+    /** Entities in the page. */
+    private final List<T> items;
+    /** Cursor of the next page, null if this is the last page. */
+    private final String nextCursor;
+}
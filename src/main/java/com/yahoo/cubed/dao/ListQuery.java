@@ -0,0 +1,106 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.dao;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Query for one page of entities, with filters, a sort order and a cursor from the previous page.
+ */
+public class ListQuery {
+    /** Default number of entities in a page. */
+    public static final int DEFAULT_LIMIT = 100;
+    /** Maximum number of entities in a page. */
+    public static final int MAX_LIMIT = 1000;
+
+    /**
+     * Entity attributes that can be filtered or sorted on, mapped to properties by each DAO.
+     */
+    public static enum Attribute {
+        /** Primary id, sortable. */
+        ID,
+        /** Unique name, sortable and filterable by prefix. */
+        NAME,
+        /** Status, filterable by prefix. */
+        STATUS,
+        /** Schema name. */
+        SCHEMA,
+        /** Owner. */
+        OWNER,
+        /** Deleted flag. */
+        DELETED,
+        /** Type. */
+        TYPE
+    }
+
+    private final Map<Attribute, Object> filters = new EnumMap<>(Attribute.class);
+    private final Map<Attribute, Object> exclusions = new EnumMap<>(Attribute.class);
+
+    /** Only entities with names starting with this prefix. */
+    @Getter @Setter
+    private String namePrefix;
+
+    /** Only entities with statuses starting with this prefix, as the deployed status holds the version. */
+    @Getter @Setter
+    private String statusPrefix;
+
+    /** Sort attribute, either id or name. Ties are broken by id. */
+    @Getter @Setter
+    private Attribute sortBy = Attribute.ID;
+
+    /** Sort descending. */
+    @Getter @Setter
+    private boolean descending;
+
+    /** Maximum number of entities in the page. */
+    @Getter @Setter
+    private int limit = DEFAULT_LIMIT;
+
+    /** Cursor returned with the previous page, null for the first page. */
+    @Getter @Setter
+    private String cursor;
+
+    /**
+     * Only entities with the attribute equal to the value, a null value removes the filter.
+     */
+    public ListQuery filter(Attribute attribute, Object value) {
+        if (value == null) {
+            this.filters.remove(attribute);
+        } else {
+            this.filters.put(attribute, value);
+        }
+        return this;
+    }
+
+    /**
+     * Only entities with the attribute unset or not equal to the value, a null value removes the exclusion.
+     */
+    public ListQuery exclude(Attribute attribute, Object value) {
+        if (value == null) {
+            this.exclusions.remove(attribute);
+        } else {
+            this.exclusions.put(attribute, value);
+        }
+        return this;
+    }
+
+    /**
+     * Get the equality filters.
+     */
+    public Map<Attribute, Object> getFilters() {
+        return Collections.unmodifiableMap(this.filters);
+    }
+
+    /**
+     * Get the excluded values.
+     */
+    public Map<Attribute, Object> getExclusions() {
+        return Collections.unmodifiableMap(this.exclusions);
+    }
+}
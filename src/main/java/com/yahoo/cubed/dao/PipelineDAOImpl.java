@@ -92,6 +92,8 @@ public class PipelineDAOImpl extends AbstractEntityDAOImpl<Pipeline> implements
     /**
      * Fetch all the pipelines.
      * If fetch mode is eager, it will fetch the projections for each pipeline.
+     * The projections, their fields, field keys and value mappings are subselect fetched,
+     * so the whole graph loads in a constant number of queries.
      * If fetch mode is lazy, projections will not be fetched. 
      */
     @Override
@@ -110,6 +112,38 @@ public class PipelineDAOImpl extends AbstractEntityDAOImpl<Pipeline> implements
         }
     }
     
+    /**
+     * Map list attributes to pipeline properties.
+     */
+    @Override
+    protected String getListProperty(Session session, ListQuery.Attribute attribute) {
+        switch (attribute) {
+            case NAME:
+                return "pipelineName";
+            case STATUS:
+                return "pipelineStatus";
+            case SCHEMA:
+                return "pipelineSchemaName";
+            case OWNER:
+                return "pipelineOwner";
+            case DELETED:
+                return "pipelineIsDeleted";
+            case TYPE:
+                return "pipelineType";
+            default:
+                return super.getListProperty(session, attribute);
+        }
+    }
+
+    /**
+     * Fetch one page of pipelines, projections are not fetched.
+     */
+    @Override
+    public ListPage<Pipeline> fetchPage(Session session, ListQuery query) {
+        ListPage<Pipeline> page = super.fetchPage(session, query);
+        return new ListPage<>(Pipeline.simplifyPipelineList(page.getItems()), page.getNextCursor());
+    }
+
     /**
      * Fetch pipeline by name.
      */
@@ -166,7 +200,7 @@ public class PipelineDAOImpl extends AbstractEntityDAOImpl<Pipeline> implements
                 DAOFactory.pipelineProjectionDAO().save(session, pipeline.getProjections());
             }
         }
-        session.flush();
+        flush(session);
     }
 
     /**
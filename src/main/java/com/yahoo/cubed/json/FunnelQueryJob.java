@@ -0,0 +1,73 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.json;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * Status of an asynchronous funnel query.
+ */
+@Getter
+@Setter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class FunnelQueryJob {
+    /**
+     * Funnel query job status.
+     */
+    public enum Status {
+        /** Waiting for a free worker. */
+        QUEUED,
+        /** Running on Hive. */
+        RUNNING,
+        /** Results are available. */
+        SUCCEEDED,
+        /** Query failed, see error. */
+        FAILED,
+        /** Query cancelled by the user. */
+        CANCELLED;
+
+        /** Whether the job will not change any more. */
+        public boolean isDone() {
+            return this != QUEUED && this != RUNNING;
+        }
+    }
+
+    /** Query id. */
+    private final String queryId;
+    /** Current status. */
+    private volatile Status status = Status.QUEUED;
+    /** Submit time in milliseconds. */
+    private final long submitTime;
+    /** Start time in milliseconds. */
+    private volatile Long startTime;
+    /** End time in milliseconds. */
+    private volatile Long endTime;
+    /** Error message of a failed query. */
+    private volatile String error;
+    /** Query results, only available once succeeded. */
+    @JsonIgnore
+    private volatile List<FunnelQueryResult> results;
+
+    /**
+     * Create a queued job.
+     */
+    public FunnelQueryJob(String queryId) {
+        this.queryId = queryId;
+        this.submitTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Time spent since submission or until the end of the query, in milliseconds.
+     */
+    public long getElapsedTime() {
+        Long end = endTime;
+        return (end == null ? System.currentTimeMillis() : end) - submitTime;
+    }
+}
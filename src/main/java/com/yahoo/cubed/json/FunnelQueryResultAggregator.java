@@ -0,0 +1,148 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sums up funnel UDF results for the same keys as rows are read, and writes them as JSON.
+ * Not thread safe while rows are added, read only afterwards.
+ */
+public class FunnelQueryResultAggregator {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int INITIAL_STEPS = 8;
+
+    /** Step sums, keyed by the group by values. */
+    private final Map<List<String>, StepSums> sums = new LinkedHashMap<>();
+
+    /**
+     * Running sums of the funnel steps of one key.
+     */
+    private static class StepSums {
+        private long[] values = new long[INITIAL_STEPS];
+        private int length = 0;
+
+        private void add(int step, long value) {
+            if (step >= values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, step + 1));
+            }
+            values[step] += value;
+            length = Math.max(length, step + 1);
+        }
+    }
+
+    /**
+     * Add a funnel result.
+     * @param keys the group by values
+     * @param values the funnel UDF array in the format [123,456], empty steps are ignored
+     */
+    public void add(List<String> keys, String values) {
+        StepSums stepSums = sums.computeIfAbsent(keys, k -> new StepSums());
+        if (values == null) {
+            return;
+        }
+        // Parse in place instead of splitting into strings
+        int step = 0;
+        long value = 0;
+        boolean hasDigits = false;
+        boolean negative = false;
+        for (int i = 0; i < values.length(); i++) {
+            char c = values.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                hasDigits = true;
+            } else if (c == '-' && !hasDigits) {
+                negative = true;
+            } else if (c == ',' || c == ']') {
+                if (hasDigits) {
+                    stepSums.add(step, negative ? -value : value);
+                }
+                step++;
+                value = 0;
+                hasDigits = false;
+                negative = false;
+            } else if (c != '[' && !Character.isWhitespace(c)) {
+                throw new NumberFormatException("Invalid funnel result " + values);
+            }
+        }
+    }
+
+    /**
+     * Rebuild an aggregator from summed up results.
+     */
+    public static FunnelQueryResultAggregator fromResults(List<FunnelQueryResult> results) {
+        FunnelQueryResultAggregator aggregator = new FunnelQueryResultAggregator();
+        for (FunnelQueryResult result : results) {
+            StepSums stepSums = aggregator.sums.computeIfAbsent(result.getKeys(), k -> new StepSums());
+            for (int i = 0; i < result.getValues().size(); i++) {
+                stepSums.add(i, Long.parseLong(result.getValues().get(i)));
+            }
+        }
+        return aggregator;
+    }
+
+    /**
+     * Number of distinct keys.
+     */
+    public int size() {
+        return sums.size();
+    }
+
+    /**
+     * Get the summed up results.
+     */
+    public List<FunnelQueryResult> toResults() {
+        List<FunnelQueryResult> results = new ArrayList<>(sums.size());
+        for (Map.Entry<List<String>, StepSums> entry : sums.entrySet()) {
+            List<String> values = new ArrayList<>(entry.getValue().length);
+            for (int i = 0; i < entry.getValue().length; i++) {
+                values.add(Long.toString(entry.getValue().values[i]));
+            }
+            results.add(new FunnelQueryResult(entry.getKey(), values));
+        }
+        return results;
+    }
+
+    /**
+     * Write the summed up results as a JSON array of {@link FunnelQueryResult}, one entry at a time.
+     * @param out the output stream, not closed
+     */
+    public void writeJson(OutputStream out) throws IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            generator.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+            generator.writeStartArray();
+            for (Map.Entry<List<String>, StepSums> entry : sums.entrySet()) {
+                generator.writeStartObject();
+                // Empty lists are left out, as for FunnelQueryResult
+                if (!entry.getKey().isEmpty()) {
+                    generator.writeArrayFieldStart("keys");
+                    for (String key : entry.getKey()) {
+                        generator.writeString(key);
+                    }
+                    generator.writeEndArray();
+                }
+                StepSums stepSums = entry.getValue();
+                if (stepSums.length > 0) {
+                    generator.writeArrayFieldStart("values");
+                    for (int i = 0; i < stepSums.length; i++) {
+                        generator.writeString(Long.toString(stepSums.values[i]));
+                    }
+                    generator.writeEndArray();
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.json;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.yahoo.cubed.json.filter.Filter;
+import com.yahoo.cubed.json.filter.LogicalRule;
+import com.yahoo.cubed.service.bullet.query.BulletQuery;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared JSON readers and writers.
+ * A mapper caches the serializers and deserializers it builds, so it is configured once and only its immutable,
+ * thread safe readers and writers are handed out.
+ */
+public class JsonCodec {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** Writer of responses and stored JSON. */
+    public static final ObjectWriter WRITER = MAPPER.writer();
+    /** Writer of indented JSON. */
+    public static final ObjectWriter PRETTY_WRITER = MAPPER.writerWithDefaultPrettyPrinter();
+    /** Writer of Bullet queries. */
+    public static final ObjectWriter BULLET_QUERY_WRITER = MAPPER.writerFor(BulletQuery.class);
+
+    /** Reader of JSON trees. */
+    public static final ObjectReader TREE_READER = MAPPER.reader();
+    /** Reader of JSON lists. */
+    public static final ObjectReader LIST_READER = MAPPER.readerFor(List.class);
+    /** Reader of JSON objects with string values. */
+    public static final ObjectReader STRING_MAP_READER = MAPPER.readerFor(new TypeReference<Map<String, String>>() { });
+
+    /** Reader of new data mart requests. */
+    public static final ObjectReader NEW_DATAMART_READER = MAPPER.readerFor(NewDatamart.class);
+    /** Reader of data mart update requests. */
+    public static final ObjectReader UPDATE_DATAMART_READER = MAPPER.readerFor(UpdateDatamart.class);
+    /** Reader of new funnel query requests. */
+    public static final ObjectReader NEW_FUNNEL_QUERY_READER = MAPPER.readerFor(NewFunnelQuery.class);
+    /** Reader of new funnel group requests. */
+    public static final ObjectReader NEW_FUNNEL_GROUP_QUERY_READER = MAPPER.readerFor(NewFunnelGroupQuery.class);
+    /** Reader of funnel group update requests. */
+    public static final ObjectReader UPDATE_FUNNEL_GROUP_QUERY_READER = MAPPER.readerFor(UpdateFunnelGroupQuery.class);
+    /** Reader of filters. */
+    public static final ObjectReader FILTER_READER = MAPPER.readerFor(Filter.class);
+    /** Reader of logical filter rules. */
+    public static final ObjectReader LOGICAL_RULE_READER = MAPPER.readerFor(LogicalRule.class);
+}
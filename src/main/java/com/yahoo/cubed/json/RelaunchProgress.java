@@ -0,0 +1,131 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.json;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Progress of a bulk relaunch of data marts.
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RelaunchProgress {
+    /** Relaunch id. */
+    private final String relaunchId;
+    /** Number of pipelines to relaunch. */
+    private final int total;
+    /** Start time in milliseconds. */
+    private final long startTime;
+    /** End time in milliseconds. */
+    private volatile Long endTime;
+    /** Number of relaunched pipelines. */
+    private int succeeded = 0;
+    /** Number of pipelines that could not be relaunched. */
+    private int failed = 0;
+    /** Number of retried relaunch attempts. */
+    private int retries = 0;
+    /** Error messages of failed pipelines, by pipeline name. */
+    private final Map<String, String> failures = new LinkedHashMap<>();
+    /** Counts down as pipelines finish. */
+    @JsonIgnore
+    private final CountDownLatch remaining;
+
+    /**
+     * Create the progress of a relaunch that just started.
+     */
+    public RelaunchProgress(String relaunchId, int total) {
+        this.relaunchId = relaunchId;
+        this.total = total;
+        this.startTime = System.currentTimeMillis();
+        this.remaining = new CountDownLatch(total);
+        if (total == 0) {
+            this.endTime = startTime;
+        }
+    }
+
+    /**
+     * Whether all pipelines are done.
+     */
+    public boolean isDone() {
+        return remaining.getCount() == 0;
+    }
+
+    /**
+     * Number of relaunched pipelines.
+     */
+    public synchronized int getSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * Number of pipelines that could not be relaunched.
+     */
+    public synchronized int getFailed() {
+        return failed;
+    }
+
+    /**
+     * Number of retried relaunch attempts.
+     */
+    public synchronized int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Error messages of failed pipelines, by pipeline name.
+     */
+    public synchronized Map<String, String> getFailures() {
+        return new LinkedHashMap<>(failures);
+    }
+
+    /**
+     * Record a retried attempt.
+     */
+    public synchronized void retried() {
+        retries++;
+    }
+
+    /**
+     * Record a relaunched pipeline.
+     */
+    public void succeeded() {
+        synchronized (this) {
+            succeeded++;
+            finishIfComplete();
+        }
+        remaining.countDown();
+    }
+
+    /**
+     * Record a pipeline that could not be relaunched.
+     */
+    public void failed(String pipelineName, String error) {
+        synchronized (this) {
+            failed++;
+            failures.put(pipelineName, error);
+            finishIfComplete();
+        }
+        remaining.countDown();
+    }
+
+    /**
+     * Wait until all pipelines are done.
+     */
+    public void await() throws InterruptedException {
+        remaining.await();
+    }
+
+    private void finishIfComplete() {
+        if (succeeded + failed == total) {
+            endTime = System.currentTimeMillis();
+        }
+    }
+}
@@ -9,9 +9,9 @@ import java.io.IOException;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.yahoo.cubed.json.JsonCodec;
 import com.yahoo.cubed.model.filter.PipelineFilter;
 import com.yahoo.cubed.service.bullet.model.filter.BulletQueryFilter;
 import com.yahoo.cubed.service.exception.DataValidatorException;
@@ -33,7 +33,7 @@ public abstract class Filter {
         if (pipelineFilterJsonObject == null) {
             return null;
         }
-        return (new ObjectMapper()).writeValueAsString(pipelineFilterJsonObject);
+        return JsonCodec.WRITER.writeValueAsString(pipelineFilterJsonObject);
     }
 
     /**
@@ -43,7 +43,7 @@ public abstract class Filter {
         if (pipelineFilterJsonString == null || pipelineFilterJsonString.isEmpty()) {
             return null;
         }
-        return (new ObjectMapper()).readValue(pipelineFilterJsonString, Filter.class);
+        return JsonCodec.FILTER_READER.readValue(pipelineFilterJsonString);
     }
 
     /**
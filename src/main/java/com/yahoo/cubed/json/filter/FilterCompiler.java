@@ -0,0 +1,141 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.json.filter;
+
+import com.yahoo.cubed.model.filter.PipelineFilter;
+import com.yahoo.cubed.service.ServiceFactory;
+import com.yahoo.cubed.service.bullet.model.filter.BulletQueryFilter;
+import com.yahoo.cubed.service.exception.DataValidatorException;
+import com.yahoo.cubed.service.exception.DatabaseException;
+import com.yahoo.cubed.util.Utils;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memoizes compiled filters by a hash of their JSON, their schema and the schema metadata.
+ * A filter is parsed once, then its pipeline model, HQL and Bullet filter are each built once, on first use.
+ * Compiled filters are shared, callers must not modify them.
+ */
+public class FilterCompiler {
+    /** Maximum number of remembered filters. */
+    private static final int MAX_FILTERS = 1000;
+
+    /**
+     * Filter parsed once, with its renderings built on first use.
+     */
+    public static class CompiledFilter {
+        private final Filter filter;
+        private final String schemaName;
+        private PipelineFilter model;
+        private String hql;
+        private BulletQueryFilter bulletQueryFilter;
+
+        private CompiledFilter(Filter filter, String schemaName) {
+            this.filter = filter;
+            this.schemaName = schemaName;
+        }
+
+        /**
+         * Get the parsed filter.
+         */
+        public Filter getFilter() {
+            return filter;
+        }
+
+        /**
+         * Get the pipeline model of the filter, with its fields resolved in the schema.
+         */
+        public synchronized PipelineFilter getModel() throws DataValidatorException, DatabaseException {
+            if (model == null) {
+                model = filter.toModel(schemaName);
+            }
+            return model;
+        }
+
+        /**
+         * Get the HQL condition of the filter.
+         */
+        public synchronized String getHql() throws DataValidatorException, DatabaseException {
+            if (hql == null) {
+                hql = getModel().prettyPrint();
+            }
+            return hql;
+        }
+
+        /**
+         * Get the Bullet query filter, null if the filter has no rules.
+         */
+        public synchronized BulletQueryFilter getBulletQueryFilter() throws DataValidatorException, DatabaseException {
+            if (bulletQueryFilter == null) {
+                bulletQueryFilter = filter.toBulletQueryFilter();
+            }
+            return bulletQueryFilter;
+        }
+    }
+
+    /** Compiled filters by key, in access order, guarded by this. */
+    private final LinkedHashMap<String, CompiledFilter> filters = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Compile a filter, or reuse the filter compiled from the same JSON.
+     * @param schemaName schema of the fields of the filter, null if only the Bullet filter is used
+     * @param filterJson filter JSON
+     * @return the compiled filter, null if there is no filter
+     * @throws IOException if the JSON is not a valid filter
+     */
+    public CompiledFilter compile(String schemaName, String filterJson) throws IOException {
+        if (filterJson == null || filterJson.isEmpty()) {
+            return null;
+        }
+        // Fields are resolved in the schema metadata, compile again once it changed
+        String key = Utils.sha256Hex(ServiceFactory.metadataCache().getGeneration() + "\n" + schemaName + "\n" + filterJson);
+        synchronized (this) {
+            CompiledFilter compiled = filters.get(key);
+            if (compiled != null) {
+                hits.incrementAndGet();
+                return compiled;
+            }
+        }
+        misses.incrementAndGet();
+        CompiledFilter compiled = new CompiledFilter(Filter.fromJson(filterJson), schemaName);
+        synchronized (this) {
+            // Keep the filter compiled by a concurrent caller, if any
+            CompiledFilter existing = filters.putIfAbsent(key, compiled);
+            if (existing != null) {
+                return existing;
+            }
+            if (filters.size() > MAX_FILTERS) {
+                filters.remove(filters.keySet().iterator().next());
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Drop all compiled filters.
+     */
+    public synchronized void clear() {
+        filters.clear();
+    }
+
+    /**
+     * Get hit/miss and size metrics.
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        synchronized (this) {
+            stats.put("entries", (long) filters.size());
+        }
+        return stats;
+    }
+}
@@ -6,10 +6,10 @@ package com.yahoo.cubed.json.filter;
 
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.ObjectCodec;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 
 /**
@@ -23,7 +23,7 @@ public class FilterDeserializer extends JsonDeserializer<Filter> {
      */
     @Override
     public Filter deserialize(JsonParser p, DeserializationContext ctxt) throws IOException, JsonProcessingException {
-        ObjectMapper codec = (ObjectMapper) p.getCodec();
+        ObjectCodec codec = p.getCodec();
         JsonNode node = codec.readTree(p);
         if (node.has(CONDITION_FIELD_NAME)) {
             return (Filter) codec.treeToValue(node, LogicalRule.class);
@@ -23,14 +23,17 @@ import javax.persistence.Id;
 import javax.persistence.IdClass;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.Fetch;
 import org.hibernate.annotations.FetchMode;
 import com.yahoo.cubed.util.Constants;
 
 /**
  * Field, used in projections and filters.
+ * Fields referenced by loaded projections are fetched in batches rather than one by one.
  */
 @Entity
+@BatchSize(size = 100)
 @Table(name = "field")
 @IdClass(Field.FieldPrimaryKey.class)
 public class Field implements AbstractModel {
@@ -75,7 +78,7 @@ public class Field implements AbstractModel {
     private String schemaName;
     
     /** Field keys for maps. */
-    @Fetch(value = FetchMode.SELECT)
+    @Fetch(value = FetchMode.SUBSELECT)
     @OneToMany(cascade = {}, fetch = FetchType.EAGER)
     @JoinColumns({
         @JoinColumn(name = "schema_name", referencedColumnName = "schema_name", updatable = false),
@@ -216,4 +219,25 @@ public class Field implements AbstractModel {
             field.setSchemaName(schemaName);
         }
     }
+
+    /**
+     * Copy the field and its keys, detached from any session.
+     */
+    public Field copy() {
+        Field newField = new Field();
+        newField.fieldId = this.fieldId;
+        newField.fieldName = this.fieldName;
+        newField.fieldType = this.fieldType;
+        newField.measurementType = this.measurementType;
+        newField.schemaName = this.schemaName;
+        newField.key = this.key;
+        newField.fieldNameId = this.fieldNameId;
+        if (this.fieldKeys != null) {
+            newField.fieldKeys = new ArrayList<>();
+            for (FieldKey fieldKey : this.fieldKeys) {
+                newField.fieldKeys.add(fieldKey.copy());
+            }
+        }
+        return newField;
+    }
 }
@@ -97,4 +97,16 @@ public class FieldKey implements AbstractModel {
             key.setSchemaName(schemaName);
         }
     }
+
+    /**
+     * Copy the field key, detached from any session.
+     */
+    public FieldKey copy() {
+        FieldKey newKey = new FieldKey();
+        newKey.keyId = this.keyId;
+        newKey.keyName = this.keyName;
+        newKey.fieldId = this.fieldId;
+        newKey.schemaName = this.schemaName;
+        return newKey;
+    }
 }
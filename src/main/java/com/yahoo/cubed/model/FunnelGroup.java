@@ -4,8 +4,8 @@
 
 package com.yahoo.cubed.model;
 
-import com.yahoo.cubed.json.filter.Filter;
 import com.yahoo.cubed.model.filter.PipelineFilter;
+import com.yahoo.cubed.service.ServiceFactory;
 
 import javax.persistence.Entity;
 import javax.persistence.Table;
@@ -61,13 +61,13 @@ public class FunnelGroup implements AbstractModel {
     private String funnelGroupDescription;
 
     /** A set of pipelines that the funnel group has. */
-    @Fetch(value = FetchMode.SELECT)
+    @Fetch(value = FetchMode.SUBSELECT)
     @OneToMany(mappedBy = "funnelGroupId", cascade = {}, fetch = FetchType.LAZY)
     @Getter
     private List<Pipeline> pipelines;
 
     /** List of projections. All funnels in a funnel group should have same projections. */
-    @Fetch(value = FetchMode.SELECT)
+    @Fetch(value = FetchMode.SUBSELECT)
     @OneToMany(mappedBy = "funnelGroupId", cascade = {}, fetch = FetchType.LAZY)
     @Getter
     private List<PipelineProjection> projections;
@@ -222,7 +222,7 @@ public class FunnelGroup implements AbstractModel {
     public PipelineFilter getFunnelGroupFilterObject() {
         if (funnelGroupFilterObject == null && funnelGroupFilterJson != null) {
             try {
-                funnelGroupFilterObject = Filter.fromJson(funnelGroupFilterJson).toModel(funnelGroupSchemaName);
+                funnelGroupFilterObject = ServiceFactory.filterCompiler().compile(funnelGroupSchemaName, funnelGroupFilterJson).getModel();
             } catch (Exception e) {
                 return null;
             }
@@ -4,8 +4,12 @@
 
 package com.yahoo.cubed.model;
 
-import com.yahoo.cubed.json.filter.Filter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.yahoo.cubed.json.filter.FilterCompiler;
 import com.yahoo.cubed.model.filter.PipelineFilter;
+import com.yahoo.cubed.service.ServiceFactory;
+import com.yahoo.cubed.service.exception.DataValidatorException;
+import com.yahoo.cubed.service.exception.DatabaseException;
 import java.util.ArrayList;
 import java.util.List;
 import javax.persistence.Column;
@@ -92,7 +96,7 @@ public class Pipeline implements AbstractModel {
     private String pipelineOwner;
 
     /** List of projections. */
-    @Fetch(value = FetchMode.SELECT)
+    @Fetch(value = FetchMode.SUBSELECT)
     @OneToMany(mappedBy = "pipelineId", cascade = {}, fetch = FetchType.LAZY)
     @Getter
     private List<PipelineProjection> projections;
@@ -167,6 +171,11 @@ public class Pipeline implements AbstractModel {
     @Transient
     public PipelineFilter pipelineFilterObject;
 
+    /** Filter compiled from the filter JSON, shared with the pipelines with the same filter. */
+    @Transient
+    @JsonIgnore
+    private FilterCompiler.CompiledFilter compiledFilter;
+
     /** Pipeline version. */
     @Column(name = "pipeline_version")
     @Setter
@@ -210,7 +219,8 @@ public class Pipeline implements AbstractModel {
     public PipelineFilter getPipelineFilterObject() {
         if (pipelineFilterObject == null && pipelineFilterJson != null) {
             try {
-                pipelineFilterObject = Filter.fromJson(pipelineFilterJson).toModel(pipelineSchemaName);
+                compiledFilter = ServiceFactory.filterCompiler().compile(pipelineSchemaName, pipelineFilterJson);
+                pipelineFilterObject = compiledFilter.getModel();
             } catch (Exception e) {
                 // TODO: do some logging here
                 return null;
@@ -219,6 +229,20 @@ public class Pipeline implements AbstractModel {
         return pipelineFilterObject;
     }
 
+    /**
+     * Get the HQL condition of the pipeline filter, built once for all pipelines with the same filter JSON.
+     */
+    public String getPipelineFilterHql() throws DataValidatorException, DatabaseException {
+        PipelineFilter filter = getPipelineFilterObject();
+        if (filter == null) {
+            return null;
+        }
+        if (compiledFilter != null && compiledFilter.getModel() == filter) {
+            return compiledFilter.getHql();
+        }
+        return filter.prettyPrint();
+    }
+
     /**
      * Set pipeline filter.
      */
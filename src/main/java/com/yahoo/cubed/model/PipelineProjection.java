@@ -72,7 +72,7 @@ public class PipelineProjection implements AbstractModel {
     private String alias;
 
     /** List of projections value mapping. */
-    @Fetch(value = FetchMode.SELECT)
+    @Fetch(value = FetchMode.SUBSELECT)
     @OneToMany(mappedBy = "pipelineProjectionId", cascade = {}, fetch = FetchType.EAGER)
     @Getter
     private List<PipelineProjectionVM> projectionVMs;
@@ -4,6 +4,7 @@
 
 package com.yahoo.cubed.model;
 
+import java.util.ArrayList;
 import java.util.List;
 import lombok.Getter;
 import lombok.Setter;
@@ -96,13 +97,13 @@ public class Schema implements AbstractModel {
     private String schemaDatetimePartitionColumn;
 
     /** Fields for maps. */
-    @Fetch(value = FetchMode.SELECT)
+    @Fetch(value = FetchMode.SUBSELECT)
     @OneToMany(mappedBy = "schemaName", cascade = {}, fetch = FetchType.EAGER)
     @Getter @Setter
     private List<Field> fields;
 
     /** Fields for maps. */
-    @Fetch(value = FetchMode.SELECT)
+    @Fetch(value = FetchMode.SUBSELECT)
     @OneToMany(mappedBy = "pipelineSchemaName", cascade = {}, fetch = FetchType.EAGER)
     @Getter @Setter
     private List<Pipeline> pipelines;
@@ -113,4 +114,32 @@ public class Schema implements AbstractModel {
     public String getPrimaryName() {
         return this.getSchemaName();
     }
+
+    /**
+     * Copy the schema and its fields, detached from any session. The pipelines are not copied.
+     */
+    public Schema copy() {
+        Schema newSchema = new Schema();
+        newSchema.schemaName = this.schemaName;
+        newSchema.schemaDatabase = this.schemaDatabase;
+        newSchema.schemaTables = this.schemaTables;
+        newSchema.schemaOozieJobType = this.schemaOozieJobType;
+        newSchema.schemaOozieBackfillJobType = this.schemaOozieBackfillJobType;
+        newSchema.schemaTargetTable = this.schemaTargetTable;
+        newSchema.schemaUserIdFields = this.schemaUserIdFields;
+        newSchema.schemaDefaultFilters = this.schemaDefaultFilters;
+        newSchema.schemaBulletUrl = this.schemaBulletUrl;
+        newSchema.schemaDisableBullet = this.schemaDisableBullet;
+        newSchema.schemaDisableFunnel = this.schemaDisableFunnel;
+        newSchema.isSchemaDeleted = this.isSchemaDeleted;
+        newSchema.schemaTimestampColumnParam = this.schemaTimestampColumnParam;
+        newSchema.schemaDatetimePartitionColumn = this.schemaDatetimePartitionColumn;
+        if (this.fields != null) {
+            newSchema.fields = new ArrayList<>();
+            for (Field field : this.fields) {
+                newSchema.fields.add(field.copy());
+            }
+        }
+        return newSchema;
+    }
 }
@@ -9,22 +9,43 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import com.yahoo.cubed.util.Utils;
 import lombok.Getter;
 import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * Generic class to run a script.
  * @param <T> Status.
  */
+@Slf4j
 public abstract class CommandExecutor<T extends CommandExecutor.Status> implements Callable<T> {
-    private static final int PROCESS_RUN_MAX_TIME = 90;
+    /** Default maximum run time of a script in seconds. */
+    public static final long DEFAULT_TIMEOUT_SECONDS = 90;
+    /** Maximum number of characters kept of each output stream. */
+    public static final int MAX_CAPTURED_CHARS = 64 * 1024;
+    private static final String TRUNCATED_MARKER = "[output truncated]\n";
+    private static final int OUTPUT_GRACE_SECONDS = 10;
+    private static final ExecutorService OUTPUT_READERS = Executors.newCachedThreadPool(Utils.daemonThreadFactory("command-output-"));
+
     @Getter @Setter
     private String scriptFileDir;
     @Getter @Setter
     private String scriptFileName;
-    
+    @Getter @Setter
+    private long timeoutSeconds = DEFAULT_TIMEOUT_SECONDS;
+
     /**
      * Script status.
      */
@@ -36,7 +57,32 @@ public abstract class CommandExecutor<T extends CommandExecutor.Status> implemen
         /** Info message. */
         public String infoMsg;
     }
-    
+
+    /**
+     * Output captured from one stream of the script.
+     */
+    private static class Output {
+        private final StringBuilder text = new StringBuilder();
+        private boolean hasLines = false;
+        private boolean failed = false;
+        private boolean truncated = false;
+
+        private void append(String line) {
+            hasLines = true;
+            if (truncated) {
+                return;
+            }
+            if (text.length() + line.length() < MAX_CAPTURED_CHARS) {
+                text.append(line);
+                text.append("\n");
+            } else {
+                // Keep the head of the output, the rest only goes to the hooks
+                text.append(TRUNCATED_MARKER);
+                truncated = true;
+            }
+        }
+    }
+
     /**
      * Create new status.
      */
@@ -46,69 +92,65 @@ public abstract class CommandExecutor<T extends CommandExecutor.Status> implemen
     }
 
     /**
-     * Hook to check info.
+     * Hook to check info, called as soon as a line is written.
      * Children will override.
      */
     protected void checkInfoHook(String line, T status) {
         return;
     };
-    
-    private void checkInfo(InputStream input, T status) throws IOException {
-        BufferedReader reader = null;
-        StringBuilder infoMsg = new StringBuilder();
-        try {
-            reader = new BufferedReader(new InputStreamReader(input));
-            String line = null;
-            while ((line = reader.readLine()) != null) {
-                infoMsg.append(line);
-                infoMsg.append("\n");
-                // info message processing hook
-                this.checkInfoHook(line, status);
-            }
-        } catch (Exception e) {
-            infoMsg.append(e);
-        } finally {
-            if (reader != null) {
-                reader.close();
-            }
-        }
-        status.infoMsg = infoMsg.toString();
-    }
-    
+
     /**
-     * Error hook.
+     * Error hook, called as soon as a line is written.
      * Children will override.
      */
     protected void checkErrorHook(String line, T status) {
         return;
     };
 
-    private void checkError(InputStream input, T status) throws IOException {
-        BufferedReader reader = null;
-        boolean hasError = false;
-        StringBuilder errorMsg = new StringBuilder();
-        try {
-            reader = new BufferedReader(new InputStreamReader(input));
+    /**
+     * Read a stream line by line on its own thread until it is closed.
+     */
+    private static Future<Output> drain(InputStream input, Consumer<String> hook) {
+        return OUTPUT_READERS.submit(() -> read(input, hook));
+    }
+
+    private static Output read(InputStream input, Consumer<String> hook) {
+        Output output = new Output();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
             String line = null;
             while ((line = reader.readLine()) != null) {
-                hasError = true;
-                errorMsg.append(line);
-                errorMsg.append("\n");
-                // error message processing hook
-                this.checkErrorHook(line, status);
+                output.append(line);
+                // message processing hook
+                hook.accept(line);
             }
         } catch (Exception e) {
-            hasError = true;
-            errorMsg.append(e);
-        } finally {
-            if (reader != null) {
-                reader.close();
-            }
+            output.failed = true;
+            output.text.append(e);
+        }
+        return output;
+    }
+
+    /**
+     * Wait for a stream to be read, the script already exited or was killed.
+     */
+    private static Output awaitOutput(Future<Output> future) throws InterruptedException {
+        try {
+            return future.get(OUTPUT_GRACE_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            // A background child of the script still holds the stream open
+            future.cancel(true);
+            Output output = new Output();
+            output.text.append("Output of the script was not closed after it exited.");
+            output.failed = true;
+            return output;
+        } catch (Exception e) {
+            Output output = new Output();
+            output.text.append(e);
+            output.failed = true;
+            return output;
         }
-        status.hasError = hasError;
-        status.errorMsg = errorMsg.toString();
     }
-    
+
     /**
      * Set command.
      */
@@ -127,24 +169,92 @@ public abstract class CommandExecutor<T extends CommandExecutor.Status> implemen
             processBuilder.directory(new File(this.getScriptFileDir()));
             this.setCommand(processBuilder);
             Process process = processBuilder.start();
-            this.checkError(process.getErrorStream(), ret);
-            this.checkInfo(process.getInputStream(), ret);
-            boolean isNormal = process.waitFor(PROCESS_RUN_MAX_TIME, TimeUnit.SECONDS);
+            process.getOutputStream().close();
+            // Read both streams at the same time, so that neither can fill up and block the script
+            Future<Output> errors = drain(process.getErrorStream(), line -> this.checkErrorHook(line, ret));
+            Future<Output> infos = drain(process.getInputStream(), line -> this.checkInfoHook(line, ret));
+            boolean isNormal = process.waitFor(this.getTimeoutSeconds(), TimeUnit.SECONDS);
             if (!isNormal) {
-                process.destroy();
-                ret.hasError = true;
-                ret.errorMsg = "The process that ran the script was terminated forcibly.";
-                return ret;
+                killProcessTree(process);
             }
-            if (ret.hasError) {
-                return ret;
+            // Wait for the hooks to be done with the status, and keep what the script wrote before it was killed
+            Output error = awaitOutput(errors);
+            Output info = awaitOutput(infos);
+            ret.infoMsg = info.text.toString();
+            ret.errorMsg = error.text.toString();
+            ret.hasError = error.hasLines || error.failed;
+            if (!isNormal) {
+                ret.hasError = true;
+                ret.errorMsg = "The process that ran the script was terminated forcibly.\n" + ret.errorMsg;
             }
         } catch (Exception e) {
             ret.hasError = true;
             ret.errorMsg = e.getMessage();
-            return ret;
         }
-        ret.hasError = false;
         return ret;
     }
+
+    /**
+     * Kill a script and all processes it started.
+     * The descendants are looked up with pgrep, since Java 8 cannot list them.
+     */
+    static void killProcessTree(Process process) {
+        long pid = pid(process);
+        List<Long> descendants = new ArrayList<>();
+        if (pid > 0) {
+            collectDescendants(pid, descendants);
+        }
+        process.destroyForcibly();
+        for (Long descendant : descendants) {
+            try {
+                new ProcessBuilder("kill", "-9", Long.toString(descendant)).start().waitFor(OUTPUT_GRACE_SECONDS, TimeUnit.SECONDS);
+            } catch (IOException e) {
+                log.warn("Could not kill process {}", descendant, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        log.info("Killed process {} and {} descendants", pid, descendants.size());
+    }
+
+    private static void collectDescendants(long pid, List<Long> descendants) {
+        try {
+            Process pgrep = new ProcessBuilder("pgrep", "-P", Long.toString(pid)).start();
+            List<Long> children = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(pgrep.getInputStream(), StandardCharsets.UTF_8))) {
+                String line = null;
+                while ((line = reader.readLine()) != null) {
+                    children.add(Long.parseLong(line.trim()));
+                }
+            }
+            pgrep.waitFor(OUTPUT_GRACE_SECONDS, TimeUnit.SECONDS);
+            for (Long child : children) {
+                descendants.add(child);
+                collectDescendants(child, descendants);
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Could not list the child processes of {}", pid, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Process id, -1 if not available.
+     */
+    private static long pid(Process process) {
+        try {
+            // Process.pid() from Java 9, the UNIXProcess field before
+            return (Long) Process.class.getMethod("pid").invoke(process);
+        } catch (ReflectiveOperationException e) {
+            try {
+                Field field = process.getClass().getDeclaredField("pid");
+                field.setAccessible(true);
+                return field.getLong(process);
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                return -1;
+            }
+        }
+    }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.pipeline.command;
+
+import com.yahoo.cubed.util.Utils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Application wide pool of threads running pipeline scripts.
+ */
+@Slf4j
+public class CommandExecutorService {
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Constructor.
+     * @param threads number of scripts running at the same time, 0 for twice the number of cores
+     */
+    public CommandExecutorService(int threads) {
+        int poolSize = threads > 0 ? threads : 2 * Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), Utils.daemonThreadFactory("pipeline-command-"));
+        log.info("Running pipeline scripts on {} threads", poolSize);
+    }
+
+    /**
+     * Run a script.
+     * @param command the script
+     * @param <T> status of the script
+     * @return the status once the script finished
+     */
+    public <T extends CommandExecutor.Status> Future<T> submit(CommandExecutor<T> command) {
+        return executor.submit(command);
+    }
+
+    /**
+     * Number of scripts running.
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Number of scripts waiting for a thread.
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Get thread and queue metrics.
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("threads", (long) executor.getMaximumPoolSize());
+        stats.put("active", (long) executor.getActiveCount());
+        stats.put("queued", (long) executor.getQueue().size());
+        stats.put("completed", executor.getCompletedTaskCount());
+        return stats;
+    }
+
+    /**
+     * Stop accepting scripts and wait for the submitted ones to finish.
+     * @param timeoutSeconds how long to wait before interrupting the remaining scripts
+     * @return true if all scripts finished in time
+     */
+    public boolean shutdown(long timeoutSeconds) throws InterruptedException {
+        executor.shutdown();
+        if (executor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS)) {
+            return true;
+        }
+        log.warn("Interrupting {} pipeline scripts still running after {} seconds", executor.getActiveCount(), timeoutSeconds);
+        executor.shutdownNow();
+        return false;
+    }
+}
@@ -5,9 +5,9 @@
 package com.yahoo.cubed.pipeline.launch;
 
 import lombok.extern.slf4j.Slf4j;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ExecutorService;
+import com.yahoo.cubed.pipeline.command.CommandExecutorService;
+import com.yahoo.cubed.service.ServiceFactory;
 import com.yahoo.cubed.settings.CLISettings;
 
 /**
@@ -18,14 +18,20 @@ public class PipelineLauncherManager {
     private static final String SCRIPT_NAME = "startPipeline.sh";
     private static final String FUNNEL_SCRIPT_NAME = "startFunnelPipeline.sh";
     private static final String SCRIPT_PATH = CLISettings.PIPELINE_SCRIPTS_PATH;
-    private ExecutorService executorService;
+    private final CommandExecutorService executorService;
 
     /**
-     * Start thread for pipeline launcher.
+     * Launch pipelines on the shared command executor service.
      */
     public PipelineLauncherManager() {
-        // create a thread to run the script
-        this.executorService = Executors.newSingleThreadExecutor();
+        this(ServiceFactory.commandExecutorService());
+    }
+
+    /**
+     * Launch pipelines on the given command executor service.
+     */
+    public PipelineLauncherManager(CommandExecutorService executorService) {
+        this.executorService = executorService;
     }
 
     /**
@@ -46,6 +52,7 @@ public class PipelineLauncherManager {
         launcher.setPipelineBackfillStartDate(pipelineBackfillStartDate);
         launcher.setPipelineOozieJobType(pipelineOozieJobType);
         launcher.setPipelineOozieBackfillJobType(pipelineOozieBackfillJobType);
+        launcher.setTimeoutSeconds(CLISettings.LAUNCH_TIMEOUT);
         return launcher;
     }
 
@@ -0,0 +1,131 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.pipeline.launch;
+
+import com.yahoo.cubed.json.RelaunchProgress;
+import com.yahoo.cubed.model.Pipeline;
+import com.yahoo.cubed.util.Utils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Relaunches many pipelines on a shared pool of workers.
+ * Workers take the next pipeline as soon as they are free, failed pipelines are retried and reported without stopping the others.
+ */
+@Slf4j
+public class PipelineRelaunchManager {
+    /**
+     * Relaunches one pipeline.
+     */
+    public interface Relauncher {
+        /**
+         * Stop and launch the pipeline again.
+         * @param pipeline the pipeline
+         * @throws Exception if the pipeline could not be relaunched
+         */
+        void relaunch(Pipeline pipeline) throws Exception;
+    }
+
+    private final int maxAttempts;
+    private final long retryDelayMillis;
+    private final Relauncher relauncher;
+    private final ThreadPoolExecutor executor;
+    private volatile RelaunchProgress progress;
+
+    /**
+     * Constructor.
+     * @param threads number of pipelines relaunched at the same time
+     * @param maxAttempts number of attempts per pipeline
+     * @param retryDelaySeconds delay before retrying a failed pipeline
+     * @param relauncher pipeline relauncher
+     */
+    public PipelineRelaunchManager(int threads, int maxAttempts, long retryDelaySeconds, Relauncher relauncher) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryDelayMillis = TimeUnit.SECONDS.toMillis(retryDelaySeconds);
+        this.relauncher = relauncher;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), Utils.daemonThreadFactory("pipeline-relaunch-"));
+    }
+
+    /**
+     * Start relaunching pipelines.
+     * @param pipelines the pipelines to relaunch
+     * @return the progress of the relaunch
+     * @throws IllegalStateException if another relaunch is still running
+     */
+    public synchronized RelaunchProgress relaunch(List<Pipeline> pipelines) {
+        if (progress != null && !progress.isDone()) {
+            throw new IllegalStateException("Relaunch " + progress.getRelaunchId() + " is still running");
+        }
+        RelaunchProgress relaunchProgress = new RelaunchProgress(UUID.randomUUID().toString(), pipelines.size());
+        progress = relaunchProgress;
+        log.info("Relaunch {} of {} pipelines", relaunchProgress.getRelaunchId(), pipelines.size());
+        for (Pipeline pipeline : pipelines) {
+            executor.execute(() -> relaunch(pipeline, relaunchProgress));
+        }
+        return relaunchProgress;
+    }
+
+    /**
+     * Progress of the latest relaunch, null if none was started.
+     */
+    public RelaunchProgress getProgress() {
+        return progress;
+    }
+
+    /**
+     * Number of pipelines being relaunched.
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Number of pipelines waiting for a worker.
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Stop accepting relaunches and interrupt the running ones.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void relaunch(Pipeline pipeline, RelaunchProgress relaunchProgress) {
+        String pipelineName = pipeline.getPipelineName();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                relauncher.relaunch(pipeline);
+                log.info("Relaunched pipeline {}", pipelineName);
+                relaunchProgress.succeeded();
+                return;
+            } catch (Exception e) {
+                log.error("Attempt {}/{} to relaunch pipeline {} failed", attempt, maxAttempts, pipelineName, e);
+                if (attempt >= maxAttempts || !sleepBeforeRetry()) {
+                    relaunchProgress.failed(pipelineName, e.getMessage());
+                    return;
+                }
+                relaunchProgress.retried();
+            }
+        }
+    }
+
+    private boolean sleepBeforeRetry() {
+        try {
+            Thread.sleep(retryDelayMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
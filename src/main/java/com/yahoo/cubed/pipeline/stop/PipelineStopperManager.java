@@ -4,9 +4,9 @@
 
 package com.yahoo.cubed.pipeline.stop;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import com.yahoo.cubed.pipeline.command.CommandExecutorService;
+import com.yahoo.cubed.service.ServiceFactory;
 import com.yahoo.cubed.settings.CLISettings;
 
 /**
@@ -15,14 +15,20 @@ import com.yahoo.cubed.settings.CLISettings;
 public class PipelineStopperManager {
     private static final String SCRIPT_NAME = "stopPipeline.sh";
     private static final String SCRIPT_PATH = CLISettings.PIPELINE_SCRIPTS_PATH;
-    private ExecutorService executorService;
+    private final CommandExecutorService executorService;
 
     /**
-     * Create thread to stop pipeline.
+     * Stop pipelines on the shared command executor service.
      */
     public PipelineStopperManager() {
-        // create a thread to run the script
-        this.executorService = Executors.newSingleThreadExecutor();
+        this(ServiceFactory.commandExecutorService());
+    }
+
+    /**
+     * Stop pipelines on the given command executor service.
+     */
+    public PipelineStopperManager(CommandExecutorService executorService) {
+        this.executorService = executorService;
     }
 
     /**
@@ -34,6 +40,7 @@ public class PipelineStopperManager {
         stopper.setScriptFileName(SCRIPT_NAME);
         stopper.setPipelineName(pipelineName);
         stopper.setPipelineOwner(pipelineOwner);
+        stopper.setTimeoutSeconds(CLISettings.STOP_TIMEOUT);
         return stopper;
     }
 
@@ -6,6 +6,8 @@ package com.yahoo.cubed.service;
 
 import java.util.List;
 
+import com.yahoo.cubed.dao.ListPage;
+import com.yahoo.cubed.dao.ListQuery;
 import com.yahoo.cubed.model.AbstractModel;
 import com.yahoo.cubed.service.exception.DataValidatorException;
 import com.yahoo.cubed.service.exception.DatabaseException;
@@ -19,8 +21,12 @@ public interface AbstractService<T extends AbstractModel> {
     public T fetchByName(String name) throws DataValidatorException, DatabaseException;
     /** Fetch all. */
     public List<T> fetchAll() throws DatabaseException;
+    /** Fetch one page, filtered and sorted in the database. */
+    public ListPage<T> fetchPage(ListQuery query) throws DataValidatorException, DatabaseException;
     /** Save model. */
     public void save(T model) throws DataValidatorException, DatabaseException;
     /** Update model. */
     public void update(T model) throws DataValidatorException, DatabaseException;
+    /** Check the names of a model written without this service, such as by a bulk sync. */
+    public void validate(T model) throws DataValidatorException;
 }
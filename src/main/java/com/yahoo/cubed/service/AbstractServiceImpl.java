@@ -10,6 +10,8 @@ import java.util.regex.Pattern;
 import org.hibernate.Session;
 
 import com.yahoo.cubed.dao.AbstractEntityDAO;
+import com.yahoo.cubed.dao.ListPage;
+import com.yahoo.cubed.dao.ListQuery;
 import com.yahoo.cubed.model.AbstractModel;
 import com.yahoo.cubed.service.exception.DataValidatorException;
 import com.yahoo.cubed.service.exception.DatabaseException;
@@ -27,6 +29,15 @@ public abstract class AbstractServiceImpl<T extends AbstractModel> implements Ab
 
     /** Check before saving model. */
     protected void preSaveCheck(Session session, T model) throws DataValidatorException {
+        this.checkName(model);
+        // check name is unique
+        if (this.getDAO().fetchByName(session, model.getPrimaryName()) != null) {
+            throw new DataValidatorException("Data mart name '" + model.getPrimaryName() + "' already exists.");
+        }
+    }
+
+    /** Check that the model is provided and its name is valid. */
+    protected void checkName(T model) throws DataValidatorException {
         String modelName = this.getDAO().getEntityClass().getSimpleName();
 
         // check model is not null
@@ -41,10 +52,14 @@ public abstract class AbstractServiceImpl<T extends AbstractModel> implements Ab
         if (!this.isNameValid(model.getPrimaryName())) {
             throw new DataValidatorException("The name of the " + modelName + " should start with an English letter. It should contain only English letters and underscores.");
         }
-        // check name is unique
-        if (this.getDAO().fetchByName(session, model.getPrimaryName()) != null) {
-            throw new DataValidatorException("Data mart name '" + model.getPrimaryName() + "' already exists.");
-        }
+    }
+
+    /**
+     * Validate a model written outside this service.
+     */
+    @Override
+    public void validate(T model) throws DataValidatorException {
+        this.checkName(model);
     }
 
     /**
@@ -86,9 +101,19 @@ public abstract class AbstractServiceImpl<T extends AbstractModel> implements Ab
     }
 
     /**
-     * Create session.
+     * Called after a model was saved, updated or deleted.
+     */
+    protected void modelChanged() {
+    }
+
+    /**
+     * Create session, or use the one of the unit of work running on this thread.
      */
     protected Session createSession() throws DatabaseException {
+        UnitOfWork work = UnitOfWork.current();
+        if (work != null) {
+            return work.getSession();
+        }
         try {
             return HibernateSessionFactoryManager.getSessionFactory().openSession();
         } catch (RuntimeException e) {
@@ -97,9 +122,13 @@ public abstract class AbstractServiceImpl<T extends AbstractModel> implements Ab
     }
 
     /**
-     * Reclaim session.
+     * Reclaim session, unless it belongs to a unit of work.
      */
     protected void reclaimSession(Session session) throws DatabaseException {
+        UnitOfWork work = UnitOfWork.current();
+        if (work != null && work.getSession() == session) {
+            return;
+        }
         try {
             session.close();
         } catch (RuntimeException e) {
@@ -151,6 +180,24 @@ public abstract class AbstractServiceImpl<T extends AbstractModel> implements Ab
         return models;
     }
 
+    /**
+     * Fetch one page of entities.
+     */
+    @Override
+    public ListPage<T> fetchPage(ListQuery query) throws DataValidatorException, DatabaseException {
+        Session session = this.createSession();
+
+        try {
+            return this.getDAO().fetchPage(session, query);
+        } catch (IllegalArgumentException e) {
+            throw new DataValidatorException(e.getMessage());
+        } catch (RuntimeException e) {
+            throw new DatabaseException("Database exception: cannot list " + this.getDAO().getEntityClass().getSimpleName() + ".", e);
+        } finally {
+            this.reclaimSession(session);
+        }
+    }
+
     /**
      * Save entity.
      */
@@ -162,6 +209,8 @@ public abstract class AbstractServiceImpl<T extends AbstractModel> implements Ab
 
         try {
             this.getDAO().save(session, model);
+            this.modelChanged();
+            UnitOfWork.written();
         } catch (RuntimeException e) {
             throw new DatabaseException("Database exception: save " + this.getDAO().getEntityClass().getSimpleName() + " failed.", e);
         } finally {
@@ -180,6 +229,8 @@ public abstract class AbstractServiceImpl<T extends AbstractModel> implements Ab
 
         try {
             this.getDAO().update(session, oldModel, newModel);
+            this.modelChanged();
+            UnitOfWork.written();
         } catch (RuntimeException e) {
             throw new DatabaseException("Database exception: update " + this.getDAO().getEntityClass().getSimpleName() + " failed.", e);
         } finally {
@@ -21,9 +21,9 @@ public class FieldKeyServiceImpl extends AbstractServiceImpl<FieldKey> implement
     }
 
 
-    /** Check before saving model. */
-    protected void preSaveCheck(Session session, FieldKey model) throws DataValidatorException {
-        super.preSaveCheck(session, model);
+    /** Check that the model is provided and its names are valid. */
+    protected void checkName(FieldKey model) throws DataValidatorException {
+        super.checkName(model);
         String modelName = this.getDAO().getEntityClass().getSimpleName();
         // check name is set
         if (model.getKeyName() == null) {
@@ -96,6 +96,8 @@ public class FieldKeyServiceImpl extends AbstractServiceImpl<FieldKey> implement
 
         try {
             this.getDAO().delete(session, model);
+            this.modelChanged();
+            UnitOfWork.written();
         } catch (RuntimeException e) {
             throw new DatabaseException("Database exception: delete " + this.getDAO().getEntityClass().getSimpleName() + " failed.", e);
         } finally {
@@ -107,6 +109,11 @@ public class FieldKeyServiceImpl extends AbstractServiceImpl<FieldKey> implement
      * Fetch entity.
      */
     public FieldKey fetchByCompositeKey(String schemaName, long fieldId, long keyId) throws DataValidatorException, DatabaseException {
+        FieldKey cached = ServiceFactory.metadataCache().getFieldKey(schemaName, fieldId, keyId);
+        if (cached != null) {
+            return cached;
+        }
+
         Session session = this.createSession();
 
         FieldKey model = null;
@@ -125,4 +132,20 @@ public class FieldKeyServiceImpl extends AbstractServiceImpl<FieldKey> implement
         return model;
     }
 
+    /**
+     * Fetch entity by composite name, from the metadata cache if loaded.
+     */
+    @Override
+    public FieldKey fetchByName(String name) throws DataValidatorException, DatabaseException {
+        FieldKey cached = ServiceFactory.metadataCache().getFieldKey(name);
+        return cached != null ? cached : super.fetchByName(name);
+    }
+
+    /**
+     * Drop the cached metadata, now and once the write is committed.
+     */
+    @Override
+    protected void modelChanged() {
+        ServiceFactory.metadataCache().changed();
+    }
 }
@@ -34,9 +34,9 @@ public class FieldServiceImpl extends AbstractServiceImpl<Field> implements Fiel
         return NAME_PATTERN.matcher(parts[1]).matches();
     }
 
-    /** Check before saving model. */
-    protected void preSaveCheck(Session session, Field model) throws DataValidatorException {
-        super.preSaveCheck(session, model);
+    /** Check that the model is provided and its names are valid. */
+    protected void checkName(Field model) throws DataValidatorException {
+        super.checkName(model);
         String modelName = this.getDAO().getEntityClass().getSimpleName();
         // check name is set
         if (model.getFieldName() == null) {
@@ -95,6 +95,8 @@ public class FieldServiceImpl extends AbstractServiceImpl<Field> implements Fiel
 
         try {
             this.getDAO().delete(session, model);
+            this.modelChanged();
+            UnitOfWork.written();
         } catch (RuntimeException e) {
             throw new DatabaseException("Database exception: delete " + this.getDAO().getEntityClass().getSimpleName() + " failed.", e);
         } finally {
@@ -106,6 +108,11 @@ public class FieldServiceImpl extends AbstractServiceImpl<Field> implements Fiel
      * Fetch entity.
      */
     public Field fetchByCompositeKey(String schemaName, long fieldId) throws DataValidatorException, DatabaseException {
+        Field cached = ServiceFactory.metadataCache().getField(schemaName, fieldId);
+        if (cached != null) {
+            return cached;
+        }
+
         Session session = this.createSession();
 
         Field model = null;
@@ -123,4 +130,21 @@ public class FieldServiceImpl extends AbstractServiceImpl<Field> implements Fiel
 
         return model;
     }
+
+    /**
+     * Fetch entity by composite name, from the metadata cache if loaded.
+     */
+    @Override
+    public Field fetchByName(String name) throws DataValidatorException, DatabaseException {
+        Field cached = ServiceFactory.metadataCache().getField(name);
+        return cached != null ? cached : super.fetchByName(name);
+    }
+
+    /**
+     * Drop the cached metadata, now and once the write is committed.
+     */
+    @Override
+    protected void modelChanged() {
+        ServiceFactory.metadataCache().changed();
+    }
 }
@@ -184,6 +184,7 @@ public class FunnelGroupServiceImpl extends AbstractServiceImpl<FunnelGroup> imp
 
         try {
             this.getDAO().delete(session, model);
+            UnitOfWork.written();
         } catch (RuntimeException e) {
             throw new DatabaseException("Database exception: delete " + this.getDAO().getEntityClass().getSimpleName() + " failed.", e);
         } finally {
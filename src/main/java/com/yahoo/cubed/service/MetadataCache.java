@@ -0,0 +1,189 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.service;
+
+import com.yahoo.cubed.model.Field;
+import com.yahoo.cubed.model.FieldKey;
+import com.yahoo.cubed.model.Schema;
+import com.yahoo.cubed.service.exception.DatabaseException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot of the schema, field and field key metadata, which only changes when schemas are loaded.
+ * Lookups return null when the snapshot is not loaded or does not have the entity, callers then read the database.
+ * The snapshot holds copies detached from any session, without the pipelines of the schemas,
+ * and every lookup returns a new copy, so callers may change what they get.
+ * Any change to the metadata drops the snapshot until it is rebuilt: service writes drop it themselves,
+ * again once their unit of work commits, and writers bypassing the services, such as the schema sync,
+ * drop it once committed.
+ */
+@Slf4j
+public class MetadataCache {
+    private static final String SEPARATOR = "-";
+
+    /**
+     * Immutable lookup tables of detached copies.
+     */
+    private static class Snapshot {
+        private final Map<String, Schema> schemas;
+        private final Map<String, Field> fieldsByName;
+        private final Map<String, Field> fieldsById;
+        private final Map<String, FieldKey> fieldKeysByName;
+        private final Map<String, FieldKey> fieldKeysById;
+
+        private Snapshot(List<Schema> schemas, List<Field> fields, List<FieldKey> fieldKeys) {
+            Map<String, Schema> schemaMap = new HashMap<>();
+            for (Schema schema : schemas) {
+                schemaMap.put(schema.getPrimaryName(), schema.copy());
+            }
+            Map<String, Field> fieldNameMap = new HashMap<>();
+            Map<String, Field> fieldIdMap = new HashMap<>();
+            for (Field field : fields) {
+                Field copy = field.copy();
+                fieldNameMap.put(copy.getPrimaryName(), copy);
+                fieldIdMap.put(fieldId(copy.getSchemaName(), copy.getFieldId()), copy);
+            }
+            Map<String, FieldKey> keyNameMap = new HashMap<>();
+            Map<String, FieldKey> keyIdMap = new HashMap<>();
+            for (FieldKey fieldKey : fieldKeys) {
+                FieldKey copy = fieldKey.copy();
+                keyNameMap.put(copy.getPrimaryName(), copy);
+                keyIdMap.put(fieldKeyId(copy.getSchemaName(), copy.getFieldId(), copy.getKeyId()), copy);
+            }
+            this.schemas = Collections.unmodifiableMap(schemaMap);
+            this.fieldsByName = Collections.unmodifiableMap(fieldNameMap);
+            this.fieldsById = Collections.unmodifiableMap(fieldIdMap);
+            this.fieldKeysByName = Collections.unmodifiableMap(keyNameMap);
+            this.fieldKeysById = Collections.unmodifiableMap(keyIdMap);
+        }
+    }
+
+    private final Runnable invalidation = this::invalidate;
+    private volatile Snapshot snapshot;
+    /** Bumped on every change, so that a rebuild racing with a change is dropped. */
+    private long generation = 0;
+
+    private static Schema copy(Schema schema) {
+        return schema == null ? null : schema.copy();
+    }
+
+    private static Field copy(Field field) {
+        return field == null ? null : field.copy();
+    }
+
+    private static FieldKey copy(FieldKey fieldKey) {
+        return fieldKey == null ? null : fieldKey.copy();
+    }
+
+    private static String fieldId(String schemaName, long fieldId) {
+        return schemaName + SEPARATOR + fieldId;
+    }
+
+    private static String fieldKeyId(String schemaName, long fieldId, long keyId) {
+        return schemaName + SEPARATOR + fieldId + SEPARATOR + keyId;
+    }
+
+    /**
+     * Load all metadata from the database and replace the snapshot at once.
+     */
+    public void rebuild() throws DatabaseException {
+        long startGeneration;
+        synchronized (this) {
+            startGeneration = generation;
+        }
+        List<Schema> schemas = ServiceFactory.schemaService().fetchAll();
+        List<Field> fields = ServiceFactory.fieldService().fetchAll();
+        List<FieldKey> fieldKeys = ServiceFactory.fieldKeyService().fetchAll();
+        Snapshot loaded = new Snapshot(schemas, fields, fieldKeys);
+        synchronized (this) {
+            if (generation != startGeneration) {
+                log.info("Metadata changed while caching it, dropping the snapshot");
+                return;
+            }
+            snapshot = loaded;
+            generation++;
+        }
+        log.info("Cached metadata of {} schemas, {} fields and {} field keys", schemas.size(), fields.size(), fieldKeys.size());
+    }
+
+    /**
+     * Drop the snapshot, lookups miss until it is rebuilt.
+     */
+    public synchronized void invalidate() {
+        generation++;
+        snapshot = null;
+    }
+
+    /**
+     * Drop the snapshot after a service write. Within a unit of work, it is dropped again once committed,
+     * so that a rebuild running before the commit does not keep the previous metadata.
+     */
+    public void changed() {
+        this.invalidate();
+        UnitOfWork work = UnitOfWork.current();
+        if (work != null) {
+            work.afterCommit(this.invalidation);
+        }
+    }
+
+    /**
+     * Number of changes of the metadata, including rebuilds, to detect that the metadata changed.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Whether a snapshot is loaded.
+     */
+    public boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    /**
+     * Get a schema by name, null on miss.
+     */
+    public Schema getSchema(String schemaName) {
+        Snapshot current = snapshot;
+        return current == null ? null : copy(current.schemas.get(schemaName));
+    }
+
+    /**
+     * Get a field by its composite name, null on miss.
+     */
+    public Field getField(String compositeName) {
+        Snapshot current = snapshot;
+        return current == null ? null : copy(current.fieldsByName.get(compositeName));
+    }
+
+    /**
+     * Get a field by schema name and field id, null on miss.
+     */
+    public Field getField(String schemaName, long fieldId) {
+        Snapshot current = snapshot;
+        return current == null ? null : copy(current.fieldsById.get(fieldId(schemaName, fieldId)));
+    }
+
+    /**
+     * Get a field key by its composite name, null on miss.
+     */
+    public FieldKey getFieldKey(String compositeName) {
+        Snapshot current = snapshot;
+        return current == null ? null : copy(current.fieldKeysByName.get(compositeName));
+    }
+
+    /**
+     * Get a field key by schema name, field id and key id, null on miss.
+     */
+    public FieldKey getFieldKey(String schemaName, long fieldId, long keyId) {
+        Snapshot current = snapshot;
+        return current == null ? null : copy(current.fieldKeysById.get(fieldKeyId(schemaName, fieldId, keyId)));
+    }
+}
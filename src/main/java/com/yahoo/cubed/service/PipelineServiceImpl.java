@@ -189,6 +189,7 @@ public class PipelineServiceImpl extends AbstractServiceImpl<Pipeline> implement
 
         try {
             this.getDAO().delete(session, model);
+            UnitOfWork.written();
         } catch (RuntimeException e) {
             throw new DatabaseException("Database exception: delete " + this.getDAO().getEntityClass().getSimpleName() + " failed.", e);
         } finally {
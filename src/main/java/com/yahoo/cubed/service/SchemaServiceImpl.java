@@ -107,6 +107,10 @@ public class SchemaServiceImpl extends AbstractServiceImpl<Schema> implements Sc
      * Fetch entity by name.
      */
     public Schema fetch(String name) throws DataValidatorException, DatabaseException {
+        Schema cached = ServiceFactory.metadataCache().getSchema(name);
+        if (cached != null) {
+            return cached;
+        }
 
         Session session = this.createSession();
 
@@ -135,6 +139,8 @@ public class SchemaServiceImpl extends AbstractServiceImpl<Schema> implements Sc
 
         try {
             this.getDAO().delete(session, model);
+            this.modelChanged();
+            UnitOfWork.written();
         } catch (RuntimeException e) {
             throw new DatabaseException("Database exception: delete " + this.getDAO().getEntityClass().getSimpleName() + " failed.", e);
         } finally {
@@ -142,4 +148,20 @@ public class SchemaServiceImpl extends AbstractServiceImpl<Schema> implements Sc
         }
     }
 
+    /**
+     * Fetch entity by name, from the metadata cache if loaded.
+     */
+    @Override
+    public Schema fetchByName(String name) throws DataValidatorException, DatabaseException {
+        Schema cached = ServiceFactory.metadataCache().getSchema(name);
+        return cached != null ? cached : super.fetchByName(name);
+    }
+
+    /**
+     * Drop the cached metadata, now and once the write is committed.
+     */
+    @Override
+    protected void modelChanged() {
+        ServiceFactory.metadataCache().changed();
+    }
 }
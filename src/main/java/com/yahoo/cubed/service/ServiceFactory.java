@@ -4,26 +4,50 @@
 
 package com.yahoo.cubed.service;
 
+import com.yahoo.cubed.json.filter.FilterCompiler;
+import com.yahoo.cubed.pipeline.command.CommandExecutorService;
+import com.yahoo.cubed.service.bullet.BulletHttpClient;
+import com.yahoo.cubed.service.cardinality.CardinalityEstimateCache;
 import com.yahoo.cubed.service.cardinality.CardinalityEstimationService;
 import com.yahoo.cubed.service.cardinality.CardinalityEstimationServiceImpl;
 import com.yahoo.cubed.service.querybullet.QueryBulletService;
 import com.yahoo.cubed.service.querybullet.QueryBulletServiceImpl;
+import com.yahoo.cubed.settings.CLISettings;
+import com.yahoo.cubed.templating.ArtifactStore;
+import com.yahoo.cubed.templating.TemplateRenderService;
 import lombok.Setter;
 
+import java.io.File;
+import java.time.Clock;
+
 /**
  * Service factory.
  */
 public class ServiceFactory {
+    /** Directory of the artifact store in the template output folder. */
+    public static final String ARTIFACT_STORE_DIRECTORY = "cubed-artifacts";
+
     private static PipelineService pipelineService;
     private static FieldService fieldService;
     private static FieldKeyService fieldKeyService;
     private static SchemaService schemaService;
     private static FunnelGroupService funnelGroupService;
+    private static MetadataCache metadataCache;
 
     @Setter
     private static CardinalityEstimationService cardinalityEstimationService;
     @Setter
     private static QueryBulletService queryBulletService;
+    @Setter
+    private static CommandExecutorService commandExecutorService;
+    @Setter
+    private static BulletHttpClient bulletHttpClient;
+    @Setter
+    private static CardinalityEstimateCache cardinalityEstimateCache;
+    @Setter
+    private static TemplateRenderService templateRenderService;
+    @Setter
+    private static FilterCompiler filterCompiler;
 
     /**
      * Get schema service.
@@ -94,4 +118,77 @@ public class ServiceFactory {
         }
         return funnelGroupService;
     }
+
+    /**
+     * Get the shared service running pipeline scripts.
+     */
+    public static synchronized CommandExecutorService commandExecutorService() {
+        if (commandExecutorService == null) {
+            commandExecutorService = new CommandExecutorService(CLISettings.COMMAND_THREADS);
+        }
+        return commandExecutorService;
+    }
+
+    /**
+     * Get the schema, field and field key metadata cache.
+     */
+    public static synchronized MetadataCache metadataCache() {
+        if (metadataCache == null) {
+            metadataCache = new MetadataCache();
+        }
+        return metadataCache;
+    }
+
+    /**
+     * Get the shared HTTP client for Bullet.
+     */
+    public static synchronized BulletHttpClient bulletHttpClient() {
+        if (bulletHttpClient == null) {
+            bulletHttpClient = new BulletHttpClient(
+                    CLISettings.BULLET_MAX_CONNECTIONS,
+                    CLISettings.BULLET_MAX_CONNECTIONS_PER_ROUTE,
+                    CLISettings.BULLET_CONNECT_TIMEOUT,
+                    CLISettings.BULLET_READ_TIMEOUT,
+                    CLISettings.BULLET_KEEP_ALIVE);
+        }
+        return bulletHttpClient;
+    }
+
+    /**
+     * Get the cache of cardinality estimates.
+     */
+    public static synchronized CardinalityEstimateCache cardinalityEstimateCache() {
+        if (cardinalityEstimateCache == null) {
+            cardinalityEstimateCache = new CardinalityEstimateCache(CLISettings.CARDINALITY_CACHE_TTL, Clock.systemDefaultZone());
+        }
+        return cardinalityEstimateCache;
+    }
+
+    /**
+     * Get the compiler memoizing filters.
+     */
+    public static synchronized FilterCompiler filterCompiler() {
+        if (filterCompiler == null) {
+            filterCompiler = new FilterCompiler();
+        }
+        return filterCompiler;
+    }
+
+    /**
+     * Get the shared pool rendering pipeline files.
+     */
+    public static synchronized TemplateRenderService templateRenderService() {
+        if (templateRenderService == null) {
+            ArtifactStore artifactStore = null;
+            if (CLISettings.ARTIFACT_STORE_MAX_SIZE > 0) {
+                artifactStore = new ArtifactStore(
+                        new File(CLISettings.TEMPLATE_OUTPUT_FOLDER, ARTIFACT_STORE_DIRECTORY),
+                        CLISettings.ARTIFACT_STORE_MAX_SIZE,
+                        CLISettings.ARTIFACT_MAX_AGE,
+                        Clock.systemDefaultZone());
+            }
+            templateRenderService = new TemplateRenderService(CLISettings.TEMPLATE_THREADS, artifactStore);
+        }
+        return templateRenderService;
+    }
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.service;
+
+import com.yahoo.cubed.service.exception.DatabaseException;
+import com.yahoo.cubed.settings.CLISettings;
+import com.yahoo.cubed.source.HibernateSessionFactoryManager;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Unit of work running many service reads and writes in one session and transaction.
+ * Services called on the thread that began it use its session, and their writes are flushed in batches.
+ * <pre>
+ * try (UnitOfWork work = UnitOfWork.begin()) {
+ *     // service calls
+ *     work.commit();
+ * }
+ * </pre>
+ * Closing without committing rolls back. Models fetched in a unit of work belong to its session,
+ * so updating one of them writes its changed fields only, not its projections or keys.
+ * Actions that must only see committed data, such as dropping cached metadata, run after the commit.
+ */
+@Slf4j
+public class UnitOfWork implements AutoCloseable {
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+    /** Session shared by the services. */
+    @Getter
+    private final Session session;
+    private final Transaction transaction;
+    private final Set<Runnable> afterCommit = new LinkedHashSet<>();
+    private int pendingWrites = 0;
+    private boolean committed = false;
+
+    private UnitOfWork(Session session, Transaction transaction) {
+        this.session = session;
+        this.transaction = transaction;
+    }
+
+    /**
+     * Begin a unit of work on this thread.
+     * @throws IllegalStateException if one is already running on this thread
+     */
+    public static UnitOfWork begin() throws DatabaseException {
+        if (CURRENT.get() != null) {
+            throw new IllegalStateException("A unit of work is already running on this thread");
+        }
+        Session session;
+        try {
+            session = HibernateSessionFactoryManager.getSessionFactory().openSession();
+        } catch (RuntimeException e) {
+            throw new DatabaseException("Cannot create a new session for database connection", e);
+        }
+        try {
+            UnitOfWork work = new UnitOfWork(session, session.beginTransaction());
+            CURRENT.set(work);
+            return work;
+        } catch (RuntimeException e) {
+            session.close();
+            throw new DatabaseException("Cannot begin a transaction", e);
+        }
+    }
+
+    /**
+     * Get the unit of work running on this thread, null if none.
+     */
+    public static UnitOfWork current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Whether the writes in a session are flushed in batches by the unit of work running on this thread,
+     * rather than after each entity.
+     */
+    public static boolean flushesInBatches(Session session) {
+        UnitOfWork work = CURRENT.get();
+        return work != null && work.session == session;
+    }
+
+    /**
+     * Run an action once this unit of work commits. An action added more than once runs once,
+     * and none run if it rolls back.
+     */
+    public void afterCommit(Runnable action) {
+        this.afterCommit.add(action);
+    }
+
+    /**
+     * Count a write by a service, flushing once a batch is complete.
+     */
+    static void written() {
+        UnitOfWork work = CURRENT.get();
+        if (work != null && ++work.pendingWrites >= CLISettings.DB_BATCH_SIZE) {
+            work.flush();
+        }
+    }
+
+    /**
+     * Send the pending writes to the database, for example deletes that must run before inserts of the same names.
+     */
+    public void flush() {
+        this.session.flush();
+        this.pendingWrites = 0;
+    }
+
+    /**
+     * Flush the remaining writes, commit, then run the actions waiting for the commit.
+     */
+    public void commit() throws DatabaseException {
+        try {
+            this.session.flush();
+            this.transaction.commit();
+            this.committed = true;
+        } catch (RuntimeException e) {
+            throw new DatabaseException("Database exception: commit failed.", e);
+        }
+        for (Runnable action : this.afterCommit) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                log.error("Action after commit failed", e);
+            }
+        }
+        this.afterCommit.clear();
+    }
+
+    /**
+     * Roll back if not committed, and close the session.
+     */
+    @Override
+    public void close() {
+        CURRENT.remove();
+        try {
+            if (!this.committed && this.transaction.isActive()) {
+                this.transaction.rollback();
+            }
+        } catch (RuntimeException e) {
+            log.error("Cannot roll back unit of work", e);
+        } finally {
+            this.session.close();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.service.bullet;
+
+import com.yahoo.cubed.util.Utils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Application wide HTTP client for Bullet, keeping connections open between queries.
+ * Callers must consume or close each response entity so that its connection goes back to the pool.
+ */
+@Slf4j
+public class BulletHttpClient {
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    /** Threads of bulk queries, one per connection so that batches are bounded by the connections only. */
+    private final ThreadPoolExecutor batchExecutor;
+    private final ScheduledExecutorService deadlines;
+
+    /**
+     * Constructor.
+     * @param maxConnections maximum number of open connections
+     * @param maxConnectionsPerRoute maximum number of open connections to one Bullet URL
+     * @param connectTimeout milliseconds to wait for a connection
+     * @param readTimeout milliseconds to wait for data
+     * @param keepAlive seconds an idle connection is kept open
+     */
+    public BulletHttpClient(int maxConnections, int maxConnectionsPerRoute, int connectTimeout, int readTimeout, int keepAlive) {
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        this.connectionManager.setMaxTotal(maxConnections);
+        this.connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .build();
+        long keepAliveMillis = TimeUnit.SECONDS.toMillis(keepAlive);
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(this.connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> Math.min(keepAliveMillis, positive(DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context), keepAliveMillis)))
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAlive, TimeUnit.SECONDS)
+                .build();
+        this.batchExecutor = new ThreadPoolExecutor(maxConnections, maxConnections, 1L, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), Utils.daemonThreadFactory("bullet-batch-"));
+        this.batchExecutor.allowCoreThreadTimeOut(true);
+        this.deadlines = Executors.newSingleThreadScheduledExecutor(Utils.daemonThreadFactory("bullet-http-"));
+        log.info("Bullet HTTP client with up to {} connections, {} per URL", maxConnections, maxConnectionsPerRoute);
+    }
+
+    private static long positive(long duration, long otherwise) {
+        return duration > 0 ? duration : otherwise;
+    }
+
+    /**
+     * Get the pooled HTTP client.
+     */
+    public HttpClient getHttpClient() {
+        return this.httpClient;
+    }
+
+    /**
+     * Run a task sending the Bullet requests of a batch one after the other.
+     * Batch tasks run on threads of the client, as many as the maximum number of connections, idle threads are stopped after a minute.
+     */
+    public void executeBatch(Runnable task) {
+        this.batchExecutor.execute(task);
+    }
+
+    /**
+     * Run a task, such as aborting requests past their deadline, after a delay.
+     * @param task task to run
+     * @param delayMillis milliseconds to wait before running it
+     * @return the scheduled task, to cancel if it is no longer needed
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return this.deadlines.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get connection pool metrics.
+     */
+    public Map<String, Long> getPoolStats() {
+        PoolStats stats = this.connectionManager.getTotalStats();
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("maxConnections", (long) stats.getMax());
+        result.put("leased", (long) stats.getLeased());
+        result.put("available", (long) stats.getAvailable());
+        result.put("pending", (long) stats.getPending());
+        return result;
+    }
+
+    /**
+     * Stop the batches and close all connections.
+     */
+    public void close() {
+        this.batchExecutor.shutdownNow();
+        this.deadlines.shutdownNow();
+        try {
+            this.httpClient.close();
+        } catch (IOException e) {
+            log.warn("Cannot close Bullet HTTP client", e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.service.bullet;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming parser of Bullet responses, reading only the records from the response stream.
+ */
+public class BulletResponseParser {
+    /** Field holding the records in a Bullet response. */
+    public static final String RECORDS = "records";
+    /** Maximum number of characters of a Bullet query or response written to the log. */
+    public static final int MAX_LOGGED_CHARS = 1000;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Read the numeric fields of the records, the values of a field in later records replace the earlier ones.
+     * Other fields are skipped.
+     * @throws IOException if the response has no records
+     */
+    public static Map<String, Double> readAggregations(InputStream content) throws IOException {
+        Map<String, Double> result = new HashMap<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(content)) {
+            moveToRecords(parser);
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String fieldName = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if (value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT) {
+                        result.put(fieldName, parser.getDoubleValue());
+                    } else {
+                        // Text and nested values are never aggregations, skip without reading them
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copy the records of a response to a JSON object holding only them.
+     * @throws IOException if the response has no records
+     */
+    public static String readRecords(InputStream content) throws IOException {
+        StringWriter json = new StringWriter();
+        try (JsonParser parser = JSON_FACTORY.createParser(content); JsonGenerator generator = JSON_FACTORY.createGenerator(json)) {
+            moveToRecords(parser);
+            generator.writeStartObject();
+            generator.writeFieldName(RECORDS);
+            generator.copyCurrentStructure(parser);
+            generator.writeEndObject();
+        }
+        return json.toString();
+    }
+
+    /**
+     * Move the parser to the start of the top level records array, skipping everything before it.
+     */
+    private static void moveToRecords(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("The response content is not a JSON object.");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (RECORDS.equals(fieldName) && value == JsonToken.START_ARRAY) {
+                return;
+            }
+            parser.skipChildren();
+        }
+        throw new IOException("Cannot find field 'records' in the response content.");
+    }
+
+    /**
+     * Cut text to be logged to its first {@link #MAX_LOGGED_CHARS} characters.
+     */
+    public static String abbreviate(String text) {
+        if (text == null || text.length() <= MAX_LOGGED_CHARS) {
+            return text;
+        }
+        return text.substring(0, MAX_LOGGED_CHARS) + "... (" + text.length() + " characters)";
+    }
+}
@@ -5,7 +5,7 @@
 package com.yahoo.cubed.service.bullet.model.filter;
 
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
-import com.yahoo.cubed.json.filter.Filter;
+import com.yahoo.cubed.service.ServiceFactory;
 import lombok.Data;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -27,7 +27,7 @@ public abstract class BulletQueryFilter {
     }
 
     /**
-     * Create Bullet query filter from JSON.
+     * Create Bullet query filter from JSON, shared with the queries with the same filter, so it must not be modified.
      */
     public static BulletQueryFilter createBulletQueryFilterInstance(String pipelineFilterJson) {
         if (pipelineFilterJson == null || pipelineFilterJson.isEmpty()) {
@@ -35,7 +35,7 @@ public abstract class BulletQueryFilter {
         }
         try {
             // proxy
-            return Filter.fromJson(pipelineFilterJson).toBulletQueryFilter();
+            return ServiceFactory.filterCompiler().compile(null, pipelineFilterJson).getBulletQueryFilter();
         } catch (Exception e) {
             log.error(e.getMessage(), e);
             return null;
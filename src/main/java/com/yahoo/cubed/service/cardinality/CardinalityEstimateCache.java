@@ -0,0 +1,198 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.service.cardinality;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.yahoo.cubed.service.bullet.query.BulletQuery;
+import com.yahoo.cubed.service.bullet.query.BulletQueryFailException;
+import com.yahoo.cubed.service.cardinality.CardinalityEstimationService.Response;
+import com.yahoo.cubed.util.Utils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpStatus;
+
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of cardinality estimates keyed by a hash of the Bullet URL and the canonical Bullet query.
+ * Successful estimates expire after the TTL, concurrent estimates of the same query share one Bullet query.
+ */
+@Slf4j
+public class CardinalityEstimateCache {
+    /** Serializes queries with properties and map entries in a fixed order, so that equal queries have equal keys. */
+    private static final ObjectMapper CANONICAL_MAPPER = new ObjectMapper()
+            .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true)
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    /**
+     * Cached estimate.
+     */
+    private static class Entry {
+        private final Response response;
+        private final long createdAt;
+
+        private Entry(Response response, long createdAt) {
+            this.response = response;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private final long ttlMillis;
+    private final Clock clock;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Response>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param ttlMinutes time to live of estimates, 0 disables caching but still coalesces concurrent queries
+     * @param clock clock
+     */
+    public CardinalityEstimateCache(long ttlMinutes, Clock clock) {
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(ttlMinutes);
+        this.clock = clock;
+    }
+
+    /**
+     * Cache key of a Bullet query sent to a Bullet URL.
+     */
+    public static String key(String bulletUrl, BulletQuery query) throws JsonProcessingException {
+        return Utils.sha256Hex(bulletUrl + "\n" + CANONICAL_MAPPER.writeValueAsString(query));
+    }
+
+    /**
+     * Get the estimate of a query, from the cache, from an identical query in flight or from the loader.
+     * @param key key of the query
+     * @param loader sends the query to Bullet
+     * @return the estimate, which must not be modified
+     * @throws BulletQueryFailException if the query fails, for every caller waiting for it
+     */
+    public Response get(String key, Callable<Response> loader) throws BulletQueryFailException {
+        Response cached = getCached(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        CompletableFuture<Response> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            log.info("Waiting for the Bullet query {} already in flight", key);
+            return await(running);
+        }
+        try {
+            // Another caller may have completed the same query just before this one registered
+            cached = getCached(key);
+            if (cached == null) {
+                cached = load(key, loader);
+            } else {
+                hits.incrementAndGet();
+            }
+            future.complete(cached);
+            return cached;
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            throw e instanceof BulletQueryFailException ? (BulletQueryFailException) e : new BulletQueryFailException(e);
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Get the estimate of a query from the cache or from the loader, without sharing the query with identical queries.
+     * For callers that may abort their query, which would fail the callers waiting for it.
+     * @param key key of the query
+     * @param loader sends the query to Bullet
+     * @return the estimate, which must not be modified
+     * @throws BulletQueryFailException if the query fails
+     */
+    public Response getUnshared(String key, Callable<Response> loader) throws BulletQueryFailException {
+        Response cached = getCached(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        try {
+            return load(key, loader);
+        } catch (Exception e) {
+            throw e instanceof BulletQueryFailException ? (BulletQueryFailException) e : new BulletQueryFailException(e);
+        }
+    }
+
+    private Response load(String key, Callable<Response> loader) throws Exception {
+        misses.incrementAndGet();
+        Response response = loader.call();
+        if (response.statusCode == HttpStatus.SC_OK && ttlMillis > 0) {
+            put(key, response);
+        }
+        return response;
+    }
+
+    private Response getCached(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (isExpired(entry)) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.response;
+    }
+
+    private void put(String key, Response response) {
+        // Drop expired entries, so that the cache only holds estimates of the last TTL
+        entries.values().removeIf(this::isExpired);
+        entries.put(key, new Entry(response, clock.millis()));
+    }
+
+    private boolean isExpired(Entry entry) {
+        return clock.millis() - entry.createdAt > ttlMillis;
+    }
+
+    private static Response await(CompletableFuture<Response> running) throws BulletQueryFailException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BulletQueryFailException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof BulletQueryFailException ? (BulletQueryFailException) e.getCause() : new BulletQueryFailException(e);
+        }
+    }
+
+    /**
+     * Drop all cached estimates.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Get hit/miss and size metrics.
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("misses", misses.get());
+        stats.put("entries", (long) entries.size());
+        stats.put("inFlight", (long) inFlight.size());
+        return stats;
+    }
+}
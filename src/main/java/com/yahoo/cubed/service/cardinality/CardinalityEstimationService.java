@@ -6,7 +6,9 @@ package com.yahoo.cubed.service.cardinality;
 
 import com.yahoo.cubed.model.Pipeline;
 import com.yahoo.cubed.service.bullet.query.BulletQueryFailException;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Estimate cardinality of a pipeline.
@@ -44,4 +46,13 @@ public interface CardinalityEstimationService {
      * @throws BulletQueryFailException exception that fails to send query to Bullet.
      */
     Response sendBulletQuery(Pipeline pipelineModel) throws BulletQueryFailException;
+
+    /**
+     * Send the Bullet queries of many pipelines at the same time.
+     * @param pipelineModels pipeline models.
+     * @param maxQueriesPerUrl maximum number of queries sent to one Bullet URL at the same time.
+     * @param timeoutMillis milliseconds after which the queries not answered yet fail.
+     * @return query results in the order of the pipelines, completed exceptionally with {@link BulletQueryFailException} if a query fails or times out.
+     */
+    List<CompletableFuture<Response>> sendBulletQueries(List<Pipeline> pipelineModels, int maxQueriesPerUrl, long timeoutMillis);
 }
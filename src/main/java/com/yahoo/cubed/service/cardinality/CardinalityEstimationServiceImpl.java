@@ -4,125 +4,238 @@
 
 package com.yahoo.cubed.service.cardinality;
 
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yahoo.cubed.json.JsonCodec;
 import com.yahoo.cubed.model.Schema;
 import com.yahoo.cubed.service.ServiceFactory;
 import com.yahoo.cubed.model.Pipeline;
+import com.yahoo.cubed.service.bullet.BulletHttpClient;
+import com.yahoo.cubed.service.bullet.BulletResponseParser;
 import com.yahoo.cubed.service.bullet.query.BulletQuery;
 import com.yahoo.cubed.service.bullet.query.BulletQueryFailException;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeoutException;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
 
 /**
  * Implementation of cardinality estimation.
  */
 @Slf4j
 public class CardinalityEstimationServiceImpl implements CardinalityEstimationService {
+    /**
+     * Requests of one batch that are in flight, aborted at the deadline of the batch.
+     * Only the batch waits for them, as its lanes do not share their queries.
+     */
+    private static class Batch {
+        private final Set<HttpPost> requests = ConcurrentHashMap.newKeySet();
+        private volatile boolean expired;
+
+        private void start(HttpPost request) {
+            this.requests.add(request);
+            // A request started while the batch expires is aborted by one of the two
+            if (this.expired) {
+                request.abort();
+            }
+        }
+
+        private void end(HttpPost request) {
+            this.requests.remove(request);
+        }
+
+        private void expire() {
+            this.expired = true;
+            for (HttpPost request : this.requests) {
+                request.abort();
+            }
+        }
+    }
+
+    /** Batch of the lane running on this thread, whose requests are aborted at the batch deadline. */
+    private static final ThreadLocal<Batch> LANE_BATCH = new ThreadLocal<>();
+
     @Override
     public Response sendBulletQuery(Pipeline pipelineModel) throws BulletQueryFailException {
+        String bulletUrl;
+        BulletQuery queryBody;
+        String key;
         try {
-            ObjectMapper jsonMapper = new ObjectMapper();
-
             Schema schema = ServiceFactory.schemaService().fetchByName(pipelineModel.getPipelineSchemaName());
+            bulletUrl = schema.getSchemaBulletUrl();
+            queryBody = BulletQuery.createBulletQueryInstance(pipelineModel);
+            key = CardinalityEstimateCache.key(bulletUrl, queryBody);
+        } catch (Exception e) {
+            throw new BulletQueryFailException(e);
+        }
+        CardinalityEstimateCache cache = ServiceFactory.cardinalityEstimateCache();
+        Callable<Response> loader = () -> this.sendBulletQuery(bulletUrl, queryBody);
+        if (LANE_BATCH.get() != null) {
+            // Queries of a batch are aborted at its deadline, so they are not shared with identical pipelines
+            return cache.getUnshared(key, loader);
+        }
+        // Identical pipelines share the estimate
+        return cache.get(key, loader);
+    }
 
-            // build http post body
-            BulletQuery queryBody = BulletQuery.createBulletQueryInstance(pipelineModel);
-            String postBodyJson = jsonMapper.writeValueAsString(queryBody);
+    /**
+     * Send a cardinality estimation query to Bullet.
+     */
+    private Response sendBulletQuery(String bulletUrl, BulletQuery queryBody) throws Exception {
+        // build http post body
+        String postBodyJson = JsonCodec.BULLET_QUERY_WRITER.writeValueAsString(queryBody);
 
-            HttpClient httpClient = this.newHttpClientInstance();
+        HttpClient httpClient = this.newHttpClientInstance();
 
-            HttpPost request = new HttpPost(schema.getSchemaBulletUrl());
-            request.setHeader("Accept", "application/json");
-            request.setHeader("Content-type", "text/plain");
+        HttpPost request = new HttpPost(bulletUrl);
+        request.setHeader("Accept", "application/json");
+        request.setHeader("Content-type", "text/plain");
 
-            log.info("Bullet query request body:\n" + postBodyJson);
+        log.info("Bullet query request body:\n{}", BulletResponseParser.abbreviate(postBodyJson));
 
-            request.setEntity(new StringEntity(postBodyJson));
+        request.setEntity(new StringEntity(postBodyJson));
 
+        Batch batch = LANE_BATCH.get();
+        if (batch != null) {
+            batch.start(request);
+        }
+        try {
             HttpResponse response = httpClient.execute(request);
 
-            int statusCode = response.getStatusLine().getStatusCode();
+            try {
+                int statusCode = response.getStatusLine().getStatusCode();
+
+                if (statusCode != HttpStatus.SC_OK) {
+                    return new Response(statusCode);
+                }
 
-            if (statusCode != HttpStatus.SC_OK) {
-                return new Response(statusCode);
+                Map<String, Double> aggregations = this.readAggregations(response);
+
+                log.info("Bullet query aggregations: {}", aggregations);
+
+                return new Response(statusCode, aggregations);
+            } finally {
+                // Release the connection back to the pool
+                EntityUtils.consumeQuietly(response.getEntity());
+            }
+        } finally {
+            if (batch != null) {
+                batch.end(request);
             }
+        }
+    }
 
-            String jsonContent = this.readResponseContent(response);
+    @Override
+    public List<CompletableFuture<Response>> sendBulletQueries(List<Pipeline> pipelineModels, int maxQueriesPerUrl, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        Batch batch = new Batch();
+        List<CompletableFuture<Response>> futures = new ArrayList<>(pipelineModels.size());
+        // Group the pipelines by the Bullet URL of their schema
+        Map<String, String> bulletUrls = new HashMap<>();
+        Map<String, Queue<Integer>> queuesByUrl = new LinkedHashMap<>();
+        for (int i = 0; i < pipelineModels.size(); i++) {
+            CompletableFuture<Response> future = new CompletableFuture<>();
+            futures.add(future);
+            String schemaName = pipelineModels.get(i).getPipelineSchemaName();
+            String bulletUrl = bulletUrls.computeIfAbsent(schemaName, CardinalityEstimationServiceImpl::fetchBulletUrl);
+            if (bulletUrl == null) {
+                future.completeExceptionally(new BulletQueryFailException(new IllegalArgumentException("No Bullet URL for schema " + schemaName)));
+                continue;
+            }
+            queuesByUrl.computeIfAbsent(bulletUrl, url -> new ConcurrentLinkedQueue<>()).add(i);
+        }
 
-            log.info("Bullet query response:\n" + jsonContent);
+        // Each lane sends the queries of one URL one after the other, on the batch threads of the Bullet client,
+        // so the lanes of all URLs run at the same time up to the maximum number of connections
+        BulletHttpClient bulletHttpClient = ServiceFactory.bulletHttpClient();
+        for (Map.Entry<String, Queue<Integer>> urlQueue : queuesByUrl.entrySet()) {
+            Queue<Integer> queue = urlQueue.getValue();
+            int lanes = Math.min(Math.max(1, maxQueriesPerUrl), queue.size());
+            log.info("Sending {} Bullet queries to {}, {} at a time", queue.size(), urlQueue.getKey(), lanes);
+            for (int lane = 0; lane < lanes; lane++) {
+                bulletHttpClient.executeBatch(() -> this.runLane(queue, pipelineModels, futures, batch, deadline));
+            }
+        }
 
-            Map<String, Double> aggregations = this.readAggregations(jsonMapper, jsonContent);
-            return new Response(statusCode, aggregations);
+        ScheduledFuture<?> timeout = bulletHttpClient.schedule(() -> expire(batch, futures, timeoutMillis), timeoutMillis);
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).whenComplete((result, e) -> timeout.cancel(false));
+        return futures;
+    }
 
+    private static String fetchBulletUrl(String schemaName) {
+        try {
+            Schema schema = ServiceFactory.schemaService().fetchByName(schemaName);
+            return schema == null ? null : schema.getSchemaBulletUrl();
         } catch (Exception e) {
-            throw new BulletQueryFailException(e);
+            log.warn("Cannot fetch schema {}", schemaName, e);
+            return null;
         }
     }
 
     /**
-     * Create new HTTP client.
+     * Send the queries of a queue until it is empty, skipping those that are past the deadline.
      */
-    protected HttpClient newHttpClientInstance() {
-        return HttpClientBuilder.create().build();
+    private void runLane(Queue<Integer> queue, List<Pipeline> pipelineModels, List<CompletableFuture<Response>> futures, Batch batch, long deadline) {
+        LANE_BATCH.set(batch);
+        try {
+            Integer index;
+            while ((index = queue.poll()) != null) {
+                CompletableFuture<Response> future = futures.get(index);
+                if (future.isDone() || System.currentTimeMillis() >= deadline) {
+                    continue;
+                }
+                try {
+                    future.complete(this.sendBulletQuery(pipelineModels.get(index)));
+                } catch (BulletQueryFailException e) {
+                    future.completeExceptionally(e);
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(new BulletQueryFailException(e));
+                }
+            }
+        } finally {
+            LANE_BATCH.remove();
+        }
     }
 
     /**
-     * Parse the JSON format of aggregations to a map.
+     * Fail the queries still waiting at the deadline and abort the requests in flight, releasing their connections.
      */
-    protected Map<String, Double> readAggregations(ObjectMapper jsonMapper, String jsonContent) throws JsonParseException, JsonMappingException, IOException {
-        JsonNode jsonObject = jsonMapper.readValue(jsonContent, JsonNode.class);
-
-        String topLevelField = "records";
-
-        if (!jsonObject.hasNonNull(topLevelField)) {
-            throw new IOException("Cannot find field 'records' in the response content.");
-        }
-
-        Iterator<JsonNode> nodes = jsonObject.get(topLevelField).iterator();
-
-        Map<String, Double> result = new HashMap<>();
-
-        while (nodes.hasNext()) {
-            JsonNode elem = nodes.next();
-            Iterator<String> fields = elem.fieldNames();
-            while (fields.hasNext()) {
-                String fieldName = fields.next();
-                result.put(fieldName, elem.get(fieldName).asDouble());
-            }
+    private static void expire(Batch batch, List<CompletableFuture<Response>> futures, long timeoutMillis) {
+        batch.expire();
+        for (CompletableFuture<Response> future : futures) {
+            future.completeExceptionally(new BulletQueryFailException(new TimeoutException("No Bullet response within " + timeoutMillis + " ms")));
         }
+    }
 
-        return result;
+    /**
+     * Get the HTTP client, shared by all Bullet queries.
+     */
+    protected HttpClient newHttpClientInstance() {
+        return ServiceFactory.bulletHttpClient().getHttpClient();
     }
 
     /**
-     * Read HTTP response content.
+     * Read the aggregations from the records of the response, streaming its content.
      */
-    protected String readResponseContent(HttpResponse response) throws UnsupportedOperationException, IOException {
-        BufferedReader rd =
-                new BufferedReader(
-                        new InputStreamReader(response.getEntity().getContent(), "UTF-8"));
-
-        StringBuffer result = new StringBuffer();
-        String line = null;
-        while ((line = rd.readLine()) != null) {
-            result.append(line);
-            result.append('\n');
+    protected Map<String, Double> readAggregations(HttpResponse response) throws IOException {
+        try (InputStream content = response.getEntity().getContent()) {
+            return BulletResponseParser.readAggregations(content);
         }
-
-        return result.toString();
     }
 }
@@ -4,17 +4,17 @@
 
 package com.yahoo.cubed.service.querybullet;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yahoo.cubed.json.JsonCodec;
 import com.yahoo.cubed.json.NewDatamart;
 import com.yahoo.cubed.json.filter.Filter;
 import com.yahoo.cubed.model.PipelineProjection;
 import com.yahoo.cubed.model.Schema;
 import com.yahoo.cubed.service.ServiceFactory;
+import com.yahoo.cubed.service.bullet.BulletResponseParser;
 import com.yahoo.cubed.service.bullet.query.BulletQuery;
 import com.yahoo.cubed.service.bullet.query.BulletQueryFailException;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.util.List;
 
 import com.yahoo.cubed.util.Utils;
@@ -24,7 +24,7 @@ import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
 
 /**
  * Implementation of querying bullet.
@@ -34,8 +34,7 @@ public class QueryBulletServiceImpl implements QueryBulletService {
     @Override
     public ResponseJson sendBulletQueryJson(String jsonRequest) throws BulletQueryFailException {
         try {
-            ObjectMapper jsonMapper = new ObjectMapper();
-            NewDatamart datamart = jsonMapper.readValue(jsonRequest, NewDatamart.class);
+            NewDatamart datamart = JsonCodec.NEW_DATAMART_READER.readValue(jsonRequest);
             List<PipelineProjection> projections = Utils.buildProjections(datamart.getProjections(), true);
             String filterJson = Filter.toJson(datamart.getFilter());
 
@@ -43,7 +42,7 @@ public class QueryBulletServiceImpl implements QueryBulletService {
 
             // build http post body
             BulletQuery queryBody = BulletQuery.createPreviewBulletQueryInstance(projections, filterJson);
-            String postBodyJson = jsonMapper.writeValueAsString(queryBody);
+            String postBodyJson = JsonCodec.BULLET_QUERY_WRITER.writeValueAsString(queryBody);
 
             HttpClient httpClient = this.newHttpClientInstance();
 
@@ -51,51 +50,46 @@ public class QueryBulletServiceImpl implements QueryBulletService {
             request.setHeader("Accept", "application/json");
             request.setHeader("Content-type", "text/plain");
 
-            log.info("Bullet query request body:\n" + postBodyJson);
+            log.info("Bullet query request body:\n{}", BulletResponseParser.abbreviate(postBodyJson));
 
             request.setEntity(new StringEntity(postBodyJson));
 
             HttpResponse response = httpClient.execute(request);
 
-            int statusCode = response.getStatusLine().getStatusCode();
+            try {
+                int statusCode = response.getStatusLine().getStatusCode();
 
-            if (statusCode != HttpStatus.SC_OK) {
-                return new ResponseJson(statusCode);
-            }
-
-            String jsonContent = this.readResponseContent(response);
+                if (statusCode != HttpStatus.SC_OK) {
+                    return new ResponseJson(statusCode);
+                }
 
-            log.info("Bullet query response:\n" + jsonContent);
+                String jsonContent = this.readRecords(response);
 
-            return new ResponseJson(statusCode, jsonContent);
+                log.info("Bullet query records:\n{}", BulletResponseParser.abbreviate(jsonContent));
 
+                return new ResponseJson(statusCode, jsonContent);
+            } finally {
+                // Release the connection back to the pool
+                EntityUtils.consumeQuietly(response.getEntity());
+            }
         } catch (Exception e) {
             throw new BulletQueryFailException(e);
         }
     }
 
     /**
-     * Create new HTTP client.
+     * Get the HTTP client, shared by all Bullet queries.
      */
     protected HttpClient newHttpClientInstance() {
-        return HttpClientBuilder.create().build();
+        return ServiceFactory.bulletHttpClient().getHttpClient();
     }
 
     /**
-     * Read HTTP response content.
+     * Copy the records of the response, streaming its content.
      */
-    private String readResponseContent(HttpResponse response) throws UnsupportedOperationException, IOException {
-        BufferedReader rd =
-                new BufferedReader(
-                        new InputStreamReader(response.getEntity().getContent(), "UTF-8"));
-
-        StringBuffer result = new StringBuffer();
-        String line = null;
-        while ((line = rd.readLine()) != null) {
-            result.append(line);
-            result.append('\n');
+    private String readRecords(HttpResponse response) throws IOException {
+        try (InputStream content = response.getEntity().getContent()) {
+            return BulletResponseParser.readRecords(content);
         }
-
-        return result.toString();
     }
 }
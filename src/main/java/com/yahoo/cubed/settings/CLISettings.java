@@ -85,6 +85,102 @@ public class CLISettings {
     @Parameter(names = "--hive-jdbc-url", description = "Hive JDBC URL.")
     public static String HIVE_JDBC_URL = "jdbc:hive2://hive.cubed.com:8080/default";
 
+    /** Maximum number of funnel queries running on Hive at the same time. */
+    @Parameter(names = "--hive-max-connections", description = "Maximum number of funnel queries running on Hive at the same time.")
+    public static int HIVE_MAX_CONNECTIONS = 20;
+
+    /** Seconds a funnel query waits for a free Hive connection. */
+    @Parameter(names = "--hive-acquire-timeout", description = "Seconds a funnel query waits for a free Hive connection.")
+    public static int HIVE_ACQUIRE_TIMEOUT = 300;
+
+    /** Number of asynchronous funnel queries running at the same time. */
+    @Parameter(names = "--funnel-query-threads", description = "Number of asynchronous funnel queries running at the same time.")
+    public static int FUNNEL_QUERY_THREADS = 20;
+
+    /** Number of asynchronous funnel queries waiting to run before new ones are rejected. */
+    @Parameter(names = "--funnel-query-queue-size", description = "Number of asynchronous funnel queries waiting to run before new ones are rejected.")
+    public static int FUNNEL_QUERY_QUEUE_SIZE = 100;
+
+    /** Minutes the results of a finished asynchronous funnel query are kept. */
+    @Parameter(names = "--funnel-query-retention", description = "Minutes the results of a finished asynchronous funnel query are kept.")
+    public static int FUNNEL_QUERY_RETENTION = 60;
+
+    /** Maximum number of database connections. */
+    @Parameter(names = "--db-pool-max-active", description = "Maximum number of database connections.")
+    public static int DB_POOL_MAX_ACTIVE = 20;
+
+    /** Maximum number of idle database connections. */
+    @Parameter(names = "--db-pool-max-idle", description = "Maximum number of idle database connections.")
+    public static int DB_POOL_MAX_IDLE = 10;
+
+    /** Minimum number of idle database connections. */
+    @Parameter(names = "--db-pool-min-idle", description = "Minimum number of idle database connections.")
+    public static int DB_POOL_MIN_IDLE = 2;
+
+    /** Milliseconds to wait for a free database connection. */
+    @Parameter(names = "--db-pool-max-wait", description = "Milliseconds to wait for a free database connection.")
+    public static long DB_POOL_MAX_WAIT = 10000;
+
+    /** Query validating database connections, empty to disable validation. */
+    @Parameter(names = "--db-pool-validation-query", description = "Query validating database connections, empty to disable validation.")
+    public static String DB_POOL_VALIDATION_QUERY = "SELECT 1";
+
+    /** Seconds after which a borrowed database connection is reclaimed and logged as leaked, 0 to disable. */
+    @Parameter(names = "--db-pool-abandoned-timeout", description = "Seconds after which a borrowed database connection is reclaimed and logged as leaked, 0 to disable.")
+    public static int DB_POOL_ABANDONED_TIMEOUT = 300;
+
+    /** Number of writes in a unit of work sent to the database together. */
+    @Parameter(names = "--db-batch-size", description = "Number of writes in a unit of work sent to the database together.")
+    public static int DB_BATCH_SIZE = 50;
+
+    /** Number of pipeline launch and stop scripts running at the same time, 0 for twice the number of cores. */
+    @Parameter(names = "--command-threads", description = "Number of pipeline launch and stop scripts running at the same time, 0 for twice the number of cores.")
+    public static int COMMAND_THREADS = 0;
+
+    /** Seconds a pipeline launch script may run before it is killed. */
+    @Parameter(names = "--launch-timeout", description = "Seconds a pipeline launch script may run before it is killed.")
+    public static long LAUNCH_TIMEOUT = 90;
+
+    /** Seconds a pipeline stop script may run before it is killed. */
+    @Parameter(names = "--stop-timeout", description = "Seconds a pipeline stop script may run before it is killed.")
+    public static long STOP_TIMEOUT = 90;
+
+    /** Seconds to wait for running pipeline scripts on shutdown. */
+    @Parameter(names = "--command-shutdown-timeout", description = "Seconds to wait for running pipeline scripts on shutdown.")
+    public static int COMMAND_SHUTDOWN_TIMEOUT = 120;
+
+    /** Number of data marts relaunched at the same time. */
+    @Parameter(names = "--relaunch-threads", description = "Number of data marts relaunched at the same time.")
+    public static int RELAUNCH_THREADS = 10;
+
+    /** Number of attempts to relaunch a data mart before reporting it as failed. */
+    @Parameter(names = "--relaunch-max-attempts", description = "Number of attempts to relaunch a data mart before reporting it as failed.")
+    public static int RELAUNCH_MAX_ATTEMPTS = 3;
+
+    /** Seconds to wait before retrying a failed data mart relaunch. */
+    @Parameter(names = "--relaunch-retry-delay", description = "Seconds to wait before retrying a failed data mart relaunch.")
+    public static int RELAUNCH_RETRY_DELAY = 10;
+
+    /** Maximum number of funnel query result rows cached in memory, 0 disables the cache. */
+    @Parameter(names = "--funnel-cache-max-results", description = "Maximum number of funnel query result rows cached in memory, 0 disables the cache.")
+    public static long FUNNEL_CACHE_MAX_RESULTS = 100000;
+
+    /** Minutes funnel query results are cached while their date range is not settled. */
+    @Parameter(names = "--funnel-cache-ttl", description = "Minutes funnel query results are cached while their date range is not settled.")
+    public static int FUNNEL_CACHE_TTL = 60;
+
+    /** Days after the end of a funnel query date range after which its data does not change. */
+    @Parameter(names = "--funnel-cache-settled-days", description = "Days after the end of a funnel query date range after which its data does not change.")
+    public static int FUNNEL_CACHE_SETTLED_DAYS = 2;
+
+    /** Directory where funnel query results evicted from memory are spilled, empty to disable. */
+    @Parameter(names = "--funnel-cache-spill-dir", description = "Directory where funnel query results evicted from memory are spilled, empty to disable.")
+    public static String FUNNEL_CACHE_SPILL_DIR = "";
+
+    /** Maximum number of funnel query results spilled to disk. */
+    @Parameter(names = "--funnel-cache-spill-max-files", description = "Maximum number of funnel query results spilled to disk.")
+    public static int FUNNEL_CACHE_SPILL_MAX_FILES = 1000;
+
     /** Oozie URL. */
     @Parameter(names = "--oozie-url", description = "Oozie URL.")
     public static String OOZIE_URL = "https://oozie.cubed.com:8080/oozie";
@@ -125,6 +221,22 @@ public class CLISettings {
     @Parameter(names = "--template-output-folder", description = "Datamart and funnel template output folder.")
     public static String TEMPLATE_OUTPUT_FOLDER = "/tmp";
 
+    /** Number of pipeline files rendered at the same time, 0 for the number of cores. */
+    @Parameter(names = "--template-threads", description = "Number of pipeline files rendered at the same time, 0 for the number of cores.")
+    public static int TEMPLATE_THREADS = 0;
+
+    /** Megabytes of rendered pipeline files kept for reuse, 0 renders every file. */
+    @Parameter(names = "--artifact-store-max-size", description = "Megabytes of rendered pipeline files kept for reuse, 0 renders every file.")
+    public static long ARTIFACT_STORE_MAX_SIZE = 1024;
+
+    /** Hours after which generated pipeline folders and unused rendered files are deleted. */
+    @Parameter(names = "--artifact-max-age", description = "Hours after which generated pipeline folders and unused rendered files are deleted.")
+    public static long ARTIFACT_MAX_AGE = 24;
+
+    /** Compression level of downloaded zip files, from 0 (stored) to 9, -1 for the default level. */
+    @Parameter(names = "--download-compression-level", description = "Compression level of downloaded zip files, from 0 (stored) to 9, -1 for the default level.")
+    public static int DOWNLOAD_COMPRESSION_LEVEL = -1;
+
     /** Email to recieve pipeline failures. */
     @Parameter(names = "--pipeline-email", description = "Email to recieve pipeline failures.")
     public static String PIPELINE_EMAIL = "this-email-does-not-exist@cubed.com";
@@ -137,6 +249,34 @@ public class CLISettings {
     @Parameter(names = "--bullet-query-duration", description = "Bullet query Duration in Seconds.")
     public static int BULLET_QUERY_DURATION = 15;
 
+    /** Maximum number of open connections to Bullet. */
+    @Parameter(names = "--bullet-max-connections", description = "Maximum number of open connections to Bullet.")
+    public static int BULLET_MAX_CONNECTIONS = 40;
+
+    /** Maximum number of open connections to one Bullet URL. */
+    @Parameter(names = "--bullet-max-connections-per-route", description = "Maximum number of open connections to one Bullet URL.")
+    public static int BULLET_MAX_CONNECTIONS_PER_ROUTE = 10;
+
+    /** Milliseconds to wait for a connection to Bullet. */
+    @Parameter(names = "--bullet-connect-timeout", description = "Milliseconds to wait for a connection to Bullet.")
+    public static int BULLET_CONNECT_TIMEOUT = 5000;
+
+    /** Milliseconds to wait for data from Bullet, longer than the Bullet query duration. */
+    @Parameter(names = "--bullet-read-timeout", description = "Milliseconds to wait for data from Bullet, longer than the Bullet query duration.")
+    public static int BULLET_READ_TIMEOUT = 60000;
+
+    /** Seconds an idle connection to Bullet is kept open. */
+    @Parameter(names = "--bullet-keep-alive", description = "Seconds an idle connection to Bullet is kept open.")
+    public static int BULLET_KEEP_ALIVE = 30;
+
+    /** Seconds to wait for the Bullet queries of a bulk cardinality check. */
+    @Parameter(names = "--bullet-batch-timeout", description = "Seconds to wait for the Bullet queries of a bulk cardinality check.")
+    public static int BULLET_BATCH_TIMEOUT = 120;
+
+    /** Minutes cardinality estimates of identical pipelines are reused, 0 disables the cache. */
+    @Parameter(names = "--cardinality-cache-ttl", description = "Minutes cardinality estimates of identical pipelines are reused, 0 disables the cache.")
+    public static int CARDINALITY_CACHE_TTL = 10;
+
     /**
      * Print all the settings.
      */
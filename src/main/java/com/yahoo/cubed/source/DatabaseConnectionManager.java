@@ -4,23 +4,93 @@
 
 package com.yahoo.cubed.source;
 
+import com.yahoo.cubed.settings.CLISettings;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.dbcp.BasicDataSource;
+
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.sql.DataSource;
 
 /**
- * Database connection manager.
+ * Database connection manager, all connections come from one pool shared with Hibernate.
  */
+@Slf4j
 public class DatabaseConnectionManager {
+    private static BasicDataSource dataSource;
+
+    /**
+     * Get the pooled data source, created on first use from the loaded configuration.
+     * @throws IllegalStateException if the database configuration is not loaded
+     */
+    public static synchronized DataSource getDataSource() {
+        if (dataSource == null) {
+            if (ConfigurationLoader.getProperty(ConfigurationLoader.DATABASEURL) == null) {
+                throw new IllegalStateException("Database configuration is not loaded");
+            }
+            dataSource = createDataSource();
+        }
+        return dataSource;
+    }
+
+    private static BasicDataSource createDataSource() {
+        BasicDataSource pool = new BasicDataSource();
+        pool.setDriverClassName(ConfigurationLoader.getProperty(ConfigurationLoader.DRIVER));
+        pool.setUrl(ConfigurationLoader.getProperty(ConfigurationLoader.DATABASEURL));
+        pool.setUsername(ConfigurationLoader.getProperty(ConfigurationLoader.USERNAME));
+        pool.setPassword(ConfigurationLoader.getProperty(ConfigurationLoader.PASSWORD));
+        // Sizing
+        pool.setMaxActive(CLISettings.DB_POOL_MAX_ACTIVE);
+        pool.setMaxIdle(CLISettings.DB_POOL_MAX_IDLE);
+        pool.setMinIdle(CLISettings.DB_POOL_MIN_IDLE);
+        pool.setInitialSize(CLISettings.DB_POOL_MIN_IDLE);
+        pool.setMaxWait(CLISettings.DB_POOL_MAX_WAIT);
+        // Validation of borrowed and idle connections
+        if (!CLISettings.DB_POOL_VALIDATION_QUERY.isEmpty()) {
+            pool.setValidationQuery(CLISettings.DB_POOL_VALIDATION_QUERY);
+            pool.setTestOnBorrow(true);
+            pool.setTestWhileIdle(true);
+            pool.setTimeBetweenEvictionRunsMillis(60000);
+        }
+        // Leak detection
+        if (CLISettings.DB_POOL_ABANDONED_TIMEOUT > 0) {
+            pool.setRemoveAbandoned(true);
+            pool.setRemoveAbandonedTimeout(CLISettings.DB_POOL_ABANDONED_TIMEOUT);
+            pool.setLogAbandoned(true);
+        }
+        log.info("Database connection pool with up to {} connections", CLISettings.DB_POOL_MAX_ACTIVE);
+        return pool;
+    }
+
     /**
-     * Create a database connection.
+     * Borrow a database connection, closing it returns it to the pool.
      */
     public static Connection createConnection() throws ClassNotFoundException, SQLException {
-        Class.forName(
-                ConfigurationLoader.getProperty(ConfigurationLoader.DRIVER));
-        return DriverManager.getConnection(
-                ConfigurationLoader.getProperty(ConfigurationLoader.DATABASEURL),
-                ConfigurationLoader.getProperty(ConfigurationLoader.USERNAME),
-                ConfigurationLoader.getProperty(ConfigurationLoader.PASSWORD));
+        return getDataSource().getConnection();
+    }
+
+    /**
+     * Get connection pool metrics.
+     */
+    public static synchronized Map<String, Long> getPoolStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        if (dataSource != null) {
+            stats.put("maxActive", (long) dataSource.getMaxActive());
+            stats.put("active", (long) dataSource.getNumActive());
+            stats.put("idle", (long) dataSource.getNumIdle());
+        }
+        return stats;
+    }
+
+    /**
+     * Close the pool, the next connection creates a new one.
+     */
+    public static synchronized void close() throws SQLException {
+        if (dataSource != null) {
+            dataSource.close();
+            dataSource = null;
+        }
     }
 }
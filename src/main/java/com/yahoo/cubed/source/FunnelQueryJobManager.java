@@ -0,0 +1,235 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.source;
+
+import com.yahoo.cubed.json.FunnelQueryJob;
+import com.yahoo.cubed.json.FunnelQueryResult;
+import com.yahoo.cubed.util.Utils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs funnel queries in the background on a bounded executor, results are kept for polling.
+ */
+@Slf4j
+public class FunnelQueryJobManager {
+    /**
+     * Runs a query to completion.
+     */
+    public interface QueryRunner {
+        /**
+         * Run the query.
+         * @param queryId id of the query, used for cancellation
+         * @param query the query string
+         * @return the query results
+         */
+        List<FunnelQueryResult> run(String queryId, String query) throws Exception;
+    }
+
+    /**
+     * Cancels a running query.
+     */
+    public interface QueryCanceller {
+        /**
+         * Cancel the query.
+         * @param queryId id of the query
+         * @return true if the query got cancelled
+         */
+        boolean cancel(String queryId);
+    }
+
+    private final QueryRunner runner;
+    private final QueryCanceller canceller;
+    private final ThreadPoolExecutor executor;
+    private final long retentionMillis;
+    private final Map<String, FunnelQueryJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, Future<?>> futures = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     * @param threads number of queries running at the same time
+     * @param queueSize number of queries waiting for a worker before submissions are rejected
+     * @param retentionMinutes how long finished jobs are kept
+     * @param runner query runner
+     * @param canceller query canceller
+     */
+    public FunnelQueryJobManager(int threads, int queueSize, long retentionMinutes, QueryRunner runner, QueryCanceller canceller) {
+        this.runner = runner;
+        this.canceller = canceller;
+        this.retentionMillis = TimeUnit.MINUTES.toMillis(retentionMinutes);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), Utils.daemonThreadFactory("funnel-query-"));
+    }
+
+    /**
+     * Submit a query.
+     * @param query the query string
+     * @return the queued job
+     * @throws RejectedExecutionException if too many queries are waiting
+     */
+    public FunnelQueryJob submit(String query) {
+        return submit(query, runner);
+    }
+
+    /**
+     * Submit a query to run with a specific runner.
+     * @param query the query string
+     * @param queryRunner runner for this query
+     * @return the queued job
+     * @throws RejectedExecutionException if too many queries are waiting
+     */
+    public FunnelQueryJob submit(String query, QueryRunner queryRunner) {
+        evictExpired();
+        FunnelQueryJob job = new FunnelQueryJob(UUID.randomUUID().toString());
+        // Registered before it is submitted, so that a job finishing at once still removes its future
+        FutureTask<Void> task = new FutureTask<>(() -> run(job, query, queryRunner), null);
+        jobs.put(job.getQueryId(), job);
+        futures.put(job.getQueryId(), task);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getQueryId());
+            futures.remove(job.getQueryId());
+            throw new RejectedExecutionException("Too many funnel queries are waiting, try again later", e);
+        }
+        log.info("Submitted funnel query {}", job.getQueryId());
+        return job;
+    }
+
+    /**
+     * Get a job, null if unknown or expired.
+     */
+    public FunnelQueryJob get(String queryId) {
+        return jobs.get(queryId);
+    }
+
+    /**
+     * Whether a job got cancelled. Runners check it once their query can be cancelled, right before executing it,
+     * so that a job cancelled while it was starting does not run.
+     * @return false if the job is unknown
+     */
+    public boolean isCancelled(String queryId) {
+        FunnelQueryJob job = jobs.get(queryId);
+        if (job == null) {
+            return false;
+        }
+        synchronized (job) {
+            return job.getStatus() == FunnelQueryJob.Status.CANCELLED;
+        }
+    }
+
+    /**
+     * Cancel a queued or running job.
+     * A running query is cancelled if it started executing, otherwise its runner finds it cancelled before executing.
+     * @return false if the job is unknown or already done
+     */
+    public boolean cancel(String queryId) {
+        FunnelQueryJob job = jobs.get(queryId);
+        if (job == null) {
+            return false;
+        }
+        boolean running;
+        synchronized (job) {
+            if (job.getStatus().isDone()) {
+                return false;
+            }
+            running = job.getStatus() == FunnelQueryJob.Status.RUNNING;
+            finish(job, FunnelQueryJob.Status.CANCELLED, null, null);
+        }
+        if (running) {
+            canceller.cancel(queryId);
+        }
+        Future<?> future = futures.remove(queryId);
+        if (future != null) {
+            future.cancel(true);
+        }
+        log.info("Cancelled funnel query {}", queryId);
+        return true;
+    }
+
+    /**
+     * Number of running queries.
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Number of queries waiting for a worker.
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Stop accepting queries and interrupt the running ones.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(FunnelQueryJob job, String query, QueryRunner queryRunner) {
+        synchronized (job) {
+            if (job.getStatus() != FunnelQueryJob.Status.QUEUED) {
+                return;
+            }
+            job.setStatus(FunnelQueryJob.Status.RUNNING);
+            job.setStartTime(System.currentTimeMillis());
+        }
+        try {
+            List<FunnelQueryResult> results = queryRunner.run(job.getQueryId(), query);
+            synchronized (job) {
+                if (job.getStatus() == FunnelQueryJob.Status.RUNNING) {
+                    finish(job, FunnelQueryJob.Status.SUCCEEDED, results, null);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Funnel query {} failed", job.getQueryId(), e);
+            synchronized (job) {
+                if (job.getStatus() == FunnelQueryJob.Status.RUNNING) {
+                    finish(job, FunnelQueryJob.Status.FAILED, null, e.getMessage());
+                }
+            }
+        } finally {
+            futures.remove(job.getQueryId());
+        }
+    }
+
+    private static void finish(FunnelQueryJob job, FunnelQueryJob.Status status, List<FunnelQueryResult> results, String error) {
+        job.setResults(results);
+        job.setError(error);
+        job.setEndTime(System.currentTimeMillis());
+        job.setStatus(status);
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<FunnelQueryJob> iterator = jobs.values().iterator();
+        while (iterator.hasNext()) {
+            FunnelQueryJob job = iterator.next();
+            if (job.getStatus().isDone() && job.getEndTime() != null && now - job.getEndTime() > retentionMillis) {
+                iterator.remove();
+                futures.remove(job.getQueryId());
+            }
+        }
+    }
+
+    /**
+     * Number of futures of queued and running jobs.
+     */
+    int getFutureCount() {
+        return futures.size();
+    }
+}
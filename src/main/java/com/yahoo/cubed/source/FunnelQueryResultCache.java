@@ -0,0 +1,332 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.source;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yahoo.cubed.json.FunnelQueryResult;
+import com.yahoo.cubed.json.FunnelQueryResultAggregator;
+import com.yahoo.cubed.util.Utils;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of funnel query results keyed by a hash of the normalized HQL.
+ * Results of queries whose date range is settled never expire, the others expire after the TTL.
+ * Entries evicted for space are spilled to disk if a spill directory is configured.
+ */
+@Slf4j
+public class FunnelQueryResultCache {
+    private static final String SPILL_FILE_SUFFIX = ".json";
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern(Utils.QUERY_DATE_FORMAT);
+
+    /**
+     * Cached results.
+     */
+    private static class Entry {
+        private final FunnelQueryResultAggregator results;
+        private final long createdAt;
+        private final boolean immutable;
+
+        private Entry(FunnelQueryResultAggregator results, long createdAt, boolean immutable) {
+            this.results = results;
+            this.createdAt = createdAt;
+            this.immutable = immutable;
+        }
+    }
+
+    /**
+     * On-disk format of a spilled entry.
+     */
+    @Getter
+    @Setter
+    public static class SpilledEntry {
+        /** Creation time in milliseconds. */
+        private long createdAt;
+        /** Whether the entry never expires. */
+        private boolean immutable;
+        /** Summed up results. */
+        private List<FunnelQueryResult> results;
+    }
+
+    private final long maxResults;
+    private final long ttlMillis;
+    private final int settledDays;
+    private final File spillDirectory;
+    private final int maxSpillFiles;
+    private final Clock clock;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /** Entries in access order, guarded by this. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedResults = 0;
+    /** Guards the spill directory, so that memory hits never wait for the disk. */
+    private final Object spillLock = new Object();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong spills = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param maxResults maximum number of result rows kept in memory, 0 disables caching
+     * @param ttlMinutes time to live of results whose date range is not settled
+     * @param settledDays days after the end of the date range after which results do not change any more
+     * @param spillDirectory directory for entries evicted from memory, null to disable spilling
+     * @param maxSpillFiles maximum number of spilled entries
+     * @param clock clock
+     */
+    public FunnelQueryResultCache(long maxResults, long ttlMinutes, int settledDays, File spillDirectory, int maxSpillFiles, Clock clock) {
+        this.maxResults = maxResults;
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(ttlMinutes);
+        this.settledDays = settledDays;
+        this.spillDirectory = spillDirectory;
+        this.maxSpillFiles = maxSpillFiles;
+        this.clock = clock;
+        if (spillDirectory != null && !spillDirectory.isDirectory() && !spillDirectory.mkdirs()) {
+            throw new IllegalArgumentException("Could not create funnel cache spill directory " + spillDirectory);
+        }
+    }
+
+    /**
+     * Normalize the HQL, so that formatting differences do not change the cache key.
+     * Whitespace runs are collapsed outside of quoted literals and identifiers, quoted text is kept as is.
+     */
+    public static String normalize(String hql) {
+        StringBuilder normalized = new StringBuilder(hql.length());
+        char quote = 0;
+        boolean space = false;
+        for (int i = 0; i < hql.length(); i++) {
+            char c = hql.charAt(i);
+            if (quote != 0) {
+                normalized.append(c);
+                if (c == '\\' && i + 1 < hql.length()) {
+                    normalized.append(hql.charAt(++i));
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (Character.isWhitespace(c)) {
+                space = true;
+            } else {
+                if (space && normalized.length() > 0) {
+                    normalized.append(' ');
+                }
+                space = false;
+                if (c == '\'' || c == '"' || c == '`') {
+                    quote = c;
+                }
+                normalized.append(c);
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Cache key of a query.
+     */
+    public static String key(String hql) {
+        return Utils.sha256Hex(normalize(hql));
+    }
+
+    /**
+     * Get the cached results of a query.
+     * @param hql the query
+     * @return the results, null on miss
+     */
+    public FunnelQueryResultAggregator get(String hql) {
+        String key = key(hql);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (!isExpired(entry)) {
+                    hits.incrementAndGet();
+                    return entry.results;
+                }
+                remove(key);
+            }
+        }
+        Entry spilled = readSpilled(key);
+        if (spilled != null) {
+            diskHits.incrementAndGet();
+            Map<String, Entry> evicted;
+            synchronized (this) {
+                evicted = insert(key, spilled);
+            }
+            spill(evicted);
+            return spilled.results;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Cache the results of a query.
+     * @param hql the query
+     * @param results the complete results, must not be modified afterwards
+     * @param endDate exclusive end date of the query, in {@link Utils#QUERY_DATE_FORMAT}
+     */
+    public void put(String hql, FunnelQueryResultAggregator results, String endDate) {
+        Entry entry = new Entry(results, clock.millis(), isSettled(endDate));
+        if (weight(entry) > maxResults) {
+            log.info("Not caching funnel results of {} rows", entry.results.size());
+            return;
+        }
+        Map<String, Entry> evicted;
+        synchronized (this) {
+            evicted = insert(key(hql), entry);
+        }
+        spill(evicted);
+    }
+
+    /**
+     * Whether the data of a date range does not change any more.
+     */
+    boolean isSettled(String endDate) {
+        try {
+            LocalDate end = LocalDate.parse(endDate, DATE_FORMATTER);
+            return !LocalDate.now(clock).isBefore(end.plusDays(settledDays));
+        } catch (DateTimeParseException | NullPointerException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get hit/miss and size metrics.
+     */
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.get());
+        stats.put("diskHits", diskHits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        stats.put("spills", spills.get());
+        stats.put("entries", (long) entries.size());
+        stats.put("results", cachedResults);
+        return stats;
+    }
+
+    /**
+     * Memory weight of an entry, counted in result rows plus one so that empty results are bounded too.
+     */
+    private static long weight(Entry entry) {
+        return entry.results.size() + 1L;
+    }
+
+    private boolean isExpired(Entry entry) {
+        return !entry.immutable && clock.millis() - entry.createdAt > ttlMillis;
+    }
+
+    /**
+     * Insert an entry and evict the least recently used entries, returning those to spill once the lock is released.
+     */
+    private Map<String, Entry> insert(String key, Entry entry) {
+        remove(key);
+        entries.put(key, entry);
+        cachedResults += weight(entry);
+        Map<String, Entry> evicted = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (cachedResults > maxResults && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            iterator.remove();
+            cachedResults -= weight(eldest.getValue());
+            evictions.incrementAndGet();
+            if (!isExpired(eldest.getValue())) {
+                evicted.put(eldest.getKey(), eldest.getValue());
+            }
+        }
+        return evicted;
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            cachedResults -= weight(removed);
+        }
+    }
+
+    private void spill(Map<String, Entry> evicted) {
+        if (spillDirectory == null || evicted.isEmpty()) {
+            return;
+        }
+        synchronized (spillLock) {
+            for (Map.Entry<String, Entry> entry : evicted.entrySet()) {
+                spill(entry.getKey(), entry.getValue());
+            }
+            trimSpillDirectory();
+        }
+    }
+
+    private void spill(String key, Entry entry) {
+        SpilledEntry spilled = new SpilledEntry();
+        spilled.setCreatedAt(entry.createdAt);
+        spilled.setImmutable(entry.immutable);
+        spilled.setResults(entry.results.toResults());
+        try {
+            mapper.writeValue(new File(spillDirectory, key + SPILL_FILE_SUFFIX), spilled);
+            spills.incrementAndGet();
+        } catch (IOException e) {
+            log.warn("Could not spill funnel results {}", key, e);
+        }
+    }
+
+    private void trimSpillDirectory() {
+        File[] files = spillDirectory.listFiles((dir, name) -> name.endsWith(SPILL_FILE_SUFFIX));
+        if (files == null || files.length <= maxSpillFiles) {
+            return;
+        }
+        // Drop the oldest spilled entries
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length - maxSpillFiles; i++) {
+            if (!files[i].delete()) {
+                log.warn("Could not delete spilled funnel results {}", files[i]);
+            }
+        }
+    }
+
+    private Entry readSpilled(String key) {
+        if (spillDirectory == null) {
+            return null;
+        }
+        synchronized (spillLock) {
+            return readSpilled(new File(spillDirectory, key + SPILL_FILE_SUFFIX), key);
+        }
+    }
+
+    private Entry readSpilled(File file, String key) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            SpilledEntry spilled = mapper.readValue(file, SpilledEntry.class);
+            Entry entry = new Entry(FunnelQueryResultAggregator.fromResults(spilled.getResults()), spilled.getCreatedAt(), spilled.isImmutable());
+            return isExpired(entry) ? null : entry;
+        } catch (IOException e) {
+            log.warn("Could not read spilled funnel results {}", key, e);
+            return null;
+        } finally {
+            // Either promoted back to memory or stale
+            if (!file.delete()) {
+                log.warn("Could not delete spilled funnel results {}", file);
+            }
+        }
+    }
+}
@@ -11,8 +11,10 @@ import com.yahoo.cubed.model.PipelineProjection;
 import com.yahoo.cubed.model.PipelineProjectionVM;
 import com.yahoo.cubed.model.Schema;
 import com.yahoo.cubed.model.FunnelGroup;
+import com.yahoo.cubed.settings.CLISettings;
 import org.hibernate.SessionFactory;
 import org.hibernate.cfg.Configuration;
+import org.hibernate.cfg.Environment;
 import org.hibernate.service.ServiceRegistry;
 import org.hibernate.service.ServiceRegistryBuilder;
 
@@ -38,15 +40,15 @@ public class HibernateSessionFactoryManager {
             cfg.addAnnotatedClass(Schema.class);
             cfg.addAnnotatedClass(FunnelGroup.class);
 
-            // add connection
-            cfg.setProperty("hibernate.connection.driver_class", ConfigurationLoader.getProperty(ConfigurationLoader.DRIVER));
-            cfg.setProperty("hibernate.connection.url", ConfigurationLoader.getProperty(ConfigurationLoader.DATABASEURL));
-            cfg.setProperty("hibernate.connection.username", ConfigurationLoader.getProperty(ConfigurationLoader.USERNAME));
-            cfg.setProperty("hibernate.connection.password", ConfigurationLoader.getProperty(ConfigurationLoader.PASSWORD));
             cfg.setProperty("hibernate.dialect", ConfigurationLoader.getProperty(ConfigurationLoader.DIALECT));
-            cfg.setProperty("hibernate.connection.autoReconnect", "true");
+            // send the writes of a unit of work in JDBC batches
+            cfg.setProperty(Environment.STATEMENT_BATCH_SIZE, Integer.toString(CLISettings.DB_BATCH_SIZE));
 
-            ServiceRegistry serviceRegistry = new ServiceRegistryBuilder().applySettings(cfg.getProperties()).buildServiceRegistry();
+            // add connection, from the shared pool
+            ServiceRegistry serviceRegistry = new ServiceRegistryBuilder()
+                    .applySettings(cfg.getProperties())
+                    .applySetting(Environment.DATASOURCE, DatabaseConnectionManager.getDataSource())
+                    .buildServiceRegistry();
 
             sessionFactory = cfg.buildSessionFactory(serviceRegistry);
         }
@@ -19,11 +19,16 @@ import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
 
 import static java.util.Collections.singletonList;
 
 /**
  * Hive Connection manager.
+ * Queries run on their own statement, borrowed from a bounded pool of Hive connections.
  */
 @Slf4j
 public class HiveConnectionManager {
@@ -47,6 +52,18 @@ public class HiveConnectionManager {
      * custom hive settings.
      */
     public static final String HIVE_SETTING = "hive-setting";
+    /**
+     * maximum number of concurrent hive connections.
+     */
+    public static final String HIVE_MAX_CONNECTIONS = "hive-max-connections";
+    /**
+     * seconds to wait for a free hive connection.
+     */
+    public static final String HIVE_ACQUIRE_TIMEOUT = "hive-acquire-timeout";
+    /**
+     * seconds allowed for the connection health check.
+     */
+    public static final String HIVE_VALIDATION_TIMEOUT = "hive-validation-timeout";
     /**
      * Hive driver.
      */
@@ -56,7 +73,10 @@ public class HiveConnectionManager {
      */
     public static final String SETTING_PREFIX = "set ";
 
-    private Statement statement;
+    private HiveConnectionPool pool;
+
+    /** Statements of the running queries by query id, used for cancellation. */
+    private final Map<String, Statement> runningStatements = new ConcurrentHashMap<>();
 
     private final OptionParser parser = new OptionParser() {
         {
@@ -81,6 +101,21 @@ public class HiveConnectionManager {
             acceptsAll(singletonList(HIVE_SETTING), "Settings and their values. Ex: 'hive.execution.engine=mr'")
                     .withRequiredArg()
                     .describedAs("Hive generic settings to use.");
+            acceptsAll(singletonList(HIVE_MAX_CONNECTIONS), "Maximum number of queries running on Hive at the same time.")
+                    .withRequiredArg()
+                    .ofType(Integer.class)
+                    .describedAs("Hive max connections")
+                    .defaultsTo(20);
+            acceptsAll(singletonList(HIVE_ACQUIRE_TIMEOUT), "Seconds a query waits in the queue for a free Hive connection.")
+                    .withRequiredArg()
+                    .ofType(Integer.class)
+                    .describedAs("Hive acquire timeout")
+                    .defaultsTo(300);
+            acceptsAll(singletonList(HIVE_VALIDATION_TIMEOUT), "Seconds allowed for the Hive connection health check.")
+                    .withRequiredArg()
+                    .ofType(Integer.class)
+                    .describedAs("Hive validation timeout")
+                    .defaultsTo(5);
             allowsUnrecognizedOptions();
         }
     };
@@ -92,9 +127,18 @@ public class HiveConnectionManager {
      */
     public boolean setup(String[] arguments) {
         OptionSet options = parser.parse(arguments);
+        close();
         try {
-            statement = setupConnection(options);
-            setHiveSettings(options, statement);
+            // Load the JDBC driver
+            String driver = (String) options.valueOf(HIVE_DRIVER);
+            log.info("Loading JDBC driver: {}", driver);
+            Class.forName(driver);
+            pool = new HiveConnectionPool(
+                () -> setupConnection(options),
+                (Integer) options.valueOf(HIVE_MAX_CONNECTIONS),
+                (Integer) options.valueOf(HIVE_ACQUIRE_TIMEOUT),
+                (Integer) options.valueOf(HIVE_VALIDATION_TIMEOUT));
+            pool.warmUp();
         } catch (ClassNotFoundException | SQLException e) {
             log.error("Could not set up the Hive engine", e);
             return false;
@@ -102,77 +146,185 @@ public class HiveConnectionManager {
         return true;
     }
 
+    /**
+     * Handles funnel result rows as they are read from Hive.
+     */
+    public interface RowHandler {
+        /**
+         * Handle one funnel result.
+         * @param keys the group by values preceding the funnel array
+         * @param values the funnel array as returned by the driver, in the format [123,456]
+         */
+        void handle(List<String> keys, String values);
+    }
+
     /**
      * Execute hive query.
      * @param query
      * @return
      */
     public ArrayList<FunnelQueryResult> execute(String query) {
-        log.info("Running {}: {}", query);
+        return execute(UUID.randomUUID().toString(), query);
+    }
+
+    /**
+     * Execute hive query on a pooled connection, the query can be cancelled through its id.
+     * @param queryId id used to cancel the query
+     * @param query
+     * @return
+     */
+    public ArrayList<FunnelQueryResult> execute(String queryId, String query) {
+        ArrayList<FunnelQueryResult> resultsList = new ArrayList<>();
+        boolean success = execute(queryId, query, (keys, values) -> resultsList.add(toFunnelQueryResult(keys, values)));
+        return success ? resultsList : null;
+    }
+
+    private static FunnelQueryResult toFunnelQueryResult(List<String> keys, String values) {
+        FunnelQueryResult result = new FunnelQueryResult();
+        result.getKeys().addAll(keys);
+        result.getValues().addAll(Arrays.asList(values.substring(1, values.length() - 1).split(",")));
+        return result;
+    }
+
+    /**
+     * Execute hive query on a pooled connection, handing each result row to the handler as it is read.
+     * @param queryId id used to cancel the query
+     * @param query
+     * @param handler row handler
+     * @return false if the query failed
+     */
+    public boolean execute(String queryId, String query, RowHandler handler) {
+        return execute(queryId, query, handler, () -> false);
+    }
+
+    /**
+     * Execute hive query on a pooled connection, handing each result row to the handler as it is read.
+     * The query is not executed if it got cancelled before it could be cancelled through its id.
+     * @param queryId id used to cancel the query
+     * @param query
+     * @param handler row handler
+     * @param cancelled whether the query got cancelled, checked once it can be cancelled through its id
+     * @return false if the query failed or got cancelled
+     */
+    public boolean execute(String queryId, String query, RowHandler handler, BooleanSupplier cancelled) {
+        log.info("Running {}: {}", queryId, query);
+        if (pool == null) {
+            log.error("Hive engine is not set up");
+            return false;
+        }
+        Connection connection = null;
+        boolean broken = false;
         try {
-            String[] queries = query.split(";");
-            for (int i = 0; i < queries.length - 1; i++) {
-                log.info("Executing " + queries[i]);
-                statement.executeQuery(queries[i]);
+            connection = pool.borrow();
+            try (Statement statement = connection.createStatement()) {
+                runningStatements.put(queryId, statement);
+                if (cancelled.getAsBoolean()) {
+                    log.info("Query {} cancelled before it started", queryId);
+                    return false;
+                }
+                execute(statement, query, handler);
+                return true;
+            } finally {
+                runningStatements.remove(queryId);
             }
-            String lastQuery = queries[queries.length - 1];
-            log.info("Executing " + lastQuery);
-            ResultSet result = statement.executeQuery(lastQuery);
+        } catch (SQLException e) {
+            // Do not hand a connection that failed mid query to the next user
+            broken = connection != null;
+            log.error("SQL problem with Hive query: {}\n{}\n{}", query, e);
+        } finally {
+            if (connection != null) {
+                pool.release(connection, broken);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cancel a running query.
+     * @param queryId the id given to execute
+     * @return true if the query was running and got cancelled
+     */
+    public boolean cancel(String queryId) {
+        Statement statement = runningStatements.get(queryId);
+        if (statement == null) {
+            return false;
+        }
+        try {
+            statement.cancel();
+            log.info("Cancelled query {}", queryId);
+            return true;
+        } catch (SQLException e) {
+            log.error("Could not cancel query {}", queryId, e);
+            return false;
+        }
+    }
+
+    /**
+     * Get the connection pool, null before setup.
+     */
+    public HiveConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Release the pooled connections.
+     */
+    public void close() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+
+    private void execute(Statement statement, String query, RowHandler handler) throws SQLException {
+        String[] queries = query.split(";");
+        for (int i = 0; i < queries.length - 1; i++) {
+            log.info("Executing " + queries[i]);
+            statement.executeQuery(queries[i]);
+        }
+        String lastQuery = queries[queries.length - 1];
+        log.info("Executing " + lastQuery);
+        try (ResultSet result = statement.executeQuery(lastQuery)) {
+            // Column types are the same for every row, read them once
             ResultSetMetaData metadata = result.getMetaData();
-            int columns = metadata.getColumnCount();
-            log.info("Finished running query, storing results");
+            int[] types = new int[metadata.getColumnCount()];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = metadata.getColumnType(i + 1);
+                log.info("Column: {}\tType: {}", metadata.getColumnName(i + 1), types[i]);
+            }
+            log.info("Finished running query, reading results");
 
-            ArrayList<FunnelQueryResult> resultsList = new ArrayList();
+            long rows = 0;
             while (result.next()) {
-                addRow(result, metadata, columns, resultsList);
+                handleRow(result, types, handler);
+                rows++;
             }
-            result.close();
-            return resultsList;
-        } catch (SQLException e) {
-            log.error("SQL problem with Hive query: {}\n{}\n{}", query, e);
+            log.info("Read {} rows", rows);
         }
-        return null;
     }
 
-    private void addRow(ResultSet result, ResultSetMetaData metadata, int columns, ArrayList<FunnelQueryResult> storage) throws SQLException {
-        FunnelQueryResult currentResult = new FunnelQueryResult();
-        for (int i = 1; i < columns + 1; i++) {
-            log.info("Iterating over result {}", i);
-            // The name and type getting is being done per row. We should fix it even though Hive gets it only once.
-            String name = metadata.getColumnName(i);
-            int type = metadata.getColumnType(i);
-            if (type == Types.ARRAY) {
-                // JDBC driver does not support fetching arrays, so fetch as a String and then parse.
+    private void handleRow(ResultSet result, int[] types, RowHandler handler) throws SQLException {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] == Types.ARRAY) {
+                // JDBC driver does not support fetching arrays, so fetch as a String and let the handler parse it.
                 // Results are in the format [123,456]
-                String value = result.getString(i);
-                String[] values = value.substring(1, value.length() - 1).split(",");
-                log.info("Found an array with value {} and parsed values {}", value, values);
-                currentResult.getValues().addAll(Arrays.asList(values));
-                storage.add(currentResult);
-                currentResult = new FunnelQueryResult();
-            } else if (type == Types.VARCHAR) {
-                String value = result.getString(i);
-                log.info("Found a string with value {}", value);
-                currentResult.getKeys().add(value);
+                handler.handle(keys, result.getString(i + 1));
+                keys = new ArrayList<>();
+            } else if (types[i] == Types.VARCHAR) {
+                keys.add(result.getString(i + 1));
             }
-            log.info("Column: {}\tType: {}\tValue: {}", name, type, result.getString(i));
         }
     }
 
     /**
-     * Sets up the connection using JDBC.
+     * Sets up a connection using JDBC and applies the hive settings.
      *
      * @param options A {@link joptsimple.OptionSet} object.
-     * @return The created {@link java.sql.Statement} object.
-     * @throws java.lang.ClassNotFoundException if any.
+     * @return The created {@link java.sql.Connection} object.
      * @throws java.sql.SQLException            if any.
      */
-    Statement setupConnection(OptionSet options) throws ClassNotFoundException, SQLException {
-        // Load the JDBC driver
-        String driver = (String) options.valueOf(HIVE_DRIVER);
-        log.info("Loading JDBC driver: {}", driver);
-        Class.forName(driver);
-
+    Connection setupConnection(OptionSet options) throws SQLException {
         // Get the JDBC connector
         String jdbcConnector = (String) options.valueOf(HIVE_JDBC);
 
@@ -182,7 +334,13 @@ public class HiveConnectionManager {
 
         // Start the connection
         Connection connection = DriverManager.getConnection(jdbcConnector, username, password);
-        return connection.createStatement();
+        try (Statement statement = connection.createStatement()) {
+            setHiveSettings(options, statement);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
     }
 
     /**
@@ -190,6 +348,7 @@ public class HiveConnectionManager {
      *
      * @param options   A {@link joptsimple.OptionSet} object.
      * @param statement A {@link java.sql.Statement} to execute the setting updates to.
+     *                  Settings are per session, so they are applied to every pooled connection.
      * @throws java.sql.SQLException if any.
      */
     void setHiveSettings(OptionSet options, Statement statement) throws SQLException {
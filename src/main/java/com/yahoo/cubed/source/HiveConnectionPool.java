@@ -0,0 +1,179 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.source;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pool of Hive connections.
+ * At most maxConnections connections are handed out at a time, other callers wait in a fair queue.
+ */
+@Slf4j
+public class HiveConnectionPool implements AutoCloseable {
+    /**
+     * Creates new Hive connections for the pool.
+     */
+    public interface ConnectionFactory {
+        /**
+         * Open a new connection with all settings applied.
+         */
+        Connection create() throws SQLException;
+    }
+
+    private final ConnectionFactory factory;
+    private final Semaphore permits;
+    private final BlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+    /** Connections handed out and not released yet, each holding one permit. */
+    private final Set<Connection> borrowed = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+    private final int maxConnections;
+    private final long acquireTimeoutSeconds;
+    private final int validationTimeoutSeconds;
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor.
+     * @param factory connection factory
+     * @param maxConnections maximum number of concurrently borrowed connections
+     * @param acquireTimeoutSeconds how long a caller waits in the queue for a connection
+     * @param validationTimeoutSeconds timeout of the health check done on borrow
+     */
+    public HiveConnectionPool(ConnectionFactory factory, int maxConnections, long acquireTimeoutSeconds, int validationTimeoutSeconds) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Hive pool needs at least one connection");
+        }
+        this.factory = factory;
+        this.maxConnections = maxConnections;
+        this.acquireTimeoutSeconds = acquireTimeoutSeconds;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    /**
+     * Open a connection and park it in the pool, so that setup problems show up early.
+     */
+    public void warmUp() throws SQLException {
+        idle.offerFirst(factory.create());
+    }
+
+    /**
+     * Borrow a connection, waiting in the queue up to the acquire timeout.
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Hive connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(acquireTimeoutSeconds, TimeUnit.SECONDS)) {
+                throw new SQLTimeoutException("Timed out after " + acquireTimeoutSeconds + "s waiting for a Hive connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a Hive connection", e);
+        }
+        try {
+            // Reuse the most recently returned healthy connection
+            Connection connection;
+            while ((connection = idle.pollFirst()) != null) {
+                if (isHealthy(connection)) {
+                    borrowed.add(connection);
+                    return connection;
+                }
+                closeQuietly(connection);
+            }
+            connection = factory.create();
+            borrowed.add(connection);
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Give back a borrowed connection.
+     * Connections that were not borrowed from this pool, or were already released, are ignored.
+     * @param connection the connection
+     * @param broken true if the connection should be discarded instead of reused
+     */
+    public void release(Connection connection, boolean broken) {
+        if (connection == null || !borrowed.remove(connection)) {
+            log.warn("Ignoring release of a Hive connection that is not borrowed from the pool");
+            return;
+        }
+        try {
+            if (broken || closed) {
+                closeQuietly(connection);
+            } else {
+                idle.offerFirst(connection);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Number of connections currently borrowed.
+     */
+    public int getActiveCount() {
+        return maxConnections - permits.availablePermits();
+    }
+
+    /**
+     * Number of callers waiting for a connection.
+     */
+    public int getQueueLength() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * Number of idle pooled connections.
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Close all idle connections, borrowed ones are closed when released.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            closeQuietly(connection);
+        }
+    }
+
+    private boolean isHealthy(Connection connection) {
+        try {
+            return !connection.isClosed() && connection.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            log.warn("Hive connection failed health check", e);
+            return false;
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.warn("Could not close Hive connection", e);
+        }
+    }
+}
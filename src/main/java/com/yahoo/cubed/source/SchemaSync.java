@@ -0,0 +1,442 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.source;
+
+import com.yahoo.cubed.json.JsonCodec;
+import com.yahoo.cubed.model.Field;
+import com.yahoo.cubed.model.FieldKey;
+import com.yahoo.cubed.model.Schema;
+import com.yahoo.cubed.service.ServiceFactory;
+import com.yahoo.cubed.service.exception.DataValidatorException;
+import com.yahoo.cubed.settings.CLISettings;
+import com.yahoo.cubed.settings.YamlSettings;
+import com.yahoo.cubed.yaml.OperationalParams;
+import com.yahoo.cubed.yaml.OperationalParamsReader;
+import com.yahoo.cubed.yaml.SchemaReader;
+import com.yahoo.cubed.yaml.YamlField;
+import com.yahoo.cubed.yaml.YamlKey;
+import com.yahoo.cubed.yaml.YamlSchema;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Synchronize the schemas, fields and field keys in the database with the YAML schema directories.
+ * The YAML files are read in parallel, diffed against the database in memory,
+ * and the differences are written with JDBC batches in one transaction.
+ * Fields and keys are added or renamed, never removed. Schemas missing from the YAML files are marked as deleted.
+ * Names are checked with the service validators, and field and key names are kept unique, before anything is written.
+ */
+@Slf4j
+public class SchemaSync {
+    /** Schema columns other than the name, in the order of the values of a schema row. */
+    private static final List<String> SCHEMA_COLUMNS = Collections.unmodifiableList(Arrays.asList(
+            "schema_database",
+            "schema_tables",
+            "schema_datetime_partition_column",
+            "schema_oozie_job_type",
+            "schema_oozie_backfill_job_type",
+            "schema_user_id_fields",
+            "schema_default_filters",
+            "schema_disable_bullet",
+            "schema_disable_funnel",
+            "schema_target_table",
+            "schema_bullet_url",
+            "schema_timestamp_column_param",
+            "is_schema_deleted"));
+    private static final String SEPARATOR = "-";
+
+    /**
+     * Counts of the changes written by a sync.
+     */
+    public static class Result {
+        /** Names of the schemas in the YAML files. */
+        public final Set<String> schemaNames = new HashSet<>();
+        /** Number of schemas inserted. */
+        public int insertedSchemas;
+        /** Number of schemas updated. */
+        public int updatedSchemas;
+        /** Number of schemas marked as deleted. */
+        public int deletedSchemas;
+        /** Number of fields inserted. */
+        public int insertedFields;
+        /** Number of fields renamed or retyped. */
+        public int updatedFields;
+        /** Number of field keys inserted. */
+        public int insertedKeys;
+        /** Number of field keys renamed. */
+        public int updatedKeys;
+
+        /**
+         * Total number of rows written.
+         */
+        public int changes() {
+            return insertedSchemas + updatedSchemas + deletedSchemas + insertedFields + updatedFields + insertedKeys + updatedKeys;
+        }
+    }
+
+    /**
+     * Schemas of one directory with their operational parameters.
+     */
+    private static class Definition {
+        private final List<YamlSchema> schemas;
+        private final OperationalParams operationalParams;
+
+        private Definition(List<YamlSchema> schemas, OperationalParams operationalParams) {
+            this.schemas = schemas;
+            this.operationalParams = operationalParams;
+        }
+    }
+
+    /**
+     * Rows to insert and update in one table.
+     */
+    private static class TableChanges {
+        private final List<Object[]> inserts = new ArrayList<>();
+        private final List<Object[]> updates = new ArrayList<>();
+    }
+
+    /**
+     * Synchronize the database with the schema directories under a directory.
+     */
+    public static Result sync(File schemasDir) throws Exception {
+        long start = System.currentTimeMillis();
+        Map<String, Object[]> schemaRows = new LinkedHashMap<>();
+        Map<String, Object[]> fieldRows = new LinkedHashMap<>();
+        Map<String, Object[]> keyRows = new LinkedHashMap<>();
+        for (Definition definition : readAll(schemasDir)) {
+            addRows(definition, schemaRows, fieldRows, keyRows);
+        }
+        validateNames(schemaRows, fieldRows, keyRows);
+        long read = System.currentTimeMillis();
+        log.info("Schema sync read {} schemas, {} fields and {} keys in {} ms", schemaRows.size(), fieldRows.size(), keyRows.size(), read - start);
+
+        Result result = new Result();
+        result.schemaNames.addAll(schemaRows.keySet());
+        try (Connection connection = DatabaseConnectionManager.createConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                TableChanges schemaChanges = diff(schemaRows, loadRows(connection, "SELECT schema_name, " + String.join(", ", SCHEMA_COLUMNS) + " FROM all_schemas", 1), 1);
+                Map<String, Object[]> existingFields = loadRows(connection, "SELECT field_id, schema_name, field_name, field_type FROM field", 2);
+                Map<String, Object[]> existingKeys = loadRows(connection, "SELECT key_id, field_id, schema_name, key_name FROM field_key", 3);
+                checkUniqueNames(fieldRows, existingFields, 2, Field.class);
+                checkUniqueNames(keyRows, existingKeys, 3, FieldKey.class);
+                TableChanges fieldChanges = diff(fieldRows, existingFields, 2);
+                TableChanges keyChanges = diff(keyRows, existingKeys, 3);
+                List<Object[]> deletes = deletedSchemas(connection, schemaRows.keySet());
+                long diffed = System.currentTimeMillis();
+                log.info("Schema sync diffed against the database in {} ms", diffed - read);
+
+                result.insertedSchemas = execute(connection, insertSql("all_schemas", "schema_name", SCHEMA_COLUMNS), schemaChanges.inserts);
+                result.updatedSchemas = execute(connection, updateSql("all_schemas", SCHEMA_COLUMNS, "schema_name"), schemaChanges.updates);
+                result.deletedSchemas = execute(connection, "UPDATE all_schemas SET is_schema_deleted = ? WHERE schema_name = ?", deletes);
+                result.insertedFields = execute(connection, "INSERT INTO field (field_id, schema_name, field_name, field_type, measurement_type) VALUES (?, ?, ?, ?, NULL)", fieldChanges.inserts);
+                result.updatedFields = execute(connection, "UPDATE field SET field_name = ?, field_type = ? WHERE field_id = ? AND schema_name = ?", fieldChanges.updates);
+                result.insertedKeys = execute(connection, "INSERT INTO field_key (key_id, field_id, schema_name, key_name) VALUES (?, ?, ?, ?)", keyChanges.inserts);
+                result.updatedKeys = execute(connection, "UPDATE field_key SET key_name = ? WHERE key_id = ? AND field_id = ? AND schema_name = ?", keyChanges.updates);
+                connection.commit();
+                log.info("Schema sync wrote {} schemas, {} fields and {} keys in {} ms",
+                        result.insertedSchemas + result.updatedSchemas + result.deletedSchemas,
+                        result.insertedFields + result.updatedFields,
+                        result.insertedKeys + result.updatedKeys,
+                        System.currentTimeMillis() - diffed);
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+        if (result.changes() > 0) {
+            // Written without the services, drop the cached metadata once committed
+            ServiceFactory.metadataCache().invalidate();
+        }
+        return result;
+    }
+
+    /**
+     * Read the schema directories in parallel, in the order of their names.
+     */
+    private static List<Definition> readAll(File schemasDir) throws Exception {
+        File[] dirs = schemasDir.listFiles(File::isDirectory);
+        if (dirs == null || dirs.length == 0) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(dirs);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(dirs.length, Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<Definition>> futures = new ArrayList<>();
+            for (File dir : dirs) {
+                futures.add(executor.submit(() -> read(dir)));
+            }
+            List<Definition> definitions = new ArrayList<>();
+            for (Future<Definition> future : futures) {
+                try {
+                    definitions.add(future.get());
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+            return definitions;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Definition read(File schemaDir) throws Exception {
+        log.info("Load schema with path: {}", schemaDir.getAbsolutePath());
+        String schemaFilePath = null, operationalParamsFilePath = null;
+        for (File file : schemaDir.listFiles()) {
+            String fileName = file.getName();
+            if (fileName.indexOf(YamlSettings.OPERATIONAL_PARAMS_YAML_FILE_NAME_FORMAT) != -1) {
+                operationalParamsFilePath = file.getAbsolutePath();
+            } else if (fileName.indexOf(YamlSettings.SCHEMA_YAML_FILE_NAME_FORMAT) != -1) {
+                schemaFilePath = file.getAbsolutePath();
+            }
+        }
+        if (schemaFilePath == null || operationalParamsFilePath == null) {
+            throw new IllegalArgumentException("The directory " + schemaDir.getAbsolutePath() + " miss yaml files for schema");
+        }
+        return new Definition(SchemaReader.readSchema(schemaFilePath).getSchemas(), OperationalParamsReader.readOperationalParams(operationalParamsFilePath, schemaFilePath));
+    }
+
+    /**
+     * Add the rows of the schemas, fields and keys of a directory, keyed by primary key.
+     */
+    private static void addRows(Definition definition, Map<String, Object[]> schemaRows, Map<String, Object[]> fieldRows, Map<String, Object[]> keyRows) throws Exception {
+        OperationalParams params = definition.operationalParams;
+        for (YamlSchema yamlSchema : definition.schemas) {
+            String schemaName = yamlSchema.getName();
+            if (schemaRows.containsKey(schemaName)) {
+                throw new IllegalArgumentException("The schema " + schemaName + " is defined in more than one directory");
+            }
+            schemaRows.put(schemaName, new Object[] {
+                schemaName,
+                yamlSchema.getDatabase(),
+                JsonCodec.WRITER.writeValueAsString(yamlSchema.getTables()),
+                yamlSchema.getDatetimePartitionColumn(),
+                params.getOozieJobType(),
+                params.getOozieBackfillJobType(),
+                JsonCodec.WRITER.writeValueAsString(params.getUserIdFields()),
+                JsonCodec.WRITER.writeValueAsString(params.getDefaultFilters()),
+                params.isDisableBullet(),
+                params.isDisableFunnel(),
+                params.isDisableFunnel() ? null : params.getFunnelTargetTable(),
+                params.getBulletUrl(),
+                params.getTimestampColumnParam(),
+                false
+            });
+            for (YamlField yamlField : yamlSchema.getFields()) {
+                if (yamlField.getId() == null) {
+                    throw new Exception("Field " + yamlField.getName() + " missing id");
+                }
+                long fieldId = yamlField.getId();
+                fieldRows.put(fieldId + SEPARATOR + schemaName, new Object[] {fieldId, schemaName, yamlField.getName(), yamlField.getType()});
+                if (yamlField.getKeys() == null) {
+                    continue;
+                }
+                for (YamlKey yamlKey : yamlField.getKeys()) {
+                    if (yamlKey.getId() == null) {
+                        throw new Exception("FieldKey " + yamlKey.getName() + " missing key id for field " + yamlField.getName());
+                    }
+                    long keyId = yamlKey.getId();
+                    keyRows.put(keyId + SEPARATOR + fieldId + SEPARATOR + schemaName, new Object[] {keyId, fieldId, schemaName, yamlKey.getName()});
+                }
+            }
+        }
+    }
+
+    /**
+     * Check the schema, field and key names with the validators of their services.
+     */
+    private static void validateNames(Map<String, Object[]> schemaRows, Map<String, Object[]> fieldRows, Map<String, Object[]> keyRows) throws DataValidatorException {
+        for (Object[] row : schemaRows.values()) {
+            Schema schema = new Schema();
+            schema.setSchemaName((String) row[0]);
+            ServiceFactory.schemaService().validate(schema);
+        }
+        for (Object[] row : fieldRows.values()) {
+            Field field = new Field();
+            field.setFieldId((Long) row[0]);
+            field.setSchemaName((String) row[1]);
+            field.setFieldName((String) row[2]);
+            ServiceFactory.fieldService().validate(field);
+        }
+        for (Object[] row : keyRows.values()) {
+            FieldKey key = new FieldKey();
+            key.setKeyId((Long) row[0]);
+            key.setFieldId((Long) row[1]);
+            key.setSchemaName((String) row[2]);
+            key.setKeyName((String) row[3]);
+            ServiceFactory.fieldKeyService().validate(key);
+        }
+    }
+
+    /**
+     * Check that no two rows share a name within their parent once the wanted rows are written.
+     * The id is the first column, the parent columns follow it and the name comes right after the primary key.
+     */
+    private static void checkUniqueNames(Map<String, Object[]> wanted, Map<String, Object[]> existing, int keyColumns, Class<?> entityClass) throws DataValidatorException {
+        Map<String, Object[]> rows = new HashMap<>(existing);
+        rows.putAll(wanted);
+        Map<String, Object> ids = new HashMap<>();
+        for (Object[] row : rows.values()) {
+            StringBuilder name = new StringBuilder();
+            for (int i = 1; i <= keyColumns; i++) {
+                name.append(row[i]).append(SEPARATOR);
+            }
+            Object id = ids.putIfAbsent(name.toString(), row[0]);
+            if (id != null) {
+                String modelName = entityClass.getSimpleName();
+                throw new DataValidatorException("The name of the " + modelName + " [" + row[keyColumns] + "] with id [" + row[0]
+                        + "] is already used by another " + modelName + " with id [" + id + "].");
+            }
+        }
+    }
+
+    /**
+     * Load the rows of a table keyed by the first columns, which form the primary key.
+     */
+    private static Map<String, Object[]> loadRows(Connection connection, String sql, int keyColumns) throws SQLException {
+        Map<String, Object[]> rows = new HashMap<>();
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(sql)) {
+            int columns = resultSet.getMetaData().getColumnCount();
+            while (resultSet.next()) {
+                Object[] row = new Object[columns];
+                for (int i = 0; i < columns; i++) {
+                    row[i] = resultSet.getObject(i + 1);
+                    if (row[i] instanceof Clob) {
+                        row[i] = resultSet.getString(i + 1);
+                    }
+                }
+                rows.put(key(row, keyColumns), row);
+            }
+        }
+        return rows;
+    }
+
+    private static String key(Object[] row, int keyColumns) {
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < keyColumns; i++) {
+            if (i > 0) {
+                key.append(SEPARATOR);
+            }
+            key.append(row[i]);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Find the rows to insert, and the changed rows to update with the primary key moved to the end.
+     */
+    private static TableChanges diff(Map<String, Object[]> wanted, Map<String, Object[]> existing, int keyColumns) {
+        TableChanges changes = new TableChanges();
+        for (Map.Entry<String, Object[]> entry : wanted.entrySet()) {
+            Object[] row = entry.getValue();
+            Object[] current = existing.get(entry.getKey());
+            if (current == null) {
+                changes.inserts.add(row);
+            } else if (!sameValues(row, current, keyColumns)) {
+                Object[] update = new Object[row.length];
+                System.arraycopy(row, keyColumns, update, 0, row.length - keyColumns);
+                System.arraycopy(row, 0, update, row.length - keyColumns, keyColumns);
+                changes.updates.add(update);
+            }
+        }
+        return changes;
+    }
+
+    private static boolean sameValues(Object[] row, Object[] current, int keyColumns) {
+        for (int i = keyColumns; i < row.length; i++) {
+            Object value = row[i];
+            Object currentValue = current[i];
+            // Flags may come back as numbers, depending on the database
+            if (value instanceof Boolean && currentValue instanceof Number) {
+                currentValue = ((Number) currentValue).intValue() != 0;
+            }
+            if (!Objects.equals(value, currentValue)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the schemas in the database that are not deleted and not in the YAML files.
+     */
+    private static List<Object[]> deletedSchemas(Connection connection, Set<String> schemaNames) throws SQLException {
+        List<Object[]> deletes = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT schema_name FROM all_schemas WHERE is_schema_deleted = ?")) {
+            statement.setBoolean(1, false);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    String schemaName = resultSet.getString(1);
+                    if (!schemaNames.contains(schemaName)) {
+                        deletes.add(new Object[] {true, schemaName});
+                    }
+                }
+            }
+        }
+        return deletes;
+    }
+
+    private static String insertSql(String table, String keyColumn, List<String> columns) {
+        String[] marks = new String[columns.size() + 1];
+        Arrays.fill(marks, "?");
+        return "INSERT INTO " + table + " (" + keyColumn + ", " + String.join(", ", columns) + ") VALUES (" + String.join(", ", marks) + ")";
+    }
+
+    private static String updateSql(String table, List<String> columns, String keyColumn) {
+        return "UPDATE " + table + " SET " + String.join(" = ?, ", columns) + " = ? WHERE " + keyColumn + " = ?";
+    }
+
+    /**
+     * Execute a statement for each row in batches.
+     * @return the number of rows
+     */
+    private static int execute(Connection connection, String sql, List<Object[]> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int pending = 0;
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    statement.setObject(i + 1, row[i]);
+                }
+                statement.addBatch();
+                if (++pending == CLISettings.DB_BATCH_SIZE) {
+                    statement.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                statement.executeBatch();
+            }
+        }
+        return rows.size();
+    }
+}
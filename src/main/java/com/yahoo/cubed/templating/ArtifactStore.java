@@ -0,0 +1,381 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.templating;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.yahoo.cubed.model.FunnelGroup;
+import com.yahoo.cubed.model.Pipeline;
+import com.yahoo.cubed.service.ServiceFactory;
+import com.yahoo.cubed.settings.CLISettings;
+import com.yahoo.cubed.util.Utils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Content addressed store of generated pipeline files.
+ * Each distinct file content is stored once as a blob, the files of generated pipelines are copies of the blobs,
+ * so that changing a generated file never changes another pipeline.
+ * Renders are remembered by a hash of their inputs, so unchanged files are not rendered again.
+ * Generated pipelines and blobs are evicted by age, blobs also by total size, least recently used first.
+ * Eviction waits for the renders in progress, so that a blob found or written by a render is not deleted before it is copied.
+ */
+@Slf4j
+public class ArtifactStore {
+    private static final String BLOB_DIRECTORY = "blobs";
+    private static final String TREE_DIRECTORY = "trees";
+    private static final String RESOURCE_KEY_PREFIX = "resource\n";
+    /** Maximum number of remembered renders. */
+    private static final int MAX_RENDERS = 10000;
+    private static final long EVICTION_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /** Serializes every field of a model, so that any change of the model changes its hash. */
+    private static final ObjectMapper FINGERPRINT_MAPPER = new ObjectMapper()
+            .setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
+            .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+            .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true)
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+            .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
+            .addMixIn(Pipeline.class, PipelineLaunchState.class)
+            .addMixIn(FunnelGroup.class, FunnelGroupLaunchState.class);
+
+    /**
+     * Launch state of a pipeline, changed by every launch and never rendered,
+     * and the filter object, filled lazily while rendering from the filter JSON that is hashed instead.
+     */
+    @JsonIgnoreProperties({"pipelineStatus", "pipelineOozieJobId", "pipelineOozieJobStatus", "pipelineOozieBackfillJobId", "pipelineOozieBackfillJobStatus", "pipelineFilterObject"})
+    private abstract static class PipelineLaunchState {
+    }
+
+    /**
+     * Launch state of a funnel group, changed by every launch and never rendered,
+     * and the filter object, filled lazily while rendering from the filter JSON that is hashed instead.
+     */
+    @JsonIgnoreProperties({"funnelGroupStatus", "funnelGroupOozieJobId", "funnelGroupOozieJobStatus", "funnelGroupFilterObject"})
+    private abstract static class FunnelGroupLaunchState {
+    }
+
+    private final File blobDirectory;
+    private final File treeDirectory;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final Clock clock;
+
+    /** Blob hash by render key, in access order, guarded by this. */
+    private final LinkedHashMap<String, String> renders = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong lastEviction = new AtomicLong();
+    /** Renders hold the read lock from finding or writing their blob until it is copied, eviction holds the write lock. */
+    private final ReadWriteLock evictionLock = new ReentrantReadWriteLock();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong blobsWritten = new AtomicLong();
+    private final AtomicLong blobsShared = new AtomicLong();
+    private final AtomicLong evictedBlobs = new AtomicLong();
+    private final AtomicLong evictedTrees = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param root directory of the store
+     * @param maxMegabytes size above which blobs are evicted, least recently used first
+     * @param maxAgeHours age after which generated pipelines and blobs are evicted
+     * @param clock clock
+     */
+    public ArtifactStore(File root, long maxMegabytes, long maxAgeHours, Clock clock) {
+        this.blobDirectory = new File(root, BLOB_DIRECTORY);
+        this.treeDirectory = new File(root, TREE_DIRECTORY);
+        this.maxBytes = maxMegabytes * FileUtils.ONE_MB;
+        this.maxAgeMillis = TimeUnit.HOURS.toMillis(maxAgeHours);
+        this.clock = clock;
+        this.lastEviction.set(clock.millis());
+    }
+
+    /**
+     * Create the directories of the store, again if the output folder was cleaned.
+     */
+    private void createDirectories() throws IOException {
+        for (File directory : Arrays.asList(blobDirectory, treeDirectory)) {
+            Files.createDirectories(directory.toPath());
+        }
+    }
+
+    /**
+     * Render a template file of a model, or reuse an earlier render with the same inputs.
+     * @param path file to create
+     * @param templateFile template of the file
+     * @param model model rendered
+     * @param version pipeline version, part of the inputs only if the template depends on it
+     * @param <T> type of the model
+     */
+    public <T> void render(String path, TemplateFile<T> templateFile, T model, long version) throws Exception {
+        String key = renderKey(templateFile, model, version);
+        evictionLock.readLock().lock();
+        try {
+            String blob = key == null ? null : lookup(key);
+            if (blob != null) {
+                hits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+                blob = put(templateFile.generateFile(model, version).getBytes(StandardCharsets.UTF_8));
+                if (key != null) {
+                    remember(key, blob);
+                }
+            }
+            copy(blob, path);
+        } finally {
+            evictionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copy a static resource.
+     * @param resource name of the resource in {@link TemplateUtils#STATIC_RESOURCE_DIR}
+     * @param path file to create
+     */
+    public void copyResource(String resource, String path) throws Exception {
+        String key = Utils.sha256Hex(RESOURCE_KEY_PREFIX + resource);
+        evictionLock.readLock().lock();
+        try {
+            String blob = lookup(key);
+            if (blob == null) {
+                try (InputStream content = TemplateUtils.getResouceFileAsStream(TemplateUtils.STATIC_RESOURCE_DIR + resource)) {
+                    blob = put(IOUtils.toByteArray(content));
+                }
+                remember(key, blob);
+            }
+            copy(blob, path);
+        } finally {
+            evictionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write a file with content known in advance.
+     * @param path file to create
+     * @param content content of the file
+     */
+    public void write(String path, String content) throws Exception {
+        evictionLock.readLock().lock();
+        try {
+            copy(put(content.getBytes(StandardCharsets.UTF_8)), path);
+        } finally {
+            evictionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Remember a directory of generated files, so that it is evicted once it is old.
+     * @param directory the directory
+     */
+    public void registerTree(String directory) throws IOException {
+        String path = new File(directory).getAbsolutePath();
+        createDirectories();
+        Files.write(new File(treeDirectory, Utils.sha256Hex(path)).toPath(), path.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Key of a render: the template and its inputs key, the model, the schema metadata, the settings and the version if the template uses it.
+     * @return the key, null if the model cannot be hashed
+     */
+    <T> String renderKey(TemplateFile<T> templateFile, T model, long version) {
+        try {
+            StringBuilder inputs = new StringBuilder(templateFile.getClass().getName()).append('\n');
+            inputs.append(templateFile.inputsKey()).append('\n');
+            if (templateFile.dependsOnVersion()) {
+                inputs.append(version);
+            }
+            inputs.append('\n').append(ServiceFactory.metadataCache().getGeneration());
+            inputs.append('\n').append(settingsFingerprint());
+            inputs.append('\n').append(FINGERPRINT_MAPPER.writeValueAsString(model));
+            return Utils.sha256Hex(inputs.toString());
+        } catch (Exception e) {
+            log.debug("Cannot hash the inputs of {}", templateFile.getClass().getSimpleName(), e);
+            return null;
+        }
+    }
+
+    private static String settingsFingerprint() throws IllegalAccessException {
+        StringBuilder settings = new StringBuilder();
+        for (Field field : CLISettings.class.getFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                settings.append(field.getName()).append('=').append(field.get(null)).append('\n');
+            }
+        }
+        return settings.toString();
+    }
+
+    private String lookup(String key) {
+        String blob;
+        synchronized (this) {
+            blob = renders.get(key);
+        }
+        // The blob may have been evicted
+        return blob != null && blobFile(blob).isFile() ? blob : null;
+    }
+
+    private synchronized void remember(String key, String blob) {
+        renders.put(key, blob);
+        if (renders.size() > MAX_RENDERS) {
+            renders.remove(renders.keySet().iterator().next());
+        }
+    }
+
+    private File blobFile(String blob) {
+        return new File(blobDirectory, blob);
+    }
+
+    /**
+     * Store content as a blob, unless a blob with the same content exists.
+     * @return the hash of the blob
+     */
+    private String put(byte[] content) throws IOException {
+        String blob = Utils.sha256Hex(content);
+        Path blobPath = blobFile(blob).toPath();
+        if (Files.exists(blobPath)) {
+            // Reused, the copy marks it as used
+            blobsShared.incrementAndGet();
+            return blob;
+        }
+        createDirectories();
+        // Write aside and move, so that concurrent writers of the same content never see a partial blob
+        Path temporary = Files.createTempFile(blobDirectory.toPath(), blob, ".tmp");
+        try {
+            Files.write(temporary, content);
+            try {
+                Files.move(temporary, blobPath, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, blobPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            blobsWritten.incrementAndGet();
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        return blob;
+    }
+
+    private void copy(String blob, String path) throws IOException {
+        Path blobPath = blobFile(blob).toPath();
+        // Mark the blob as used, it is evicted by the time of its last use
+        Files.setLastModifiedTime(blobPath, FileTime.fromMillis(clock.millis()));
+        Files.copy(blobPath, Paths.get(path));
+    }
+
+    /**
+     * Evict if no eviction ran in the last minute.
+     */
+    public void evictIfDue() {
+        long last = lastEviction.get();
+        long now = clock.millis();
+        if (now - last >= EVICTION_INTERVAL_MILLIS && lastEviction.compareAndSet(last, now)) {
+            evict();
+        }
+    }
+
+    /**
+     * Delete old generated pipelines, then blobs that are old or over the size limit.
+     */
+    public void evict() {
+        evictionLock.writeLock().lock();
+        try {
+            evictTrees();
+            evictBlobs();
+        } finally {
+            evictionLock.writeLock().unlock();
+        }
+    }
+
+    private void evictTrees() {
+        long now = clock.millis();
+        File[] trees = treeDirectory.listFiles();
+        for (File tree : trees == null ? new File[0] : trees) {
+            if (now - tree.lastModified() > maxAgeMillis) {
+                evictTree(tree);
+            }
+        }
+    }
+
+    private void evictBlobs() {
+        long now = clock.millis();
+        File[] blobs = blobDirectory.listFiles((dir, name) -> !name.endsWith(".tmp"));
+        if (blobs == null) {
+            return;
+        }
+        long totalBytes = 0;
+        for (File blob : blobs) {
+            totalBytes += blob.length();
+        }
+        // Least recently used first
+        Arrays.sort(blobs, Comparator.comparingLong(File::lastModified));
+        for (File blob : blobs) {
+            if (now - blob.lastModified() <= maxAgeMillis && totalBytes <= maxBytes) {
+                continue;
+            }
+            long size = blob.length();
+            if (blob.delete()) {
+                totalBytes -= size;
+                evictedBlobs.incrementAndGet();
+            }
+        }
+    }
+
+    private void evictTree(File tree) {
+        try {
+            String directory = new String(Files.readAllBytes(tree.toPath()), StandardCharsets.UTF_8);
+            log.info("Evicting generated files {}", directory);
+            FileUtils.deleteQuietly(new File(directory));
+            FileUtils.deleteQuietly(new File(directory + ".zip"));
+            evictedTrees.incrementAndGet();
+        } catch (IOException e) {
+            log.warn("Could not read generated files entry {}", tree, e);
+        }
+        if (!tree.delete()) {
+            log.warn("Could not delete generated files entry {}", tree);
+        }
+    }
+
+    /**
+     * Get hit/miss, blob and eviction metrics.
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("blobsWritten", blobsWritten.get());
+        stats.put("blobsShared", blobsShared.get());
+        stats.put("evictedBlobs", evictedBlobs.get());
+        stats.put("evictedTrees", evictedTrees.get());
+        synchronized (this) {
+            stats.put("renders", (long) renders.size());
+        }
+        return stats;
+    }
+}
@@ -4,7 +4,7 @@
 
 package com.yahoo.cubed.templating;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yahoo.cubed.json.JsonCodec;
 import com.yahoo.cubed.model.FunnelGroup;
 import com.yahoo.cubed.model.Schema;
 import com.yahoo.cubed.service.ServiceFactory;
@@ -31,7 +31,7 @@ public class BundlePropertiesFunnelGroupXml implements TemplateFile<FunnelGroup>
         String pipelineOwner = CLISettings.PIPELINE_OWNER;
         String tableName = model.getFunnelGroupName();
 
-        StringTemplate template = new StringTemplate(TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.OOZIE_TEMPLATES_DIR + FUNNEL_GROUP_PROPERTIES_XML_FILE));
+        StringTemplate template = TemplateRegistry.getInstanceOf(TemplateUtils.OOZIE_TEMPLATES_DIR + FUNNEL_GROUP_PROPERTIES_XML_FILE);
         template.setAttribute(VERSION_ATTRIBUTE, version);
         template.setAttribute(USER_NAME_ATTRIBUTE, CLISettings.USER_NAME);
         template.setAttribute(PRODUCT_NAME_ATTRIBUTE, productName);
@@ -55,8 +55,7 @@ public class BundlePropertiesFunnelGroupXml implements TemplateFile<FunnelGroup>
 
         // Fill in schema related attributes
         Schema schema = ServiceFactory.schemaService().fetchByName(model.getFunnelGroupSchemaName());
-        ObjectMapper mapper = new ObjectMapper();
-        Map<String, String> tables = mapper.readValue(schema.getSchemaTables(), Map.class);
+        Map<String, String> tables = JsonCodec.STRING_MAP_READER.readValue(schema.getSchemaTables());
         template.setAttribute(TARGET_TABLE, schema.getSchemaTargetTable());
         template.setAttribute(IN_DATABASE, schema.getSchemaDatabase());
         template.setAttribute(IN_HOUR_TABLE, tables.get(Constants.HOURLY_TABLE));
@@ -4,7 +4,7 @@
 
 package com.yahoo.cubed.templating;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yahoo.cubed.json.JsonCodec;
 import com.yahoo.cubed.model.Pipeline;
 import com.yahoo.cubed.model.Schema;
 import com.yahoo.cubed.service.ServiceFactory;
@@ -34,6 +34,11 @@ public class BundlePropertiesFunnelXml implements TemplateFile<Pipeline> {
     @Getter @Setter
     private String funnelSteps;
 
+    @Override
+    public String inputsKey() {
+        return String.join("\n", String.valueOf(funnelQueryRange), String.valueOf(funnelRepeatInterval), String.valueOf(funnelSteps));
+    }
+
     /**
      * Set extra properties.
      */
@@ -54,7 +59,7 @@ public class BundlePropertiesFunnelXml implements TemplateFile<Pipeline> {
         String pipelineOwner = CLISettings.PIPELINE_OWNER;
         String tableName = model.getPipelineName();
 
-        StringTemplate template = new StringTemplate(TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.OOZIE_TEMPLATES_DIR + FUNNEL_PROPERTIES_XML_FILE));
+        StringTemplate template = TemplateRegistry.getInstanceOf(TemplateUtils.OOZIE_TEMPLATES_DIR + FUNNEL_PROPERTIES_XML_FILE);
         template.setAttribute(VERSION_ATTRIBUTE, version);
         template.setAttribute(USER_NAME_ATTRIBUTE, CLISettings.USER_NAME);
         template.setAttribute(PRODUCT_NAME_ATTRIBUTE, productName);
@@ -74,8 +79,7 @@ public class BundlePropertiesFunnelXml implements TemplateFile<Pipeline> {
 
         // Fetch schema info
         Schema schema = ServiceFactory.schemaService().fetchByName(model.getPipelineSchemaName());
-        ObjectMapper mapper = new ObjectMapper();
-        Map<String, String> tables = mapper.readValue(schema.getSchemaTables(), Map.class);
+        Map<String, String> tables = JsonCodec.STRING_MAP_READER.readValue(schema.getSchemaTables());
         final String inDatabase = schema.getSchemaDatabase();
         final String inHourTable = tables.get(Constants.HOURLY_TABLE);
         final String inDayTable = tables.get(Constants.DAILY_TABLE);
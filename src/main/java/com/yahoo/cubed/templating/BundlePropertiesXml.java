@@ -4,7 +4,7 @@
 
 package com.yahoo.cubed.templating;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yahoo.cubed.json.JsonCodec;
 import com.yahoo.cubed.model.Pipeline;
 import com.yahoo.cubed.model.Schema;
 import com.yahoo.cubed.service.ServiceFactory;
@@ -47,7 +47,7 @@ public class BundlePropertiesXml implements TemplateFile<Pipeline> {
         String tableName = model.getPipelineName();
         String regularEndTime = model.getPipelineEndTime();
 
-        StringTemplate template = new StringTemplate(TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.OOZIE_TEMPLATES_DIR + PROPERTIES_XML_FILE));
+        StringTemplate template = TemplateRegistry.getInstanceOf(TemplateUtils.OOZIE_TEMPLATES_DIR + PROPERTIES_XML_FILE);
         template.setAttribute(VERSION_ATTRIBUTE, version);
         template.setAttribute(USER_NAME_ATTRIBUTE, CLISettings.USER_NAME);
         template.setAttribute(PRODUCT_NAME_ATTRIBUTE, productName);
@@ -67,8 +67,7 @@ public class BundlePropertiesXml implements TemplateFile<Pipeline> {
 
         // Fetch schema info
         Schema schema = ServiceFactory.schemaService().fetchByName(model.getPipelineSchemaName());
-        ObjectMapper mapper = new ObjectMapper();
-        Map<String, String> tables = mapper.readValue(schema.getSchemaTables(), Map.class);
+        Map<String, String> tables = JsonCodec.STRING_MAP_READER.readValue(schema.getSchemaTables());
         final String inDatabase = schema.getSchemaDatabase();
         final String inHourTable = tables.get(Constants.HOURLY_TABLE);
         final String inDayTable = tables.get(Constants.DAILY_TABLE);
@@ -7,33 +7,40 @@ package com.yahoo.cubed.templating;
 import com.yahoo.cubed.model.Pipeline;
 import com.yahoo.cubed.model.Schema;
 import com.yahoo.cubed.service.ServiceFactory;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Map;
+import org.hibernate.Hibernate;
 
 /**
  * Funnelmart template generator. Builds complete pipeline.
  */
 public class DatamartTemplateGenerator extends TemplateGenerator<Pipeline> {
-    private String outputDir = "";
+    /** Path of the Hive ETL script in the generated files. */
+    public static final String ETL_SCRIPT = "scripts/transform.hql";
+
+    @Override
+    protected String getOutputDir(Pipeline model, String outputPath, long version) {
+        return String.format("%s/%s_v%s/", outputPath, model.getPipelineName(), version);
+    }
+
     /**
      * Generates pipeline. Including Oozie, Hive, Druid and shell scripts.
      * @param model Pipeline to generate
-     * @param outputPath Location for generated pipeline
+     * @param outputDir Location for generated pipeline
      * @param version Pipeline version
+     * @param batch Batch rendering the files
      */
-    public String generateTemplateFiles(Pipeline model, String outputPath, long version) throws Exception {
+    @Override
+    protected void addTemplateFiles(Pipeline model, String outputDir, long version, TemplateRenderService.Batch batch) throws Exception {
         // Initialize schema info
         Schema schema = ServiceFactory.schemaService().fetchByName(model.getPipelineSchemaName());
         final String oozieJobType = schema.getSchemaOozieJobType();
         final String oozieBackfillJobType = schema.getSchemaOozieBackfillJobType();
 
         // Create the output directories
-        outputDir = String.format("%s/%s_v%s/", outputPath, model.getPipelineName(), version);
         String emailSubfolder = outputDir + "email/";
         String scriptSubfolder = outputDir + "scripts/";
         String regularFolder = null;
@@ -65,7 +72,7 @@ public class DatamartTemplateGenerator extends TemplateGenerator<Pipeline> {
             throw new Exception("Please specify oozie job and oozie backfill job type, daily or hourly.");
         }
 
-        createDirectoryStructure(folders);
+        batch.createDirectories(folders);
 
         // Create all static files
         List<Map.Entry<String , String>> staticPipelineFiles = new ArrayList<>();
@@ -112,15 +119,16 @@ public class DatamartTemplateGenerator extends TemplateGenerator<Pipeline> {
             throw new Exception("Please specify valid oozie backfill job type, daily or hourly.");
         }
         
+        // Render all files at the same time
         for (Map.Entry<String, String> f : staticPipelineFiles) {
-            Files.copy(TemplateUtils.getResouceFileAsStream(TemplateUtils.STATIC_RESOURCE_DIR + f.getKey()), Paths.get(f.getValue()));
+            batch.copy(f.getKey(), f.getValue());
         }
 
         // Create all dynamic files
-        List<Map.Entry<String, TemplateFile>> dynamicPipelineFiles = new ArrayList<>();
+        List<Map.Entry<String, TemplateFile<Pipeline>>> dynamicPipelineFiles = new ArrayList<>();
         dynamicPipelineFiles.add(new SimpleImmutableEntry<>(outputDir + "properties.xml", new BundlePropertiesXml()));
         dynamicPipelineFiles.add(new SimpleImmutableEntry<>(outputDir + "properties_backfill.xml", new BundlePropertiesBackfillXml()));
-        dynamicPipelineFiles.add(new SimpleImmutableEntry<>(scriptSubfolder + "transform.hql", new ScriptsTransformHql()));
+        dynamicPipelineFiles.add(new SimpleImmutableEntry<>(outputDir + ETL_SCRIPT, new ScriptsTransformHql()));
 
         if (oozieJobType.equals("hourly")) {
             dynamicPipelineFiles.add(new SimpleImmutableEntry<>(regularFolder + "index.json", new DruidIndexJson(true)));
@@ -142,10 +150,10 @@ public class DatamartTemplateGenerator extends TemplateGenerator<Pipeline> {
             throw new Exception("Please specify valid oozie backfill job type, daily or hourly.");
         }
 
-        for (Map.Entry<String, TemplateFile> file : dynamicPipelineFiles) {
-            Files.write(Paths.get(file.getKey()), file.getValue().generateFile(model, version).getBytes());
+        // Load the projections before they are read on the render threads
+        Hibernate.initialize(model.getProjections());
+        for (Map.Entry<String, TemplateFile<Pipeline>> file : dynamicPipelineFiles) {
+            batch.render(file.getKey(), file.getValue(), model, version);
         }
-
-        return outputDir;
     }
 }
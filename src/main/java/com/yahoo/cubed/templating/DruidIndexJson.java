@@ -65,6 +65,16 @@ public class DruidIndexJson implements TemplateFile<Pipeline> {
         this.isHourlyIngestion = isHourlyIngestion;
     }
 
+    @Override
+    public boolean dependsOnVersion() {
+        return false;
+    }
+
+    @Override
+    public String inputsKey() {
+        return "hourly=" + isHourlyIngestion;
+    }
+
     @Override
     public String generateFile(Pipeline model, long version) throws Exception {
         if (model == null || model.getProjections() == null) {
@@ -88,11 +98,11 @@ public class DruidIndexJson implements TemplateFile<Pipeline> {
             StringTemplate metricTemplate;
             // If theta sketch metric, use theta sketch template
             if (Aggregation.THETA_SKETCH.name.equals(metric.getAggregationName())) {
-                metricTemplate = new StringTemplate(TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.DRUID_TEMPLATES_DIR + METRIC_SPEC_THETA_FRAGMENT_FILE));
+                metricTemplate = TemplateRegistry.getInstanceOf(TemplateUtils.DRUID_TEMPLATES_DIR + METRIC_SPEC_THETA_FRAGMENT_FILE);
                 metricTemplate.setAttribute(THETA_SKETCH_SIZE_ATTRIBUTE, Aggregation.THETA_SKETCH_SIZE);
             } else {
                 // Not theta sketch, use regular template
-                metricTemplate = new StringTemplate(TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.DRUID_TEMPLATES_DIR + METRIC_SPEC_FRAGMENT_FILE));
+                metricTemplate = TemplateRegistry.getInstanceOf(TemplateUtils.DRUID_TEMPLATES_DIR + METRIC_SPEC_FRAGMENT_FILE);
             }
             metricTemplate.setAttribute(COLUMN_TYPE_ATTRIBUTE, getAggregationType(metric));
             metricTemplate.setAttribute(COLUMN_ATTRIBUTE, metric.getAlias());
@@ -106,7 +116,7 @@ public class DruidIndexJson implements TemplateFile<Pipeline> {
             metricsString += metricsStringList.stream().collect(Collectors.joining(Constants.COMMA_DELIMITER + Constants.NEWLINE));
         }
 
-        StringTemplate indexJsonTemplate = new StringTemplate(TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.DRUID_TEMPLATES_DIR + INDEX_JSON_FILE));
+        StringTemplate indexJsonTemplate = TemplateRegistry.getInstanceOf(TemplateUtils.DRUID_TEMPLATES_DIR + INDEX_JSON_FILE);
         String pipelineName = model.getPipelineName();
 
         indexJsonTemplate.setAttribute(METRICS_ATTRIBUTE, metricsString);
@@ -4,7 +4,7 @@
 
 package com.yahoo.cubed.templating;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yahoo.cubed.json.JsonCodec;
 import com.yahoo.cubed.model.Pipeline;
 import com.yahoo.cubed.model.Schema;
 import com.yahoo.cubed.service.ServiceFactory;
@@ -40,17 +40,21 @@ public class FunnelCoordinatorXml implements TemplateFile<Pipeline> {
             "<start-instance>${coord:current(-(coord:hoursInDay(0)) * funnel_repeat_interval)}</start-instance>\n" +
             "<end-instance>${coord:current(-1)}</end-instance>";
 
+    @Override
+    public boolean dependsOnVersion() {
+        return false;
+    }
+
     /**
      * Generate template file.
      */
     @Override
     public String generateFile(Pipeline model, long version) throws Exception {
-        StringTemplate template = new StringTemplate(TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.OOZIE_TEMPLATES_DIR + FUNNEL_COORDINATOR_XML_FILE));
+        StringTemplate template = TemplateRegistry.getInstanceOf(TemplateUtils.OOZIE_TEMPLATES_DIR + FUNNEL_COORDINATOR_XML_FILE);
 
         // figure out the data source granularity
         Schema schema = ServiceFactory.schemaService().fetchByName(model.getPipelineSchemaName());
-        ObjectMapper mapper = new ObjectMapper();
-        Map<String, String> tables = mapper.readValue(schema.getSchemaTables(), Map.class);
+        Map<String, String> tables = JsonCodec.STRING_MAP_READER.readValue(schema.getSchemaTables());
         String inDayTable = tables.get(Constants.DAILY_TABLE);
         String inHourTable = tables.get(Constants.HOURLY_TABLE);
         boolean isDataSourceHourly;
@@ -64,10 +68,10 @@ public class FunnelCoordinatorXml implements TemplateFile<Pipeline> {
 
         // fill in day / hour specific sections
         if (isDataSourceHourly) {
-            template.setAttribute(INPUT_DATASET_ATTRIBUTE, TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.STATIC_RESOURCE_DIR + HOUR_INPUT_DATASET_FRAGMENT_FILE));
+            template.setAttribute(INPUT_DATASET_ATTRIBUTE, TemplateRegistry.getResource(TemplateUtils.STATIC_RESOURCE_DIR + HOUR_INPUT_DATASET_FRAGMENT_FILE));
             template.setAttribute(START_END_INSTANCE_ATTRIBUTE, HOUR_START_END_INSTANCE);
         } else {
-            template.setAttribute(INPUT_DATASET_ATTRIBUTE, TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.STATIC_RESOURCE_DIR + DAY_INPUT_DATASET_FRAGMENT_FILE));
+            template.setAttribute(INPUT_DATASET_ATTRIBUTE, TemplateRegistry.getResource(TemplateUtils.STATIC_RESOURCE_DIR + DAY_INPUT_DATASET_FRAGMENT_FILE));
             template.setAttribute(START_END_INSTANCE_ATTRIBUTE, DAY_START_END_INSTANCE);
         }
 
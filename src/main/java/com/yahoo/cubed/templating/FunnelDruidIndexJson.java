@@ -38,6 +38,11 @@ public class FunnelDruidIndexJson implements TemplateFile<Pipeline> {
      */
     public FunnelDruidIndexJson() { }
 
+    @Override
+    public boolean dependsOnVersion() {
+        return false;
+    }
+
     @Override
     public String generateFile(Pipeline model, long version) throws Exception {
         if (model == null || model.getProjections() == null) {
@@ -46,9 +51,9 @@ public class FunnelDruidIndexJson implements TemplateFile<Pipeline> {
 
         StringTemplate indexJsonTemplate = null;
         if (model.getFunnelGroupId() > 0L) { // this funnel belongs to a funnel group
-            indexJsonTemplate = new StringTemplate(TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.DRUID_TEMPLATES_DIR + FUNNEL_INDEX_JSON_FILE_FUNNEL_GROUP));
+            indexJsonTemplate = TemplateRegistry.getInstanceOf(TemplateUtils.DRUID_TEMPLATES_DIR + FUNNEL_INDEX_JSON_FILE_FUNNEL_GROUP);
         } else { // this funnel does not belong to any funnel group
-            indexJsonTemplate = new StringTemplate(TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.DRUID_TEMPLATES_DIR + FUNNEL_INDEX_JSON_FILE));
+            indexJsonTemplate = TemplateRegistry.getInstanceOf(TemplateUtils.DRUID_TEMPLATES_DIR + FUNNEL_INDEX_JSON_FILE);
         }
 
         String pipelineName = model.getPipelineName();
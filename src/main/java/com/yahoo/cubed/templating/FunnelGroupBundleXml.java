@@ -28,13 +28,18 @@ public class FunnelGroupBundleXml implements TemplateFile<FunnelGroup> {
             "    <app-path>${project_path}/funnel_group/coordinator_%s.xml</app-path>\n" +
             "</coordinator>";
 
+    @Override
+    public boolean dependsOnVersion() {
+        return false;
+    }
+
     /**
      * Generate template file.
      */
     @Override
     public String generateFile(FunnelGroup model, long version) throws Exception {
 
-        StringTemplate template = new StringTemplate(TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.OOZIE_TEMPLATES_DIR + FUNNEL_GROUP_BUNDLE_XML_FILE));
+        StringTemplate template = TemplateRegistry.getInstanceOf(TemplateUtils.OOZIE_TEMPLATES_DIR + FUNNEL_GROUP_BUNDLE_XML_FILE);
 
         String funnelGroupName = model.getFunnelGroupName();
         List<String> coordinators = new ArrayList<>();
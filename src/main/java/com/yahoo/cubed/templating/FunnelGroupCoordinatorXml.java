@@ -36,13 +36,18 @@ public class FunnelGroupCoordinatorXml implements TemplateFile<FunnelGroup> {
              "   <instance>${coord:current(0)}</instance>\n" +
              "</data-in>";
 
+    @Override
+    public boolean dependsOnVersion() {
+        return false;
+    }
+
     /**
      * Generate template file.
      */
     @Override
     public String generateFile(FunnelGroup model, long version) throws Exception {
 
-        StringTemplate template = new StringTemplate(TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.OOZIE_TEMPLATES_DIR + FUNNEL_GROUP_COORDINATOR_XML_FILE));
+        StringTemplate template = TemplateRegistry.getInstanceOf(TemplateUtils.OOZIE_TEMPLATES_DIR + FUNNEL_GROUP_COORDINATOR_XML_FILE);
 
         List<String> inputDatasets = new ArrayList<>();
         List<String> inputEvents = new ArrayList<>();
@@ -56,6 +56,11 @@ public class FunnelGroupDruidIndexJson implements TemplateFile<FunnelGroup> {
             "    \"type\": \"static\"\n" +
             "}";
 
+    @Override
+    public boolean dependsOnVersion() {
+        return false;
+    }
+
     /**
      * Generate template file.
      */
@@ -65,7 +70,7 @@ public class FunnelGroupDruidIndexJson implements TemplateFile<FunnelGroup> {
             throw new Exception("Cannot have null model or projections");
         }
 
-        StringTemplate indexJsonTemplate = new StringTemplate(TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.DRUID_TEMPLATES_DIR + FUNNEL_GROUP_INDEX_JSON_FILE));
+        StringTemplate indexJsonTemplate = TemplateRegistry.getInstanceOf(TemplateUtils.DRUID_TEMPLATES_DIR + FUNNEL_GROUP_INDEX_JSON_FILE);
         String funnelGroupName = model.getFunnelGroupName();
 
         indexJsonTemplate.setAttribute(PRODUCT_NAME_ATTRIBUTE, TemplateUtils.getProductName(funnelGroupName));
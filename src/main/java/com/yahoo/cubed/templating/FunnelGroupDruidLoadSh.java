@@ -24,9 +24,19 @@ public class FunnelGroupDruidLoadSh implements TemplateFile<FunnelGroup> {
         this.isHourlyIngestion = isHourlyIngestion;
     }
 
+    @Override
+    public boolean dependsOnVersion() {
+        return false;
+    }
+
+    @Override
+    public String inputsKey() {
+        return "hourly=" + isHourlyIngestion;
+    }
+
     @Override
     public String generateFile(FunnelGroup model, long version) throws Exception {
-        StringTemplate template = new StringTemplate(TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.DRUID_TEMPLATES_DIR + DRUID_LOAD_SCRIPT_FILE));
+        StringTemplate template = TemplateRegistry.getInstanceOf(TemplateUtils.DRUID_TEMPLATES_DIR + DRUID_LOAD_SCRIPT_FILE);
         if (this.isHourlyIngestion) {
             template.setAttribute(GRANULARITY_ATTRIBUTE, Constants.HOUR);
         } else {
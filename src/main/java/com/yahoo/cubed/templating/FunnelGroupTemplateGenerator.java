@@ -17,8 +17,7 @@ import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.AbstractMap.SimpleImmutableEntry;
 
-import lombok.Getter;
-import lombok.Setter;
+import org.hibernate.Hibernate;
 
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 
@@ -27,38 +26,53 @@ import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
  */
 public class FunnelGroupTemplateGenerator extends TemplateGenerator<FunnelGroup> {
 
-    /** Is for download. */
-    @Getter @Setter
-    private boolean download;
-
     /**
-     * Generates funnel group files. Including Oozie, Hive, Druid and shell scripts.
+     * Generates funnel group files, with the sketches jar.
      * @param model funnel group to generate
      * @param outputPath location for generated funnel group
      * @param version funnel group version
      */
+    @Override
     public String generateTemplateFiles(FunnelGroup model, String outputPath, long version) throws Exception {
+        String outputDir = super.generateTemplateFiles(model, outputPath, version);
+        Files.copy(Paths.get(CLISettings.SKETCHES_HIVE_JAR_PATH + "sketches-hive-0.13.0-with-shaded-core.jar"), Paths.get(outputDir + "funnel_group/lib/sketches-hive-0.13.0-with-shaded-core.jar"), REPLACE_EXISTING);
+        return outputDir;
+    }
 
+    @Override
+    protected String getOutputDir(FunnelGroup model, String outputPath, long version) {
+        return String.format("%s/%s_v%s/", outputPath, model.getFunnelGroupName(), version);
+    }
+
+    /**
+     * Generates funnel group files. Including Oozie, Hive, Druid and shell scripts.
+     * @param model funnel group to generate
+     * @param outputDir location for generated funnel group
+     * @param version funnel group version
+     * @param batch batch rendering the files
+     */
+    @Override
+    protected void addTemplateFiles(FunnelGroup model, String outputDir, long version, TemplateRenderService.Batch batch) throws Exception {
         // Create the output directories
-        String outputDir = String.format("%s/%s_v%s/", outputPath, model.getFunnelGroupName(), version);
         String emailSubfolder = outputDir + "email/";
         String scriptSubfolder = outputDir + "scripts/";
         String funnelFolder = outputDir + "funnel_group/";
         String libFolder = outputDir + "funnel_group/lib/";
         List<String> folders = Arrays.asList(outputDir, emailSubfolder, scriptSubfolder, funnelFolder, libFolder);
-        createDirectoryStructure(folders);
+        batch.createDirectories(folders);
 
         // Create all static files
         List<Map.Entry<String , String>> staticPipelineFiles = new ArrayList<>();
         staticPipelineFiles.add(new SimpleImmutableEntry<>("email_workflow.xml", emailSubfolder + "workflow.xml"));
         staticPipelineFiles.add(new SimpleImmutableEntry<>("day_job.xml", funnelFolder + "job.xml"));
 
+        // Render all files at the same time
         for (Map.Entry<String, String> f : staticPipelineFiles) {
-            Files.copy(TemplateUtils.getResouceFileAsStream(TemplateUtils.STATIC_RESOURCE_DIR + f.getKey()), Paths.get(f.getValue()));
+            batch.copy(f.getKey(), f.getValue());
         }
 
         // Create all funnel group dynamic files
-        List<Map.Entry<String, TemplateFile>> dynamicPipelineFiles = new ArrayList<>();
+        List<Map.Entry<String, TemplateFile<FunnelGroup>>> dynamicPipelineFiles = new ArrayList<>();
 
         dynamicPipelineFiles.add(new SimpleImmutableEntry<>(outputDir + "properties.xml", new BundlePropertiesFunnelGroupXml()));
         dynamicPipelineFiles.add(new SimpleImmutableEntry<>(outputDir + "bundle.xml", new FunnelGroupBundleXml()));
@@ -67,26 +81,19 @@ public class FunnelGroupTemplateGenerator extends TemplateGenerator<FunnelGroup>
         dynamicPipelineFiles.add(new SimpleImmutableEntry<>(funnelFolder + "index.json", new FunnelGroupDruidIndexJson()));
         dynamicPipelineFiles.add(new SimpleImmutableEntry<>(funnelFolder + "druid_load.sh", new FunnelGroupDruidLoadSh(false)));
 
-        for (Map.Entry<String, TemplateFile> file : dynamicPipelineFiles) {
-            Files.write(Paths.get(file.getKey()), file.getValue().generateFile(model, version).getBytes());
+        // Load the funnels before they are read on the render threads
+        Hibernate.initialize(model.getPipelines());
+        for (Map.Entry<String, TemplateFile<FunnelGroup>> file : dynamicPipelineFiles) {
+            batch.render(file.getKey(), file.getValue(), model, version);
         }
 
         // Create all individual funnel dynamic files
         FunnelCoordinatorXml funnelCoordXmlGenerator = new FunnelCoordinatorXml();
         FunnelWorkflowXml funnelWorkflowXmlGenerator = new FunnelWorkflowXml();
         for (Pipeline pipeline : model.getPipelines()) {
-            Files.write(Paths.get(funnelFolder + "coordinator_" + pipeline.getPipelineName() + ".xml"),
-                    funnelCoordXmlGenerator.generateFile(pipeline, version).getBytes());
-            Files.write(Paths.get(funnelFolder + "workflow_" + pipeline.getPipelineName() + ".xml"),
-                    funnelWorkflowXmlGenerator.generateFile(pipeline, version).getBytes());
-            Files.write(Paths.get(scriptSubfolder + "query_" + pipeline.getPipelineName() + ".hql"),
-                    pipeline.getFunnelHql().getBytes());
+            batch.render(funnelFolder + "coordinator_" + pipeline.getPipelineName() + ".xml", funnelCoordXmlGenerator, pipeline, version);
+            batch.render(funnelFolder + "workflow_" + pipeline.getPipelineName() + ".xml", funnelWorkflowXmlGenerator, pipeline, version);
+            batch.write(scriptSubfolder + "query_" + pipeline.getPipelineName() + ".hql", pipeline.getFunnelHql());
         }
-
-        if (!download) {
-            Files.copy(Paths.get(CLISettings.SKETCHES_HIVE_JAR_PATH + "sketches-hive-0.13.0-with-shaded-core.jar"), Paths.get(libFolder + "sketches-hive-0.13.0-with-shaded-core.jar"), REPLACE_EXISTING);
-        }
-
-        return outputDir;
     }
 }
@@ -26,12 +26,17 @@ public class FunnelGroupWorkflowXml implements TemplateFile<FunnelGroup> {
     // xml templates
     private static final String DELETE_TSV_TEMPLATE = "<delete path='hdfs://${hdfs_output_path}/%s_${year}_${month}_${day}' />";
 
+    @Override
+    public boolean dependsOnVersion() {
+        return false;
+    }
+
     /**
      * Generate template file.
      */
     @Override
     public String generateFile(FunnelGroup model, long version) throws Exception {
-        StringTemplate template = new StringTemplate(TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.OOZIE_TEMPLATES_DIR + FUNNEL_GROUP_WORKFLOW_XML_FILE));
+        StringTemplate template = TemplateRegistry.getInstanceOf(TemplateUtils.OOZIE_TEMPLATES_DIR + FUNNEL_GROUP_WORKFLOW_XML_FILE);
 
         List<String> pathsToDelete = new ArrayList<>();
 
@@ -82,12 +82,12 @@ public class FunnelHql {
 
         StringTemplate template;
         if (!isPipeline) {
-            template = new StringTemplate(TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.FUNNEL_TEMPLATE_DIR + FUNNEL_QUERY_TEMPLATE_FILE));
+            template = TemplateRegistry.getInstanceOf(TemplateUtils.FUNNEL_TEMPLATE_DIR + FUNNEL_QUERY_TEMPLATE_FILE);
         } else {
             if (!isFunnelGroup) {
-                template = new StringTemplate(TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.FUNNEL_TEMPLATE_DIR + FUNNEL_QUERY_PIPELINE_TEMPLATE_FILE));
+                template = TemplateRegistry.getInstanceOf(TemplateUtils.FUNNEL_TEMPLATE_DIR + FUNNEL_QUERY_PIPELINE_TEMPLATE_FILE);
             } else {
-                template = new StringTemplate(TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.FUNNEL_TEMPLATE_DIR + FUNNEL_QUERY_PIPELINE_TEMPLATE_FILE_FUNNEL_GROUP));
+                template = TemplateRegistry.getInstanceOf(TemplateUtils.FUNNEL_TEMPLATE_DIR + FUNNEL_QUERY_PIPELINE_TEMPLATE_FILE_FUNNEL_GROUP);
             }
         }
 
@@ -112,8 +112,9 @@ public class FunnelHql {
         template.setAttribute(STEPS_ATTRIBUTE, steps);
         String stepFilterStr = "(" + stepsFilter.stream().collect(Collectors.joining(OR_DELIMITER + FILTER_DELIMITER)) + ")";
         template.setAttribute(STEP_FILTERS_ATTRIBUTE, stepFilterStr + AND_DELIMITER);
-        if (model.getFilter().toModel(model.getSchemaName()).prettyPrint().length() > 0) {
-            template.setAttribute(FILTER_ATTRIBUTE, model.getFilter().toModel(model.getSchemaName()).prettyPrint() + AND_DELIMITER);
+        String filterHql = model.getFilter().toModel(model.getSchemaName()).prettyPrint();
+        if (filterHql.length() > 0) {
+            template.setAttribute(FILTER_ATTRIBUTE, filterHql + AND_DELIMITER);
         }
 
         String finalProjectionsStr = "";
@@ -19,12 +19,17 @@ public class FunnelWorkflowXml implements TemplateFile<Pipeline> {
     private static final String WORKFLOW_NAME_ATTRIBUTE = "WORKFLOW_NAME";
     private static final String FUNNEL_NAME_ATTRIBTUE = "FUNNEL_NAME";
 
+    @Override
+    public boolean dependsOnVersion() {
+        return false;
+    }
+
     /**
      * Generate template file.
      */
     @Override
     public String generateFile(Pipeline model, long version) throws Exception {
-        StringTemplate template = new StringTemplate(TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.OOZIE_TEMPLATES_DIR + FUNNEL_WORKFLOW_XML_FILE));
+        StringTemplate template = TemplateRegistry.getInstanceOf(TemplateUtils.OOZIE_TEMPLATES_DIR + FUNNEL_WORKFLOW_XML_FILE);
         String funnelName = model.getPipelineName();
         template.setAttribute(WORKFLOW_NAME_ATTRIBUTE, CLISettings.INSTANCE_NAME + Utils.UNDERSCORE_DELIMITER + funnelName);
         template.setAttribute(FUNNEL_NAME_ATTRIBTUE, funnelName);
@@ -53,17 +53,23 @@ public class ScriptsTransformHql implements TemplateFile<Pipeline> {
     private static final String EQUAL = "=";
     private static final String RLIKE = "RLIKE";
 
+    @Override
+    public boolean dependsOnVersion() {
+        return false;
+    }
+
     @Override
     public String generateFile(Pipeline model, long version) throws Exception {
-        StringTemplate template = new StringTemplate(TemplateUtils.getParametrizedTemplateAsString(TemplateUtils.OOZIE_TEMPLATES_DIR + HIVE_TRANSFORM_AND_FILTER_TEMPLATE_FILE));
+        StringTemplate template = TemplateRegistry.getInstanceOf(TemplateUtils.OOZIE_TEMPLATES_DIR + HIVE_TRANSFORM_AND_FILTER_TEMPLATE_FILE);
         if (model.getProjections() != null) {
             String projections = getHqlString(model.getProjections(), Constants.COMMA_DELIMITER);
 
             template.setAttribute(TRANSFORMATIONS_ATTRIBUTE, projections);
         }
 
-        if (model.getPipelineFilterObject() != null) {
-            template.setAttribute(FILTERS_ATTRIBUTE, model.getPipelineFilterObject().prettyPrint() + FILTER_DELIMITER);
+        String filterHql = model.getPipelineFilterHql();
+        if (filterHql != null) {
+            template.setAttribute(FILTERS_ATTRIBUTE, filterHql + FILTER_DELIMITER);
         }
 
         template.setAttribute(GROUP_BY_ATTRIBUTE, strOfGroupBy(model));
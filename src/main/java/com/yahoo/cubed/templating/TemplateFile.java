@@ -88,4 +88,19 @@ public interface TemplateFile<T> {
      * @param version
      */
     public abstract String generateFile(T model, long version) throws Exception;
+
+    /**
+     * Whether the generated file depends on the version, files that do not are reused between versions.
+     */
+    default boolean dependsOnVersion() {
+        return true;
+    }
+
+    /**
+     * State of the template itself that changes the generated file, such as constructor flags.
+     * Renders are only reused between templates of the same class with the same inputs key.
+     */
+    default String inputsKey() {
+        return "";
+    }
 }
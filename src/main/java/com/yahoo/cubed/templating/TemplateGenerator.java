@@ -4,8 +4,9 @@
 
 package com.yahoo.cubed.templating;
 
-import java.util.List;
-import java.io.File;
+import com.yahoo.cubed.service.ServiceFactory;
+import java.util.Map;
+import java.util.zip.ZipOutputStream;
 
 /**
  * Template generator abstract class.
@@ -13,23 +14,81 @@ import java.io.File;
  */
 public abstract class TemplateGenerator<T> {
     /**
-     * Generates a template file given a model and version.
+     * Generates the files of a model in a new directory of the output path.
      * @param model
      * @param outputPath
      * @param version
+     * @return the directory of the files
      */
-    public abstract String generateTemplateFiles(T model, String outputPath, long version) throws Exception;
+    public String generateTemplateFiles(T model, String outputPath, long version) throws Exception {
+        String outputDir = getOutputDir(model, outputPath, version);
+        TemplateRenderService.Batch batch = ServiceFactory.templateRenderService().newBatch(outputDir);
+        addTemplateFiles(model, outputDir, version, batch);
+        batch.await();
+        return outputDir;
+    }
+
+    /**
+     * Generates the files of a model straight into a zip archive, in a folder named like the generated directory.
+     * @param model
+     * @param version
+     * @param zip archive, left open
+     * @param compressionLevel deflate level of the entries, 0 stores them uncompressed
+     */
+    public void zipTemplateFiles(T model, long version, ZipOutputStream zip, int compressionLevel) throws Exception {
+        TemplateRenderService.Batch batch = ServiceFactory.templateRenderService().newZipBatch(zip, compressionLevel);
+        addTemplateFiles(model, getOutputDir(model, "", version), version, batch);
+        batch.await();
+    }
 
     /**
-     * Create directory structure according to folder specifications.
-     * @param folders
-     * @throws Exception
+     * Renders the files of a model in memory, without touching disk.
+     * @param model
+     * @param version
+     * @return content of the files by path relative to the generated directory
+     */
+    public Map<String, String> renderTemplateFiles(T model, long version) throws Exception {
+        return render(model, version, null);
+    }
+
+    /**
+     * Renders a single file of a model in memory, without rendering the other files or touching disk.
+     * @param model
+     * @param version
+     * @param path path of the file relative to the generated directory
+     * @return content of the file
+     * @throws IllegalArgumentException if the model has no such file
      */
-    protected void createDirectoryStructure(List<String> folders) throws Exception {
-        for (String folder : folders) {
-            if (!new File(folder).mkdir()) {
-                throw new Exception("Unable to create directory " + folder);
-            }
+    public String renderTemplateFile(T model, long version, String path) throws Exception {
+        String content = render(model, version, path).get(path);
+        if (content == null) {
+            throw new IllegalArgumentException("No generated file " + path);
         }
+        return content;
+    }
+
+    private Map<String, String> render(T model, long version, String path) throws Exception {
+        String outputDir = getOutputDir(model, "", version);
+        TemplateRenderService.Batch batch = ServiceFactory.templateRenderService().newMemoryBatch(outputDir, path);
+        addTemplateFiles(model, outputDir, version, batch);
+        batch.await();
+        return batch.getFiles();
     }
+
+    /**
+     * Directory of the generated files of a model.
+     * @param model
+     * @param outputPath
+     * @param version
+     */
+    protected abstract String getOutputDir(T model, String outputPath, long version);
+
+    /**
+     * Adds the directories and files of a model to a batch.
+     * @param model
+     * @param outputDir directory of the files
+     * @param version
+     * @param batch batch rendering the files
+     */
+    protected abstract void addTemplateFiles(T model, String outputDir, long version, TemplateRenderService.Batch batch) throws Exception;
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.templating;
+
+import org.antlr.stringtemplate.StringTemplate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of parsed templates.
+ * Each template resource is read and parsed once, callers get cheap instances of the parsed prototype.
+ */
+public class TemplateRegistry {
+    /** Parsed templates by resource name, never rendered directly. */
+    private static final Map<String, StringTemplate> PROTOTYPES = new ConcurrentHashMap<>();
+    /** Raw resource contents by resource name. */
+    private static final Map<String, String> RESOURCES = new ConcurrentHashMap<>();
+
+    /**
+     * Get a new instance of a template, with no attributes set.
+     * @param name resource name of the template
+     */
+    public static StringTemplate getInstanceOf(String name) throws Exception {
+        StringTemplate prototype = PROTOTYPES.get(name);
+        if (prototype == null) {
+            PROTOTYPES.putIfAbsent(name, new StringTemplate(getResource(name)));
+            prototype = PROTOTYPES.get(name);
+        }
+        return prototype.getInstanceOf();
+    }
+
+    /**
+     * Get the content of a template resource used as is.
+     * @param name resource name
+     */
+    public static String getResource(String name) throws Exception {
+        String content = RESOURCES.get(name);
+        if (content == null) {
+            content = TemplateUtils.getParametrizedTemplateAsString(name);
+            RESOURCES.putIfAbsent(name, content);
+        }
+        return content;
+    }
+
+    /**
+     * Drop all parsed templates, they are reloaded on next use.
+     */
+    public static void clear() {
+        PROTOTYPES.clear();
+        RESOURCES.clear();
+    }
+}
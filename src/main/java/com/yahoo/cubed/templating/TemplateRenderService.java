@@ -0,0 +1,375 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.templating;
+
+import com.yahoo.cubed.util.Utils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Application wide pool of threads rendering and writing the files of pipelines.
+ * The files of one pipeline do not depend on each other, so they are rendered at the same time.
+ */
+@Slf4j
+public class TemplateRenderService {
+    /** Name under which the copies of static files are timed. */
+    public static final String STATIC_FILES = "static";
+
+    /**
+     * Render time of one kind of file.
+     */
+    private static class RenderTime {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalMicros = new AtomicLong();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        private void add(long micros) {
+            count.incrementAndGet();
+            totalMicros.addAndGet(micros);
+            maxMicros.accumulateAndGet(micros, Math::max);
+        }
+    }
+
+    /**
+     * Files of one pipeline, rendered on the pool, then written to disk, streamed into a zip archive or kept in memory.
+     */
+    public class Batch {
+        private final List<Future<byte[]>> futures = new ArrayList<>();
+        private final List<String> paths = new ArrayList<>();
+        /** Archive of the files, null unless streamed. */
+        private final ZipOutputStream zip;
+        private final int compressionLevel;
+        /** Directory of the files and content by relative path, null unless kept in memory. */
+        private final String outputDir;
+        private final Map<String, String> files;
+        /** Only file rendered, null for all files. */
+        private final String onlyPath;
+
+        private Batch(String outputDir) throws IOException {
+            this(null, Deflater.DEFAULT_COMPRESSION, null, null);
+            if (artifactStore != null) {
+                artifactStore.registerTree(outputDir);
+            }
+        }
+
+        private Batch(ZipOutputStream zip, int compressionLevel, String outputDir, String onlyPath) {
+            this.zip = zip;
+            this.compressionLevel = compressionLevel;
+            this.outputDir = outputDir;
+            this.files = outputDir == null ? null : new LinkedHashMap<>();
+            this.onlyPath = onlyPath == null ? null : outputDir + onlyPath;
+            if (zip != null && compressionLevel != Deflater.NO_COMPRESSION) {
+                zip.setLevel(compressionLevel);
+            }
+        }
+
+        /**
+         * Whether the files are written to disk rather than streamed or kept in memory.
+         */
+        private boolean writesFiles() {
+            return zip == null && files == null;
+        }
+
+        /**
+         * Create the directories of the files, only when they are written to disk.
+         * @param folders directories to create, parents first
+         * @throws Exception if a directory cannot be created
+         */
+        public void createDirectories(List<String> folders) throws Exception {
+            if (!writesFiles()) {
+                return;
+            }
+            for (String folder : folders) {
+                if (!new File(folder).mkdir()) {
+                    throw new Exception("Unable to create directory " + folder);
+                }
+            }
+        }
+
+        /**
+         * Copy a static resource.
+         * @param resource name of the resource in {@link TemplateUtils#STATIC_RESOURCE_DIR}
+         * @param path file to create
+         */
+        public void copy(String resource, String path) {
+            submit(STATIC_FILES, path, () -> copyFile(resource, path));
+        }
+
+        /**
+         * Render a template file of a model.
+         * @param path file to create
+         * @param templateFile template of the file
+         * @param model model rendered
+         * @param version pipeline version
+         * @param <T> type of the model
+         */
+        public <T> void render(String path, TemplateFile<T> templateFile, T model, long version) {
+            submit(templateFile.getClass().getSimpleName(), path, () -> renderFile(path, templateFile, model, version));
+        }
+
+        /**
+         * Write a file with content known in advance.
+         * @param path file to create
+         * @param content content of the file
+         */
+        public void write(String path, String content) {
+            submit(STATIC_FILES, path, () -> writeContent(path, content));
+        }
+
+        private void submit(String name, String path, Callable<byte[]> task) {
+            if (onlyPath != null && !onlyPath.equals(path)) {
+                return;
+            }
+            paths.add(path);
+            futures.add(executor.submit(() -> timed(name, path, task)));
+        }
+
+        private byte[] copyFile(String resource, String path) throws Exception {
+            if (!writesFiles()) {
+                try (InputStream content = TemplateUtils.getResouceFileAsStream(TemplateUtils.STATIC_RESOURCE_DIR + resource)) {
+                    return IOUtils.toByteArray(content);
+                }
+            }
+            if (artifactStore != null) {
+                artifactStore.copyResource(resource, path);
+            } else {
+                copyResource(resource, path);
+            }
+            return null;
+        }
+
+        private <T> byte[] renderFile(String path, TemplateFile<T> templateFile, T model, long version) throws Exception {
+            if (writesFiles() && artifactStore != null) {
+                artifactStore.render(path, templateFile, model, version);
+                return null;
+            }
+            return writeContent(path, templateFile.generateFile(model, version));
+        }
+
+        private byte[] writeContent(String path, String content) throws Exception {
+            if (!writesFiles()) {
+                return content.getBytes(StandardCharsets.UTF_8);
+            }
+            if (artifactStore != null) {
+                artifactStore.write(path, content);
+            } else {
+                writeFile(path, content);
+            }
+            return null;
+        }
+
+        /**
+         * Wait for the files of the batch, adding each in order to the zip archive or the files in memory as soon as it is rendered,
+         * so that a zip archive holds only the files rendered ahead of the one it waits for.
+         * After a failure no more files are added, leaving a zip archive unfinished.
+         * @throws Exception the first failure, once all files are done
+         */
+        public void await() throws Exception {
+            Exception failure = null;
+            for (int i = 0; i < futures.size(); i++) {
+                byte[] content;
+                try {
+                    content = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                    continue;
+                } finally {
+                    // Drop the content once added
+                    futures.set(i, null);
+                }
+                if (failure != null) {
+                    continue;
+                }
+                try {
+                    if (zip != null) {
+                        addEntry(paths.get(i), content);
+                    } else if (files != null) {
+                        files.put(paths.get(i).substring(outputDir.length()), new String(content, StandardCharsets.UTF_8));
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (artifactStore != null && writesFiles()) {
+                artifactStore.evictIfDue();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        /**
+         * Get the files rendered in memory, by path relative to the directory, in the order they were added.
+         */
+        public Map<String, String> getFiles() {
+            return files;
+        }
+
+        private void addEntry(String path, byte[] content) throws IOException {
+            ZipEntry entry = new ZipEntry(path.startsWith("/") ? path.substring(1) : path);
+            if (compressionLevel == Deflater.NO_COMPRESSION) {
+                // Stored entries need their size and checksum up front
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(content.length);
+                entry.setCompressedSize(content.length);
+                entry.setCrc(crc.getValue());
+            }
+            zip.putNextEntry(entry);
+            zip.write(content);
+            zip.closeEntry();
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final ArtifactStore artifactStore;
+    private final Map<String, RenderTime> renderTimes = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor writing files without an artifact store.
+     * @param threads number of files rendered at the same time, 0 for the number of cores
+     */
+    public TemplateRenderService(int threads) {
+        this(threads, null);
+    }
+
+    /**
+     * Constructor.
+     * @param threads number of files rendered at the same time, 0 for the number of cores
+     * @param artifactStore store sharing the files between pipelines, null to write every file
+     */
+    public TemplateRenderService(int threads, ArtifactStore artifactStore) {
+        this.artifactStore = artifactStore;
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), Utils.daemonThreadFactory("template-render-"));
+        log.info("Rendering pipeline files on {} threads", poolSize);
+    }
+
+    /**
+     * Start a batch of files.
+     * @param outputDir directory of the files, evicted with the artifact store
+     */
+    public Batch newBatch(String outputDir) throws IOException {
+        return new Batch(outputDir);
+    }
+
+    /**
+     * Start a batch of files streamed into a zip archive instead of written to disk.
+     * Entries are named by the paths of the files, without leading slash, and added in order as the files are rendered.
+     * @param zip the archive, left open
+     * @param compressionLevel deflate level of the entries, 0 stores them uncompressed
+     */
+    public Batch newZipBatch(ZipOutputStream zip, int compressionLevel) {
+        return new Batch(zip, compressionLevel, null, null);
+    }
+
+    /**
+     * Start a batch of files kept in memory instead of written to disk.
+     * @param outputDir directory of the files, left out of their paths in {@link Batch#getFiles()}
+     * @param onlyPath only file rendered, relative to the directory, null for all files
+     */
+    public Batch newMemoryBatch(String outputDir, String onlyPath) {
+        return new Batch(null, Deflater.DEFAULT_COMPRESSION, outputDir, onlyPath);
+    }
+
+    /**
+     * Get the artifact store, null if files are written without it.
+     */
+    public ArtifactStore getArtifactStore() {
+        return artifactStore;
+    }
+
+    private byte[] timed(String name, String path, Callable<byte[]> task) throws Exception {
+        long start = System.nanoTime();
+        byte[] content = task.call();
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        renderTimes.computeIfAbsent(name, n -> new RenderTime()).add(micros);
+        log.debug("Rendered {} with {} in {} us", path, name, micros);
+        return content;
+    }
+
+    private static void copyResource(String resource, String path) throws Exception {
+        try (InputStream content = TemplateUtils.getResouceFileAsStream(TemplateUtils.STATIC_RESOURCE_DIR + resource)) {
+            Files.copy(content, Paths.get(path));
+        }
+    }
+
+    private static void writeFile(String path, String content) throws Exception {
+        Path file = Paths.get(path);
+        ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Get the number of files rendered and their render times in microseconds, by template.
+     */
+    public Map<String, Map<String, Long>> getRenderStats() {
+        Map<String, Map<String, Long>> stats = new TreeMap<>();
+        for (Map.Entry<String, RenderTime> entry : renderTimes.entrySet()) {
+            RenderTime time = entry.getValue();
+            Map<String, Long> templateStats = new LinkedHashMap<>();
+            long count = time.count.get();
+            templateStats.put("count", count);
+            templateStats.put("averageMicros", count == 0 ? 0 : time.totalMicros.get() / count);
+            templateStats.put("maxMicros", time.maxMicros.get());
+            stats.put(entry.getKey(), templateStats);
+        }
+        return stats;
+    }
+
+    /**
+     * Get thread and queue metrics.
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("threads", (long) executor.getMaximumPoolSize());
+        stats.put("active", (long) executor.getActiveCount());
+        stats.put("queued", (long) executor.getQueue().size());
+        stats.put("completed", executor.getCompletedTaskCount());
+        return stats;
+    }
+
+    /**
+     * Stop accepting files, the files being rendered are finished.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
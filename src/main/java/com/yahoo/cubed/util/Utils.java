@@ -4,19 +4,16 @@
 
 package com.yahoo.cubed.util;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.yahoo.cubed.Routes;
 import com.yahoo.cubed.json.Funnelmart;
+import com.yahoo.cubed.json.JsonCodec;
 import com.yahoo.cubed.json.NewDatamart;
-import com.yahoo.cubed.json.UpdateDatamart;
 import com.yahoo.cubed.json.FunnelQuery;
 import com.yahoo.cubed.json.NewFunnelQuery;
 import com.yahoo.cubed.json.FunnelGroupQuery;
 import com.yahoo.cubed.json.NewFunnelGroupQuery;
-import com.yahoo.cubed.json.UpdateFunnelGroupQuery;
 import com.yahoo.cubed.json.filter.Filter;
 import com.yahoo.cubed.json.filter.LogicalRule;
 
@@ -27,6 +24,7 @@ import com.yahoo.cubed.model.FunnelGroup;
 import com.yahoo.cubed.model.Schema;
 import com.yahoo.cubed.pipeline.launch.PipelineLauncher;
 import com.yahoo.cubed.service.ServiceFactory;
+import com.yahoo.cubed.service.UnitOfWork;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -39,9 +37,17 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.Collections;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
+import java.util.zip.ZipOutputStream;
 import java.util.stream.Collectors;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import com.yahoo.cubed.service.bullet.query.BulletQuery;
 import com.yahoo.cubed.service.cardinality.CardinalityEstimationService;
@@ -96,6 +102,8 @@ public class Utils {
     private static final String FUNNEL_NAMES_JSON_KEY = "funnelNames";
     /** Funnel pipeline type. */
     public static final String FUNNEL = "funnel";
+    /** Data mart pipeline type. */
+    public static final String DATAMART = "datamart";
     /** The name json field. */
     public static final String NAME_JSON_FIELD = "name";
     /** The description json field. */
@@ -118,6 +126,8 @@ public class Utils {
     private static final Pattern REGULAR_TEXT_FIELD_PATTERN = Pattern.compile("^[A-Za-z0-9 _-]*$");
     /** Funnel names serialized json string pattern in json requests. */
     private static final Pattern FUNNEL_NAMES_PATTERN = Pattern.compile("^[A-Za-z0-9\"{},: _-]*$");
+    /** Size of the buffer between zip archives and the HTTP response. */
+    private static final int ZIP_BUFFER_SIZE = 64 * 1024;
     /** File name pattern used in file downloads. */
     private static final Pattern FILE_NAME_PATTERN = Pattern.compile("^[A-Za-z0-9 ._-]*$");
 
@@ -314,16 +324,14 @@ public class Utils {
     }
 
     /**
-     * Generate Funnel Query.
-     * @param query
-     * @param isPipeline
-     * @return
+     * Parse and validate a funnel query request.
+     * @param query request JSON
+     * @return the funnel query with aliases set
      * @throws Exception
      */
-    public static String createAndValidateFunnelQuery(String query, boolean isPipeline, boolean isFunnelGroup) throws Exception {
+    public static NewFunnelQuery parseAndValidateFunnelQuery(String query) throws Exception {
         // Parse the JSON
-        ObjectMapper mapper = new ObjectMapper();
-        NewFunnelQuery fQuery = mapper.readValue(query, NewFunnelQuery.class);
+        NewFunnelQuery fQuery = JsonCodec.NEW_FUNNEL_QUERY_READER.readValue(query);
 
         // Log the request JSON
         log.info("JSON: {}", fQuery.toString());
@@ -335,8 +343,18 @@ public class Utils {
         }
 
         fQuery.setProjections(Utils.setAliases(fQuery.getProjections()));
+        return fQuery;
+    }
 
-        return FunnelHql.generateFile(fQuery, isPipeline, isFunnelGroup).trim();
+    /**
+     * Generate Funnel Query.
+     * @param query
+     * @param isPipeline
+     * @return
+     * @throws Exception
+     */
+    public static String createAndValidateFunnelQuery(String query, boolean isPipeline, boolean isFunnelGroup) throws Exception {
+        return FunnelHql.generateFile(parseAndValidateFunnelQuery(query), isPipeline, isFunnelGroup).trim();
     }
 
     /**
@@ -344,12 +362,11 @@ public class Utils {
      */
     public static Pipeline constructFunnelmartPipeline(String jsonReq, long funnelmartId, boolean isFunnel, boolean isPartOfFunnelGroup) throws Exception {
         boolean isUpdate = funnelmartId != -1;
-        ObjectMapper mapper = new ObjectMapper();
         Funnelmart funnelmart;
         if (!isFunnel) {
-            funnelmart = isUpdate ? mapper.readValue(jsonReq, UpdateDatamart.class) : mapper.readValue(jsonReq, NewDatamart.class);
+            funnelmart = (isUpdate ? JsonCodec.UPDATE_DATAMART_READER : JsonCodec.NEW_DATAMART_READER).readValue(jsonReq);
         } else {
-            funnelmart = mapper.readValue(jsonReq, NewFunnelQuery.class);
+            funnelmart = JsonCodec.NEW_FUNNEL_QUERY_READER.readValue(jsonReq);
         }
 
         // Validate the JSON object
@@ -519,8 +536,7 @@ public class Utils {
      */
     public static FunnelGroup constructFunnelGroup(String jsonReq, long funnelGroupId) throws Exception {
         boolean isUpdate = funnelGroupId != -1;
-        ObjectMapper mapper = new ObjectMapper();
-        Funnelmart funnelmart = isUpdate ? mapper.readValue(jsonReq, UpdateFunnelGroupQuery.class) : mapper.readValue(jsonReq, NewFunnelGroupQuery.class);
+        Funnelmart funnelmart = (isUpdate ? JsonCodec.UPDATE_FUNNEL_GROUP_QUERY_READER : JsonCodec.NEW_FUNNEL_GROUP_QUERY_READER).readValue(jsonReq);
 
         // Validate the JSON object
         String jsonValidateErrorMsg = funnelmart.isValid();
@@ -652,8 +668,7 @@ public class Utils {
 
         // Funnel names
         String userSpecifiedFunnelNames = ((FunnelGroupQuery) funnelmart).getFunnelNames();
-        TypeReference<HashMap<String, String>> typeRef = new TypeReference<HashMap<String, String>>() { };
-        Map<String, String> funnelNames = mapper.readValue(userSpecifiedFunnelNames, typeRef);
+        Map<String, String> funnelNames = JsonCodec.STRING_MAP_READER.readValue(userSpecifiedFunnelNames);
 
         // Propagate attributes to each pipeline and add pipelines to funnel group
         List<Pipeline> pipelines = new ArrayList<>();
@@ -695,12 +710,22 @@ public class Utils {
             pipelines.add(pipeline);
         }
 
-        funnelGroup.setFunnelNames(mapper.writeValueAsString(funnelNames));
+        funnelGroup.setFunnelNames(JsonCodec.WRITER.writeValueAsString(funnelNames));
         funnelGroup.setPipelines(pipelines);
 
         return funnelGroup;
     }
 
+    /**
+     * Whether the launch of a pipeline checks its cardinality: it has dimensions and its schema uses Bullet.
+     */
+    public static boolean checksCardinality(Pipeline pipeline, Schema schema) {
+        if (schema == null || schema.getSchemaDisableBullet() || pipeline.getProjections() == null) {
+            return false;
+        }
+        return pipeline.getProjections().stream().anyMatch(projection -> !projection.isAggregation());
+    }
+
     /**
      * Launch pipeline.
      */
@@ -743,7 +768,7 @@ public class Utils {
 
         // Only check cardinality with Bullet if we have 1 or more dimensions.
         // If set in CLI option, skip Bullet validation.
-        if (numberOfDimensions > 0 && !schema.getSchemaDisableBullet()) {
+        if (checksCardinality(pipeline, schema)) {
             CardinalityEstimationService cardinalityEstimationService = ServiceFactory.cardinalityEstimationService();
             CardinalityEstimationService.Response queryResult = cardinalityEstimationService.sendBulletQuery(pipeline);
             if (queryResult.statusCode != HttpStatus.SC_OK) {
@@ -793,19 +818,15 @@ public class Utils {
         // Successful launch
         // Mark pipeline as launched
         log.info("Setting pipeline {} as launched", pipelineId);
-        pipeline.setPipelineStatus(String.format(Status.ACTIVE, Long.toString(pipeline.getPipelineVersion())));
         log.info("Setting the Oozie job id {} for pipeline {}", status.get().oozieJobId, pipelineId);
-        pipeline.setPipelineOozieJobId(status.get().oozieJobId);
         log.info("Oozie backfill job id: {}", status.get().oozieJobIdOfBackfill == null ? "N/A" : status.get().oozieJobIdOfBackfill);
         // backfill job id
         if (status.get().oozieJobIdOfBackfill != null) {
             log.info("Setting the Oozie backfill job id {} for pipeline {}", status.get().oozieJobIdOfBackfill, pipelineId);
-            pipeline.setPipelineOozieBackfillJobId(status.get().oozieJobIdOfBackfill);
         } else {
             log.info("No backfill job. Setting the Oozie backfill job id is skipped.");
         }
-
-        ServiceFactory.pipelineService().update(pipeline);
+        markPipelineLaunched(pipelineId, status.get().oozieJobId, status.get().oozieJobIdOfBackfill);
 
         if (bulletHasNoResults) {
             return "No results found in Bullet for your pipeline, try adjusting your filters and projections. The pipeline has still been launched.";
@@ -814,6 +835,24 @@ public class Utils {
         return "";
     }
 
+    /**
+     * Mark a launched pipeline as active with its Oozie job ids, in one unit of work.
+     * Only the changed columns are written, the projections are left as they are.
+     * @param oozieBackfillJobId backfill job id, null to keep the current one
+     */
+    public static void markPipelineLaunched(long pipelineId, String oozieJobId, String oozieBackfillJobId) throws Exception {
+        try (UnitOfWork work = UnitOfWork.begin()) {
+            Pipeline pipeline = ServiceFactory.pipelineService().fetch(pipelineId);
+            pipeline.setPipelineStatus(String.format(Status.ACTIVE, Long.toString(pipeline.getPipelineVersion())));
+            pipeline.setPipelineOozieJobId(oozieJobId);
+            if (oozieBackfillJobId != null) {
+                pipeline.setPipelineOozieBackfillJobId(oozieBackfillJobId);
+            }
+            ServiceFactory.pipelineService().update(pipeline);
+            work.commit();
+        }
+    }
+
     /**
      * Launch funnel group.
      */
@@ -845,7 +884,6 @@ public class Utils {
         // declare the launching of funnel group
         log.info("Starting launch for funnel group {}.v{}...", funnelGroupName, date);
 
-        Routes.funnelGroupTemplateGenerator.setDownload(false);
         String outputDir = Routes.funnelGroupTemplateGenerator.generateTemplateFiles(funnelGroup, CLISettings.TEMPLATE_OUTPUT_FOLDER, version);
         log.info("Generated template for {}.v{} at location {}", funnelGroupName, date, outputDir);
 
@@ -869,75 +907,58 @@ public class Utils {
             throw new Exception(status.get().errorMsg);
         }
 
-        // mark each pipeline within the funnel group as launched
-        for (Pipeline shallowPipeline : funnelGroup.getPipelines()) {
-            long pipelineId = shallowPipeline.getPipelineId();
-            Pipeline pipeline = ServiceFactory.pipelineService().fetch(pipelineId);
-            pipeline.setPipelineStatus(String.format(Status.ACTIVE, Long.toString(pipeline.getPipelineVersion())));
-            ServiceFactory.pipelineService().update(pipeline);
-        }
+        try (UnitOfWork work = UnitOfWork.begin()) {
+            FunnelGroup launchedGroup = ServiceFactory.funnelGroupService().fetch(funnelGroupId);
 
-        // funnel group successfully launched, mark it as launched
-        log.info("Setting funnel group name: {}, id: {} as launched", funnelGroupName, funnelGroupId);
-        funnelGroup.setFunnelGroupStatus(String.format(Status.ACTIVE, Long.toString(funnelGroup.getFunnelGroupVersion())));
-        log.info("Setting the Oozie job id {} for funnel group {}", status.get().oozieJobId, funnelGroupId);
-        funnelGroup.setFunnelGroupOozieJobId(status.get().oozieJobId);
+            // mark each pipeline within the funnel group as launched
+            for (Pipeline pipeline : launchedGroup.getPipelines()) {
+                pipeline.setPipelineStatus(String.format(Status.ACTIVE, Long.toString(pipeline.getPipelineVersion())));
+                ServiceFactory.pipelineService().update(pipeline);
+            }
 
-        ServiceFactory.funnelGroupService().update(funnelGroup);
+            // funnel group successfully launched, mark it as launched
+            log.info("Setting funnel group name: {}, id: {} as launched", funnelGroupName, funnelGroupId);
+            launchedGroup.setFunnelGroupStatus(String.format(Status.ACTIVE, Long.toString(launchedGroup.getFunnelGroupVersion())));
+            log.info("Setting the Oozie job id {} for funnel group {}", status.get().oozieJobId, funnelGroupId);
+            launchedGroup.setFunnelGroupOozieJobId(status.get().oozieJobId);
+
+            ServiceFactory.funnelGroupService().update(launchedGroup);
+            work.commit();
+        }
 
         return "";
     }
 
     /**
-     * Generate pipeline zip file.
+     * Stream the generated files of a pipeline into a zip archive, without writing them to disk.
+     * @param pipeline pipeline to generate
+     * @param version pipeline version
+     * @param out stream of the archive, closed once the archive is complete
+     * @throws Exception if a file cannot be rendered or the stream fails, leaving the archive unfinished,
+     * so that the download is reset if nothing was sent yet and detectably corrupt otherwise
      */
-    public static String zipPipeline(long pipelineId) throws Exception {
-        // Fetch the data mart by id
-        Pipeline pipeline = ServiceFactory.pipelineService().fetch(pipelineId);
-
-        // Get date string
-        String date = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
-        log.info("Version {} for pipeline {}", date, pipeline.getPipelineName());
-
-        // Convert to long
-        long version = Long.parseLong(date);
-        String outputDir = Routes.datamartTemplateGenerator.generateTemplateFiles(pipeline, CLISettings.TEMPLATE_OUTPUT_FOLDER, version);
-
-        log.info("Generated template for {}.v{} at location {}", pipeline.getPipelineName(), date, outputDir);
-
-        // Zip pipeline
-        String zipOutFile = outputDir.substring(0, outputDir.length() - 1) + ".zip";
-        log.info("Zipping {} to {}.zip", outputDir, zipOutFile);
-        ZipUtil.zipDir(zipOutFile, outputDir);
-
-        return zipOutFile;
+    public static void zipPipeline(Pipeline pipeline, long version, OutputStream out) throws Exception {
+        log.info("Zipping pipeline {}.v{}", pipeline.getPipelineName(), version);
+        // Not closed on failure, closing would finish a valid but incomplete archive
+        ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out, ZIP_BUFFER_SIZE));
+        Routes.datamartTemplateGenerator.zipTemplateFiles(pipeline, version, zip, CLISettings.DOWNLOAD_COMPRESSION_LEVEL);
+        zip.close();
     }
 
     /**
-     * Generate funnel group zip file.
+     * Stream the generated files of a funnel group into a zip archive, without writing them to disk.
+     * @param funnelGroup funnel group to generate
+     * @param version funnel group version
+     * @param out stream of the archive, closed once the archive is complete
+     * @throws Exception if a file cannot be rendered or the stream fails, leaving the archive unfinished,
+     * so that the download is reset if nothing was sent yet and detectably corrupt otherwise
      */
-    public static String zipFunnelGroup(long funnelGroupId) throws Exception {
-        FunnelGroup funnelGroup = ServiceFactory.funnelGroupService().fetch(funnelGroupId);
-
-        Routes.funnelGroupTemplateGenerator.setDownload(true);
-
-        // Get date string
-        String date = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
-        log.info("Version {} for funnel group {}", date, funnelGroup.getFunnelGroupName());
-
-        // Convert to long
-        long version = Long.parseLong(date);
-        String outputDir = Routes.funnelGroupTemplateGenerator.generateTemplateFiles(funnelGroup, CLISettings.TEMPLATE_OUTPUT_FOLDER, version);
-
-        log.info("Generated template for {}.v{} at location {}", funnelGroup.getFunnelGroupName(), date, outputDir);
-
-        // Zip funnel group
-        String zipOutFile = outputDir.substring(0, outputDir.length() - 1) + ".zip";
-        log.info("Zipping {} to {}.zip", outputDir, zipOutFile);
-        ZipUtil.zipDir(zipOutFile, outputDir);
-
-        return zipOutFile;
-
+    public static void zipFunnelGroup(FunnelGroup funnelGroup, long version, OutputStream out) throws Exception {
+        log.info("Zipping funnel group {}.v{}", funnelGroup.getFunnelGroupName(), version);
+        // Not closed on failure, closing would finish a valid but incomplete archive
+        ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out, ZIP_BUFFER_SIZE));
+        Routes.funnelGroupTemplateGenerator.zipTemplateFiles(funnelGroup, version, zip, CLISettings.DOWNLOAD_COMPRESSION_LEVEL);
+        zip.close();
     }
 
     /**
@@ -1041,8 +1062,7 @@ public class Utils {
      */
     public static String getFunnelJsonReq(String funnelGroupJsonReq, String name, String stepNames, List<String> steps, String description) throws IOException {
 
-        ObjectMapper mapper = new ObjectMapper();
-        ObjectNode rootNode = (ObjectNode) mapper.readTree(funnelGroupJsonReq);
+        ObjectNode rootNode = (ObjectNode) JsonCodec.TREE_READER.readTree(funnelGroupJsonReq);
 
         // Replace stepNames
         String[] stepNamesSplit = stepNames.split(STEP_NAME_DELIMITER);
@@ -1054,7 +1074,7 @@ public class Utils {
         // Replace steps
         ArrayNode stepsNode = rootNode.putArray(STEPS_JSON_KEY);
         for (String stepJson : steps) {
-            stepsNode = stepsNode.addPOJO(mapper.readValue(stepJson, LogicalRule.class));
+            stepsNode = stepsNode.addPOJO(JsonCodec.LOGICAL_RULE_READER.readValue(stepJson));
         }
 
         // Replace name, description
@@ -1065,7 +1085,7 @@ public class Utils {
         rootNode.remove(TOPOLOGY_JSON_KEY);
         rootNode.remove(FUNNEL_NAMES_JSON_KEY);
 
-        return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(rootNode);
+        return JsonCodec.PRETTY_WRITER.writeValueAsString(rootNode);
     }
 
     private static LinkedList<String> copyLinkedList(LinkedList<String> list) {
@@ -1117,4 +1137,40 @@ public class Utils {
         }
         return null;
     }
+
+    /**
+     * Hex encoded SHA-256 digest of a string.
+     */
+    public static String sha256Hex(String content) {
+        return sha256Hex(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Hex encoded SHA-256 digest of bytes.
+     */
+    public static String sha256Hex(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Thread factory for daemon threads named with a prefix and a counter.
+     */
+    public static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
 }
@@ -20,6 +20,9 @@ import lombok.extern.slf4j.Slf4j;
  */
 @Slf4j
 public class XmlJsonUtils {
+    /** Shared, thread safe pretty printer of JSON. */
+    private static final Gson PRETTY_GSON = new GsonBuilder().setPrettyPrinting().create();
+
     /**
      * Pretty print XML string with indent.
      */
@@ -45,9 +48,7 @@ public class XmlJsonUtils {
      * Pretty print JSON string.
      */
     public static String prettyPrintJsonString(String input) {
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        JsonParser jp = new JsonParser();
-        JsonElement je = jp.parse(input.toString());
-        return gson.toJson(je);
+        JsonElement je = JsonParser.parseString(input);
+        return PRETTY_GSON.toJson(je);
     }
 }
@@ -17,6 +17,8 @@ import lombok.extern.slf4j.Slf4j;
  */
 @Slf4j
 public class ZipUtil {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     /**
      * Zips a directory into a zip file.
      * @param outputZipFile Output zip file
@@ -38,7 +40,7 @@ public class ZipUtil {
      */
     private static void addDir(File dirObj, ZipOutputStream out, String rootPath) throws IOException {
         File[] files = dirObj.listFiles();
-        byte[] tempBuffer = new byte[1024];
+        byte[] tempBuffer = new byte[BUFFER_SIZE];
 
         // For each file
         for (int i = 0; i < files.length; i++) {
@@ -4,6 +4,8 @@
 
 package com.yahoo.cubed;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.yahoo.cubed.json.FunnelQueryResult;
 import com.yahoo.cubed.model.Pipeline;
 import com.yahoo.cubed.model.PipelineProjection;
@@ -11,26 +13,33 @@ import com.yahoo.cubed.model.PipelineProjectionVM;
 import com.yahoo.cubed.model.FunnelGroup;
 import com.yahoo.cubed.pipeline.launch.PipelineLauncher;
 import com.yahoo.cubed.pipeline.launch.PipelineLauncherManager;
+import com.yahoo.cubed.pipeline.launch.PipelineRelaunchManager;
 import com.yahoo.cubed.service.ServiceFactory;
 import com.yahoo.cubed.service.bullet.query.BulletQuery;
 import com.yahoo.cubed.service.cardinality.CardinalityEstimationService;
 import com.yahoo.cubed.service.querybullet.QueryBulletService;
 import com.yahoo.cubed.service.bullet.query.BulletQueryFailException;
 import com.yahoo.cubed.settings.CLISettings;
+import com.yahoo.cubed.source.FunnelQueryResultCache;
 import com.yahoo.cubed.source.HiveConnectionManager;
 import com.yahoo.cubed.templating.FunnelGroupTemplateGenerator;
 import com.yahoo.cubed.templating.TemplateTestUtils;
 import com.yahoo.cubed.util.Status;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.net.URLDecoder;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.time.Clock;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.http.HttpStatus;
@@ -47,9 +56,12 @@ import spark.ModelAndView;
 import spark.template.thymeleaf.ThymeleafTemplateEngine;
 
 import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletResponse;
 
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
@@ -121,9 +133,13 @@ public class RoutesTest {
     }
 
     private String createSampleDataMart() throws Exception {
+        return createSampleDataMart("test_mart");
+    }
+
+    private String createSampleDataMart(String name) throws Exception {
         // JSON to parse
         String json =
-                "{'name':'test_mart',                  " +
+                "{'name':'" + name + "',                  " +
                 " 'schemaName':'schema1',              " +
                 " 'description':'simple description',  " +
                 " 'owner':'john_doe',                  " +
@@ -189,8 +205,9 @@ public class RoutesTest {
     public void listDatamartTest() throws Exception {
         String pipelineId = createSampleDataMart();
         try {
-            // Mock the request
+            // Mock the request, with all statuses as the sample data mart is not deployed
             Request mockedRequest = mock(Request.class);
+            when(mockedRequest.queryParams("status")).thenReturn("");
             // Mock verify the response
             Response mockedResponse = mock(Response.class);
             // list datamart
@@ -251,6 +268,136 @@ public class RoutesTest {
         }
     }
 
+    /**
+     * Test listing a page of data marts as JSON.
+     */
+    @Test
+    public void listDatamartPageTest() throws Exception {
+        String pipelineId = createSampleDataMart();
+        try {
+            Request mockedRequest = mock(Request.class);
+            when(mockedRequest.queryParams("prefix")).thenReturn("test_mart");
+            when(mockedRequest.queryParams("sort")).thenReturn("name");
+            when(mockedRequest.queryParams("limit")).thenReturn("10");
+            Response mockedResponse = mock(Response.class);
+            JsonNode page = new ObjectMapper().readTree(Routes.listDatamartPage(mockedRequest, mockedResponse));
+            verify(mockedResponse).status(200);
+            Assert.assertEquals(page.get("items").size(), 1);
+            Assert.assertEquals(page.get("items").get(0).get("id").asText(), pipelineId);
+            Assert.assertEquals(page.get("items").get(0).get("name").asText(), "test_mart");
+            Assert.assertTrue(page.get("nextCursor").isNull());
+
+            Request badRequest = mock(Request.class);
+            when(badRequest.queryParams("limit")).thenReturn("0");
+            Response badResponse = mock(Response.class);
+            Routes.listDatamartPage(badRequest, badResponse);
+            verify(badResponse).status(HttpStatus.SC_BAD_REQUEST);
+
+            // Deleted data marts only when asked for
+            Request deleteRequest = mock(Request.class);
+            when(deleteRequest.params(":id")).thenReturn(pipelineId);
+            Routes.deleteDatamart(deleteRequest, mock(Response.class));
+            page = new ObjectMapper().readTree(Routes.listDatamartPage(mockedRequest, mock(Response.class)));
+            Assert.assertEquals(page.get("items").size(), 0);
+            when(mockedRequest.queryParams("deleted")).thenReturn("true");
+            page = new ObjectMapper().readTree(Routes.listDatamartPage(mockedRequest, mock(Response.class)));
+            Assert.assertEquals(page.get("items").size(), 1);
+            Assert.assertEquals(page.get("items").get(0).get("id").asText(), pipelineId);
+            when(mockedRequest.queryParams("deleted")).thenReturn("any");
+            page = new ObjectMapper().readTree(Routes.listDatamartPage(mockedRequest, mock(Response.class)));
+            Assert.assertEquals(page.get("items").size(), 1);
+            when(mockedRequest.queryParams("deleted")).thenReturn("yes");
+            badResponse = mock(Response.class);
+            Routes.listDatamartPage(mockedRequest, badResponse);
+            verify(badResponse).status(HttpStatus.SC_BAD_REQUEST);
+        } finally {
+            ServiceFactory.pipelineService().delete(Long.parseLong(pipelineId, 10));
+        }
+    }
+
+    /**
+     * Test that the list view shows one page at a time, with a link to the next page.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void listDatamartViewPageTest() throws Exception {
+        String firstId = createSampleDataMart();
+        String secondId = createSampleDataMart("test_mart_second");
+        try {
+            Request mockedRequest = mock(Request.class);
+            when(mockedRequest.queryParams("limit")).thenReturn("1");
+            when(mockedRequest.queryParams("status")).thenReturn("");
+            ModelAndView listPage = Routes.listDatamart(mockedRequest, mock(Response.class));
+            Map<String, Object> params = (Map<String, Object>) listPage.getModel();
+            List<Pipeline> pipelines = (List<Pipeline>) params.get("listOfDataMarts");
+            Assert.assertEquals(pipelines.size(), 1);
+            Assert.assertEquals(String.valueOf(pipelines.get(0).getPipelineId()), secondId);
+            String nextPage = (String) params.get("nextPage");
+            Assert.assertTrue(nextPage.startsWith("?" + Routes.DATA_MART_CURSOR + "="), nextPage);
+            Assert.assertTrue(nextPage.endsWith("&prefix=&status=&owner="), nextPage);
+
+            // The next page continues the data marts only
+            Request nextRequest = mock(Request.class);
+            when(nextRequest.queryParams("limit")).thenReturn("1");
+            when(nextRequest.queryParams("status")).thenReturn("");
+            String cursor = nextPage.split("&")[0].substring(nextPage.indexOf('=') + 1);
+            when(nextRequest.queryParams(Routes.DATA_MART_CURSOR)).thenReturn(URLDecoder.decode(cursor, "UTF-8"));
+            params = (Map<String, Object>) Routes.listDatamart(nextRequest, mock(Response.class)).getModel();
+            pipelines = (List<Pipeline>) params.get("listOfDataMarts");
+            Assert.assertEquals(pipelines.size(), 1);
+            Assert.assertEquals(String.valueOf(pipelines.get(0).getPipelineId()), firstId);
+            Assert.assertNull(params.get("nextPage"));
+
+            // Invalid page sizes are rejected
+            for (String limit : new String[] {"abc", "0"}) {
+                Request badRequest = mock(Request.class);
+                when(badRequest.queryParams("limit")).thenReturn(limit);
+                Response badResponse = mock(Response.class);
+                params = (Map<String, Object>) Routes.listDeletedDatamart(badRequest, badResponse).getModel();
+                verify(badResponse).status(HttpStatus.SC_BAD_REQUEST);
+                Assert.assertNotNull(params.get(Routes.ERROR_KEY), limit);
+            }
+        } finally {
+            ServiceFactory.pipelineService().delete(Long.parseLong(firstId, 10));
+            ServiceFactory.pipelineService().delete(Long.parseLong(secondId, 10));
+        }
+    }
+
+    /**
+     * Test that the list view is filtered in the database, deployed data marts only by default.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void listDatamartViewFilterTest() throws Exception {
+        String firstId = createSampleDataMart();
+        String secondId = createSampleDataMart("test_mart_second");
+        try {
+            // The sample data marts are not deployed
+            Map<String, Object> params = (Map<String, Object>) Routes.listDatamart(mock(Request.class), mock(Response.class)).getModel();
+            Assert.assertEquals(((List<Pipeline>) params.get("listOfDataMarts")).size(), 0);
+            Assert.assertEquals(((Map<String, String>) params.get("filters")).get("status"), "Deployed");
+
+            Request mockedRequest = mock(Request.class);
+            when(mockedRequest.queryParams("status")).thenReturn("Inactive");
+            when(mockedRequest.queryParams("prefix")).thenReturn("test_mart_s");
+            params = (Map<String, Object>) Routes.listDatamart(mockedRequest, mock(Response.class)).getModel();
+            List<Pipeline> pipelines = (List<Pipeline>) params.get("listOfDataMarts");
+            Assert.assertEquals(pipelines.size(), 1);
+            Assert.assertEquals(String.valueOf(pipelines.get(0).getPipelineId()), secondId);
+
+            when(mockedRequest.queryParams("prefix")).thenReturn("test_mart");
+            when(mockedRequest.queryParams("owner")).thenReturn("john_doe");
+            params = (Map<String, Object>) Routes.listDatamart(mockedRequest, mock(Response.class)).getModel();
+            Assert.assertEquals(((List<Pipeline>) params.get("listOfDataMarts")).size(), 2);
+            when(mockedRequest.queryParams("owner")).thenReturn("jane_doe");
+            params = (Map<String, Object>) Routes.listDatamart(mockedRequest, mock(Response.class)).getModel();
+            Assert.assertEquals(((List<Pipeline>) params.get("listOfDataMarts")).size(), 0);
+        } finally {
+            ServiceFactory.pipelineService().delete(Long.parseLong(firstId, 10));
+            ServiceFactory.pipelineService().delete(Long.parseLong(secondId, 10));
+        }
+    }
+
     /**
      * Test previewFunnelQuery.
      */
@@ -562,6 +709,8 @@ public class RoutesTest {
 
             Routes.downloadDatamart(mockedRequest, mockedResponse);
             verify(mockedResponse).status(500);
+            // The download headers are dropped from the error
+            verify(mockedResponseRaw).reset();
         } finally {
             if (!deleted) {
                 // Delete the pipeline
@@ -607,22 +756,44 @@ public class RoutesTest {
     @Test
     public void relaunchDatamartTest() throws Exception {
         String pipelineId = createSampleDataMart();
+        PipelineRelaunchManager pipelineRelaunchManager = Routes.pipelineRelaunchManager;
+        Routes.pipelineRelaunchManager = new PipelineRelaunchManager(2, 2, 0, Routes::relaunchPipeline);
+        // Launch with the real scripts, which are not found in tests
+        PipelineLauncherManager pipelineLauncherManager = Routes.pipelineLauncherManager;
+        Routes.pipelineLauncherManager = new PipelineLauncherManager();
 
         try {
             // Mock the request
             Request mockedRequest = mock(Request.class);
             // Mock verify the response
             Response mockedResponse = mock(Response.class);
+            Routes.getRelaunchProgress(mockedRequest, mockedResponse);
+            verify(mockedResponse).status(404);
+
             Routes.relaunchDatamart(mockedRequest, mockedResponse);
             verify(mockedResponse).status(200);
 
             Pipeline pipeline = ServiceFactory.pipelineService().fetch(Long.parseLong(pipelineId, 10));
             pipeline.setPipelineStatus(String.format(Status.ACTIVE, Long.toString(pipeline.getPipelineVersion())));
             ServiceFactory.pipelineService().update(pipeline);
-            Routes.relaunchDatamart(mockedRequest, mockedResponse);
+            String response = Routes.relaunchDatamart(mockedRequest, mockedResponse);
             verify(mockedResponse).status(500);
+            Assert.assertTrue(response.startsWith("Relaunched 0 of 1 data marts, failed:"));
+            Assert.assertTrue(response.contains(pipeline.getPipelineName() + ": "));
 
+            // Progress of the last relaunch
+            mockedResponse = mock(Response.class);
+            JsonNode progress = new ObjectMapper().readTree(Routes.getRelaunchProgress(mockedRequest, mockedResponse));
+            verify(mockedResponse).status(200);
+            Assert.assertEquals(progress.get("total").asInt(), 1);
+            Assert.assertEquals(progress.get("failed").asInt(), 1);
+            Assert.assertEquals(progress.get("retries").asInt(), 1);
+            Assert.assertTrue(progress.get("done").asBoolean());
+            Assert.assertTrue(progress.get("failures").has(pipeline.getPipelineName()));
         } finally {
+            Routes.pipelineRelaunchManager.shutdown();
+            Routes.pipelineRelaunchManager = pipelineRelaunchManager;
+            Routes.pipelineLauncherManager = pipelineLauncherManager;
             // Delete the pipeline
             ServiceFactory.pipelineService().delete(Long.parseLong(pipelineId, 10));
 
@@ -1859,6 +2030,47 @@ public class RoutesTest {
 
     }
 
+    /**
+     * Feed funnel results to the row handler of the mocked hive connector.
+     */
+    private static void mockFunnelQueryRows(HiveConnectionManager hiveConnectionManager, List<FunnelQueryResult> rows) {
+        doAnswer(invocation -> feedFunnelQueryRows((HiveConnectionManager.RowHandler) invocation.getArguments()[2], rows))
+            .when(hiveConnectionManager).execute(anyString(), anyString(), any(HiveConnectionManager.RowHandler.class), any(BooleanSupplier.class));
+    }
+
+    private static boolean feedFunnelQueryRows(HiveConnectionManager.RowHandler handler, List<FunnelQueryResult> rows) {
+        for (FunnelQueryResult row : rows) {
+            handler.handle(row.getKeys(), "[" + String.join(",", row.getValues()) + "]");
+        }
+        return true;
+    }
+
+    /**
+     * Capture what is written to the raw output stream of the mocked response.
+     */
+    private static ByteArrayOutputStream captureOutput(Response response) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        HttpServletResponse mockedResponseRaw = mock(HttpServletResponse.class);
+        ServletOutputStream servletOutput = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                output.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        };
+        when(mockedResponseRaw.getOutputStream()).thenReturn(servletOutput);
+        when(response.raw()).thenReturn(mockedResponseRaw);
+        return output;
+    }
+
     /**
      * Test runFunnelQuery with zipped results.
      */
@@ -1870,9 +2082,12 @@ public class RoutesTest {
         when(mockedRequest1.body()).thenReturn(json);
         // Mock verify the response
         Response mockedResponse1 = mock(Response.class);
+        ByteArrayOutputStream output1 = captureOutput(mockedResponse1);
         HiveConnectionManager mockedHiveConnectionManager = mock(HiveConnectionManager.class);
         Routes.hiveConnector = mockedHiveConnectionManager;
         Routes.SHOULD_RESET_HIVE_CONNECTOR = false;
+        // The same query returns different results below, so do not cache them
+        Routes.funnelQueryResultCache = null;
         // Test normal scenario
         FunnelQueryResult funnelQueryResult1 = new FunnelQueryResult();
         funnelQueryResult1.getKeys().add("4");
@@ -1886,15 +2101,16 @@ public class RoutesTest {
         ArrayList<FunnelQueryResult> listFunnelQueryResult1 = new ArrayList<>();
         listFunnelQueryResult1.add(funnelQueryResult1);
         listFunnelQueryResult1.add(funnelQueryResult2);
-        when(mockedHiveConnectionManager.execute(anyString())).thenReturn(listFunnelQueryResult1);
-        String result = Routes.runFunnelQuery(mockedRequest1, mockedResponse1);
+        mockFunnelQueryRows(mockedHiveConnectionManager, listFunnelQueryResult1);
+        Routes.runFunnelQuery(mockedRequest1, mockedResponse1);
         verify(mockedResponse1).status(200);
-        Assert.assertEquals(result, "[{\"keys\":[\"4\",\"ios\"],\"values\":[\"400\",\"50\"]}]");
+        Assert.assertEquals(output1.toString("UTF-8"), "[{\"keys\":[\"4\",\"ios\"],\"values\":[\"400\",\"50\"]}]");
         // Test the edge cases that each step is zero
         // The request and response for this case
         Request mockedRequest2 = mock(Request.class);
         when(mockedRequest2.body()).thenReturn(json);
         Response mockedResponse2 = mock(Response.class);
+        ByteArrayOutputStream output2 = captureOutput(mockedResponse2);
         FunnelQueryResult funnelQueryResult3 = new FunnelQueryResult();
         funnelQueryResult3.getKeys().add("4");
         funnelQueryResult3.getKeys().add("ios");
@@ -1906,10 +2122,10 @@ public class RoutesTest {
         ArrayList<FunnelQueryResult> listFunnelQueryResult2 = new ArrayList<>();
         listFunnelQueryResult2.add(funnelQueryResult3);
         listFunnelQueryResult2.add(funnelQueryResult4);
-        when(mockedHiveConnectionManager.execute(anyString())).thenReturn(listFunnelQueryResult2);
-        result = Routes.runFunnelQuery(mockedRequest2, mockedResponse2);
+        mockFunnelQueryRows(mockedHiveConnectionManager, listFunnelQueryResult2);
+        Routes.runFunnelQuery(mockedRequest2, mockedResponse2);
         verify(mockedResponse2).status(200);
-        Assert.assertEquals(result, "[{\"keys\":[\"4\",\"ios\"]}]");
+        Assert.assertEquals(output2.toString("UTF-8"), "[{\"keys\":[\"4\",\"ios\"]}]");
     }
 
 
@@ -1924,26 +2140,115 @@ public class RoutesTest {
         when(mockedRequest.body()).thenReturn(json);
         // Mock verify the response
         Response mockedResponse = mock(Response.class);
+        ByteArrayOutputStream output = captureOutput(mockedResponse);
         HiveConnectionManager mockedHiveConnectionManager = mock(HiveConnectionManager.class);
         Routes.hiveConnector = mockedHiveConnectionManager;
         Routes.SHOULD_RESET_HIVE_CONNECTOR = false;
+        Routes.funnelQueryResultCache = null;
         FunnelQueryResult funnelQueryResult = new FunnelQueryResult();
         funnelQueryResult.getValues().add("100");
         funnelQueryResult.getValues().add("50");
         ArrayList<FunnelQueryResult> listFunnelQueryResult = new ArrayList<>();
         listFunnelQueryResult.add(funnelQueryResult);
-        when(mockedHiveConnectionManager.execute(anyString())).thenReturn(listFunnelQueryResult);
+        mockFunnelQueryRows(mockedHiveConnectionManager, listFunnelQueryResult);
         String result = Routes.runFunnelQuery(mockedRequest, mockedResponse);
         verify(mockedResponse).status(200);
-        Assert.assertEquals(result, "[{\"values\":[\"100\",\"50\"]}]");
+        Assert.assertEquals(result, Routes.EMPTY_RESPONSE);
+        Assert.assertEquals(output.toString("UTF-8"), "[{\"values\":[\"100\",\"50\"]}]");
 
-        when(mockedHiveConnectionManager.execute(anyString())).thenReturn(null);
+        doReturn(false).when(mockedHiveConnectionManager).execute(anyString(), anyString(), any(HiveConnectionManager.RowHandler.class), any(BooleanSupplier.class));
         result = Routes.runFunnelQuery(mockedRequest, mockedResponse);
         verify(mockedResponse, times(1)).status(500);
         Assert.assertEquals(result, "Hive connector could not fetch results");
 
     }
 
+    /**
+     * Test that repeated funnel queries are served from the result cache.
+     */
+    @Test
+    public void runFunnelQueryCachedTest() throws Exception {
+        String json = TemplateTestUtils.loadTemplateInstance("templates/funnel_json_request.json");
+        Request mockedRequest = mock(Request.class);
+        when(mockedRequest.body()).thenReturn(json);
+        HiveConnectionManager mockedHiveConnectionManager = mock(HiveConnectionManager.class);
+        Routes.hiveConnector = mockedHiveConnectionManager;
+        Routes.SHOULD_RESET_HIVE_CONNECTOR = false;
+        Routes.funnelQueryResultCache = new FunnelQueryResultCache(100, 60, 2, null, 10, Clock.systemUTC());
+        FunnelQueryResult funnelQueryResult = new FunnelQueryResult();
+        funnelQueryResult.getValues().add("100");
+        ArrayList<FunnelQueryResult> listFunnelQueryResult = new ArrayList<>();
+        listFunnelQueryResult.add(funnelQueryResult);
+        mockFunnelQueryRows(mockedHiveConnectionManager, listFunnelQueryResult);
+
+        for (int i = 0; i < 2; i++) {
+            Response mockedResponse = mock(Response.class);
+            ByteArrayOutputStream output = captureOutput(mockedResponse);
+            Routes.runFunnelQuery(mockedRequest, mockedResponse);
+            verify(mockedResponse).status(200);
+            Assert.assertEquals(output.toString("UTF-8"), "[{\"values\":[\"100\"]}]");
+        }
+        verify(mockedHiveConnectionManager, times(1)).execute(anyString(), anyString(), any(HiveConnectionManager.RowHandler.class), any(BooleanSupplier.class));
+        Assert.assertEquals(Routes.funnelQueryResultCache.getStats().get("hits"), Long.valueOf(1));
+
+        Response statsResponse = mock(Response.class);
+        String stats = Routes.getFunnelQueryCacheStats(mock(Request.class), statsResponse);
+        verify(statsResponse).status(200);
+        Assert.assertEquals(new ObjectMapper().readTree(stats).get("misses").asLong(), 1);
+        Routes.funnelQueryResultCache = null;
+    }
+
+    /**
+     * Test the asynchronous funnel query submit, status, result and cancel routes.
+     */
+    @Test
+    public void asyncFunnelQueryTest() throws Exception {
+        String json = TemplateTestUtils.loadTemplateInstance("templates/funnel_json_request.json");
+        HiveConnectionManager mockedHiveConnectionManager = mock(HiveConnectionManager.class);
+        Routes.hiveConnector = mockedHiveConnectionManager;
+        Routes.SHOULD_RESET_HIVE_CONNECTOR = false;
+        Routes.funnelQueryResultCache = null;
+        FunnelQueryResult funnelQueryResult = new FunnelQueryResult();
+        funnelQueryResult.getValues().add("100");
+        ArrayList<FunnelQueryResult> listFunnelQueryResult = new ArrayList<>();
+        listFunnelQueryResult.add(funnelQueryResult);
+        mockFunnelQueryRows(mockedHiveConnectionManager, listFunnelQueryResult);
+
+        // Submit
+        Request submitRequest = mock(Request.class);
+        when(submitRequest.body()).thenReturn(json);
+        Response submitResponse = mock(Response.class);
+        String submitted = Routes.submitFunnelQuery(submitRequest, submitResponse);
+        verify(submitResponse).status(200);
+        String queryId = new ObjectMapper().readTree(submitted).get("queryId").asText();
+
+        // Poll until done
+        Request pollRequest = mock(Request.class);
+        when(pollRequest.params(":id")).thenReturn(queryId);
+        for (int i = 0; i < 500 && !Routes.funnelQueryJobManager.get(queryId).getStatus().isDone(); i++) {
+            Thread.sleep(10);
+        }
+        Response statusResponse = mock(Response.class);
+        String status = Routes.getFunnelQueryStatus(pollRequest, statusResponse);
+        verify(statusResponse).status(200);
+        Assert.assertEquals(new ObjectMapper().readTree(status).get("status").asText(), "SUCCEEDED");
+
+        Response resultResponse = mock(Response.class);
+        String result = Routes.getFunnelQueryResult(pollRequest, resultResponse);
+        verify(resultResponse).status(200);
+        Assert.assertEquals(result, "[{\"values\":[\"100\"]}]");
+
+        // Finished queries can not be cancelled, unknown ones are not found
+        Response cancelResponse = mock(Response.class);
+        Routes.cancelFunnelQuery(pollRequest, cancelResponse);
+        verify(cancelResponse).status(HttpStatus.SC_NOT_FOUND);
+        Request unknownRequest = mock(Request.class);
+        when(unknownRequest.params(":id")).thenReturn("unknown");
+        Response unknownResponse = mock(Response.class);
+        Routes.getFunnelQueryResult(unknownRequest, unknownResponse);
+        verify(unknownResponse).status(HttpStatus.SC_NOT_FOUND);
+    }
+
     /**
      * Test getStatus.
      */
@@ -8,6 +8,11 @@ import com.yahoo.cubed.model.FunnelGroup;
 import com.yahoo.cubed.model.Pipeline;
 import com.yahoo.cubed.templating.TemplateTestUtils;
 import com.yahoo.cubed.util.Utils;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Utities for tests.
@@ -58,6 +63,56 @@ public class TestUtils {
     /** Projections expected. */
     public static final String PROJECTIONS_EXPECTED = "[geo_info['country'] AS country, user_logged_in AS logged_in]";
 
+    /**
+     * Clock that can be moved forward.
+     */
+    public static class MovableClock extends Clock {
+        private volatile Instant now;
+
+        /**
+         * Create a clock starting at a fixed instant.
+         */
+        public MovableClock() {
+            this(Instant.parse("2020-05-10T12:00:00Z"));
+        }
+
+        /**
+         * Create a clock starting at the given instant.
+         */
+        public MovableClock(Instant start) {
+            this.now = start;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+        /**
+         * Move the clock forward by some minutes.
+         */
+        public void advanceMinutes(long minutes) {
+            now = now.plusMillis(TimeUnit.MINUTES.toMillis(minutes));
+        }
+
+        /**
+         * Move the clock forward by some hours.
+         */
+        public void advanceHours(long hours) {
+            now = now.plusMillis(TimeUnit.HOURS.toMillis(hours));
+        }
+    }
+
     /**
      * Create a sample funnel group without custom specified funnel names.
      */
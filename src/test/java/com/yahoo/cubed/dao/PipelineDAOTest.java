@@ -6,9 +6,12 @@ package com.yahoo.cubed.dao;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.testng.Assert;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
@@ -22,9 +25,11 @@ import com.yahoo.cubed.json.filter.Filter;
 import com.yahoo.cubed.json.filter.LogicalRule;
 import com.yahoo.cubed.json.filter.RelationalRule;
 import com.yahoo.cubed.model.Field;
+import com.yahoo.cubed.model.FieldKey;
 import com.yahoo.cubed.model.Pipeline;
 import com.yahoo.cubed.model.PipelineProjection;
 import com.yahoo.cubed.source.HibernateSessionFactoryManager;
+import com.yahoo.cubed.util.Utils;
 
 /**
  * Test pipeline data access object.
@@ -266,4 +271,215 @@ public class PipelineDAOTest {
 
     }
 
+    /**
+     * Test that eagerly fetching all pipelines loads the whole graph in a constant number of queries.
+     */
+    @Test(dependsOnMethods = "testAll")
+    public void testEagerFetchQueryCount() {
+        final int count = 5;
+        List<Field> fields = new ArrayList<>();
+        List<Pipeline> pipelines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Field field = new Field();
+            field.setFieldName("batch_field" + i);
+            field.setFieldType("map<string,string>");
+            field.setFieldId(1200 + i);
+            field.setSchemaName(schemaName);
+            FieldKey key = new FieldKey();
+            key.setKeyId(1);
+            key.setKeyName("batch_key" + i);
+            List<FieldKey> keys = new ArrayList<>();
+            keys.add(key);
+            field.setFieldKeys(keys);
+            FieldKey.setSchemaName(keys, schemaName);
+            DAOFactory.fieldDAO().save(session, field);
+            fields.add(field);
+        }
+        for (int i = 0; i < count; i++) {
+            List<PipelineProjection> projections = new ArrayList<>();
+            for (int j = 0; j < 2; j++) {
+                PipelineProjection projection = new PipelineProjection();
+                projection.setField(fields.get((i + j) % count));
+                projection.setAlias("batch_alias" + j);
+                List<List<String>> mappings = new ArrayList<>();
+                mappings.add(Arrays.asList("value" + j, "mapping" + j, "="));
+                projection.setProjectionVMs(mappings);
+                projections.add(projection);
+            }
+            Pipeline pipeline = new Pipeline();
+            pipeline.setPipelineName("batch_pipeline" + i);
+            pipeline.setPipelineDescription("batch");
+            pipeline.setPipelineOwner("userName");
+            pipeline.setProjections(projections);
+            pipeline.setPipelineSchemaName(schemaName);
+            DAOFactory.pipelineDAO().save(session, pipeline);
+            pipelines.add(pipeline);
+        }
+
+        SessionFactory sessionFactory = HibernateSessionFactoryManager.getSessionFactory();
+        Statistics statistics = sessionFactory.getStatistics();
+        Session fetchSession = sessionFactory.openSession();
+        try {
+            statistics.setStatisticsEnabled(true);
+            statistics.clear();
+            List<Pipeline> fetched = DAOFactory.pipelineDAO().fetchAll(fetchSession, AbstractEntityDAO.FetchMode.EAGER);
+            Assert.assertEquals(fetched.size(), count);
+            for (Pipeline pipeline : fetched) {
+                Assert.assertEquals(pipeline.getProjections().size(), 2);
+                for (PipelineProjection projection : pipeline.getProjections()) {
+                    Assert.assertEquals(projection.getProjectionVMs().size(), 1);
+                    Assert.assertEquals(projection.getField().getFieldKeys().size(), 1);
+                }
+            }
+            // pipelines, projections, value mappings, fields and field keys
+            Assert.assertTrue(statistics.getPrepareStatementCount() <= 5, "Statements: " + statistics.getPrepareStatementCount());
+        } finally {
+            statistics.setStatisticsEnabled(false);
+            fetchSession.close();
+            for (Pipeline pipeline : pipelines) {
+                DAOFactory.pipelineDAO().delete(session, pipeline);
+            }
+            for (Field field : fields) {
+                DAOFactory.fieldDAO().delete(session, field);
+            }
+            session.flush();
+        }
+    }
+
+    /**
+     * Test fetching pages of pipelines with filters, sort order and cursors.
+     */
+    @Test(dependsOnMethods = "testEagerFetchQueryCount")
+    public void testFetchPage() {
+        List<Pipeline> pipelines = new ArrayList<>();
+        String[] names = {"page_b", "page_a", "page_d", "page_c", "pagexe"};
+        for (int i = 0; i < names.length; i++) {
+            Pipeline pipeline = new Pipeline();
+            pipeline.setPipelineName(names[i]);
+            pipeline.setPipelineDescription("page");
+            pipeline.setPipelineOwner(i % 2 == 0 ? "owner1" : "owner2");
+            pipeline.setPipelineIsDeleted(i == 3);
+            pipeline.setProjections(new ArrayList<>());
+            pipeline.setPipelineSchemaName(schemaName);
+            DAOFactory.pipelineDAO().save(session, pipeline);
+            pipelines.add(pipeline);
+        }
+        try {
+            // Name prefix with an escaped wildcard, sorted by name over several pages
+            ListQuery query = new ListQuery().filter(ListQuery.Attribute.DELETED, false);
+            query.setNamePrefix("page_");
+            query.setSortBy(ListQuery.Attribute.NAME);
+            query.setLimit(2);
+            ListPage<Pipeline> page = DAOFactory.pipelineDAO().fetchPage(session, query);
+            Assert.assertEquals(page.getItems().size(), 2);
+            Assert.assertEquals(page.getItems().get(0).getPipelineName(), "page_a");
+            Assert.assertEquals(page.getItems().get(1).getPipelineName(), "page_b");
+            Assert.assertNotNull(page.getNextCursor());
+            query.setCursor(page.getNextCursor());
+            page = DAOFactory.pipelineDAO().fetchPage(session, query);
+            Assert.assertEquals(page.getItems().size(), 1);
+            Assert.assertEquals(page.getItems().get(0).getPipelineName(), "page_d");
+            Assert.assertNull(page.getNextCursor());
+
+            // Owner filter, newest first
+            query = new ListQuery().filter(ListQuery.Attribute.OWNER, "owner1");
+            query.setDescending(true);
+            page = DAOFactory.pipelineDAO().fetchPage(session, query);
+            Assert.assertEquals(page.getItems().size(), 3);
+            Assert.assertEquals(page.getItems().get(0).getPipelineName(), "pagexe");
+            Assert.assertEquals(page.getItems().get(2).getPipelineName(), "page_b");
+
+            // Funnels excluded, pipelines without a type kept
+            pipelines.get(0).setPipelineType(Utils.FUNNEL);
+            pipelines.get(1).setPipelineType(null);
+            DAOFactory.pipelineDAO().update(session, pipelines.get(0));
+            DAOFactory.pipelineDAO().update(session, pipelines.get(1));
+            query = new ListQuery().exclude(ListQuery.Attribute.TYPE, Utils.FUNNEL);
+            query.setNamePrefix("page");
+            query.setSortBy(ListQuery.Attribute.NAME);
+            page = DAOFactory.pipelineDAO().fetchPage(session, query);
+            Assert.assertEquals(page.getItems().size(), 4);
+            Assert.assertEquals(page.getItems().get(0).getPipelineName(), "page_a");
+            Assert.assertEquals(page.getItems().get(1).getPipelineName(), "page_c");
+
+            // Status prefix, whatever the deployed version
+            pipelines.get(2).setPipelineStatus("Deployed v2");
+            DAOFactory.pipelineDAO().update(session, pipelines.get(2));
+            query = new ListQuery();
+            query.setNamePrefix("page");
+            query.setStatusPrefix("Deployed");
+            page = DAOFactory.pipelineDAO().fetchPage(session, query);
+            Assert.assertEquals(page.getItems().size(), 1);
+            Assert.assertEquals(page.getItems().get(0).getPipelineName(), "page_d");
+
+            // Unsupported queries
+            ListQuery badCursor = new ListQuery();
+            badCursor.setCursor("not a cursor");
+            Assert.assertThrows(IllegalArgumentException.class, () -> DAOFactory.pipelineDAO().fetchPage(session, badCursor));
+            ListQuery badSort = new ListQuery();
+            badSort.setSortBy(ListQuery.Attribute.OWNER);
+            Assert.assertThrows(IllegalArgumentException.class, () -> DAOFactory.pipelineDAO().fetchPage(session, badSort));
+        } finally {
+            for (Pipeline pipeline : pipelines) {
+                DAOFactory.pipelineDAO().delete(session, pipeline);
+            }
+        }
+    }
+
+    /**
+     * Test that the collections of a page are loaded for the entities of the page only.
+     */
+    @Test(dependsOnMethods = "testFetchPage")
+    public void testFetchPageCollections() {
+        Field field = new Field();
+        field.setFieldName("page_field");
+        field.setFieldType("string");
+        field.setFieldId(1300);
+        field.setSchemaName(schemaName);
+        DAOFactory.fieldDAO().save(session, field);
+        List<Pipeline> pipelines = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            PipelineProjection projection = new PipelineProjection();
+            projection.setField(field);
+            projection.setAlias("page_alias");
+            projection.setProjectionVMs(new ArrayList<>());
+            List<PipelineProjection> projections = new ArrayList<>();
+            projections.add(projection);
+            Pipeline pipeline = new Pipeline();
+            pipeline.setPipelineName("page_collection" + i);
+            pipeline.setPipelineDescription("page");
+            pipeline.setPipelineOwner("userName");
+            pipeline.setProjections(projections);
+            pipeline.setPipelineSchemaName(schemaName);
+            DAOFactory.pipelineDAO().save(session, pipeline);
+            pipelines.add(pipeline);
+        }
+
+        SessionFactory sessionFactory = HibernateSessionFactoryManager.getSessionFactory();
+        Statistics statistics = sessionFactory.getStatistics();
+        Session fetchSession = sessionFactory.openSession();
+        try {
+            statistics.setStatisticsEnabled(true);
+            statistics.clear();
+            ListQuery query = new ListQuery();
+            query.setNamePrefix("page_collection");
+            query.setLimit(2);
+            ListPage<Pipeline> page = DAOFactory.pipelineDAO().fetchPage(fetchSession, query);
+            Assert.assertEquals(page.getItems().size(), 2);
+            // The page is simplified, the managed pipelines load their projections on demand
+            for (Pipeline pipeline : page.getItems()) {
+                Pipeline managed = (Pipeline) fetchSession.get(Pipeline.class, pipeline.getPipelineId());
+                Assert.assertEquals(managed.getProjections().size(), 1);
+            }
+            Assert.assertEquals(statistics.getEntityStatistics(PipelineProjection.class.getName()).getLoadCount(), 2);
+        } finally {
+            statistics.setStatisticsEnabled(false);
+            fetchSession.close();
+            for (Pipeline pipeline : pipelines) {
+                DAOFactory.pipelineDAO().delete(session, pipeline);
+            }
+            DAOFactory.fieldDAO().delete(session, field);
+            session.flush();
+        }
+    }
 }
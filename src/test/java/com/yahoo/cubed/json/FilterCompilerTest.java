@@ -0,0 +1,63 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.json;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yahoo.cubed.json.filter.FilterCompiler;
+import com.yahoo.cubed.json.filter.FilterCompiler.CompiledFilter;
+import com.yahoo.cubed.json.filter.LogicalRule;
+import com.yahoo.cubed.service.ServiceFactory;
+import java.io.IOException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test memoized filter compilation.
+ */
+public class FilterCompilerTest {
+    private static final String FILTER = "{\"condition\":\"AND\",\"rules\":[{\"id\":\"price\",\"field\":\"price\",\"type\":\"double\",\"input\":\"text\",\"operator\":\"less\",\"value\":\"10.25\"},{\"id\":\"category\",\"field\":\"category\",\"type\":\"integer\",\"input\":\"select\",\"operator\":\"equal\",\"value\":\"1\",\"subfield\":[\"_A\"]}]}";
+
+    /**
+     * Test that a filter is parsed and translated to Bullet once.
+     */
+    @Test
+    public void memoizationTest() throws Exception {
+        FilterCompiler compiler = new FilterCompiler();
+        CompiledFilter compiled = compiler.compile(null, FILTER);
+        Assert.assertSame(compiler.compile(null, FILTER), compiled);
+        Assert.assertEquals(((LogicalRule) compiled.getFilter()).getRules().size(), 2);
+        Assert.assertSame(compiled.getBulletQueryFilter(), compiled.getBulletQueryFilter());
+        Assert.assertTrue(new ObjectMapper().writeValueAsString(compiled.getBulletQueryFilter()).contains("category._A"));
+
+        // Fields of another schema are resolved apart
+        Assert.assertNotSame(compiler.compile("schema1", FILTER), compiled);
+        Assert.assertEquals(compiler.getStats().get("hits").longValue(), 1L);
+        Assert.assertEquals(compiler.getStats().get("misses").longValue(), 2L);
+        Assert.assertEquals(compiler.getStats().get("entries").longValue(), 2L);
+    }
+
+    /**
+     * Test that filters are compiled again once the schema metadata changed.
+     */
+    @Test
+    public void metadataChangeTest() throws Exception {
+        FilterCompiler compiler = new FilterCompiler();
+        CompiledFilter compiled = compiler.compile(null, FILTER);
+        ServiceFactory.metadataCache().invalidate();
+        Assert.assertNotSame(compiler.compile(null, FILTER), compiled);
+    }
+
+    /**
+     * Test missing and invalid filters.
+     */
+    @Test
+    public void invalidFilterTest() throws Exception {
+        FilterCompiler compiler = new FilterCompiler();
+        Assert.assertNull(compiler.compile(null, null));
+        Assert.assertNull(compiler.compile(null, ""));
+        Assert.assertThrows(IOException.class, () -> compiler.compile(null, "{\"condition\":"));
+        Assert.assertEquals(compiler.getStats().get("entries").longValue(), 0L);
+    }
+}
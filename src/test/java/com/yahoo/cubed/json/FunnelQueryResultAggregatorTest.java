@@ -0,0 +1,51 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.json;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test funnel query result aggregator.
+ */
+public class FunnelQueryResultAggregatorTest {
+
+    /**
+     * Test summing up the steps per key.
+     */
+    @Test
+    public void aggregateTest() throws Exception {
+        FunnelQueryResultAggregator aggregator = new FunnelQueryResultAggregator();
+        aggregator.add(Arrays.asList("4", "ios"), "[100,50]");
+        aggregator.add(Collections.emptyList(), "[7]");
+        aggregator.add(Arrays.asList("4", "ios"), "[300, 20, 1]");
+        aggregator.add(Arrays.asList("5", "android"), "[]");
+
+        Assert.assertEquals(aggregator.size(), 3);
+        List<FunnelQueryResult> results = aggregator.toResults();
+        Assert.assertEquals(results.get(0).getKeys(), Arrays.asList("4", "ios"));
+        Assert.assertEquals(results.get(0).getValues(), Arrays.asList("400", "70", "1"));
+        Assert.assertEquals(results.get(1).getValues(), Collections.singletonList("7"));
+        Assert.assertTrue(results.get(2).getValues().isEmpty());
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        aggregator.writeJson(output);
+        Assert.assertEquals(output.toString("UTF-8"),
+            "[{\"keys\":[\"4\",\"ios\"],\"values\":[\"400\",\"70\",\"1\"]},{\"values\":[\"7\"]},{\"keys\":[\"5\",\"android\"]}]");
+    }
+
+    /**
+     * Test that invalid arrays are rejected.
+     */
+    @Test(expectedExceptions = NumberFormatException.class)
+    public void invalidArrayTest() {
+        new FunnelQueryResultAggregator().add(Collections.emptyList(), "[1,x]");
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.pipeline.command;
+
+import com.yahoo.cubed.pipeline.stop.PipelineStopper;
+import com.yahoo.cubed.pipeline.stop.PipelineStopperManager;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Test the shared pipeline script executor.
+ */
+public class CommandExecutorServiceTest {
+
+    private static PipelineStopper stopper(String scriptFileName) {
+        PipelineStopper stopper = PipelineStopperManager.createStopper("pipeline", "john_doe");
+        stopper.setScriptFileDir(CommandExecutorServiceTest.class.getClassLoader().getResource("bin").getPath());
+        stopper.setScriptFileName(scriptFileName);
+        return stopper;
+    }
+
+    /**
+     * Test running scripts from several managers on the same threads, and shutting down.
+     */
+    @Test
+    public void submitAndShutdownTest() throws Exception {
+        CommandExecutorService service = new CommandExecutorService(2);
+        List<Future<CommandExecutor.Status>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            results.add(service.submit(stopper(i % 2 == 0 ? "test-success-stop.sh" : "test-failure.sh")));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            Assert.assertEquals(results.get(i).get().hasError, i % 2 == 1);
+        }
+        Assert.assertEquals(service.getStats().get("threads"), Long.valueOf(2));
+        Assert.assertEquals(service.getQueueSize(), 0);
+
+        Assert.assertTrue(service.shutdown(10));
+        Assert.assertEquals(service.getActiveCount(), 0);
+        Assert.assertEquals(service.getStats().get("completed"), Long.valueOf(5));
+        Assert.assertThrows(RejectedExecutionException.class, () -> service.submit(stopper("test-success-stop.sh")));
+    }
+
+    /**
+     * Test that managers share the service they are given.
+     */
+    @Test
+    public void sharedByManagersTest() throws Exception {
+        CommandExecutorService service = new CommandExecutorService(1);
+        PipelineStopperManager first = new PipelineStopperManager(service);
+        PipelineStopperManager second = new PipelineStopperManager(service);
+        // The stop script is not found, so the managers report an error
+        Assert.assertTrue(first.stopPipeline("pipeline_1", "john_doe").get().hasError);
+        Assert.assertTrue(second.stopPipeline("pipeline_2", "john_doe").get().hasError);
+        Assert.assertTrue(service.shutdown(10));
+        Assert.assertEquals(service.getStats().get("completed"), Long.valueOf(2));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.pipeline.command;
+
+import com.yahoo.cubed.pipeline.launch.PipelineLauncher;
+import com.yahoo.cubed.pipeline.launch.PipelineLauncherManager;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test running scripts.
+ */
+public class CommandExecutorTest {
+    private static final String SCRIPT_DIR = CommandExecutorTest.class.getClassLoader().getResource("bin").getPath();
+
+    /**
+     * Script runner recording what the hooks saw.
+     */
+    private static class RecordingExecutor extends CommandExecutor<CommandExecutor.Status> {
+        private static final String CHILD_IDENTIFIER = "[[CHILD]]";
+        private final AtomicInteger infoLines = new AtomicInteger();
+        private final AtomicInteger errorLines = new AtomicInteger();
+        private final AtomicLong childPid = new AtomicLong(-1);
+
+        @Override
+        protected void checkInfoHook(String line, CommandExecutor.Status status) {
+            infoLines.incrementAndGet();
+            if (line.startsWith(CHILD_IDENTIFIER)) {
+                childPid.set(Long.parseLong(line.substring(CHILD_IDENTIFIER.length())));
+            }
+        }
+
+        @Override
+        protected void checkErrorHook(String line, CommandExecutor.Status status) {
+            errorLines.incrementAndGet();
+        }
+    }
+
+    private static boolean isAlive(long pid) throws Exception {
+        return new ProcessBuilder("kill", "-0", Long.toString(pid)).start().waitFor() == 0;
+    }
+
+    /**
+     * Test that a script writing a lot to both streams does not block, and that the captured output is bounded.
+     */
+    @Test
+    public void largeOutputTest() throws Exception {
+        RecordingExecutor executor = new RecordingExecutor();
+        executor.setScriptFileDir(SCRIPT_DIR);
+        executor.setScriptFileName("test-large-output.sh");
+        executor.setTimeoutSeconds(60);
+
+        CommandExecutor.Status status = executor.call();
+        Assert.assertTrue(status.hasError);
+        Assert.assertEquals(executor.infoLines.get(), 20001);
+        Assert.assertEquals(executor.errorLines.get(), 20000);
+        Assert.assertTrue(status.infoMsg.length() <= CommandExecutor.MAX_CAPTURED_CHARS + 100);
+        Assert.assertTrue(status.infoMsg.startsWith("[DMART PIPELINE CD][INFO] line 0\n"));
+        Assert.assertTrue(status.infoMsg.endsWith("[output truncated]\n"));
+        Assert.assertTrue(status.errorMsg.length() <= CommandExecutor.MAX_CAPTURED_CHARS + 100);
+    }
+
+    /**
+     * Test that hooks still see lines past the captured output.
+     */
+    @Test
+    public void hookPastTruncationTest() throws Exception {
+        PipelineLauncher launcher = PipelineLauncherManager.createLauncher("pipeline", "v1.0", "john_doe", "/tmp", "0", false, "oozie", "oozie");
+        launcher.setScriptFileDir(SCRIPT_DIR);
+        launcher.setScriptFileName("test-large-output.sh");
+
+        PipelineLauncher.LaunchStatus status = launcher.call();
+        Assert.assertEquals(status.oozieJobId, "0000001-oozie-B");
+    }
+
+    /**
+     * Test that a script running too long is killed together with its children.
+     */
+    @Test
+    public void timeoutTest() throws Exception {
+        RecordingExecutor executor = new RecordingExecutor();
+        executor.setScriptFileDir(SCRIPT_DIR);
+        executor.setScriptFileName("test-hang.sh");
+        executor.setTimeoutSeconds(1);
+
+        long start = System.nanoTime();
+        CommandExecutor.Status status = executor.call();
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 30);
+        Assert.assertTrue(status.hasError);
+        // The output written before the kill is kept
+        Assert.assertEquals(status.errorMsg, "The process that ran the script was terminated forcibly.\nWaiting for the child\n");
+        Assert.assertTrue(status.infoMsg.startsWith("[[CHILD]]"), status.infoMsg);
+        Assert.assertTrue(executor.childPid.get() > 0);
+        for (int i = 0; i < 100 && isAlive(executor.childPid.get()); i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertFalse(isAlive(executor.childPid.get()));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.pipeline.launch;
+
+import com.yahoo.cubed.json.RelaunchProgress;
+import com.yahoo.cubed.model.Pipeline;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test bulk pipeline relaunch.
+ */
+public class PipelineRelaunchManagerTest {
+
+    private static List<Pipeline> pipelines(int count) {
+        List<Pipeline> pipelines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Pipeline pipeline = new Pipeline();
+            pipeline.setPipelineName("pipeline_" + i);
+            pipelines.add(pipeline);
+        }
+        return pipelines;
+    }
+
+    private static void flaky(Map<String, AtomicInteger> attempts, Pipeline pipeline) throws Exception {
+        int attempt = attempts.computeIfAbsent(pipeline.getPipelineName(), k -> new AtomicInteger()).incrementAndGet();
+        // pipeline_0 always fails, pipeline_1 fails once
+        if (pipeline.getPipelineName().equals("pipeline_0") || (pipeline.getPipelineName().equals("pipeline_1") && attempt == 1)) {
+            throw new Exception("launch failed " + attempt);
+        }
+    }
+
+    private static void blockUntilReleased(CountDownLatch started, CountDownLatch release) throws InterruptedException {
+        started.countDown();
+        release.await();
+    }
+
+    /**
+     * Test that failures are retried and reported without stopping the other pipelines.
+     */
+    @Test
+    public void retryAndPartialFailureTest() throws Exception {
+        Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        PipelineRelaunchManager manager = new PipelineRelaunchManager(3, 3, 0, pipeline -> flaky(attempts, pipeline));
+        Assert.assertNull(manager.getProgress());
+
+        RelaunchProgress progress = manager.relaunch(pipelines(5));
+        progress.await();
+        Assert.assertTrue(progress.isDone());
+        Assert.assertNotNull(progress.getEndTime());
+        Assert.assertEquals(progress.getTotal(), 5);
+        Assert.assertEquals(progress.getSucceeded(), 4);
+        Assert.assertEquals(progress.getFailed(), 1);
+        Assert.assertEquals(progress.getRetries(), 3);
+        Assert.assertEquals(progress.getFailures(), Collections.singletonMap("pipeline_0", "launch failed 3"));
+        Assert.assertEquals(attempts.get("pipeline_1").get(), 2);
+        Assert.assertEquals(attempts.get("pipeline_4").get(), 1);
+        Assert.assertSame(manager.getProgress(), progress);
+        manager.shutdown();
+    }
+
+    /**
+     * Test that all workers are kept busy and that only one relaunch runs at a time.
+     */
+    @Test
+    public void concurrencyTest() throws Exception {
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        PipelineRelaunchManager manager = new PipelineRelaunchManager(2, 1, 0, pipeline -> blockUntilReleased(started, release));
+
+        RelaunchProgress progress = manager.relaunch(pipelines(3));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(manager.getActiveCount(), 2);
+        Assert.assertEquals(manager.getQueueSize(), 1);
+        Assert.assertFalse(progress.isDone());
+        Assert.assertThrows(IllegalStateException.class, () -> manager.relaunch(pipelines(1)));
+
+        release.countDown();
+        progress.await();
+        Assert.assertEquals(progress.getSucceeded(), 3);
+
+        // An empty relaunch is done right away
+        Assert.assertTrue(manager.relaunch(Collections.emptyList()).isDone());
+        manager.shutdown();
+    }
+}
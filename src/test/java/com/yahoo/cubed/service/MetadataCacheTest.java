@@ -0,0 +1,161 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.service;
+
+import com.yahoo.cubed.App;
+import com.yahoo.cubed.model.Field;
+import com.yahoo.cubed.model.FieldKey;
+import com.yahoo.cubed.model.Schema;
+import com.yahoo.cubed.settings.CLISettings;
+import com.yahoo.cubed.source.DatabaseConnectionManager;
+import com.yahoo.cubed.source.SchemaSync;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Test schema, field and field key metadata cache.
+ */
+public class MetadataCacheTest {
+    private static final String SCHEMA_NAME = "schema1";
+
+    /**
+     * Setup database and load schemas.
+     */
+    @BeforeClass
+    public static void initialize() throws Exception {
+        CLISettings.DB_CONFIG_FILE = "src/test/resources/database-configuration.properties";
+        App.prepareDatabase();
+        App.dropAllFields();
+        App.loadSchemas("src/test/resources/schemas/");
+    }
+
+    /**
+     * Test lookups are served from the snapshot built by loading schemas.
+     */
+    @Test
+    public void lookupTest() throws Exception {
+        MetadataCache cache = ServiceFactory.metadataCache();
+        Assert.assertTrue(cache.isLoaded());
+
+        Schema schema = ServiceFactory.schemaService().fetchByName(SCHEMA_NAME);
+        Assert.assertEquals(schema.getSchemaName(), SCHEMA_NAME);
+        Assert.assertFalse(schema.getFields().isEmpty());
+        Assert.assertNull(schema.getPipelines());
+        Assert.assertEquals(ServiceFactory.schemaService().fetch(SCHEMA_NAME).getSchemaDatabase(), schema.getSchemaDatabase());
+        Assert.assertNull(cache.getSchema("unknown"));
+
+        // Every lookup is a copy, changing it does not change the snapshot
+        Assert.assertNotSame(ServiceFactory.schemaService().fetchByName(SCHEMA_NAME), schema);
+        schema.setSchemaDatabase("changed");
+        schema.getFields().clear();
+        Assert.assertNotEquals(cache.getSchema(SCHEMA_NAME).getSchemaDatabase(), "changed");
+        Assert.assertFalse(cache.getSchema(SCHEMA_NAME).getFields().isEmpty());
+
+        Field field = ServiceFactory.fieldService().fetchAll().stream()
+                .filter(f -> f.getSchemaName().equals(SCHEMA_NAME) && f.getFieldKeys() != null && !f.getFieldKeys().isEmpty())
+                .findFirst()
+                .get();
+        Field cachedField = ServiceFactory.fieldService().fetchByCompositeKey(SCHEMA_NAME, field.getFieldId());
+        Assert.assertEquals(cachedField.getFieldName(), field.getFieldName());
+        Assert.assertEquals(cachedField.getFieldKeys().size(), field.getFieldKeys().size());
+        Assert.assertEquals(ServiceFactory.fieldService().fetchByName(field.getPrimaryName()).getFieldId(), field.getFieldId());
+        cachedField.getFieldKeys().clear();
+        Assert.assertEquals(cache.getField(SCHEMA_NAME, field.getFieldId()).getFieldKeys().size(), field.getFieldKeys().size());
+
+        FieldKey fieldKey = field.getFieldKeys().get(0);
+        FieldKey cachedKey = ServiceFactory.fieldKeyService().fetchByCompositeKey(SCHEMA_NAME, field.getFieldId(), fieldKey.getKeyId());
+        Assert.assertEquals(cachedKey.getKeyName(), fieldKey.getKeyName());
+        Assert.assertEquals(ServiceFactory.fieldKeyService().fetchByName(fieldKey.getPrimaryName()).getKeyId(), fieldKey.getKeyId());
+    }
+
+    /**
+     * Test that changes drop the snapshot and lookups fall back to the database.
+     */
+    @Test(dependsOnMethods = "lookupTest")
+    public void invalidationTest() throws Exception {
+        MetadataCache cache = ServiceFactory.metadataCache();
+        Field field = new Field();
+        field.setFieldId(4321);
+        field.setFieldName("metadata_cache_field");
+        field.setFieldType("string");
+        field.setSchemaName(SCHEMA_NAME);
+        ServiceFactory.fieldService().save(field);
+        try {
+            Assert.assertFalse(cache.isLoaded());
+            Assert.assertNull(cache.getField(SCHEMA_NAME, 4321));
+            Assert.assertEquals(ServiceFactory.fieldService().fetchByCompositeKey(SCHEMA_NAME, 4321).getFieldName(), "metadata_cache_field");
+
+            cache.rebuild();
+            Assert.assertEquals(cache.getField(SCHEMA_NAME, 4321).getFieldName(), "metadata_cache_field");
+        } finally {
+            ServiceFactory.fieldService().delete(SCHEMA_NAME, 4321);
+        }
+        Assert.assertFalse(cache.isLoaded());
+        cache.rebuild();
+        Assert.assertNull(cache.getField(SCHEMA_NAME, 4321));
+    }
+
+    /**
+     * Test that a snapshot rebuilt by another thread before a unit of work commits is dropped at the commit.
+     */
+    @Test(dependsOnMethods = "invalidationTest")
+    public void unitOfWorkTest() throws Exception {
+        MetadataCache cache = ServiceFactory.metadataCache();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            try (UnitOfWork work = UnitOfWork.begin()) {
+                Field field = new Field();
+                field.setFieldId(4322);
+                field.setFieldName("metadata_cache_work_field");
+                field.setFieldType("string");
+                field.setSchemaName(SCHEMA_NAME);
+                ServiceFactory.fieldService().save(field);
+                work.flush();
+                Assert.assertFalse(cache.isLoaded());
+
+                executor.submit(() -> rebuild(cache)).get();
+                Assert.assertTrue(cache.isLoaded());
+                Assert.assertNull(cache.getField(SCHEMA_NAME, 4322));
+                work.commit();
+            }
+            Assert.assertFalse(cache.isLoaded());
+            Assert.assertEquals(ServiceFactory.fieldService().fetchByCompositeKey(SCHEMA_NAME, 4322).getFieldName(), "metadata_cache_work_field");
+        } finally {
+            executor.shutdownNow();
+            ServiceFactory.fieldService().delete(SCHEMA_NAME, 4322);
+        }
+        cache.rebuild();
+        Assert.assertNull(cache.getField(SCHEMA_NAME, 4322));
+    }
+
+    private static Void rebuild(MetadataCache cache) throws Exception {
+        cache.rebuild();
+        return null;
+    }
+
+    /**
+     * Test that the schema sync, which writes without the services, drops the snapshot when it writes.
+     */
+    @Test(dependsOnMethods = "unitOfWorkTest")
+    public void schemaSyncTest() throws Exception {
+        MetadataCache cache = ServiceFactory.metadataCache();
+        SchemaSync.sync(new File("src/test/resources/schemas/"));
+        Assert.assertTrue(cache.isLoaded());
+
+        try (Connection connection = DatabaseConnectionManager.createConnection(); Statement statement = connection.createStatement()) {
+            statement.executeUpdate("UPDATE all_schemas SET schema_database = 'stale' WHERE schema_name = '" + SCHEMA_NAME + "'");
+        }
+        SchemaSync.sync(new File("src/test/resources/schemas/"));
+        Assert.assertFalse(cache.isLoaded());
+        cache.rebuild();
+        Assert.assertNotEquals(cache.getSchema(SCHEMA_NAME).getSchemaDatabase(), "stale");
+    }
+}
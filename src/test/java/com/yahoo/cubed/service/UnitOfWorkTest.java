@@ -0,0 +1,96 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.service;
+
+import com.yahoo.cubed.App;
+import com.yahoo.cubed.model.Field;
+import com.yahoo.cubed.service.exception.DataValidatorException;
+import com.yahoo.cubed.settings.CLISettings;
+import com.yahoo.cubed.source.HibernateSessionFactoryManager;
+import org.hibernate.stat.Statistics;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Test unit of work.
+ */
+public class UnitOfWorkTest {
+    private static final String SCHEMA_NAME = "schema1";
+
+    /**
+     * Setup database and load schemas.
+     */
+    @BeforeClass
+    public static void initialize() throws Exception {
+        CLISettings.DB_CONFIG_FILE = "src/test/resources/database-configuration.properties";
+        App.prepareDatabase();
+        App.dropAllFields();
+        App.loadSchemas("src/test/resources/schemas/");
+    }
+
+    private static Field newField(long fieldId) {
+        Field field = new Field();
+        field.setFieldId(fieldId);
+        field.setFieldName("unit_of_work_field_" + fieldId);
+        field.setFieldType("string");
+        field.setSchemaName(SCHEMA_NAME);
+        return field;
+    }
+
+    /**
+     * Test that services share the session and the writes are committed together.
+     */
+    @Test
+    public void commitTest() throws Exception {
+        Statistics statistics = HibernateSessionFactoryManager.getSessionFactory().getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        try (UnitOfWork work = UnitOfWork.begin()) {
+            Assert.assertSame(UnitOfWork.current(), work);
+            Field first = newField(5101);
+            Field second = newField(5102);
+            ServiceFactory.fieldService().save(first);
+            ServiceFactory.fieldService().save(second);
+            Assert.assertTrue(work.getSession().contains(first));
+            Assert.assertTrue(work.getSession().contains(second));
+            Assert.assertSame(ServiceFactory.fieldService().fetchByCompositeKey(SCHEMA_NAME, 5101), first);
+            work.commit();
+        }
+        try {
+            Assert.assertNull(UnitOfWork.current());
+            Assert.assertEquals(statistics.getSessionOpenCount(), 1);
+            Assert.assertEquals(statistics.getTransactionCount(), 1);
+            Assert.assertEquals(ServiceFactory.fieldService().fetchByCompositeKey(SCHEMA_NAME, 5102).getFieldName(), "unit_of_work_field_5102");
+        } finally {
+            statistics.setStatisticsEnabled(false);
+            ServiceFactory.fieldService().delete(SCHEMA_NAME, 5101);
+            ServiceFactory.fieldService().delete(SCHEMA_NAME, 5102);
+        }
+    }
+
+    /**
+     * Test that closing without commit rolls back the writes.
+     */
+    @Test
+    public void rollbackTest() throws Exception {
+        try (UnitOfWork work = UnitOfWork.begin()) {
+            ServiceFactory.fieldService().save(newField(5103));
+            Assert.assertEquals(ServiceFactory.fieldService().fetchByCompositeKey(SCHEMA_NAME, 5103).getFieldId(), 5103);
+        }
+        Assert.assertThrows(DataValidatorException.class, () -> ServiceFactory.fieldService().fetchByCompositeKey(SCHEMA_NAME, 5103));
+    }
+
+    /**
+     * Test that units of work do not nest.
+     */
+    @Test
+    public void nestedTest() throws Exception {
+        try (UnitOfWork work = UnitOfWork.begin()) {
+            Assert.assertThrows(IllegalStateException.class, () -> UnitOfWork.begin());
+        }
+        Assert.assertNull(UnitOfWork.current());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.service.bullet;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Test shared Bullet HTTP client.
+ */
+public class BulletHttpClientTest {
+    private static HttpServer server;
+    private static String url;
+
+    /**
+     * Start a local server answering every request with the client port.
+     */
+    @BeforeClass
+    public static void initialize() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", BulletHttpClientTest::respond);
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/bullet";
+    }
+
+    private static void respond(HttpExchange exchange) throws IOException {
+        int port = exchange.getRemoteAddress().getPort();
+        byte[] body = Integer.toString(port).getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Stop the local server.
+     */
+    @AfterClass
+    public static void close() {
+        server.stop(0);
+    }
+
+    private static String post(BulletHttpClient client) throws IOException {
+        HttpPost request = new HttpPost(url);
+        request.setEntity(new StringEntity("{}"));
+        HttpResponse response = client.getHttpClient().execute(request);
+        return EntityUtils.toString(response.getEntity());
+    }
+
+    /**
+     * Test that sequential queries reuse one connection.
+     */
+    @Test
+    public void keepAliveTest() throws Exception {
+        BulletHttpClient client = new BulletHttpClient(4, 2, 1000, 1000, 30);
+        try {
+            String first = post(client);
+            for (int i = 0; i < 5; i++) {
+                Assert.assertEquals(post(client), first);
+            }
+            Assert.assertEquals(client.getPoolStats().get("leased").longValue(), 0L);
+            Assert.assertEquals(client.getPoolStats().get("available").longValue(), 1L);
+            Assert.assertEquals(client.getPoolStats().get("maxConnections").longValue(), 4L);
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * Test batch tasks sending queries at the same time, bounded by the connections of one route.
+     */
+    @Test
+    public void executeBatchTest() throws Exception {
+        BulletHttpClient client = new BulletHttpClient(4, 2, 1000, 1000, 30);
+        try {
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                CompletableFuture<String> future = new CompletableFuture<>();
+                futures.add(future);
+                client.executeBatch(() -> {
+                    try {
+                        future.complete(post(client));
+                    } catch (IOException e) {
+                        future.completeExceptionally(e);
+                    }
+                });
+            }
+            for (CompletableFuture<String> future : futures) {
+                Assert.assertFalse(future.get().isEmpty());
+            }
+            // At most the connections of one route
+            Assert.assertTrue(client.getPoolStats().get("available") <= 2L);
+        } finally {
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.service.bullet;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test streaming parser of Bullet responses.
+ */
+public class BulletResponseParserTest {
+    private static final String RESPONSE = "{\"meta\": {\"query\": {\"id\": \"q1\", \"tags\": [1, 2]}}, "
+            + "\"records\": [{\"COUNT DISTINCT\": 20.0, \"nested\": {\"a\": 1}}, {\"COUNT\": 7, \"text\": \"3.5\"}]}";
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Test reading the numeric fields of the records.
+     */
+    @Test
+    public void readAggregationsTest() throws Exception {
+        Map<String, Double> aggregations = BulletResponseParser.readAggregations(stream(RESPONSE));
+        Assert.assertEquals(aggregations.size(), 2);
+        Assert.assertEquals(aggregations.get("COUNT DISTINCT"), 20.0);
+        Assert.assertEquals(aggregations.get("COUNT"), 7.0);
+        Assert.assertFalse(aggregations.containsKey("text"));
+        Assert.assertTrue(BulletResponseParser.readAggregations(stream("{\"records\": []}")).isEmpty());
+        Assert.assertThrows(IOException.class, () -> BulletResponseParser.readAggregations(stream("{\"records\": null}")));
+        Assert.assertThrows(IOException.class, () -> BulletResponseParser.readAggregations(stream("[]")));
+    }
+
+    /**
+     * Test copying only the records.
+     */
+    @Test
+    public void readRecordsTest() throws Exception {
+        String records = BulletResponseParser.readRecords(stream(RESPONSE));
+        JsonNode expected = new ObjectMapper().readTree(RESPONSE);
+        ((ObjectNode) expected).remove("meta");
+        Assert.assertEquals(new ObjectMapper().readTree(records), expected);
+        Assert.assertThrows(IOException.class, () -> BulletResponseParser.readRecords(stream("{\"meta\": {}}")));
+    }
+
+    /**
+     * Test cutting long text for logging.
+     */
+    @Test
+    public void abbreviateTest() {
+        Assert.assertNull(BulletResponseParser.abbreviate(null));
+        Assert.assertEquals(BulletResponseParser.abbreviate("short"), "short");
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < BulletResponseParser.MAX_LOGGED_CHARS + 10; i++) {
+            text.append('x');
+        }
+        String abbreviated = BulletResponseParser.abbreviate(text.toString());
+        Assert.assertTrue(abbreviated.startsWith(text.substring(0, BulletResponseParser.MAX_LOGGED_CHARS) + "..."));
+        Assert.assertTrue(abbreviated.endsWith("(" + text.length() + " characters)"));
+    }
+
+    /**
+     * Test reading a wide raw response, with the meta after the records.
+     * The allocations of this read are compared in BulletResponseParserBenchmark.
+     */
+    @Test
+    public void wideResponseTest() throws Exception {
+        StringBuilder json = new StringBuilder("{\"records\": [");
+        for (int i = 0; i < 200; i++) {
+            json.append(i == 0 ? "{" : ", {");
+            for (int j = 0; j < 30; j++) {
+                json.append(j == 0 ? "" : ", ").append("\"column").append(j).append("\": ");
+                if (j % 2 == 0) {
+                    json.append(i * j);
+                } else {
+                    json.append("\"value of row ").append(i).append(" column ").append(j).append('"');
+                }
+            }
+            json.append('}');
+        }
+        json.append("], \"meta\": {}}");
+
+        Map<String, Double> aggregations = BulletResponseParser.readAggregations(stream(json.toString()));
+        Assert.assertEquals(aggregations.size(), 15);
+        Assert.assertEquals(aggregations.get("column0"), 0.0);
+        Assert.assertEquals(aggregations.get("column28"), 199.0 * 28);
+        Assert.assertFalse(aggregations.containsKey("column1"));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.service.cardinality;
+
+import com.yahoo.cubed.TestUtils;
+import com.yahoo.cubed.service.bullet.query.BulletQuery;
+import com.yahoo.cubed.service.bullet.query.BulletQueryFailException;
+import com.yahoo.cubed.service.cardinality.CardinalityEstimationService.Response;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.HttpStatus;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test cardinality estimate cache.
+ */
+public class CardinalityEstimateCacheTest {
+    private static final String FILTER = "{\"condition\":\"AND\",\"rules\":[{\"id\":\"price\",\"field\":\"price\",\"type\":\"double\",\"input\":\"text\",\"operator\":\"less\",\"value\":\"10.25\"}]}";
+
+    /**
+     * Loader counting the Bullet queries it sends.
+     */
+    private static class CountingLoader implements Callable<Response> {
+        private final AtomicInteger calls = new AtomicInteger();
+        private final int statusCode;
+
+        private CountingLoader(int statusCode) {
+            this.statusCode = statusCode;
+        }
+
+        @Override
+        public Response call() {
+            calls.incrementAndGet();
+            return new Response(statusCode, Collections.singletonMap(BulletQuery.AGGREGATION_TYPE, 20.0));
+        }
+    }
+
+    private static Response failing() throws Exception {
+        throw new IllegalStateException("Bullet is down");
+    }
+
+    /**
+     * Test that equal queries have equal keys whatever the formatting of their filter.
+     */
+    @Test
+    public void keyTest() throws Exception {
+        String key = CardinalityEstimateCache.key("http://bullet", BulletQuery.createPreviewBulletQueryInstance(null, FILTER));
+        String reformatted = FILTER.replace(",", ",\n  ").replace(":", " : ");
+        Assert.assertEquals(CardinalityEstimateCache.key("http://bullet", BulletQuery.createPreviewBulletQueryInstance(null, reformatted)), key);
+        Assert.assertNotEquals(CardinalityEstimateCache.key("http://bullet", BulletQuery.createPreviewBulletQueryInstance(null, FILTER.replace("10.25", "11"))), key);
+        Assert.assertNotEquals(CardinalityEstimateCache.key("http://other-bullet", BulletQuery.createPreviewBulletQueryInstance(null, FILTER)), key);
+    }
+
+    /**
+     * Test hits and expiry after the TTL.
+     */
+    @Test
+    public void hitAndExpiryTest() throws Exception {
+        TestUtils.MovableClock clock = new TestUtils.MovableClock();
+        CardinalityEstimateCache cache = new CardinalityEstimateCache(10, clock);
+        CountingLoader loader = new CountingLoader(HttpStatus.SC_OK);
+
+        Response first = cache.get("a", loader);
+        Assert.assertSame(cache.get("a", loader), first);
+        Assert.assertEquals(loader.calls.get(), 1);
+
+        clock.advanceMinutes(11);
+        Assert.assertNotSame(cache.get("a", loader), first);
+        Assert.assertEquals(loader.calls.get(), 2);
+        Assert.assertEquals(cache.getStats().get("hits").longValue(), 1L);
+        Assert.assertEquals(cache.getStats().get("misses").longValue(), 2L);
+        Assert.assertEquals(cache.getStats().get("entries").longValue(), 1L);
+    }
+
+    /**
+     * Test that failed queries are not cached.
+     */
+    @Test
+    public void failureTest() throws Exception {
+        CardinalityEstimateCache cache = new CardinalityEstimateCache(10, new TestUtils.MovableClock());
+        CountingLoader loader = new CountingLoader(HttpStatus.SC_SERVICE_UNAVAILABLE);
+        cache.get("a", loader);
+        cache.get("a", loader);
+        Assert.assertEquals(loader.calls.get(), 2);
+
+        Assert.assertThrows(BulletQueryFailException.class, () -> cache.get("b", CardinalityEstimateCacheTest::failing));
+        Assert.assertEquals(cache.getStats().get("entries").longValue(), 0L);
+        Assert.assertEquals(cache.getStats().get("inFlight").longValue(), 0L);
+    }
+
+    /**
+     * Test that concurrent identical queries share one Bullet query.
+     */
+    @Test
+    public void coalescingTest() throws Exception {
+        CardinalityEstimateCache cache = new CardinalityEstimateCache(0, new TestUtils.MovableClock());
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Callable<Response> slowLoader = () -> {
+            calls.incrementAndGet();
+            release.await();
+            return new Response(HttpStatus.SC_OK);
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Response>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> cache.get("a", slowLoader)));
+            }
+            // Wait for the first query to start and the others to join it
+            while (cache.getStats().get("coalesced") < 3) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            Response first = futures.get(0).get();
+            for (Future<Response> future : futures) {
+                Assert.assertSame(future.get(), first);
+            }
+            Assert.assertEquals(calls.get(), 1);
+            // Not cached with a TTL of 0
+            cache.get("a", slowLoader);
+            Assert.assertEquals(calls.get(), 2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test that unshared queries use the cache but do not join identical queries in flight.
+     */
+    @Test
+    public void unsharedTest() throws Exception {
+        CardinalityEstimateCache cache = new CardinalityEstimateCache(1, new TestUtils.MovableClock());
+        CountDownLatch release = new CountDownLatch(1);
+        Callable<Response> slowLoader = () -> {
+            release.await();
+            return new Response(HttpStatus.SC_OK);
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Response> running = executor.submit(() -> cache.get("a", slowLoader));
+            while (cache.getStats().get("inFlight") < 1) {
+                Thread.sleep(10);
+            }
+            CountingLoader loader = new CountingLoader(HttpStatus.SC_OK);
+            Response unshared = cache.getUnshared("a", loader);
+            Assert.assertEquals(loader.calls.get(), 1);
+            Assert.assertEquals((long) cache.getStats().get("coalesced"), 0L);
+            Assert.assertSame(cache.getUnshared("a", loader), unshared);
+            Assert.assertEquals(loader.calls.get(), 1);
+            release.countDown();
+            running.get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -19,7 +19,13 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
@@ -49,6 +55,38 @@ public class CardinalityEstimationServiceTest {
         }
     }
 
+    /**
+     * Estimation taking some time, counting the queries sent at the same time.
+     */
+    private static class SlowCardinalityEstimationServiceImpl extends CardinalityEstimationServiceImpl {
+        private final long queryMillis;
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger maxRunning = new AtomicInteger();
+
+        private SlowCardinalityEstimationServiceImpl(long queryMillis) {
+            this.queryMillis = queryMillis;
+        }
+
+        @Override
+        public Response sendBulletQuery(Pipeline pipelineModel) throws BulletQueryFailException {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(queryMillis);
+                return new Response(HttpStatus.SC_OK);
+            } catch (InterruptedException e) {
+                throw new BulletQueryFailException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+
+    private static Pipeline pipelineOfSchema(String schemaName) {
+        Pipeline pipelineOfSchema = new Pipeline();
+        pipelineOfSchema.setPipelineSchemaName(schemaName);
+        return pipelineOfSchema;
+    }
+
     /**
      * Mock HTTP responses.
      */
@@ -128,4 +166,152 @@ public class CardinalityEstimationServiceTest {
         Assert.assertTrue(response.aggregationValues.containsKey(BulletQuery.AGGREGATION_TYPE));
         Assert.assertEquals(response.aggregationValues.get(BulletQuery.AGGREGATION_TYPE), new Double(20.0));
     }
+
+    /**
+     * Check that batched queries run at the same time, bounded per Bullet URL.
+     */
+    @Test
+    public void testBatchedQueries() throws Exception {
+        SlowCardinalityEstimationServiceImpl service = new SlowCardinalityEstimationServiceImpl(200);
+        List<Pipeline> pipelines = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            pipelines.add(pipelineOfSchema("schema1"));
+        }
+        pipelines.add(pipelineOfSchema("unknown-schema"));
+
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<Response>> futures = service.sendBulletQueries(pipelines, 3, 10000);
+        for (int i = 0; i < 6; i++) {
+            Assert.assertEquals(futures.get(i).get().statusCode, HttpStatus.SC_OK);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        Assert.assertEquals(service.maxRunning.get(), 3);
+        // Two rounds of three queries instead of six queries one after the other
+        Assert.assertTrue(elapsed < 1000, "took " + elapsed + " ms");
+        Assert.assertTrue(futures.get(6).isCompletedExceptionally());
+    }
+
+    /**
+     * Check that all the lanes of a bulk check of one URL run at the same time.
+     */
+    @Test
+    public void testBatchLanesPerUrl() throws Exception {
+        SlowCardinalityEstimationServiceImpl service = new SlowCardinalityEstimationServiceImpl(300);
+        int lanes = CLISettings.BULLET_MAX_CONNECTIONS_PER_ROUTE;
+        List<Pipeline> pipelines = new ArrayList<>();
+        for (int i = 0; i < lanes; i++) {
+            pipelines.add(pipelineOfSchema("schema1"));
+        }
+
+        List<CompletableFuture<Response>> futures = service.sendBulletQueries(pipelines, lanes, 10000);
+        for (CompletableFuture<Response> future : futures) {
+            Assert.assertEquals(future.get().statusCode, HttpStatus.SC_OK);
+        }
+        Assert.assertEquals(service.maxRunning.get(), lanes);
+    }
+
+    /**
+     * Check that queries not answered before the deadline fail.
+     */
+    @Test
+    public void testBatchDeadline() throws Exception {
+        SlowCardinalityEstimationServiceImpl service = new SlowCardinalityEstimationServiceImpl(500);
+        List<Pipeline> pipelines = new ArrayList<>();
+        pipelines.add(pipelineOfSchema("schema1"));
+        pipelines.add(pipelineOfSchema("schema1"));
+
+        List<CompletableFuture<Response>> futures = service.sendBulletQueries(pipelines, 1, 100);
+        for (CompletableFuture<Response> future : futures) {
+            try {
+                future.get();
+                Assert.fail("The query should have timed out");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof BulletQueryFailException);
+                Assert.assertTrue(e.getCause().getCause() instanceof TimeoutException);
+            }
+        }
+    }
+
+    /**
+     * Check that requests still in flight at the deadline are aborted.
+     */
+    @Test
+    public void testBatchDeadlineAbortsRequests() throws Exception {
+        List<HttpPost> requests = new CopyOnWriteArrayList<>();
+        HttpClient blockingClient = Mockito.mock(HttpClient.class);
+        Mockito.when(blockingClient.execute(Mockito.any(HttpPost.class))).thenAnswer(invocation -> waitForAbort((HttpPost) invocation.getArguments()[0], requests));
+        CardinalityEstimationService service = new CardinalityEstimationServiceImpl() {
+            @Override
+            protected HttpClient newHttpClientInstance() {
+                return blockingClient;
+            }
+        };
+        Pipeline blockedPipeline = new Pipeline();
+        blockedPipeline.setPipelineName("blocked");
+        blockedPipeline.setProjections(pipeline.getProjections());
+        blockedPipeline.setPipelineFilterJson(pipeline.getPipelineFilterJson().replace("10.25", "20.5"));
+        blockedPipeline.setPipelineSchemaName("schema1");
+
+        List<CompletableFuture<Response>> futures = service.sendBulletQueries(Collections.singletonList(blockedPipeline), 1, 100);
+        try {
+            futures.get(0).get();
+            Assert.fail("The query should have timed out");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().getCause() instanceof TimeoutException);
+        }
+        for (int i = 0; i < 500 && (requests.isEmpty() || !requests.get(0).isAborted()); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(requests.size(), 1);
+        Assert.assertTrue(requests.get(0).isAborted());
+    }
+
+    /**
+     * Check that an estimate of the same pipeline does not wait for the query of a batch, which is aborted at its deadline.
+     */
+    @Test
+    public void testBatchQueriesNotShared() throws Exception {
+        StatusLine errorStatus = Mockito.mock(BasicStatusLine.class);
+        Mockito.when(errorStatus.getStatusCode()).thenReturn(HttpStatus.SC_INTERNAL_SERVER_ERROR);
+        HttpResponse errorResponse = Mockito.mock(HttpResponse.class);
+        Mockito.when(errorResponse.getStatusLine()).thenReturn(errorStatus);
+        List<HttpPost> requests = new CopyOnWriteArrayList<>();
+        HttpClient blockingClient = Mockito.mock(HttpClient.class);
+        // The query of the batch blocks until aborted, the next one fails at once
+        Mockito.when(blockingClient.execute(Mockito.any(HttpPost.class)))
+                .thenAnswer(invocation -> waitForAbort((HttpPost) invocation.getArguments()[0], requests))
+                .thenReturn(errorResponse);
+        CardinalityEstimationService service = new CardinalityEstimationServiceImpl() {
+            @Override
+            protected HttpClient newHttpClientInstance() {
+                return blockingClient;
+            }
+        };
+        Pipeline blockedPipeline = new Pipeline();
+        blockedPipeline.setPipelineName("shared");
+        blockedPipeline.setProjections(pipeline.getProjections());
+        blockedPipeline.setPipelineFilterJson(pipeline.getPipelineFilterJson().replace("10.25", "40.75"));
+        blockedPipeline.setPipelineSchemaName("schema1");
+
+        List<CompletableFuture<Response>> futures = service.sendBulletQueries(Collections.singletonList(blockedPipeline), 1, 200);
+        for (int i = 0; i < 500 && requests.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(service.sendBulletQuery(blockedPipeline).statusCode, HttpStatus.SC_INTERNAL_SERVER_ERROR);
+        Assert.assertFalse(futures.get(0).isDone());
+        try {
+            futures.get(0).get();
+            Assert.fail("The query should have timed out");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().getCause() instanceof TimeoutException);
+        }
+    }
+
+    private static HttpResponse waitForAbort(HttpPost request, List<HttpPost> requests) throws Exception {
+        requests.add(request);
+        for (int i = 0; i < 500 && !request.isAborted(); i++) {
+            Thread.sleep(10);
+        }
+        throw new IOException("Request aborted");
+    }
 }
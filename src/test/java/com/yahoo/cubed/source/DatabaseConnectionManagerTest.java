@@ -8,7 +8,9 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 import org.testng.annotations.BeforeClass;
 import com.yahoo.cubed.settings.CLISettings;
+import java.sql.Connection;
 import java.sql.DatabaseMetaData;
+import java.util.Map;
 
 /**
  * Test configuration loader.
@@ -20,6 +22,7 @@ public class DatabaseConnectionManagerTest {
     @BeforeClass
     public static void initialize() throws Exception {
         CLISettings.DB_CONFIG_FILE = "src/test/resources/database-configuration.properties";
+        ConfigurationLoader.load();
     }
 
     /**
@@ -32,4 +35,23 @@ public class DatabaseConnectionManagerTest {
         Assert.assertEquals(metadata.getUserName(), "ROOT");
         Assert.assertEquals(metadata.getDriverName(), "H2 JDBC Driver");
     }
+
+    /**
+     * Test that connections are returned to the pool and counted.
+     */
+    @Test
+    public void testPool() throws Exception {
+        Connection first = DatabaseConnectionManager.createConnection();
+        Connection second = DatabaseConnectionManager.createConnection();
+        Map<String, Long> stats = DatabaseConnectionManager.getPoolStats();
+        Assert.assertEquals(stats.get("maxActive"), Long.valueOf(CLISettings.DB_POOL_MAX_ACTIVE));
+        Assert.assertTrue(stats.get("active") >= 2);
+        long active = stats.get("active");
+
+        first.close();
+        second.close();
+        stats = DatabaseConnectionManager.getPoolStats();
+        Assert.assertEquals(stats.get("active"), Long.valueOf(active - 2));
+        Assert.assertTrue(stats.get("idle") >= 2);
+    }
 }
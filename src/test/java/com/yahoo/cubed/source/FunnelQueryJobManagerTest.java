@@ -0,0 +1,178 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.source;
+
+import com.yahoo.cubed.json.FunnelQueryJob;
+import com.yahoo.cubed.json.FunnelQueryResult;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Test funnel query job manager.
+ */
+public class FunnelQueryJobManagerTest {
+
+    private static List<FunnelQueryResult> singleResult() {
+        FunnelQueryResult result = new FunnelQueryResult();
+        result.getValues().add("100");
+        return Collections.singletonList(result);
+    }
+
+    private static List<FunnelQueryResult> awaitRelease(CountDownLatch started, CountDownLatch release) throws InterruptedException {
+        started.countDown();
+        release.await();
+        return singleResult();
+    }
+
+    private static boolean recordCancel(List<String> cancelled, String queryId) {
+        cancelled.add(queryId);
+        return true;
+    }
+
+    private static List<FunnelQueryResult> fail(String query) throws Exception {
+        throw new Exception("bad query " + query);
+    }
+
+    private static FunnelQueryJob waitUntilDone(FunnelQueryJobManager manager, String queryId) throws InterruptedException {
+        for (int i = 0; i < 500 && !manager.get(queryId).getStatus().isDone(); i++) {
+            Thread.sleep(10);
+        }
+        return manager.get(queryId);
+    }
+
+    /**
+     * Test successful and failed queries.
+     */
+    @Test
+    public void runTest() throws Exception {
+        FunnelQueryJobManager manager = new FunnelQueryJobManager(2, 2, 60, (id, query) -> singleResult(), id -> false);
+        FunnelQueryJob job = waitUntilDone(manager, manager.submit("select 1").getQueryId());
+        Assert.assertEquals(job.getStatus(), FunnelQueryJob.Status.SUCCEEDED);
+        Assert.assertEquals(job.getResults().get(0).getValues().get(0), "100");
+        Assert.assertNotNull(job.getStartTime());
+        Assert.assertNotNull(job.getEndTime());
+
+        manager = new FunnelQueryJobManager(1, 1, 60, (id, query) -> fail(query), id -> false);
+        job = waitUntilDone(manager, manager.submit("select 2").getQueryId());
+        Assert.assertEquals(job.getStatus(), FunnelQueryJob.Status.FAILED);
+        Assert.assertEquals(job.getError(), "bad query select 2");
+        Assert.assertNull(job.getResults());
+        Assert.assertNull(manager.get("unknown"));
+    }
+
+    /**
+     * Test cancellation of running and queued queries, and rejection once the queue is full.
+     */
+    @Test
+    public void cancelAndRejectTest() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> cancelled = new CopyOnWriteArrayList<>();
+        FunnelQueryJobManager manager = new FunnelQueryJobManager(1, 1, 60,
+            (id, query) -> awaitRelease(started, release),
+            id -> recordCancel(cancelled, id));
+
+        FunnelQueryJob running = manager.submit("running");
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        FunnelQueryJob queued = manager.submit("queued");
+        Assert.assertEquals(queued.getStatus(), FunnelQueryJob.Status.QUEUED);
+        try {
+            manager.submit("rejected");
+            Assert.fail("queue should be full");
+        } catch (RejectedExecutionException e) {
+            Assert.assertEquals(e.getMessage(), "Too many funnel queries are waiting, try again later");
+        }
+
+        Assert.assertTrue(manager.cancel(queued.getQueryId()));
+        Assert.assertTrue(cancelled.isEmpty());
+        Assert.assertTrue(manager.cancel(running.getQueryId()));
+        Assert.assertEquals(cancelled, Collections.singletonList(running.getQueryId()));
+        Assert.assertEquals(running.getStatus(), FunnelQueryJob.Status.CANCELLED);
+        Assert.assertFalse(manager.cancel(running.getQueryId()));
+        release.countDown();
+        manager.shutdown();
+    }
+
+    /**
+     * Test that a query cancelled while starting, before it could be cancelled, is seen as cancelled by its runner.
+     */
+    @Test
+    public void cancelBeforeStartTest() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch checked = new CountDownLatch(1);
+        AtomicReference<FunnelQueryJobManager> holder = new AtomicReference<>();
+        AtomicBoolean seenCancelled = new AtomicBoolean();
+        FunnelQueryJobManager manager = new FunnelQueryJobManager(1, 1, 60,
+            (id, query) -> checkCancelled(started, release, checked, holder.get(), id, seenCancelled),
+            id -> false);
+        holder.set(manager);
+
+        FunnelQueryJob job = manager.submit("starting");
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(manager.isCancelled(job.getQueryId()));
+        Assert.assertTrue(manager.cancel(job.getQueryId()));
+        Assert.assertTrue(manager.isCancelled(job.getQueryId()));
+        release.countDown();
+        Assert.assertTrue(checked.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(seenCancelled.get());
+        Assert.assertEquals(job.getStatus(), FunnelQueryJob.Status.CANCELLED);
+        Assert.assertFalse(manager.isCancelled("unknown"));
+        manager.shutdown();
+    }
+
+    private static List<FunnelQueryResult> checkCancelled(CountDownLatch started, CountDownLatch release, CountDownLatch checked,
+                                                          FunnelQueryJobManager manager, String queryId, AtomicBoolean seenCancelled) {
+        started.countDown();
+        // Cancellation interrupts the worker, wait for the release regardless
+        boolean interrupted = false;
+        while (true) {
+            try {
+                release.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        seenCancelled.set(manager.isCancelled(queryId));
+        checked.countDown();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return singleResult();
+    }
+
+    /**
+     * Test that the futures of finished jobs are dropped, and expired jobs are evicted.
+     */
+    @Test
+    public void evictionTest() throws Exception {
+        FunnelQueryJobManager manager = new FunnelQueryJobManager(4, 100, 0, (id, query) -> singleResult(), id -> false);
+        List<FunnelQueryJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            jobs.add(manager.submit("select " + i));
+        }
+        for (int i = 0; i < 500 && (manager.getFutureCount() > 0 || !jobs.stream().allMatch(job -> job.getStatus().isDone())); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(manager.getFutureCount(), 0);
+
+        Thread.sleep(5);
+        String last = manager.submit("select last").getQueryId();
+        Assert.assertNull(manager.get(jobs.get(0).getQueryId()));
+        Assert.assertNotNull(manager.get(last));
+        manager.shutdown();
+    }
+}
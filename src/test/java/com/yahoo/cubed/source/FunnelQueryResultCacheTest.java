@@ -0,0 +1,99 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.source;
+
+import com.yahoo.cubed.TestUtils;
+import com.yahoo.cubed.json.FunnelQueryResultAggregator;
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Test funnel query result cache.
+ */
+public class FunnelQueryResultCacheTest {
+
+    private static FunnelQueryResultAggregator results(String key, String values) {
+        FunnelQueryResultAggregator aggregator = new FunnelQueryResultAggregator();
+        aggregator.add(Arrays.asList(key), values);
+        return aggregator;
+    }
+
+    /**
+     * Test hits on normalized queries and expiry of unsettled date ranges.
+     */
+    @Test
+    public void ttlTest() {
+        TestUtils.MovableClock clock = new TestUtils.MovableClock();
+        FunnelQueryResultCache cache = new FunnelQueryResultCache(100, 60, 2, null, 10, clock);
+        FunnelQueryResultAggregator settled = results("ios", "[10,5]");
+        FunnelQueryResultAggregator recent = results("android", "[3]");
+
+        Assert.assertNull(cache.get("SELECT 1"));
+        cache.put("SELECT 1\n  FROM t", settled, "20200508");
+        cache.put("SELECT 2", recent, "20200509");
+        Assert.assertSame(cache.get("  SELECT 1 FROM\tt "), settled);
+        Assert.assertSame(cache.get("SELECT 2"), recent);
+
+        // Only the settled range survives the TTL
+        clock.advanceMinutes(61);
+        Assert.assertSame(cache.get("SELECT 1 FROM t"), settled);
+        Assert.assertNull(cache.get("SELECT 2"));
+
+        Assert.assertEquals(cache.getStats().get("hits"), Long.valueOf(3));
+        Assert.assertEquals(cache.getStats().get("misses"), Long.valueOf(2));
+        Assert.assertEquals(cache.getStats().get("entries"), Long.valueOf(1));
+    }
+
+    /**
+     * Test that whitespace is only collapsed outside of quoted literals.
+     */
+    @Test
+    public void normalizeTest() {
+        Assert.assertEquals(FunnelQueryResultCache.normalize("  SELECT a,\n\tb  FROM t "), "SELECT a, b FROM t");
+        Assert.assertEquals(FunnelQueryResultCache.normalize("WHERE  x = 'a  b'  AND y = \"c\\\"  d\""), "WHERE x = 'a  b' AND y = \"c\\\"  d\"");
+        Assert.assertNotEquals(FunnelQueryResultCache.key("WHERE x = 'a  b'"), FunnelQueryResultCache.key("WHERE x = 'a b'"));
+        Assert.assertEquals(FunnelQueryResultCache.key("WHERE x = 'a b'"), FunnelQueryResultCache.key("WHERE  x =\n'a b'"));
+    }
+
+    /**
+     * Test the size bound and spilling evicted entries to disk.
+     */
+    @Test
+    public void evictionAndSpillTest() throws Exception {
+        File spillDirectory = Files.createTempDirectory("funnel_cache").toFile();
+        try {
+            TestUtils.MovableClock clock = new TestUtils.MovableClock();
+            // Each entry weighs 2: one result row plus one
+            FunnelQueryResultCache cache = new FunnelQueryResultCache(4, 60, 2, spillDirectory, 10, clock);
+            cache.put("q1", results("a", "[1]"), "20200101");
+            cache.put("q2", results("b", "[2]"), "20200101");
+            Assert.assertNotNull(cache.get("q1"));
+            cache.put("q3", results("c", "[3]"), "20200101");
+
+            // q2 was the least recently used
+            Assert.assertEquals(cache.getStats().get("evictions"), Long.valueOf(1));
+            Assert.assertEquals(cache.getStats().get("spills"), Long.valueOf(1));
+            FunnelQueryResultAggregator spilled = cache.get("q2");
+            Assert.assertEquals(spilled.toResults().get(0).getKeys(), Arrays.asList("b"));
+            Assert.assertEquals(spilled.toResults().get(0).getValues(), Arrays.asList("2"));
+            Assert.assertEquals(cache.getStats().get("diskHits"), Long.valueOf(1));
+
+            // Too large to cache
+            FunnelQueryResultAggregator large = new FunnelQueryResultAggregator();
+            for (int i = 0; i < 5; i++) {
+                large.add(Arrays.asList("k" + i), "[1]");
+            }
+            cache.put("large", large, "20200101");
+            Assert.assertNull(cache.get("large"));
+        } finally {
+            FileUtils.deleteDirectory(spillDirectory);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.source;
+
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Matchers.anyInt;
+
+/**
+ * Test hive connection pool.
+ */
+public class HiveConnectionPoolTest {
+
+    private static Connection healthyConnection() throws SQLException {
+        Connection connection = Mockito.mock(Connection.class);
+        Mockito.when(connection.isValid(anyInt())).thenReturn(true);
+        return connection;
+    }
+
+    private static Connection countedConnection(AtomicInteger created) throws SQLException {
+        created.incrementAndGet();
+        return healthyConnection();
+    }
+
+    private static Connection failingConnection() throws SQLException {
+        throw new SQLException("down");
+    }
+
+    /**
+     * Connections are reused and the pool never hands out more than its maximum.
+     */
+    @Test
+    public void boundedReuseTest() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        HiveConnectionPool pool = new HiveConnectionPool(() -> countedConnection(created), 2, 0, 1);
+
+        Connection first = pool.borrow();
+        Connection second = pool.borrow();
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(pool.getActiveCount(), 2);
+        try {
+            pool.borrow();
+            Assert.fail("pool should be exhausted");
+        } catch (SQLTimeoutException e) {
+            Assert.assertEquals(pool.getActiveCount(), 2);
+        }
+
+        pool.release(first, false);
+        Assert.assertSame(pool.borrow(), first);
+        Assert.assertEquals(created.get(), 2);
+
+        // Broken connections are closed and not reused
+        pool.release(second, true);
+        Mockito.verify(second).close();
+        Assert.assertEquals(pool.getIdleCount(), 0);
+        Assert.assertEquals(pool.getActiveCount(), 1);
+    }
+
+    /**
+     * Idle connections failing the health check are replaced.
+     */
+    @Test
+    public void healthCheckTest() throws Exception {
+        Connection stale = Mockito.mock(Connection.class);
+        Mockito.when(stale.isValid(anyInt())).thenReturn(false);
+        Connection fresh = healthyConnection();
+        Iterator<Connection> connections = Arrays.asList(stale, fresh).iterator();
+        HiveConnectionPool pool = new HiveConnectionPool(connections::next, 1, 0, 1);
+
+        Assert.assertSame(pool.borrow(), stale);
+        pool.release(stale, false);
+        Assert.assertSame(pool.borrow(), fresh);
+        Mockito.verify(stale).close();
+    }
+
+    /**
+     * Releasing a connection twice, or one that was never borrowed, does not add permits.
+     */
+    @Test
+    public void unknownReleaseTest() throws Exception {
+        HiveConnectionPool pool = new HiveConnectionPool(HiveConnectionPoolTest::healthyConnection, 1, 0, 1);
+        Connection stranger = healthyConnection();
+        pool.release(stranger, false);
+        pool.release(null, false);
+        Assert.assertEquals(pool.getActiveCount(), 0);
+        Assert.assertEquals(pool.getIdleCount(), 0);
+        Mockito.verify(stranger, Mockito.never()).close();
+
+        Connection connection = pool.borrow();
+        pool.release(connection, false);
+        pool.release(connection, false);
+        Assert.assertEquals(pool.getActiveCount(), 0);
+        Assert.assertEquals(pool.getIdleCount(), 1);
+
+        // Still only one connection at a time
+        Assert.assertSame(pool.borrow(), connection);
+        try {
+            pool.borrow();
+            Assert.fail("pool is exhausted");
+        } catch (SQLTimeoutException e) {
+            Assert.assertEquals(pool.getActiveCount(), 1);
+        }
+    }
+
+    /**
+     * A failing factory does not leak permits.
+     */
+    @Test
+    public void factoryFailureTest() throws Exception {
+        HiveConnectionPool pool = new HiveConnectionPool(HiveConnectionPoolTest::failingConnection, 1, 0, 1);
+        for (int i = 0; i < 2; i++) {
+            try {
+                pool.borrow();
+                Assert.fail("factory should fail");
+            } catch (SQLException e) {
+                Assert.assertEquals(e.getMessage(), "down");
+            }
+        }
+        Assert.assertEquals(pool.getActiveCount(), 0);
+
+        pool.close();
+        try {
+            pool.borrow();
+            Assert.fail("pool is closed");
+        } catch (SQLException e) {
+            Assert.assertEquals(e.getMessage(), "Hive connection pool is closed");
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.source;
+
+import com.yahoo.cubed.App;
+import com.yahoo.cubed.service.exception.DataValidatorException;
+import com.yahoo.cubed.settings.CLISettings;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Test schema sync.
+ */
+public class SchemaSyncTest {
+    private static final File SCHEMAS_DIR = new File("src/test/resources/schemas/");
+
+    /**
+     * Setup database and load schemas.
+     */
+    @BeforeClass
+    public static void initialize() throws Exception {
+        CLISettings.DB_CONFIG_FILE = "src/test/resources/database-configuration.properties";
+        App.prepareDatabase();
+        App.dropAllFields();
+        App.loadSchemas(SCHEMAS_DIR.getPath());
+    }
+
+    /**
+     * Test that a second sync finds nothing to write.
+     */
+    @Test
+    public void unchangedTest() throws Exception {
+        SchemaSync.Result result = SchemaSync.sync(SCHEMAS_DIR);
+        Assert.assertTrue(result.schemaNames.contains("schema1"));
+        Assert.assertEquals(result.insertedSchemas + result.updatedSchemas + result.deletedSchemas, 0);
+        Assert.assertEquals(result.insertedFields + result.updatedFields, 0);
+        Assert.assertEquals(result.insertedKeys + result.updatedKeys, 0);
+    }
+
+    /**
+     * Test that only the differences are written.
+     */
+    @Test(dependsOnMethods = "unchangedTest")
+    public void changedTest() throws Exception {
+        String fieldName;
+        long keyId;
+        long keyFieldId;
+        try (Connection connection = DatabaseConnectionManager.createConnection(); Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("SELECT field_name FROM field WHERE field_id = 3 AND schema_name = 'schema1'")) {
+                Assert.assertTrue(resultSet.next());
+                fieldName = resultSet.getString(1);
+            }
+            try (ResultSet resultSet = statement.executeQuery("SELECT key_id, field_id FROM field_key WHERE schema_name = 'schema1'")) {
+                Assert.assertTrue(resultSet.next());
+                keyId = resultSet.getLong(1);
+                keyFieldId = resultSet.getLong(2);
+            }
+            statement.executeUpdate("UPDATE field SET field_name = 'renamed' WHERE field_id = 3 AND schema_name = 'schema1'");
+            statement.executeUpdate("DELETE FROM field_key WHERE key_id = " + keyId + " AND field_id = " + keyFieldId + " AND schema_name = 'schema1'");
+            statement.executeUpdate("UPDATE all_schemas SET is_schema_deleted = TRUE WHERE schema_name = 'schema1'");
+        }
+
+        SchemaSync.Result result = SchemaSync.sync(SCHEMAS_DIR);
+        Assert.assertEquals(result.insertedSchemas, 0);
+        Assert.assertEquals(result.updatedSchemas, 1);
+        Assert.assertEquals(result.deletedSchemas, 0);
+        Assert.assertEquals(result.insertedFields, 0);
+        Assert.assertEquals(result.updatedFields, 1);
+        Assert.assertEquals(result.insertedKeys, 1);
+        Assert.assertEquals(result.updatedKeys, 0);
+
+        try (Connection connection = DatabaseConnectionManager.createConnection(); Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("SELECT field_name FROM field WHERE field_id = 3 AND schema_name = 'schema1'")) {
+                Assert.assertTrue(resultSet.next());
+                Assert.assertEquals(resultSet.getString(1), fieldName);
+            }
+            try (ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM field_key WHERE key_id = " + keyId + " AND field_id = " + keyFieldId + " AND schema_name = 'schema1'")) {
+                Assert.assertTrue(resultSet.next());
+                Assert.assertEquals(resultSet.getInt(1), 1);
+            }
+            try (ResultSet resultSet = statement.executeQuery("SELECT is_schema_deleted FROM all_schemas WHERE schema_name = 'schema1'")) {
+                Assert.assertTrue(resultSet.next());
+                Assert.assertFalse(resultSet.getBoolean(1));
+            }
+        }
+    }
+
+    /**
+     * Test that names rejected by the services are not written.
+     */
+    @Test(dependsOnMethods = "changedTest")
+    public void invalidNameTest() throws Exception {
+        File dir = Files.createTempDirectory("schemas").toFile();
+        try {
+            FileUtils.copyDirectory(SCHEMAS_DIR, dir);
+            File schemaFile = new File(dir, "schema1/test_schema.yaml");
+            String yaml = FileUtils.readFileToString(schemaFile, StandardCharsets.UTF_8);
+            FileUtils.writeStringToFile(schemaFile, yaml.replace("\"geo_info\"", "\"geo-info\""), StandardCharsets.UTF_8);
+            SchemaSync.sync(dir);
+            Assert.fail("Expected the field name to be rejected");
+        } catch (DataValidatorException e) {
+            Assert.assertTrue(e.getMessage().startsWith("The name of the Field"));
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+        Assert.assertEquals(SchemaSync.sync(SCHEMAS_DIR).changes(), 0);
+    }
+
+    /**
+     * Test that a field name used by another field of the schema is rejected before anything is written.
+     */
+    @Test(dependsOnMethods = "changedTest")
+    public void duplicateNameTest() throws Exception {
+        try (Connection connection = DatabaseConnectionManager.createConnection(); Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO field (field_id, schema_name, field_name, field_type) VALUES (999, 'schema1', 'browser', 'string')");
+            statement.executeUpdate("UPDATE field SET field_type = 'string' WHERE field_id = 1 AND schema_name = 'schema1'");
+            try {
+                SchemaSync.sync(SCHEMAS_DIR);
+                Assert.fail("Expected the duplicate field name to be rejected");
+            } catch (DataValidatorException e) {
+                Assert.assertTrue(e.getMessage().contains("[browser]"));
+            }
+            try (ResultSet resultSet = statement.executeQuery("SELECT field_type FROM field WHERE field_id = 1 AND schema_name = 'schema1'")) {
+                Assert.assertTrue(resultSet.next());
+                Assert.assertEquals(resultSet.getString(1), "string");
+            }
+            statement.executeUpdate("DELETE FROM field WHERE field_id = 999 AND schema_name = 'schema1'");
+        }
+        SchemaSync.Result result = SchemaSync.sync(SCHEMAS_DIR);
+        Assert.assertEquals(result.updatedFields, 1);
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.templating;
+
+import com.yahoo.cubed.TestUtils;
+import com.yahoo.cubed.util.Utils;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test content addressed store of generated pipeline files.
+ */
+public class ArtifactStoreTest {
+    private File directory;
+    private File root;
+
+    /**
+     * Clock that can stop a thread at its next reading of the time.
+     */
+    private static class PausingClock extends TestUtils.MovableClock {
+        private final CountDownLatch paused = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile Thread pausedThread;
+
+        private PausingClock() {
+            super(Instant.now());
+        }
+
+        @Override
+        public Instant instant() {
+            if (Thread.currentThread() == pausedThread) {
+                pausedThread = null;
+                paused.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.instant();
+        }
+
+        /**
+         * Stop this thread at its next reading of the time, until released.
+         */
+        private void pauseThisThread() {
+            pausedThread = Thread.currentThread();
+        }
+    }
+
+    /**
+     * Template counting its renders.
+     */
+    private static class CountingTemplate implements TemplateFile<String> {
+        private final AtomicInteger renders = new AtomicInteger();
+        private final boolean versioned;
+
+        private CountingTemplate(boolean versioned) {
+            this.versioned = versioned;
+        }
+
+        @Override
+        public boolean dependsOnVersion() {
+            return versioned;
+        }
+
+        @Override
+        public String generateFile(String model, long version) throws Exception {
+            renders.incrementAndGet();
+            return versioned ? model + version : model;
+        }
+    }
+
+    /**
+     * Template prefixing its model with a constructor flag.
+     */
+    private static class PrefixTemplate implements TemplateFile<String> {
+        private final String prefix;
+
+        private PrefixTemplate(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public String inputsKey() {
+            return prefix;
+        }
+
+        @Override
+        public String generateFile(String model, long version) throws Exception {
+            return prefix + model;
+        }
+    }
+
+    /**
+     * Create the output directories.
+     */
+    @BeforeMethod
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("artifacts").toFile();
+        root = new File(directory, "store");
+        Assert.assertTrue(new File(directory, "a").mkdirs());
+        Assert.assertTrue(new File(directory, "b").mkdirs());
+    }
+
+    /**
+     * Delete the output directories.
+     */
+    @AfterMethod
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private String read(String path) throws Exception {
+        return new String(Files.readAllBytes(new File(directory, path).toPath()), StandardCharsets.UTF_8);
+    }
+
+    private int blobCount() {
+        return new File(root, "blobs").list().length;
+    }
+
+    /**
+     * Test that equal files of two pipelines share one blob.
+     */
+    @Test
+    public void deduplicationTest() throws Exception {
+        ArtifactStore store = new ArtifactStore(root, 10, 24, new TestUtils.MovableClock(Instant.now()));
+        store.write(directory + "/a/file", "content");
+        store.write(directory + "/b/file", "content");
+        store.write(directory + "/b/other", "other");
+        store.copyResource("email_workflow.xml", directory + "/a/workflow.xml");
+        store.copyResource("email_workflow.xml", directory + "/b/workflow.xml");
+
+        Assert.assertEquals(read("a/file"), "content");
+        Assert.assertEquals(read("b/file"), "content");
+        Assert.assertEquals(read("b/other"), "other");
+        Assert.assertEquals(read("a/workflow.xml"), read("b/workflow.xml"));
+        Assert.assertEquals(blobCount(), 3);
+        Assert.assertEquals(store.getStats().get("blobsWritten").longValue(), 3L);
+        Assert.assertEquals(store.getStats().get("blobsShared").longValue(), 1L);
+
+        // Generated files are copies, changing one changes neither the blob nor the other pipelines
+        Files.write(new File(directory, "a/file").toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(read("b/file"), "content");
+        store.write(directory + "/b/again", "content");
+        Assert.assertEquals(read("b/again"), "content");
+    }
+
+    /**
+     * Test that unchanged renders are reused, and that the version only matters to templates using it.
+     */
+    @Test
+    public void renderReuseTest() throws Exception {
+        ArtifactStore store = new ArtifactStore(root, 10, 24, new TestUtils.MovableClock(Instant.now()));
+        CountingTemplate template = new CountingTemplate(false);
+        store.render(directory + "/a/file", template, "model", 1);
+        store.render(directory + "/b/file", template, "model", 2);
+        Assert.assertEquals(template.renders.get(), 1);
+        Assert.assertEquals(read("b/file"), "model");
+
+        store.render(directory + "/b/changed", template, "changed", 2);
+        Assert.assertEquals(template.renders.get(), 2);
+        Assert.assertEquals(read("b/changed"), "changed");
+
+        CountingTemplate versioned = new CountingTemplate(true);
+        store.render(directory + "/a/versioned", versioned, "model", 1);
+        store.render(directory + "/b/versioned", versioned, "model", 2);
+        Assert.assertEquals(versioned.renders.get(), 2);
+        Assert.assertEquals(read("a/versioned"), "model1");
+        Assert.assertEquals(read("b/versioned"), "model2");
+
+        Assert.assertEquals(store.getStats().get("hits").longValue(), 1L);
+        Assert.assertEquals(store.getStats().get("misses").longValue(), 4L);
+    }
+
+    /**
+     * Test that templates of one class with different inputs keys do not share renders.
+     */
+    @Test
+    public void inputsKeyTest() throws Exception {
+        ArtifactStore store = new ArtifactStore(root, 10, 24, new TestUtils.MovableClock(Instant.now()));
+        store.render(directory + "/a/file", new PrefixTemplate("hourly"), "model", 1);
+        store.render(directory + "/b/file", new PrefixTemplate("daily"), "model", 1);
+        store.render(directory + "/b/same", new PrefixTemplate("daily"), "model", 1);
+        Assert.assertEquals(read("a/file"), "hourlymodel");
+        Assert.assertEquals(read("b/file"), "dailymodel");
+        Assert.assertEquals(read("b/same"), "dailymodel");
+        Assert.assertEquals(store.getStats().get("hits").longValue(), 1L);
+    }
+
+    /**
+     * Test that old pipelines and blobs are deleted.
+     */
+    @Test
+    public void ageEvictionTest() throws Exception {
+        TestUtils.MovableClock clock = new TestUtils.MovableClock(Instant.now());
+        ArtifactStore store = new ArtifactStore(root, 10, 24, clock);
+        store.registerTree(directory + "/a");
+        store.write(directory + "/a/file", "content");
+        Files.write(new File(directory, "a.zip").toPath(), new byte[] {1});
+
+        clock.advanceHours(1);
+        store.evict();
+        Assert.assertTrue(new File(directory, "a/file").isFile());
+
+        clock.advanceHours(24);
+        store.evict();
+        Assert.assertFalse(new File(directory, "a").exists());
+        Assert.assertFalse(new File(directory, "a.zip").exists());
+        Assert.assertEquals(blobCount(), 0);
+        Assert.assertEquals(store.getStats().get("evictedTrees").longValue(), 1L);
+        Assert.assertEquals(store.getStats().get("evictedBlobs").longValue(), 1L);
+
+        // An evicted blob is rendered again
+        CountingTemplate template = new CountingTemplate(false);
+        store.render(directory + "/b/file", template, "model", 1);
+        Files.delete(new File(directory, "b/file").toPath());
+        clock.advanceHours(25);
+        store.evict();
+        store.render(directory + "/b/file", template, "model", 1);
+        Assert.assertEquals(template.renders.get(), 2);
+        Assert.assertEquals(read("b/file"), "model");
+    }
+
+    /**
+     * Test that blobs are evicted, least recently used first, once the store is over its size.
+     */
+    @Test
+    public void sizeEvictionTest() throws Exception {
+        TestUtils.MovableClock clock = new TestUtils.MovableClock(Instant.now());
+        ArtifactStore store = new ArtifactStore(root, 2, 24, clock);
+        char[] megabyte = new char[(int) FileUtils.ONE_MB];
+        for (char content = 'a'; content <= 'd'; content++) {
+            Arrays.fill(megabyte, content);
+            String file = new String(megabyte);
+            store.write(directory + "/a/" + content, file);
+            // Used 'd' - content hours ago
+            File blob = new File(new File(root, "blobs"), Utils.sha256Hex(file));
+            Files.setLastModifiedTime(blob.toPath(), FileTime.fromMillis(clock.millis() - TimeUnit.HOURS.toMillis('d' - content)));
+        }
+
+        // The two newest blobs fit in the size, the generated files are kept
+        store.evict();
+        Assert.assertEquals(blobCount(), 2);
+        Assert.assertFalse(new File(new File(root, "blobs"), Utils.sha256Hex(read("a/a"))).exists());
+        Assert.assertFalse(new File(new File(root, "blobs"), Utils.sha256Hex(read("a/b"))).exists());
+        Assert.assertTrue(new File(new File(root, "blobs"), Utils.sha256Hex(new String(megabyte))).isFile());
+        Assert.assertEquals(read("a/a").charAt(0), 'a');
+        Assert.assertEquals(store.getStats().get("evictedBlobs").longValue(), 2L);
+    }
+
+    /**
+     * Test that eviction waits for a render that found its blob, instead of deleting the blob before it is copied.
+     */
+    @Test
+    public void evictionDuringRenderTest() throws Exception {
+        PausingClock clock = new PausingClock();
+        // Every blob is over the size, so eviction deletes all of them
+        ArtifactStore store = new ArtifactStore(root, 0, 24, clock);
+        CountingTemplate template = new CountingTemplate(false);
+        store.render(directory + "/a/file", template, "model", 1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // The render finds the blob, then stops when it marks the blob as used
+            Future<?> render = executor.submit(() -> renderPaused(store, clock, template, directory + "/b/file"));
+            Assert.assertTrue(clock.paused.await(5, TimeUnit.SECONDS));
+
+            Thread evicting = new Thread(store::evict);
+            evicting.start();
+            evicting.join(200);
+            Assert.assertTrue(evicting.isAlive());
+
+            clock.release.countDown();
+            render.get(5, TimeUnit.SECONDS);
+            evicting.join(5000);
+            Assert.assertFalse(evicting.isAlive());
+        } finally {
+            clock.release.countDown();
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(read("b/file"), "model");
+        Assert.assertEquals(template.renders.get(), 1);
+        Assert.assertEquals(blobCount(), 0);
+    }
+
+    private static Void renderPaused(ArtifactStore store, PausingClock clock, CountingTemplate template, String path) throws Exception {
+        clock.pauseThisThread();
+        store.render(path, template, "model", 1);
+        return null;
+    }
+}
@@ -12,14 +12,21 @@ import com.yahoo.cubed.model.PipelineProjection;
 import com.yahoo.cubed.model.filter.PipelineFilter;
 import com.yahoo.cubed.model.filter.PipelineLogicalRule;
 import com.yahoo.cubed.model.filter.PipelineRelationalRule;
+import com.yahoo.cubed.service.ServiceFactory;
 import com.yahoo.cubed.util.Aggregation;
+import com.yahoo.cubed.util.Utils;
+import org.apache.commons.io.FileUtils;
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Test template generator.
@@ -40,10 +47,9 @@ public class DatamartTemplateGeneratorTest {
     }
 
     /**
-     * Test generation of pipeline package zip.
+     * Sample pipeline with filters and projections.
      */
-    @Test
-    public void testGeneratePackageDir() throws Exception {
+    private Pipeline createPipeline() {
         long fid1 = 1L;
         Field field1 = new Field();
         field1.setFieldId(fid1);
@@ -109,7 +115,15 @@ public class DatamartTemplateGeneratorTest {
         pipeline.setPipelineSchemaName("schema1");
         pipeline.setProjections(projections);
         pipeline.setPipelineFilterObject(filter3);
+        return pipeline;
+    }
 
+    /**
+     * Test generation of pipeline package zip.
+     */
+    @Test
+    public void testGeneratePackageDir() throws Exception {
+        Pipeline pipeline = createPipeline();
         String fileOutput = "./target";
         long version = System.currentTimeMillis();
         tg.generateTemplateFiles(pipeline, fileOutput, version);
@@ -138,4 +152,104 @@ public class DatamartTemplateGeneratorTest {
             Assert.assertTrue(f.exists() && !f.isDirectory(), "Could not find " + f.getAbsolutePath());
         }
     }
+
+    /**
+     * Test that files rendered in memory match the generated files, without writing any.
+     */
+    @Test
+    public void testRenderInMemory() throws Exception {
+        Pipeline pipeline = createPipeline();
+        long version = System.currentTimeMillis();
+        Map<String, String> files = tg.renderTemplateFiles(pipeline, version);
+        String etl = tg.renderTemplateFile(pipeline, version, DatamartTemplateGenerator.ETL_SCRIPT);
+        Assert.assertFalse(new File("/" + pipeline.getPipelineName() + "_v" + version).exists());
+        Assert.assertTrue(files.containsKey("regular_hour/coordinator.xml"));
+        Assert.assertTrue(files.containsKey("backfill_day/index.json"));
+        Assert.assertEquals(etl, files.get(DatamartTemplateGenerator.ETL_SCRIPT));
+
+        String outputDir = tg.generateTemplateFiles(pipeline, Files.createTempDirectory("render").toString(), version);
+        try {
+            Assert.assertEquals(etl, new String(Files.readAllBytes(Paths.get(outputDir, DatamartTemplateGenerator.ETL_SCRIPT)), StandardCharsets.UTF_8));
+        } finally {
+            FileUtils.deleteDirectory(new File(outputDir).getParentFile());
+        }
+        Assert.assertThrows(IllegalArgumentException.class, () -> tg.renderTemplateFile(pipeline, version, "missing.xml"));
+    }
+
+    /**
+     * Test that the hourly and daily files of a pipeline written through the artifact store match their renders.
+     */
+    @Test
+    public void testGeneratedFilesMatchRender() throws Exception {
+        Assert.assertNotNull(ServiceFactory.templateRenderService().getArtifactStore());
+        Pipeline pipeline = createPipeline();
+        long version = System.currentTimeMillis();
+        Map<String, String> files = tg.renderTemplateFiles(pipeline, version);
+        // schema1 runs hourly with a daily backfill
+        Assert.assertNotEquals(files.get("regular_hour/index.json"), files.get("backfill_day/index.json"));
+        Assert.assertNotEquals(files.get("regular_hour/druid_load.sh"), files.get("backfill_day/druid_load.sh"));
+
+        String outputDir = tg.generateTemplateFiles(pipeline, Files.createTempDirectory("render").toString(), version);
+        try {
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                Assert.assertEquals(new String(Files.readAllBytes(Paths.get(outputDir, file.getKey())), StandardCharsets.UTF_8), file.getValue(), file.getKey());
+            }
+        } finally {
+            FileUtils.deleteDirectory(new File(outputDir).getParentFile());
+        }
+    }
+
+    /**
+     * Test that a stored pipeline generated again with a new version reuses the renders that do not depend on the version.
+     */
+    @Test
+    public void testUnchangedPipelineReusesRenders() throws Exception {
+        String jsonRequest = "{\n" +
+                "  \"name\": \"reused_renders\",\n" +
+                "  \"schemaName\": \"schema1\",\n" +
+                "  \"description\": \"desc\",\n" +
+                "  \"owner\": \"owner\",\n" +
+                "  \"projections\": [{\n" +
+                "    \"column_id\": \"2\",\n" +
+                "    \"key\": \"\",\n" +
+                "    \"alias\": \"cookie_one\",\n" +
+                "    \"aggregate\": \"NONE\",\n" +
+                "    \"schema_name\": \"schema1\"\n" +
+                "  }],\n" +
+                "  \"projectionVMs\": [\n" +
+                "    []\n" +
+                "  ],\n" +
+                "  \"filter\": {\n" +
+                "    \"condition\": \"AND\",\n" +
+                "    \"rules\": [{\n" +
+                "      \"id\": \"browser\",\n" +
+                "      \"field\": \"browser\",\n" +
+                "      \"type\": \"string\",\n" +
+                "      \"input\": \"text\",\n" +
+                "      \"operator\": \"equal\",\n" +
+                "      \"value\": \"firefox\"\n" +
+                "    }]\n" +
+                "  },\n" +
+                "  \"backfillEnabled\": true,\n" +
+                "  \"backfillStartDate\": \"2018-08-06\",\n" +
+                "  \"endTimeEnabled\": false,\n" +
+                "  \"endTimeDate\": null\n" +
+                "}";
+        Pipeline pipeline = Utils.constructFunnelmartPipeline(jsonRequest, -1, false, false);
+        ServiceFactory.pipelineService().save(pipeline);
+        long id = pipeline.getPrimaryIdx();
+        ArtifactStore store = ServiceFactory.templateRenderService().getArtifactStore();
+        File output = Files.createTempDirectory("render").toFile();
+        try {
+            long version = System.currentTimeMillis();
+            tg.generateTemplateFiles(ServiceFactory.pipelineService().fetch(id), output.getPath(), version);
+            long hits = store.getStats().get("hits");
+            tg.generateTemplateFiles(ServiceFactory.pipelineService().fetch(id), output.getPath(), version + 1);
+            // The ETL script and the hourly and daily Druid files are reused, the properties have the version
+            Assert.assertEquals(store.getStats().get("hits") - hits, 5L);
+        } finally {
+            FileUtils.deleteDirectory(output);
+            ServiceFactory.pipelineService().delete(id);
+        }
+    }
 }
@@ -29,7 +29,6 @@ public class FunnelGroupTemplateGeneratorTest {
     @BeforeClass
     public void initialize() throws Exception {
         tg = new FunnelGroupTemplateGenerator();
-        tg.setDownload(true);
         CLISettings.DB_CONFIG_FILE = "src/test/resources/database-configuration.properties";
         App.prepareDatabase();
         App.dropAllFields();
@@ -0,0 +1,46 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.templating;
+
+import org.antlr.stringtemplate.StringTemplate;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test template registry.
+ */
+public class TemplateRegistryTest {
+    private static final String METRIC_TEMPLATE = TemplateUtils.DRUID_TEMPLATES_DIR + "metric_spec_fragment.st";
+
+    /**
+     * Test that instances of the same template do not share attributes.
+     */
+    @Test
+    public void testInstancesAreIndependent() throws Exception {
+        StringTemplate first = TemplateRegistry.getInstanceOf(METRIC_TEMPLATE);
+        StringTemplate second = TemplateRegistry.getInstanceOf(METRIC_TEMPLATE);
+        Assert.assertNotSame(first, second);
+
+        first.setAttribute("column", "clicks");
+        first.setAttribute("column_type", "longSum");
+        second.setAttribute("column", "views");
+        second.setAttribute("column_type", "longSum");
+        Assert.assertTrue(first.toString().contains("clicks"));
+        Assert.assertFalse(first.toString().contains("views"));
+        Assert.assertTrue(second.toString().contains("views"));
+
+        // A fresh instance has no attributes
+        Assert.assertFalse(TemplateRegistry.getInstanceOf(METRIC_TEMPLATE).toString().contains("clicks"));
+        Assert.assertEquals(TemplateRegistry.getResource(METRIC_TEMPLATE), TemplateUtils.getParametrizedTemplateAsString(METRIC_TEMPLATE));
+    }
+
+    /**
+     * Test that missing templates fail.
+     */
+    @Test(expectedExceptions = Exception.class, expectedExceptionsMessageRegExp = "Unable to read template file .*")
+    public void testMissingTemplate() throws Exception {
+        TemplateRegistry.getInstanceOf("templates/does_not_exist.st");
+    }
+}
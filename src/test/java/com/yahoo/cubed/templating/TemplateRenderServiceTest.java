@@ -0,0 +1,252 @@
+/*
+ * Copyright Verizon Media, Licensed under the terms of the Apache License, Version 2.0. See LICENSE file in project root for terms.
+ */
+
+package com.yahoo.cubed.templating;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test shared pipeline file renderer.
+ */
+public class TemplateRenderServiceTest {
+
+    /**
+     * Template repeating its model.
+     */
+    private static class RepeatTemplate implements TemplateFile<String> {
+        @Override
+        public String generateFile(String model, long version) throws Exception {
+            if (model == null) {
+                throw new IOException("No model");
+            }
+            return model + version;
+        }
+    }
+
+    /**
+     * Template counting its renders.
+     */
+    private static class CountingTemplate implements TemplateFile<String> {
+        private volatile int renders;
+
+        @Override
+        public String generateFile(String model, long version) throws Exception {
+            renders++;
+            return model;
+        }
+    }
+
+    /**
+     * Test that all files of a batch are written and timed.
+     */
+    @Test
+    public void batchTest() throws Exception {
+        File directory = Files.createTempDirectory("render").toFile();
+        try {
+            TemplateRenderService service = new TemplateRenderService(2);
+            TemplateRenderService.Batch batch = service.newBatch(directory.getPath());
+            for (int i = 0; i < 10; i++) {
+                batch.render(directory + "/file" + i, new RepeatTemplate(), "content\u00e9", i);
+            }
+            batch.write(directory + "/plain", "plain");
+            batch.copy("email_workflow.xml", directory + "/workflow.xml");
+            batch.await();
+
+            for (int i = 0; i < 10; i++) {
+                Assert.assertEquals(new String(Files.readAllBytes(new File(directory, "file" + i).toPath()), StandardCharsets.UTF_8), "content\u00e9" + i);
+            }
+            Assert.assertEquals(new String(Files.readAllBytes(new File(directory, "plain").toPath()), StandardCharsets.UTF_8), "plain");
+            Assert.assertTrue(new File(directory, "workflow.xml").length() > 0);
+
+            Map<String, Map<String, Long>> stats = service.getRenderStats();
+            Assert.assertEquals(stats.get("RepeatTemplate").get("count").longValue(), 10L);
+            Assert.assertEquals(stats.get(TemplateRenderService.STATIC_FILES).get("count").longValue(), 2L);
+            service.shutdown();
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * Test that a failed file fails the batch once the other files are written.
+     */
+    @Test
+    public void failureTest() throws Exception {
+        File directory = Files.createTempDirectory("render").toFile();
+        try {
+            TemplateRenderService service = new TemplateRenderService(2);
+            TemplateRenderService.Batch batch = service.newBatch(directory.getPath());
+            batch.render(directory + "/failed", new RepeatTemplate(), null, 1);
+            batch.render(directory + "/written", new RepeatTemplate(), "content", 1);
+            Assert.assertThrows(IOException.class, batch::await);
+            Assert.assertTrue(new File(directory, "written").isFile());
+            Assert.assertFalse(new File(directory, "failed").exists());
+            service.shutdown();
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * Test that a zip batch streams its files in order, deflated or stored.
+     */
+    @Test
+    public void zipBatchTest() throws Exception {
+        TemplateRenderService service = new TemplateRenderService(2);
+        for (int level : new int[] {Deflater.DEFAULT_COMPRESSION, Deflater.NO_COMPRESSION}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (ZipOutputStream zip = new ZipOutputStream(out)) {
+                TemplateRenderService.Batch batch = service.newZipBatch(zip, level);
+                batch.createDirectories(Collections.singletonList("/pipeline_v1/"));
+                batch.copy("email_workflow.xml", "/pipeline_v1/email/workflow.xml");
+                for (int i = 0; i < 5; i++) {
+                    batch.render("/pipeline_v1/file" + i, new RepeatTemplate(), "content\u00e9", i);
+                }
+                batch.write("/pipeline_v1/plain", "plain");
+                batch.await();
+            }
+
+            List<String> names = new ArrayList<>();
+            try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+                for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                    names.add(entry.getName());
+                    Assert.assertEquals(entry.getMethod(), level == Deflater.NO_COMPRESSION ? ZipEntry.STORED : ZipEntry.DEFLATED);
+                    String content = new String(IOUtils.toByteArray(zip), StandardCharsets.UTF_8);
+                    if (entry.getName().equals("pipeline_v1/file3")) {
+                        Assert.assertEquals(content, "content\u00e93");
+                    }
+                }
+            }
+            Assert.assertEquals(names, Arrays.asList("pipeline_v1/email/workflow.xml", "pipeline_v1/file0", "pipeline_v1/file1",
+                    "pipeline_v1/file2", "pipeline_v1/file3", "pipeline_v1/file4", "pipeline_v1/plain"));
+        }
+        Assert.assertFalse(new File("/pipeline_v1").exists());
+        service.shutdown();
+    }
+
+    /**
+     * Test that a failed file stops the zip archive, leaving it unfinished so that it cannot be read as complete.
+     */
+    @Test
+    public void zipFailureTest() throws Exception {
+        TemplateRenderService service = new TemplateRenderService(2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(out);
+        TemplateRenderService.Batch batch = service.newZipBatch(zip, Deflater.DEFAULT_COMPRESSION);
+        batch.render("/pipeline_v1/written", new RepeatTemplate(), "content", 1);
+        batch.render("/pipeline_v1/failed", new RepeatTemplate(), null, 1);
+        batch.render("/pipeline_v1/skipped", new RepeatTemplate(), "content", 1);
+        Assert.assertThrows(IOException.class, batch::await);
+        zip.flush();
+
+        File archive = File.createTempFile("render", ".zip");
+        try {
+            Files.write(archive.toPath(), out.toByteArray());
+            Assert.assertThrows(ZipException.class, () -> new ZipFile(archive).close());
+        } finally {
+            archive.delete();
+        }
+        Assert.assertFalse(new String(out.toByteArray(), StandardCharsets.ISO_8859_1).contains("pipeline_v1/skipped"));
+        service.shutdown();
+    }
+
+    /**
+     * Test that a zip batch writes the files already rendered while it waits for the next one.
+     */
+    @Test
+    public void zipStreamingTest() throws Exception {
+        TemplateRenderService service = new TemplateRenderService(2);
+        CountDownLatch release = new CountDownLatch(1);
+        TemplateFile<String> blocked = (model, version) -> {
+            release.await();
+            return model;
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ZipOutputStream zip = new ZipOutputStream(out);
+            TemplateRenderService.Batch batch = service.newZipBatch(zip, Deflater.NO_COMPRESSION);
+            batch.render("/pipeline_v1/first", new RepeatTemplate(), "content", 1);
+            batch.render("/pipeline_v1/second", blocked, "blocked", 1);
+            Future<?> await = executor.submit(() -> {
+                batch.await();
+                zip.close();
+                return null;
+            });
+
+            // The first entry is written before the second file is rendered
+            long deadline = System.currentTimeMillis() + 5000;
+            while (out.size() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(out.size() > 0);
+            Assert.assertFalse(await.isDone());
+
+            release.countDown();
+            await.get(5, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+            service.shutdown();
+        }
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                names.add(entry.getName());
+            }
+        }
+        Assert.assertEquals(names, Arrays.asList("pipeline_v1/first", "pipeline_v1/second"));
+    }
+
+    /**
+     * Test that a memory batch keeps its files, or only one of them, without touching disk.
+     */
+    @Test
+    public void memoryBatchTest() throws Exception {
+        TemplateRenderService service = new TemplateRenderService(2);
+        TemplateRenderService.Batch batch = service.newMemoryBatch("/pipeline_v1/", null);
+        batch.createDirectories(Collections.singletonList("/pipeline_v1/"));
+        batch.render("/pipeline_v1/file", new RepeatTemplate(), "content", 1);
+        batch.write("/pipeline_v1/plain", "plain");
+        batch.await();
+        Assert.assertEquals(batch.getFiles().keySet(), new HashSet<>(Arrays.asList("file", "plain")));
+        Assert.assertEquals(batch.getFiles().get("file"), "content1");
+
+        CountingTemplate skipped = new CountingTemplate();
+        batch = service.newMemoryBatch("/pipeline_v1/", "plain");
+        batch.render("/pipeline_v1/file", skipped, "content", 1);
+        batch.write("/pipeline_v1/plain", "plain");
+        batch.await();
+        Assert.assertEquals(batch.getFiles(), Collections.singletonMap("plain", "plain"));
+        Assert.assertEquals(skipped.renders, 0);
+        Assert.assertFalse(new File("/pipeline_v1").exists());
+        service.shutdown();
+    }
+}
@@ -0,0 +1,7 @@
+############## MAIN ENTRY ###############
+
+# Start a child that outlives the timeout
+sleep 60 &
+echo "[[CHILD]]$!"
+echo "Waiting for the child" >&2
+wait
@@ -0,0 +1,11 @@
+############## MAIN ENTRY ###############
+
+# Write more than a pipe buffer to both streams
+i=0
+while [ $i -lt 20000 ]; do
+	echo "[DMART PIPELINE CD][INFO] line $i"
+	echo "[DMART PIPELINE CD][ERROR] line $i" >&2
+	i=$((i + 1))
+done
+echo "[[ID]]0000001-oozie-B"
+exit 0